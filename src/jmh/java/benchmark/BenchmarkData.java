@@ -0,0 +1,61 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * value lists that look like timestamp and RID lists of a cluster (see acer.BufferPool.generateIndexBlock)
+ * a cluster stores events of one type, so its timestamps and RIDs skip events of other types
+ */
+public class BenchmarkData {
+    public enum Distribution {
+        // timestamps of in-order insertion
+        IN_ORDER_TS,
+        // timestamps of out-of-order insertion, adjacent timestamps may decrease
+        OUT_OF_ORDER_TS,
+        // RIDs (page << 16 | offset) of events of one type
+        RID
+    }
+
+    /**
+     * @param distribution      value distribution
+     * @param size              number of values
+     * @param seed              random seed
+     * @return                  values
+     */
+    public static List<Long> generate(Distribution distribution, int size, long seed){
+        Random random = new Random(seed);
+        List<Long> values = new ArrayList<>(size);
+        switch (distribution){
+            case IN_ORDER_TS -> {
+                long timestamp = 1747405414L;
+                for(int i = 0; i < size; i++){
+                    timestamp += random.nextInt(0, 40);
+                    values.add(timestamp);
+                }
+            }
+            case OUT_OF_ORDER_TS -> {
+                long timestamp = 1747405414L;
+                for(int i = 0; i < size; i++){
+                    timestamp += random.nextInt(-10, 40);
+                    values.add(timestamp);
+                }
+            }
+            case RID -> {
+                // records are 40 bytes and pages are 8KB (see acer.Parameters.PAGE_SIZE)
+                int recordSize = 40;
+                int recordNumPerPage = 8 * 1024 / recordSize;
+                long position = 0;
+                for(int i = 0; i < size; i++){
+                    // about one of ten events has this type
+                    position += 1 + random.nextInt(20);
+                    long page = position / recordNumPerPage;
+                    long offset = (position % recordNumPerPage) * recordSize;
+                    values.add((page << 16) | offset);
+                }
+            }
+        }
+        return values;
+    }
+}
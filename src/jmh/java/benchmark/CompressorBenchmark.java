@@ -0,0 +1,80 @@
+package benchmark;
+
+import compressor.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encoders and decoders of each CompressorAlgorithm on timestamp and RID lists of clusters,
+ * decoders read from a ByteBuffer like acer.MappedIdxBlk does
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CompressorBenchmark {
+    @Param({"DELTA_2", "VAR_INT", "SIMPLE_8B", "DELTA", "BLOCK_FOR"})
+    public CompressorAlgorithm algorithm;
+
+    @Param({"IN_ORDER_TS", "OUT_OF_ORDER_TS", "RID"})
+    public BenchmarkData.Distribution distribution;
+
+    // a cluster has at most 64K events (see acer.Parameters.CAPACITY)
+    @Param({"1024", "16384"})
+    public int size;
+
+    private List<Long> values;
+    private ByteBuffer compressedBuffer;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        values = BenchmarkData.generate(distribution, size, 7);
+        long[] compressedValues = compress(algorithm, values);
+        compressedBuffer = ByteBuffer.allocateDirect(compressedValues.length << 3);
+        for(long value : compressedValues){
+            compressedBuffer.putLong(value);
+        }
+        compressedBuffer.flip();
+        long[] decodedValues = decompress(algorithm, compressedBuffer.duplicate(), size);
+        for(int i = 0; i < size; i++){
+            if(decodedValues[i] != values.get(i)){
+                throw new RuntimeException(algorithm + " decodes a wrong value at position " + i);
+            }
+        }
+    }
+
+    @Benchmark
+    public long[] encode(){
+        return compress(algorithm, values);
+    }
+
+    @Benchmark
+    public long[] decode(){
+        return decompress(algorithm, compressedBuffer.duplicate(), size);
+    }
+
+    static long[] compress(CompressorAlgorithm algorithm, List<Long> values){
+        return switch (algorithm){
+            case DELTA_2 -> DeltaOfDeltaCompressor.compress(values);
+            case VAR_INT -> DeltaVarIntCompressor.compress(values);
+            case SIMPLE_8B -> DeltaSimple8BCompressor.compress(values);
+            case DELTA -> DeltaCompressor.compress(values);
+            case BLOCK_FOR -> DeltaBlockFORCompressor.compress(values);
+        };
+    }
+
+    static long[] decompress(CompressorAlgorithm algorithm, ByteBuffer buffer, int itemNum){
+        return switch (algorithm){
+            case DELTA_2 -> DeltaOfDeltaDecompressor.decompress(buffer, itemNum);
+            case VAR_INT -> DeltaVarIntDecompressor.decompress(buffer, itemNum);
+            case SIMPLE_8B -> DeltaSimple8BDecompressor.decompress(buffer, itemNum);
+            case DELTA -> DeltaDecompressor.decompress(buffer, itemNum);
+            case BLOCK_FOR -> DeltaBlockFORDecompressor.decompress(buffer, itemNum);
+        };
+    }
+}
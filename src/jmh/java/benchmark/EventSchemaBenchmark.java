@@ -0,0 +1,74 @@
+package benchmark;
+
+import common.EventSchema;
+import common.Metadata;
+import common.StatementParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventSchema converts string records to byte records (insertion) and reads values from byte records (matching)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class EventSchemaBenchmark {
+    private static final int RECORD_NUM = 1024;
+
+    private EventSchema schema;
+    private String[][] records;
+    private byte[][] byteRecords;
+    private int a1Idx;
+    private int a3Idx;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        String statement = "CREATE TABLE benchmark (type TYPE, a1 INT, a2 INT, a3 DOUBLE.2, a4 DOUBLE.2, time TIMESTAMP)";
+        StatementParser.createTable(StatementParser.convert(statement));
+        schema = Metadata.getInstance().getEventSchema("BENCHMARK");
+        a1Idx = schema.getAttrNameIdx("A1");
+        a3Idx = schema.getAttrNameIdx("A3");
+        Random random = new Random(7);
+        records = new String[RECORD_NUM][];
+        byteRecords = new byte[RECORD_NUM][];
+        long timestamp = 1747405414L;
+        for(int i = 0; i < RECORD_NUM; i++){
+            timestamp += random.nextInt(3);
+            String record = "TYPE_" + random.nextInt(20) + "," + random.nextInt(1, 1001) + "," + random.nextInt(1, 1001) +
+                    "," + random.nextInt(1000) + ".25," + random.nextInt(1000) + ".5," + timestamp;
+            records[i] = record.split(",");
+            byteRecords[i] = schema.convertToBytes(records[i]);
+        }
+    }
+
+    private int next(){
+        cursor = (cursor + 1) & (RECORD_NUM - 1);
+        return cursor;
+    }
+
+    @Benchmark
+    public byte[] encode(){
+        return schema.convertToBytes(records[next()]);
+    }
+
+    @Benchmark
+    public void decodeValues(Blackhole blackhole){
+        byte[] record = byteRecords[next()];
+        blackhole.consume(schema.getTypeIdFromBytesRecord(record));
+        blackhole.consume(schema.getTimestampFromRecord(record));
+        blackhole.consume(schema.getValueFromBytesRecord(record, a1Idx));
+        blackhole.consume(schema.getValueFromBytesRecord(record, a3Idx));
+    }
+
+    @Benchmark
+    public String decodeToString(){
+        return schema.byteEventToString(byteRecords[next()]);
+    }
+}
@@ -0,0 +1,76 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import store.EventStore;
+import store.RID;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventStore writes events to store/[schema].row_data, reads are sequential (scan)
+ * or random (RIDs of filtered events, see baselines.NaiveIndex.obtainEventsBasedPairs)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class EventStoreBenchmark {
+    @Param({"40"})
+    public int recordSize;
+
+    // number of stored events of read benchmarks
+    @Param({"1000000"})
+    public int recordNum;
+
+    private byte[] record;
+    private EventStore writeStore;
+    private EventStore readStore;
+    private RID[] rids;
+    private int[] randomPositions;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setupRead(){
+        record = new byte[recordSize];
+        new Random(7).nextBytes(record);
+        readStore = new EventStore("BENCHMARK_READ", recordSize);
+        rids = new RID[recordNum];
+        for(int i = 0; i < recordNum; i++){
+            rids[i] = readStore.insertByteRecord(record);
+        }
+        Random random = new Random(11);
+        randomPositions = new int[1 << 16];
+        for(int i = 0; i < randomPositions.length; i++){
+            randomPositions[i] = random.nextInt(recordNum);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupWrite(){
+        // a new store clears its file, so files do not grow across iterations
+        writeStore = new EventStore("BENCHMARK_WRITE", recordSize);
+        cursor = 0;
+    }
+
+    @Benchmark
+    public RID insertByteRecord(){
+        return writeStore.insertByteRecord(record);
+    }
+
+    @Benchmark
+    public byte[] readSequential(){
+        RID rid = rids[cursor];
+        cursor = cursor + 1 == recordNum ? 0 : cursor + 1;
+        return readStore.readByteRecord(rid);
+    }
+
+    @Benchmark
+    public byte[] readRandom(){
+        RID rid = rids[randomPositions[cursor & (randomPositions.length - 1)]];
+        cursor++;
+        return readStore.readByteRecord(rid);
+    }
+}
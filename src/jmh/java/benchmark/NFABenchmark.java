@@ -0,0 +1,65 @@
+package benchmark;
+
+import acer.ACER;
+import automaton.MatchStrategy;
+import automaton.NFA;
+import baselines.NaiveIndex;
+import common.EventSchema;
+import common.IndexValuePair;
+import common.Metadata;
+import org.openjdk.jmh.annotations.*;
+import pattern.QueryPattern;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * matching phase of a query: a count-only NFA consumes the events that two-phase filtering keeps
+ * (the sequential loop of acer.ACER.matchEvents, parallel matching is disabled)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class NFABenchmark {
+    @Param({"262144"})
+    public int eventNum;
+
+    // selectivity of independent constraint of each variable
+    @Param({"0.01", "0.1", "0.5"})
+    public double selectivity;
+
+    @Param({"100", "1000"})
+    public long window;
+
+    @Param({"2", "3", "4"})
+    public int patternLength;
+
+    @Param({"SKIP_TILL_NEXT_MATCH", "SKIP_TILL_ANY_MATCH"})
+    public MatchStrategy strategy;
+
+    private EventSchema schema;
+    private QueryPattern pattern;
+    private List<byte[]> events;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        ACER index = SyntheticWorkload.createIndex(eventNum);
+        schema = Metadata.getInstance().getEventSchema("SYNTHETIC");
+        pattern = SyntheticWorkload.seqPattern(patternLength, selectivity, window, strategy.name());
+        List<IndexValuePair> pairs = index.twoPhaseFiltering(pattern);
+        events = NaiveIndex.obtainEventsBasedPairs(pairs, schema.getStore());
+    }
+
+    @Benchmark
+    public long consume(){
+        NFA nfa = new NFA();
+        nfa.generateNFAUsingQueryPattern(pattern);
+        for(byte[] event : events){
+            nfa.consume(schema, event, strategy);
+        }
+        return nfa.countTuple();
+    }
+}
@@ -0,0 +1,107 @@
+package benchmark;
+
+import acer.ACER;
+import acer.SortedIntervalSet;
+import acer.SynopsisTable;
+import baselines.NaiveIndex;
+import common.IndexValuePair;
+import org.openjdk.jmh.annotations.*;
+import pattern.QueryPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * filtering phases of a query (see acer.ACER.twoPhaseFilteringByVariable) on a synthetic dataset:
+ * the whole two-phase filtering, and the interval set, merge and intersection steps on its intermediate results
+ * updateAndFilter and checkOverlap change the interval set, so they run on a copy (copy cost is included)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class QueryPathBenchmark {
+    // 4 index blocks (see acer.Parameters.CAPACITY)
+    @Param({"262144"})
+    public int eventNum;
+
+    // selectivity of independent constraint of each variable
+    @Param({"0.01", "0.1", "0.5"})
+    public double selectivity;
+
+    @Param({"100", "1000"})
+    public long window;
+
+    @Param({"2", "3", "4"})
+    public int patternLength;
+
+    private ACER index;
+    private QueryPattern pattern;
+    // candidates of v0 (TYPE_0) and the last variable
+    private List<IndexValuePair> firstPairs;
+    private List<IndexValuePair> lastPairs;
+    // candidates of v0 that satisfy the constraint on a2 instead of a1
+    private List<IndexValuePair> firstPairsOnA2;
+    private List<Long> lastTimestamps;
+    // time intervals of v0 (v0 is the leftmost variable)
+    private SortedIntervalSet intervalSet;
+    // start and end timestamps of clusters of the last variable's type
+    private List<Long> clusterStarts;
+    private List<Long> clusterEnds;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        index = SyntheticWorkload.createIndex(eventNum);
+        pattern = SyntheticWorkload.seqPattern(patternLength, selectivity, window, "SKIP_TILL_ANY_MATCH");
+
+        String lastVarName = "v" + (patternLength - 1);
+        String lastType = pattern.getEventType(lastVarName);
+        firstPairs = index.queryVariableResult("TYPE_0", "v0", pattern);
+        lastPairs = index.queryVariableResult(lastType, lastVarName, pattern);
+        QueryPattern patternOnA2 = SyntheticWorkload.seqPattern(patternLength, selectivity, window, "SKIP_TILL_ANY_MATCH", "a2");
+        firstPairsOnA2 = index.queryVariableResult("TYPE_0", "v0", patternOnA2);
+
+        lastTimestamps = new ArrayList<>(lastPairs.size());
+        for(IndexValuePair pair : lastPairs){
+            lastTimestamps.add(pair.timestamp());
+        }
+        intervalSet = index.generateIntervalSet(firstPairs, 0, pattern.getTau());
+
+        clusterStarts = new ArrayList<>(64);
+        clusterEnds = new ArrayList<>(64);
+        SynopsisTable.getInstance().getStartEndTimestamp(lastType, clusterStarts, clusterEnds);
+    }
+
+    @Benchmark
+    public List<IndexValuePair> twoPhaseFiltering(){
+        return index.twoPhaseFiltering(pattern);
+    }
+
+    @Benchmark
+    public List<IndexValuePair> updateAndFilter(){
+        return intervalSet.copy().updateAndFilter(lastPairs);
+    }
+
+    @Benchmark
+    public List<Boolean> checkOverlapTimestamps(){
+        return intervalSet.copy().checkOverlap(lastTimestamps);
+    }
+
+    @Benchmark
+    public List<Boolean> checkOverlapClusters(){
+        return intervalSet.checkOverlap(clusterStarts, clusterEnds);
+    }
+
+    @Benchmark
+    public List<IndexValuePair> mergeIndexValuePair(){
+        return NaiveIndex.mergeIndexValuePair(firstPairs, lastPairs);
+    }
+
+    @Benchmark
+    public List<IndexValuePair> intersect(){
+        return NaiveIndex.intersect(firstPairs, firstPairsOnA2);
+    }
+}
@@ -0,0 +1,86 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.RangeBitmap;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * range bitmap of an index block (see acer.BufferPool.generateIndexBlock and acer.MappedIdxBlk.query):
+ * appending transformed values, serializing the appender, and range queries on a mapped bitmap
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class RangeBitmapBenchmark {
+    // an index block has 64K events (see acer.Parameters.CAPACITY)
+    @Param({"65536"})
+    public int size;
+
+    // maximum transformed value (value - min value of cluster)
+    @Param({"1000", "1048576"})
+    public long maxValue;
+
+    // fraction of values that a range query selects
+    @Param({"0.01", "0.1", "0.5"})
+    public double selectivity;
+
+    private long[] values;
+    private RangeBitmap rangeBitmap;
+    private long queryMax;
+    private RoaringBitmap context;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        Random random = new Random(7);
+        values = new long[size];
+        for(int i = 0; i < size; i++){
+            values[i] = (long) (random.nextDouble() * (maxValue + 1));
+        }
+        rangeBitmap = RangeBitmap.map(appendAndSerialize());
+        queryMax = (long) (maxValue * selectivity);
+        // context bitmap selects every other event, like a bitmap of another constraint
+        context = new RoaringBitmap();
+        for(int i = 0; i < size; i += 2){
+            context.add(i);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer appendAndSerialize(){
+        RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+        for(long value : values){
+            appender.add(value);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(appender.serializedSizeInBytes());
+        appender.serialize(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public RoaringBitmap lte(){
+        return rangeBitmap.lte(queryMax);
+    }
+
+    @Benchmark
+    public RoaringBitmap between(){
+        return rangeBitmap.between(queryMax >> 1, queryMax);
+    }
+
+    @Benchmark
+    public RoaringBitmap lteWithContext(){
+        return rangeBitmap.lte(queryMax, context);
+    }
+
+    @Benchmark
+    public long lteCardinality(){
+        return rangeBitmap.lteCardinality(queryMax);
+    }
+}
@@ -0,0 +1,73 @@
+package benchmark;
+
+import acer.ACER;
+import common.StatementParser;
+import generator.DataGenerator;
+import pattern.QueryPattern;
+
+import java.util.List;
+
+/**
+ * synthetic dataset (see generator.DataGenerator) stored in an ACER index, and SEQ patterns over it
+ * event types follow a zipf distribution (TYPE_0 is the most frequent type), a1 and a2 are uniform in [1, 1000],
+ * and timestamps increase by one, so a window of w units covers w events
+ */
+public class SyntheticWorkload {
+    // DataGenerator generates a batch of 512 events, ACER requires CAPACITY % batch size == 0
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * create the synthetic schema and an ACER index on (a1, a2, a3, a4) (ACER.insertBatchRecord requires them), then insert events,
+     * note that DataGenerator uses a fixed seed, so every trial sees the same events
+     * @param eventNum      number of events (multiple of 512)
+     * @return              ACER index
+     */
+    public static ACER createIndex(int eventNum){
+        String[] attrDataTypes = {"INT_UNIFORM", "INT_UNIFORM", "DOUBLE_GAUSSIAN", "DOUBLE_GAUSSIAN"};
+        DataGenerator generator = new DataGenerator(attrDataTypes);
+
+        String createTable = "CREATE TABLE synthetic (type TYPE, a1 INT, a2 INT, a3 DOUBLE.2, a4 DOUBLE.2, time TIMESTAMP)";
+        StatementParser.createTable(StatementParser.convert(createTable));
+        String createIndex = "CREATE INDEX benchmark_synthetic USING ACER ON synthetic(a1, a2, a3, a4)";
+        ACER index = (ACER) StatementParser.createIndex(StatementParser.convert(createIndex));
+        index.initial();
+
+        for(int i = 0; i < eventNum; i += BATCH_SIZE){
+            List<String[]> batch = generator.generateDataInBatch(BATCH_SIZE, true);
+            index.insertBatchRecord(batch, false);
+        }
+        return index;
+    }
+
+    /**
+     * SEQ(TYPE_0 v0, TYPE_1 v1, ..., TYPE_{n-1} v{n-1}), every variable has an independent constraint on a1
+     * and the first and last variables have a dependent constraint on a2 (it does not change filtering)
+     * @param patternLength     number of variables
+     * @param selectivity       selectivity of independent constraints
+     * @param window            window length (number of events)
+     * @param strategy          SKIP_TILL_NEXT_MATCH or SKIP_TILL_ANY_MATCH
+     * @return                  query pattern that returns count
+     */
+    public static QueryPattern seqPattern(int patternLength, double selectivity, long window, String strategy){
+        return seqPattern(patternLength, selectivity, window, strategy, "a1");
+    }
+
+    /**
+     * @param icAttrName        attribute of independent constraints (a1 or a2)
+     */
+    public static QueryPattern seqPattern(int patternLength, double selectivity, long window, String strategy, String icAttrName){
+        StringBuilder seq = new StringBuilder("SEQ(");
+        StringBuilder where = new StringBuilder();
+        long maxValue = Math.round(1000 * selectivity);
+        for(int i = 0; i < patternLength; i++){
+            seq.append(i == 0 ? "" : ", ").append("TYPE_").append(i).append(" v").append(i);
+            where.append(i == 0 ? "" : " AND ").append("v").append(i).append(".").append(icAttrName).append(" <= ").append(maxValue);
+        }
+        seq.append(")");
+        where.append(" AND v0.a2 <= v").append(patternLength - 1).append(".a2");
+
+        String query = "PATTERN " + seq + "\nFROM synthetic\nUSING " + strategy + "\nWHERE " + where +
+                "\nWITHIN " + window + " units\nRETURN COUNT(*)";
+        return StatementParser.getQueryPattern(query);
+    }
+}
@@ -9,12 +9,19 @@ import java.nio.channels.FileChannel;
 import java.util.*;
 
 import arrival.JsonMap;
+import automaton.JoinMatcher;
+import automaton.LazyNFA;
+import automaton.MatchSink;
 import automaton.NFA;
+import automaton.ParallelMatcher;
 import baselines.Index;
 import baselines.NaiveIndex;
 import common.IndexValuePair;
+import common.MatchEngine;
+import common.Metrics;
 import common.ReservoirSampling;
 import automaton.Tuple;
+import condition.DependentConstraint;
 import condition.ICQueryQuad;
 import condition.IndependentConstraint;
 import pattern.QueryPattern;
@@ -45,6 +52,14 @@ public class ACER extends Index {
     private RandomAccessFile raf;
     private FileChannel fileChannel;
 
+    private long watermark = Long.MIN_VALUE;                // maximum timestamp of inserted events
+    private long lateVersion = -1;                          // data version of latest out-of-order/updated event
+    private QueryResultCache resultCache = null;            // versioned query result cache (disable by default)
+    private PredicateBitmapCache bitmapCache = null;        // cluster-level range bitmap query results (disable by default)
+    private ContinuousQueryManager cqManager = null;        // standing queries
+    // threads of parallel matching, one thread means events are matched by the calling thread
+    private int matchThreadNum = Parameters.ENABLE_PARALLEL_MATCHING ? Parameters.MATCH_THREAD_NUM : 1;
+
     public ACER(String indexName){
         super(indexName);
         String storePath = System.getProperty("user.dir") + File.separator + "store";
@@ -52,6 +67,10 @@ public class ACER extends Index {
         String filePath = storePath + File.separator + filename;
         System.out.println("index storage file path: " + filePath);
         file = new File(filePath);
+        // create store directory when it does not exist
+        if(!file.getParentFile().exists() && file.getParentFile().mkdirs()){
+            System.out.println("create store directory: " + storePath);
+        }
         // If this file has existed before, we clear the content
         if(file.exists()){
             if(file.delete()){
@@ -87,6 +106,7 @@ public class ACER extends Index {
 
     @Override
     public boolean insertRecord(String record, boolean updatedFlag) {
+        long insertStartTime = Metrics.now();
         hasUpdated = updatedFlag || hasUpdated;
         fileChannel = null;
 
@@ -110,6 +130,7 @@ public class ACER extends Index {
                     orderedFlag = false;
                 }
                 previousTimestamp = timestamp;
+                updateWatermark(timestamp, updatedFlag);
             }else if(attrTypes[i].equals("INT") ){
                 if(indexAttrNameMap.containsKey(attrNames[i])){
                     int idx = indexAttrNameMap.get(attrNames[i]);
@@ -139,9 +160,16 @@ public class ACER extends Index {
         EventStore store = schema.getStore();
         RID rid = store.insertByteRecord(bytesRecord);
 
+        // evaluate standing queries incrementally
+        if(cqManager != null){
+            cqManager.route(schema, eventType, bytesRecord);
+        }
+
         // cache indexed attribute values
         int blockId = idxBlkMetaInfoList.size();
         TemporaryTriple triple = new TemporaryTriple(timestamp, rid, attrValArray);
+        // buffer pool generates an index block when it is full
+        long flushStartTime = Metrics.now();
         ByteBuffer buffer = bufferPool.insert(orderedFlag, eventType, blockId, triple, synopsisTable, idxBlkMetaInfoList);
 
         // update indices
@@ -149,15 +177,18 @@ public class ACER extends Index {
 
         if(buffer != null){
             storeIndexBlock(buffer);
+            Metrics.FLUSH_DURATION.recordSince(flushStartTime);
             // create a new block, so change this value
             orderedFlag = true;
         }
 
+        Metrics.INSERT_LATENCY.recordSince(insertStartTime);
         return true;
     }
 
     @Override
     public boolean insertBatchRecord(List<String[]> batchRecords, boolean updatedFlag) {
+        long insertStartTime = Metrics.now();
         hasUpdated = updatedFlag || hasUpdated;
         fileChannel = null;
         String[] attrNames = schema.getAttrNames();
@@ -169,6 +200,7 @@ public class ACER extends Index {
 
         ByteBuffer buffer = null;
         int notNullCount = 0;
+        long flushStartTime = 0;
         for(String[] splits : batchRecords){
             String eventType = splits[0];
 
@@ -192,17 +224,23 @@ public class ACER extends Index {
                 orderedFlag = false;
             }
             previousTimestamp = timestamp;
+            updateWatermark(timestamp, updatedFlag);
 
             // write event to disk
             byte[] bytesRecord = schema.convertToBytes(splits);
             RID rid = store.insertByteRecord(bytesRecord);
+            if(cqManager != null){
+                cqManager.route(schema, eventType, bytesRecord);
+            }
 
             // cache indexed attribute values
             int blockId = idxBlkMetaInfoList.size();
             TemporaryTriple triple = new TemporaryTriple(timestamp, rid, attrValArray);
+            long poolStartTime = Metrics.now();
             buffer = bufferPool.insert(orderedFlag, eventType, blockId, triple, synopsisTable, idxBlkMetaInfoList);
             if(buffer != null){
                 notNullCount++;
+                flushStartTime = poolStartTime;
             }
 
             reservoir.sampling(attrValArray, autoIndices);
@@ -213,74 +251,466 @@ public class ACER extends Index {
 
         if(buffer != null){
             storeIndexBlock(buffer);
+            Metrics.FLUSH_DURATION.recordSince(flushStartTime);
             // create a new block, so change this value
             orderedFlag = true;
         }
 
+        Metrics.INSERT_BATCH_LATENCY.recordSince(insertStartTime);
         return true;
     }
 
     @Override
-    public int processCountQueryUsingNFA(QueryPattern pattern, NFA nfa) {
+    public long processCountQueryUsingNFA(QueryPattern pattern, NFA nfa) {
+        if(resultCache == null){
+            matchEvents(pattern, nfa, Long.MIN_VALUE, false);
+            // when you want to call flink, you can replace nfa with below line (see matchEvents)
+            // ans = CrimesPatternQuery.crimesFirstQuery(events, schema);
+            return nfa.countTuple();
+        }
+
+        String key = "COUNT|" + pattern.getNormalizedKey();
+        long version = autoIndices;
+        long curWatermark = watermark;
+        QueryResultCache.CachedResult cached = resultCache.get(key);
+
+        // case 1: no new events
+        if(cached != null && cached.version() == version){
+            resultCache.recordHit();
+            return cached.count();
+        }
+
+        // case 2: only process events that newer than watermark - tau
+        long minTimestamp = refreshLowerBound(cached, pattern);
+        if(minTimestamp != Long.MIN_VALUE){
+            resultCache.recordRefresh();
+            matchEvents(pattern, nfa, minTimestamp, false);
+            long stableCount = cached.stableCount() + nfa.countTuple(cached.watermark(), curWatermark);
+            long tailCount = nfa.countTuple(curWatermark, Long.MAX_VALUE);
+            resultCache.put(key, QueryResultCache.countResult(version, curWatermark, stableCount, tailCount, key));
+            return stableCount + tailCount;
+        }
+
+        // case 3: recompute
+        resultCache.recordMiss();
+        matchEvents(pattern, nfa, Long.MIN_VALUE, false);
+        long stableCount = nfa.countTuple(Long.MIN_VALUE, curWatermark);
+        long tailCount = nfa.countTuple(curWatermark, Long.MAX_VALUE);
+        resultCache.put(key, QueryResultCache.countResult(version, curWatermark, stableCount, tailCount, key));
+        return stableCount + tailCount;
+    }
+
+    @Override
+    public List<Tuple> processTupleQueryUsingNFA(QueryPattern pattern, NFA nfa) {
+        if(resultCache == null){
+            matchEvents(pattern, nfa, Long.MIN_VALUE, true);
+            return nfa.getTuple(schema);
+        }
+
+        String key = "TUPLE|" + pattern.getNormalizedKey();
+        long version = autoIndices;
+        long curWatermark = watermark;
+        QueryResultCache.CachedResult cached = resultCache.get(key);
+
+        if(cached != null && cached.version() == version){
+            resultCache.recordHit();
+            return cached.tuples();
+        }
+
+        long minTimestamp = refreshLowerBound(cached, pattern);
+        List<Tuple> stableTuples;
+        if(minTimestamp != Long.MIN_VALUE){
+            resultCache.recordRefresh();
+            matchEvents(pattern, nfa, minTimestamp, true);
+            stableTuples = new ArrayList<>(cached.stableTuples());
+            stableTuples.addAll(nfa.getTuple(schema, cached.watermark(), curWatermark));
+        }else{
+            resultCache.recordMiss();
+            matchEvents(pattern, nfa, Long.MIN_VALUE, true);
+            stableTuples = nfa.getTuple(schema, Long.MIN_VALUE, curWatermark);
+        }
+        List<Tuple> tailTuples = nfa.getTuple(schema, curWatermark, Long.MAX_VALUE);
+        QueryResultCache.CachedResult result = QueryResultCache.tupleResult(version, curWatermark, stableTuples, tailTuples, key);
+        resultCache.put(key, result);
+        return result.tuples();
+    }
+
+    /**
+     * streaming tuple query, result cache is bypassed since it stores formatted tuples
+     * @param pattern       query pattern
+     * @param nfa           automata
+     * @param sink          match sink
+     */
+    @Override
+    public void processTupleQueryUsingNFA(QueryPattern pattern, NFA nfa, MatchSink sink){
+        nfa.setMatchSink(sink);
+        matchEvents(pattern, nfa, Long.MIN_VALUE, true);
+    }
+
+    /**
+     * filter events, read events from disk (or project them from covering columns), and then NFA consumes these events
+     * @param pattern           query pattern
+     * @param nfa               automata
+     * @param minTimestamp      events whose timestamps are smaller than this value are skipped
+     * @param needTuples        false: count queries use count-only NFA
+     */
+    private void matchEvents(QueryPattern pattern, NFA nfa, long minTimestamp, boolean needTuples){
+        matchEvents(pattern, nfa, minTimestamp, needTuples, plan(pattern, false));
+    }
+
+    /**
+     * @param plan              query plan, an analyzed plan records counts and costs
+     */
+    private void matchEvents(QueryPattern pattern, NFA nfa, long minTimestamp, boolean needTuples, QueryPlan plan){
+        if(Parameters.MATCH_ENGINE == MatchEngine.JOIN && JoinMatcher.canProcess(pattern)){
+            joinEvents(pattern, nfa, minTimestamp, needTuples, plan);
+            return;
+        }
         long filterStartTime = System.nanoTime();
-        List<IndexValuePair> pairs = twoPhaseFiltering(pattern);
+        boolean covered = canUseCoveringColumns(pattern);
+        Map<Long, long[]> coveredValues = covered ? new HashMap<>() : null;
+        Map<String, List<IndexValuePair>> varPairs = twoPhaseFilteringByVariable(pattern, minTimestamp, coveredValues, plan);
+        List<IndexValuePair> pairs = null;
+        for(List<IndexValuePair> curPairs : varPairs.values()){
+            pairs = (pairs == null) ? curPairs : NaiveIndex.mergeIndexValuePair(pairs, curPairs);
+        }
         long filterEndTime = System.nanoTime();
-        String filterOutput = String.format("%.3f", (filterEndTime - filterStartTime + 0.0) / 1_000_000);
-        System.out.println("filter cost: " + filterOutput + "ms");
+        Metrics.QUERY_FILTER_LATENCY.record(filterEndTime - filterStartTime);
 
         long scanStartTime = System.nanoTime();
-        List<byte[]> events = NaiveIndex.obtainEventsBasedPairs(pairs, schema.getStore());
+        List<byte[]> events;
+        if(covered){
+            // [updated] late materialization: NFA consumes projected records, events are fetched for matches only
+            Map<Long, byte[]> projections = new HashMap<>(pairs.size() << 1);
+            for(Map.Entry<String, List<IndexValuePair>> entry : varPairs.entrySet()){
+                projectEvents(pattern, pattern.getEventType(entry.getKey()), entry.getValue(), coveredValues, projections);
+            }
+            events = new ArrayList<>(pairs.size());
+            for(IndexValuePair pair : pairs){
+                events.add(projections.get(pair.rid().getLongKey()));
+            }
+        }else{
+            events = NaiveIndex.obtainEventsBasedPairs(pairs, schema.getStore());
+        }
         long scanEndTime = System.nanoTime();
-        String scanOutput = String.format("%.3f", (scanEndTime - scanStartTime + 0.0) / 1_000_000);
-        System.out.println("scan cost: " + scanOutput + "ms");
+        Metrics.QUERY_SCAN_LATENCY.record(scanEndTime - scanStartTime);
 
         long matchStartTime = System.nanoTime();
-
-        int ans;
-        nfa.generateNFAUsingQueryPattern(pattern);
-        for(byte[] event : events){
-            nfa.consume(schema, event, pattern.getStrategy());
+        if(needTuples){
+            nfa.generateNFAUsingQueryPattern(pattern, false);
+        }else{
+            nfa.generateNFAUsingQueryPattern(pattern);
+        }
+        bindMaterializer(nfa, covered);
+        if(Parameters.MATCH_ENGINE == MatchEngine.LAZY_NFA && LazyNFA.canProcess(pattern, schema, events)){
+            // rare variables start partial matches, full matches are delivered to nfa
+            LazyNFA lazyNFA = new LazyNFA(pattern, estimateSelectivity(pattern), nfa);
+            for(byte[] event : events){
+                lazyNFA.consume(schema, event);
+            }
+        }else if(matchThreadNum > 1){
+            ParallelMatcher.consume(nfa, pattern, schema, events, matchThreadNum);
+        }else{
+            for(byte[] event : events){
+                nfa.consume(schema, event, pattern.getStrategy());
+            }
         }
-        ans = nfa.countTuple();
-
-        // when you want to call flink, you can replace above 5 lines
-        // ans = CrimesPatternQuery.crimesFirstQuery(events, schema);
-
         long matchEndTime = System.nanoTime();
-        String output = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + output + "ms");
-        return ans;
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
+
+        if(plan.isAnalyzed()){
+            plan.setFilterCost(filterEndTime - filterStartTime);
+            plan.setScan(events.size(), scanEndTime - scanStartTime);
+            plan.setMatch(nfa.countTuple(), matchEndTime - matchStartTime);
+        }
     }
 
-    @Override
-    public List<Tuple> processTupleQueryUsingNFA(QueryPattern pattern, NFA nfa) {
+    /**
+     * filter candidates of each variable, read them from disk, and then join them
+     * @param pattern           SEQ pattern with skip-till-any-match strategy
+     * @param nfa               automata, it receives full matches
+     * @param minTimestamp      events whose timestamps are smaller than this value are skipped
+     * @param needTuples        false: count queries use count-only NFA
+     * @param plan              query plan, an analyzed plan records counts and costs
+     */
+    private void joinEvents(QueryPattern pattern, NFA nfa, long minTimestamp, boolean needTuples, QueryPlan plan){
         long filterStartTime = System.nanoTime();
-        List<IndexValuePair> pairs = twoPhaseFiltering(pattern);
+        boolean covered = canUseCoveringColumns(pattern);
+        Map<Long, long[]> coveredValues = covered ? new HashMap<>() : null;
+        Map<String, List<IndexValuePair>> varPairs = twoPhaseFilteringByVariable(pattern, minTimestamp, coveredValues, plan);
         long filterEndTime = System.nanoTime();
-        String filterOutput = String.format("%.3f", (filterEndTime - filterStartTime + 0.0) / 1_000_000);
-        System.out.println("filter cost: " + filterOutput + "ms");
+        Metrics.QUERY_FILTER_LATENCY.record(filterEndTime - filterStartTime);
 
         long scanStartTime = System.nanoTime();
-        List<byte[]> events = NaiveIndex.obtainEventsBasedPairs(pairs, schema.getStore());
+        Map<String, List<byte[]>> varEvents = new HashMap<>(varPairs.size() << 1);
+        // filtered candidate number is the cardinality of a variable, small one is joined first
+        Map<String, Double> cardinalities = new HashMap<>(varPairs.size() << 1);
+        Map<Long, byte[]> projections = new HashMap<>();
+        for(Map.Entry<String, List<IndexValuePair>> entry : varPairs.entrySet()){
+            List<IndexValuePair> pairs = entry.getValue();
+            List<byte[]> events;
+            if(covered){
+                projectEvents(pattern, pattern.getEventType(entry.getKey()), pairs, coveredValues, projections);
+                events = new ArrayList<>(pairs.size());
+                for(IndexValuePair pair : pairs){
+                    events.add(projections.get(pair.rid().getLongKey()));
+                }
+            }else{
+                events = NaiveIndex.obtainEventsBasedPairs(pairs, schema.getStore());
+            }
+            varEvents.put(entry.getKey(), events);
+            cardinalities.put(entry.getKey(), (double) pairs.size());
+        }
         long scanEndTime = System.nanoTime();
-        String scanOutput = String.format("%.3f", (scanEndTime - scanStartTime + 0.0) / 1_000_000);
-        System.out.println("scan cost: " + scanOutput + "ms");
+        Metrics.QUERY_SCAN_LATENCY.record(scanEndTime - scanStartTime);
+
         long matchStartTime = System.nanoTime();
-        nfa.generateNFAUsingQueryPattern(pattern);
+        if(needTuples){
+            nfa.generateNFAUsingQueryPattern(pattern, false);
+        }else{
+            nfa.generateNFAUsingQueryPattern(pattern);
+        }
+        bindMaterializer(nfa, covered);
+        JoinMatcher joinMatcher = new JoinMatcher(pattern, cardinalities, nfa);
+        joinMatcher.join(schema, varPairs, varEvents);
+        long matchEndTime = System.nanoTime();
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
-        for(byte[] event : events){
-            nfa.consume(schema, event, pattern.getStrategy());
+        if(plan.isAnalyzed()){
+            int eventNum = 0;
+            for(List<byte[]> events : varEvents.values()){
+                eventNum += events.size();
+            }
+            plan.setFilterCost(filterEndTime - filterStartTime);
+            plan.setScan(eventNum, scanEndTime - scanStartTime);
+            plan.setMatch(nfa.countTuple(), matchEndTime - matchStartTime);
         }
-        // debug...
-        nfa.printMatchIds();
+    }
 
-        List<Tuple> ans = nfa.getTuple(schema);
-        long matchEndTime = System.nanoTime();
-        String output = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + output + "ms");
+    /**
+     * store indexed attribute values in clusters (see IdxBlkMetaInfo), so that patterns
+     * whose constraints only reference indexed attributes are filtered and matched on index values,
+     * and only events of delivered matches are read from event store, it must be called before inserting events
+     */
+    public void enableCoveringColumns(){
+        if(autoIndices != 0){
+            throw new RuntimeException("covering columns must be enabled before inserting events");
+        }
+        bufferPool.setCoveringColumns(true);
+    }
+
+    /**
+     * @param pattern       query pattern
+     * @return              true if constraints of this pattern only reference covering columns
+     */
+    private boolean canUseCoveringColumns(QueryPattern pattern){
+        if(!bufferPool.hasCoveringColumns()){
+            return false;
+        }
+        for(DependentConstraint dc : pattern.getDcList()){
+            if(!indexAttrNameMap.containsKey(dc.getAttrName())){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param pattern       query pattern
+     * @return              indexed attributes referenced by constraints of this pattern
+     */
+    private int[] getCoveredColumns(QueryPattern pattern){
+        Set<Integer> idxs = new TreeSet<>();
+        for(List<IndependentConstraint> icList : pattern.getIcMap().values()){
+            for(IndependentConstraint ic : icList){
+                idxs.add(indexAttrNameMap.get(ic.getAttrName()));
+            }
+        }
+        for(DependentConstraint dc : pattern.getDcList()){
+            idxs.add(indexAttrNameMap.get(dc.getAttrName()));
+        }
+        return idxs.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * build projected records from covering columns instead of reading events from disk
+     * @param pattern           query pattern, its constraints only reference covering columns
+     * @param eventType         event type of these pairs
+     * @param pairs             index value pairs
+     * @param coveredValues     rid key -> indexed attribute values
+     * @param projections       put rid key -> projected record (see EventSchema.convertToProjectedBytes)
+     */
+    private void projectEvents(QueryPattern pattern, String eventType, List<IndexValuePair> pairs,
+                               Map<Long, long[]> coveredValues, Map<Long, byte[]> projections){
+        int[] columnIdxs = getCoveredColumns(pattern);
+        String[] indexAttrNames = getIndexAttrNames();
+        int[] colIdxs = new int[columnIdxs.length];
+        for(int i = 0; i < columnIdxs.length; ++i){
+            colIdxs[i] = schema.getAttrNameIdx(indexAttrNames[columnIdxs[i]]);
+        }
+        int typeId = schema.lookupTypeId(eventType);
+        long[] values = new long[columnIdxs.length];
+        for(IndexValuePair pair : pairs){
+            long key = pair.rid().getLongKey();
+            if(projections.containsKey(key)){
+                continue;
+            }
+            long[] attrValues = coveredValues.get(key);
+            for(int i = 0; i < columnIdxs.length; ++i){
+                values[i] = attrValues[columnIdxs[i]];
+            }
+            projections.put(key, schema.convertToProjectedBytes(typeId, pair.timestamp(), colIdxs, values, pair.rid()));
+        }
+    }
+
+    /**
+     * full events are fetched from event store when matches of projected records are delivered,
+     * an event that appears in many matches is fetched once
+     * @param nfa               automata
+     * @param covered           true if nfa consumes projected records
+     */
+    private void bindMaterializer(NFA nfa, boolean covered){
+        if(!covered || nfa.isCountOnly()){
+            nfa.setMaterializer(null);
+            return;
+        }
+        EventStore store = schema.getStore();
+        Map<Long, byte[]> fetchedEvents = new HashMap<>();
+        nfa.setMaterializer(record -> {
+            RID rid = schema.getRIDFromProjectedBytes(record);
+            return fetchedEvents.computeIfAbsent(rid.getLongKey(), k -> store.readByteRecord(rid));
+        });
+    }
+
+    /**
+     * a match lasts at most tau, so a match whose end time >= watermark only contains
+     * events whose timestamps >= watermark - tau. If all events inserted after caching are in-order,
+     * we can refresh cached result by processing these events.
+     * @param cached        cached result
+     * @param pattern       query pattern
+     * @return              lower bound timestamp, Long.MIN_VALUE means we need to recompute
+     */
+    private long refreshLowerBound(QueryResultCache.CachedResult cached, QueryPattern pattern){
+        if(cached == null || cached.watermark() == Long.MIN_VALUE || cached.version() > autoIndices){
+            return Long.MIN_VALUE;
+        }
+        // out-of-order insertion or update operation happens after caching
+        if(lateVersion >= cached.version()){
+            return Long.MIN_VALUE;
+        }
+        long minTimestamp = cached.watermark() - pattern.getTau();
+        // overflow
+        if(minTimestamp > cached.watermark()){
+            return Long.MIN_VALUE;
+        }
+        return minTimestamp;
+    }
+
+    private void updateWatermark(long timestamp, boolean updatedFlag){
+        // autoIndices is the data version of this event
+        if(updatedFlag || timestamp < watermark){
+            lateVersion = autoIndices;
+        }
+        watermark = Math.max(watermark, timestamp);
+    }
+
+    /**
+     * register a standing query, historical matches are delivered before this function returns,
+     * then new matches are delivered when events are inserted
+     * @param pattern       query pattern
+     * @param listener      callback
+     * @return              query id
+     */
+    public int registerStandingQuery(QueryPattern pattern, MatchListener listener){
+        if(cqManager == null){
+            cqManager = new ContinuousQueryManager();
+        }
+        List<byte[]> historicalEvents = NaiveIndex.obtainEventsBasedPairs(backfillPairs(pattern), schema.getStore());
+        return cqManager.register(pattern, listener, schema, historicalEvents);
+    }
+
+    public boolean unregisterStandingQuery(int queryId){
+        if(cqManager == null){
+            return false;
+        }
+        boolean ans = cqManager.unregister(queryId);
+        if(cqManager.isEmpty()){
+            cqManager = null;
+        }
+        return ans;
+    }
+
+    public ContinuousQueryManager getContinuousQueryManager(){
+        return cqManager;
+    }
+
+    /**
+     * two phase filtering only keeps events that can generate matches in historical events,
+     * however, partial matches whose start timestamps >= watermark - tau may be extended by future events.
+     * Thus, for events whose timestamps >= watermark - tau, we keep all events that satisfy independent constraints.
+     * @param pattern       query pattern
+     * @return              index value pairs used to backfill
+     */
+    private List<IndexValuePair> backfillPairs(QueryPattern pattern){
+        long boundary = watermark - pattern.getTau();
+        // overflow or pattern with OR operator (two phase filtering does not support it)
+        if(watermark == Long.MIN_VALUE || boundary > watermark || pattern.existOROperator()){
+            boundary = Long.MIN_VALUE;
+        }
+
+        List<IndexValuePair> ans = new ArrayList<>();
+        if(boundary != Long.MIN_VALUE){
+            for(IndexValuePair pair : twoPhaseFiltering(pattern)){
+                if(pair.timestamp() < boundary){
+                    ans.add(pair);
+                }
+            }
+        }
+        for(Map.Entry<String, String> entry : pattern.getVarTypeMap().entrySet()){
+            List<IndexValuePair> varPairs = queryVariableResult(entry.getValue(), entry.getKey(), pattern, boundary);
+            // merge function removes same rid
+            ans = NaiveIndex.mergeIndexValuePair(ans, varPairs);
+        }
         return ans;
     }
 
+    /**
+     * bind a versioned query result cache, null means disable result cache
+     * @param resultCache   result cache
+     */
+    public void setResultCache(QueryResultCache resultCache){
+        this.resultCache = resultCache;
+    }
+
+    public QueryResultCache getResultCache(){
+        return resultCache;
+    }
+
+    /**
+     * bind a predicate bitmap cache that shares range bitmap query results of clusters across queries,
+     * its budget bounds the heap used by cached bitmaps, null means disable bitmap cache
+     * @param bitmapCache   bitmap cache
+     */
+    public void setBitmapCache(PredicateBitmapCache bitmapCache){
+        this.bitmapCache = bitmapCache;
+    }
+
+    public PredicateBitmapCache getBitmapCache(){
+        return bitmapCache;
+    }
+
+    /**
+     * set the number of threads of parallel matching (see Parameters.ENABLE_PARALLEL_MATCHING),
+     * more than one thread enables parallel matching, one thread disables it
+     * @param matchThreadNum    number of matching threads
+     */
+    public void setMatchThreadNum(int matchThreadNum){
+        if(matchThreadNum < 1){
+            throw new IllegalArgumentException("number of matching threads must be positive");
+        }
+        this.matchThreadNum = matchThreadNum;
+    }
+
     @Override
     public void print() {
         System.out.println("orderedFlag: " + orderedFlag);
@@ -295,6 +725,12 @@ public class ACER extends Index {
         }
         bufferPool.print();
         synopsisTable.print();
+        if(bitmapCache != null){
+            bitmapCache.print();
+        }
+        if(cqManager != null){
+            cqManager.print();
+        }
     }
 
     /**
@@ -304,6 +740,68 @@ public class ACER extends Index {
      * @return              index value pairs
      */
     public final List<IndexValuePair> twoPhaseFiltering(QueryPattern pattern) {
+        return twoPhaseFiltering(pattern, Long.MIN_VALUE);
+    }
+
+    /**
+     * two phase filtering that skips events whose timestamps are smaller than minTimestamp
+     * @param pattern       query pattern (complex event pattern without OR operator)
+     * @param minTimestamp  minimum timestamp
+     * @return              index value pairs
+     */
+    public final List<IndexValuePair> twoPhaseFiltering(QueryPattern pattern, long minTimestamp) {
+        List<IndexValuePair> ans = null;
+        for(List<IndexValuePair> curPairs : twoPhaseFilteringByVariable(pattern, minTimestamp).values()){
+            // merge all curRidVarIdPair, aims to sequentially access disk
+            ans =  (ans == null) ? curPairs : NaiveIndex.mergeIndexValuePair(ans, curPairs);
+        }
+        return ans;
+    }
+
+    /**
+     * two phase filtering that keeps candidates of each variable, join matcher (see automaton.JoinMatcher) uses it
+     * @param pattern       query pattern (complex event pattern without OR operator)
+     * @param minTimestamp  minimum timestamp
+     * @return              variable name -> index value pairs (in ascending order of selectivity)
+     */
+    public final Map<String, List<IndexValuePair>> twoPhaseFilteringByVariable(QueryPattern pattern, long minTimestamp) {
+        return twoPhaseFilteringByVariable(pattern, minTimestamp, null);
+    }
+
+    /**
+     * @param pattern       query pattern (complex event pattern without OR operator)
+     * @param minTimestamp  minimum timestamp
+     * @param coveredValues if not null, put rid key -> indexed attribute values of candidates (see enableCoveringColumns)
+     * @return              variable name -> index value pairs (in ascending order of selectivity)
+     */
+    private Map<String, List<IndexValuePair>> twoPhaseFilteringByVariable(QueryPattern pattern, long minTimestamp,
+                                                                          Map<Long, long[]> coveredValues) {
+        return twoPhaseFilteringByVariable(pattern, minTimestamp, coveredValues, plan(pattern, false));
+    }
+
+    /**
+     * explain a query, EXPLAIN [ANALYZE] statement calls it (see common.StatementParser.explain)
+     * @param pattern       query pattern (complex event pattern without OR operator)
+     * @param analyze       if true, process the query (result cache is bypassed),
+     *                      and record counts and costs of each step in the plan
+     * @return              query plan
+     */
+    public QueryPlan explain(QueryPattern pattern, boolean analyze){
+        QueryPlan plan = plan(pattern, analyze);
+        if(analyze){
+            matchEvents(pattern, new NFA(), Long.MIN_VALUE, !pattern.getReturnStr().contains("COUNT"), plan);
+        }
+        return plan;
+    }
+
+    /**
+     * step 1 and step 2 of two phase filtering: estimate selectivity of each variable,
+     * and choose the first variable that generates the interval set
+     * @param pattern       query pattern (complex event pattern without OR operator)
+     * @param analyzed      if true, filtering records counts and costs in the plan
+     * @return              query plan
+     */
+    private QueryPlan plan(QueryPattern pattern, boolean analyzed){
         if(pattern.existOROperator()){
             System.out.println("this pattern exists `OR` operator, we do not support this operator");
             throw new RuntimeException("we can not process this pattern");
@@ -311,47 +809,34 @@ public class ACER extends Index {
 
         // step 1: estimate selectivity of each variable
         Map<String, String> varTypeMap = pattern.getVarTypeMap();
-        Set<String> varNameSet = varTypeMap.keySet();
         record SelectivityIndexPair(double selectivity, String varName){/*overall selectivity of single variable*/}
-        int patternLen = varNameSet.size();
+        Map<String, Double> varSelMap = estimateSelectivity(pattern);
+        int patternLen = varSelMap.size();
         List<SelectivityIndexPair> varSelList = new ArrayList<>(patternLen);
-        for(String curVarName : varNameSet){
-            List<IndependentConstraint> icList = pattern.getICListUsingVarName(curVarName);
-            String curEventType = varTypeMap.get(curVarName);
-            double sel = arrivals.get(curEventType) / sumArrival;
-            for (IndependentConstraint ic : icList) {
-                String attrName = ic.getAttrName();
-                int idx = indexAttrNameMap.get(attrName);
-                sel *= reservoir.selectivity(idx, ic.getMinValue(), ic.getMaxValue());
-            }
-            varSelList.add(new SelectivityIndexPair(sel, curVarName));
-            // System.out.println("VarName: " + curVarName + " selectivity: " + sel);
+        for(String curVarName : varTypeMap.keySet()){
+            varSelList.add(new SelectivityIndexPair(varSelMap.get(curVarName), curVarName));
         }
         // sort based on selectivity
         varSelList.sort(Comparator.comparingDouble(SelectivityIndexPair::selectivity));
 
-        // cache each variable's query result from ACER index
-        Map<String, List<IndexValuePair>> varQueryResult = new HashMap<>();
-
         // step2: choose the variable with minimum selectivity to query
+        QueryPlan plan = new QueryPlan(analyzed, autoIndices, patternLen);
         double minWeight = Double.MAX_VALUE;
-        String minVarName = varSelList.get(0).varName();
+        QueryPlan.VariableStep minStep = null;
         // new optimization: interval length first rather than selectivity first
         for(SelectivityIndexPair pair : varSelList){
             String curVarName = pair.varName();
             int scale = pattern.isOnlyLeftMostNode(curVarName) || pattern.isOnlyRightMostNode(curVarName) ? 1 : 2;
             double curWeight = pair.selectivity() * scale;
-            if(curWeight < minWeight){
+            QueryPlan.VariableStep step = plan.addStep(curVarName, varTypeMap.get(curVarName), pair.selectivity(), curWeight);
+            if(minStep == null || curWeight < minWeight){
                 minWeight = curWeight;
-                minVarName = curVarName;
+                minStep = step;
             }
         }
 
-        String minVarType = varTypeMap.get(minVarName);
-        List<IndexValuePair> minSelPairs = queryVariableResult(minVarType, minVarName, pattern);
-        varQueryResult.put(minVarName, minSelPairs);        // store results
-
-        // step 3 : generate SortedIntervalSet (for index blocks)
+        // offsets of time intervals
+        String minVarName = minStep.getVarName();
         long leftOffset = 0;
         long rightOffset = 0;
         long tau = pattern.getTau();
@@ -363,43 +848,150 @@ public class ACER extends Index {
             leftOffset = -tau;
             rightOffset = tau;
         }
-        SortedIntervalSet intervalSet = generateIntervalSet(minSelPairs, leftOffset, rightOffset);
+        plan.setFirstStep(minStep, leftOffset, rightOffset);
+        return plan;
+    }
+
+    /**
+     * step 3 to step 5 of two phase filtering
+     * @param pattern       query pattern (complex event pattern without OR operator)
+     * @param minTimestamp  minimum timestamp
+     * @param coveredValues if not null, put rid key -> indexed attribute values of candidates (see enableCoveringColumns)
+     * @param plan          query plan, an analyzed plan records counts and costs
+     * @return              variable name -> index value pairs (in ascending order of selectivity)
+     */
+    private Map<String, List<IndexValuePair>> twoPhaseFilteringByVariable(QueryPattern pattern, long minTimestamp,
+                                                                          Map<Long, long[]> coveredValues, QueryPlan plan) {
+        boolean analyzed = plan.isAnalyzed();
+        List<QueryPlan.VariableStep> steps = plan.getSteps();
+        int patternLen = steps.size();
+        // cache each variable's query result from ACER index
+        Map<String, List<IndexValuePair>> varQueryResult = new HashMap<>();
+
+        QueryPlan.VariableStep minStep = plan.getFirstStep();
+        String minVarName = minStep.getVarName();
+        List<IndexValuePair> minSelPairs = queryVariableResult(minStep.getEventType(), minVarName, pattern, minTimestamp,
+                coveredValues, analyzed ? minStep : null);
+        varQueryResult.put(minVarName, minSelPairs);        // store results
+
+        // step 3 : generate SortedIntervalSet (for index blocks)
+        SortedIntervalSet intervalSet = generateIntervalSet(minSelPairs, plan.getLeftOffset(), plan.getRightOffset());
+        if(analyzed){
+            plan.setIntervalNum(intervalSet.getIntervalNum());
+            minStep.setIntervalCandidates(minSelPairs.size(), 0);
+        }
 
         // step 4: using time intervals to filter events
-        for(int i = 1; i < patternLen; i++){
-            String curVarName = varSelList.get(i).varName();
-            String curVarType = varTypeMap.get(curVarName);
-            List<IndexValuePair> curSelPairs = queryVariableResult(curVarType, curVarName, pattern, intervalSet);
+        for(QueryPlan.VariableStep step : steps){
+            String curVarName = step.getVarName();
+            // minVarName may not be the first variable since we use interval length first
+            if(step == minStep){
+                continue;
+            }
+            List<IndexValuePair> curSelPairs = trimBefore(queryVariableResult(step.getEventType(), curVarName, pattern, intervalSet,
+                    coveredValues, analyzed ? step : null), minTimestamp);
             // here we need to update curSelPairs and interval set
-            varQueryResult.put(curVarName, intervalSet.updateAndFilter(curSelPairs));
+            long filterStartTime = analyzed ? System.nanoTime() : 0;
+            List<IndexValuePair> filteredPairs = intervalSet.updateAndFilter(curSelPairs);
+            varQueryResult.put(curVarName, filteredPairs);
+            if(analyzed){
+                step.setIntervalCandidates(filteredPairs.size(), System.nanoTime() - filterStartTime);
+            }
         }
 
         // step 5: filter again based on interval set
-        List<IndexValuePair> ans = null;
-        for(int i = 0; i < patternLen; i++){
-            String curVarName = varSelList.get(i).varName();
+        Map<String, List<IndexValuePair>> ans = new LinkedHashMap<>(patternLen << 1);
+        for(QueryPlan.VariableStep step : steps){
+            String curVarName = step.getVarName();
             // since interval become shorter, we still can filter events
-            List<IndexValuePair> curPairs = intervalSet.updateAndFilter(varQueryResult.get(curVarName));
-            // merge all curRidVarIdPair, aims to sequentially access disk
-            ans =  (ans == null) ? curPairs : NaiveIndex.mergeIndexValuePair(ans, curPairs);
+            long filterStartTime = analyzed ? System.nanoTime() : 0;
+            List<IndexValuePair> filteredPairs = intervalSet.updateAndFilter(varQueryResult.get(curVarName));
+            ans.put(curVarName, filteredPairs);
+            if(analyzed){
+                step.setFinalCandidates(filteredPairs.size(), System.nanoTime() - filterStartTime);
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * overall selectivity of a variable = arrival rate of its event type * selectivity of its independent constraints
+     * two phase filtering and lazy NFA (see automaton.LazyNFA) use it
+     * @param pattern       query pattern
+     * @return              variable name -> selectivity
+     */
+    public Map<String, Double> estimateSelectivity(QueryPattern pattern){
+        Map<String, String> varTypeMap = pattern.getVarTypeMap();
+        Map<String, Double> ans = new HashMap<>(varTypeMap.size() << 1);
+        for(String curVarName : varTypeMap.keySet()){
+            List<IndependentConstraint> icList = pattern.getICListUsingVarName(curVarName);
+            String curEventType = varTypeMap.get(curVarName);
+            double sel = arrivals.get(curEventType) / sumArrival;
+            for (IndependentConstraint ic : icList) {
+                String attrName = ic.getAttrName();
+                int idx = indexAttrNameMap.get(attrName);
+                sel *= reservoir.selectivity(idx, ic.getMinValue(), ic.getMaxValue());
+            }
+            ans.put(curVarName, sel);
+            // System.out.println("VarName: " + curVarName + " selectivity: " + sel);
         }
         return ans;
     }
 
     public List<IndexValuePair> queryVariableResult(String type, String varName, QueryPattern pattern){
+        return queryVariableResult(type, varName, pattern, Long.MIN_VALUE);
+    }
+
+    public List<IndexValuePair> queryVariableResult(String type, String varName, QueryPattern pattern, long minTimestamp){
+        return queryVariableResult(type, varName, pattern, minTimestamp, null, null);
+    }
+
+    /**
+     * @param step          if not null, record clusters, candidates and cost of this variable
+     */
+    private List<IndexValuePair> queryVariableResult(String type, String varName, QueryPattern pattern, long minTimestamp,
+                                                     Map<Long, long[]> coveredValues, QueryPlan.VariableStep step){
+        long queryStartTime = step == null ? 0 : System.nanoTime();
         List<IndependentConstraint> icList = pattern.getICListUsingVarName(varName);
         List<ClusterInfo> clusterInfoList = synopsisTable.getClusterInfo(type);
-        List<IndexValuePair> pairsFromDisk = getPairsFromDisk(icList, clusterInfoList);
-        List<IndexValuePair> pairsFromBuffer = getPairsFromBuffer(type, icList);
+        int clusterNum = clusterInfoList.size();
+        if(minTimestamp != Long.MIN_VALUE){
+            // skip clusters whose events are older than minTimestamp
+            List<ClusterInfo> newerClusters = new ArrayList<>();
+            for(ClusterInfo clusterInfo : clusterInfoList){
+                if(clusterInfo.endTime() >= minTimestamp){
+                    newerClusters.add(clusterInfo);
+                }
+            }
+            clusterInfoList = newerClusters;
+        }
+        Metrics.CLUSTERS_EXAMINED.add(clusterInfoList.size());
+        Metrics.CLUSTERS_SKIPPED.add(clusterNum - clusterInfoList.size());
+        List<IndexValuePair> pairsFromDisk = getPairsFromDisk(icList, clusterInfoList, coveredValues, pattern, step);
+        List<IndexValuePair> pairsFromBuffer = getPairsFromBuffer(type, icList, coveredValues);
         List<IndexValuePair> mergedPairs = NaiveIndex.mergeIndexValuePair(pairsFromDisk, pairsFromBuffer);
         // <type, timestamp> as primary key
         if (hasUpdated) {
             mergedPairs = NaiveIndex.getUniqueIndexValuePair(mergedPairs);
         }
-        return mergedPairs;
+        List<IndexValuePair> ans = trimBefore(mergedPairs, minTimestamp);
+        if(step != null){
+            step.setClusters(clusterNum, clusterInfoList.size());
+            step.setIndexCandidates(ans.size(), System.nanoTime() - queryStartTime);
+        }
+        return ans;
     }
 
     public List<IndexValuePair> queryVariableResult(String type, String varName, QueryPattern pattern, SortedIntervalSet intervalSet){
+        return queryVariableResult(type, varName, pattern, intervalSet, null, null);
+    }
+
+    /**
+     * @param step          if not null, record clusters, candidates and cost of this variable
+     */
+    private List<IndexValuePair> queryVariableResult(String type, String varName, QueryPattern pattern, SortedIntervalSet intervalSet,
+                                                     Map<Long, long[]> coveredValues, QueryPlan.VariableStep step){
+        long queryStartTime = step == null ? 0 : System.nanoTime();
         List<IndependentConstraint> icList = pattern.getICListUsingVarName(varName);
 
         List<Long> startTimeList = new ArrayList<>(512);
@@ -407,18 +999,39 @@ public class ACER extends Index {
         synopsisTable.getStartEndTimestamp(type, startTimeList, endTimeList);
         List<Boolean> overlaps = intervalSet.checkOverlap(startTimeList, endTimeList);
         List<ClusterInfo> clusterInfoList = synopsisTable.getOverlappedClusterInfo(type, overlaps);
+        Metrics.CLUSTERS_EXAMINED.add(clusterInfoList.size());
+        Metrics.CLUSTERS_SKIPPED.add(overlaps.size() - clusterInfoList.size());
 
-        List<IndexValuePair> pairsFromDisk = getPairsFromDisk(icList, clusterInfoList);
-        List<IndexValuePair> pairsFromBuffer = getPairsFromBuffer(type, icList);
+        List<IndexValuePair> pairsFromDisk = getPairsFromDisk(icList, clusterInfoList, coveredValues, pattern, step);
+        List<IndexValuePair> pairsFromBuffer = getPairsFromBuffer(type, icList, coveredValues);
         List<IndexValuePair> mergedPairs = NaiveIndex.mergeIndexValuePair(pairsFromDisk, pairsFromBuffer);
         // <type, timestamp> as primary key
         if (hasUpdated) {
             mergedPairs = NaiveIndex.getUniqueIndexValuePair(mergedPairs);
         }
+        if(step != null){
+            step.setClusters(overlaps.size(), clusterInfoList.size());
+            step.setIndexCandidates(mergedPairs.size(), System.nanoTime() - queryStartTime);
+        }
         return mergedPairs;
     }
 
     public List<IndexValuePair> getPairsFromDisk(List<IndependentConstraint> icList, List<ClusterInfo> clusterInfoList){
+        return getPairsFromDisk(icList, clusterInfoList, null, null, null);
+    }
+
+    /**
+     * @param icList            independent constraints
+     * @param clusterInfoList   clusters
+     * @param coveredValues     if not null, put rid key -> indexed attribute values of selected events
+     * @param pattern           query pattern, attributes of its constraints are read from covering columns
+     * @param step              if not null, count clusters that are skipped by min/max values
+     * @return                  index value pairs
+     */
+    private List<IndexValuePair> getPairsFromDisk(List<IndependentConstraint> icList, List<ClusterInfo> clusterInfoList,
+                                                  Map<Long, long[]> coveredValues, QueryPattern pattern,
+                                                  QueryPlan.VariableStep step){
+        int[] columnIdxs = coveredValues == null ? null : getCoveredColumns(pattern);
         List<IndexValuePair> pairs = new ArrayList<>(1024);
         for(ClusterInfo clusterInfo : clusterInfoList){
             long[] maxValues = clusterInfo.maxValues();
@@ -451,10 +1064,15 @@ public class ACER extends Index {
                 }
             }
 
-            if(!skip){
+            if(skip){
+                if(step != null){
+                    step.addPrunedCluster();
+                }
+            }else{
                 MappedIdxBlk indexBlock = getIndexBlock(clusterInfo.indexBlockId(), clusterInfo.clusterId(),
                         clusterInfo.startPos(), clusterInfo.offset(), idxs);
-                List<IndexValuePair> curPairs = indexBlock.query(icQuads);
+                List<IndexValuePair> curPairs = indexBlock.query(icQuads, bitmapCache,
+                        clusterInfo.indexBlockId(), clusterInfo.clusterId(), columnIdxs, coveredValues);
 
                 if(!curPairs.isEmpty()){
                     if(pairs.isEmpty()){
@@ -473,6 +1091,10 @@ public class ACER extends Index {
     }
 
     public List<IndexValuePair> getPairsFromBuffer(String eventType, List<IndependentConstraint> icList){
+        return getPairsFromBuffer(eventType, icList, null);
+    }
+
+    private List<IndexValuePair> getPairsFromBuffer(String eventType, List<IndependentConstraint> icList, Map<Long, long[]> coveredValues){
         List<ICQueryQuad> icQuads = new ArrayList<>(icList.size());
         for (IndependentConstraint ic : icList) {
             String attrName = ic.getAttrName();
@@ -480,7 +1102,27 @@ public class ACER extends Index {
             int mark = ic.hasMinMaxValue();
             icQuads.add(new ICQueryQuad(idx, mark, ic.getMinValue(), ic.getMaxValue()));
         }
-        return bufferPool.query(orderedFlag, eventType, icQuads);
+        return bufferPool.query(orderedFlag, eventType, icQuads, coveredValues);
+    }
+
+    /**
+     * remove pairs whose timestamps are smaller than minTimestamp
+     * @param pairs         index value pairs
+     * @param minTimestamp  minimum timestamp
+     * @return              pairs whose timestamps >= minTimestamp
+     */
+    private List<IndexValuePair> trimBefore(List<IndexValuePair> pairs, long minTimestamp){
+        if(minTimestamp == Long.MIN_VALUE){
+            return pairs;
+        }
+        // out-of-order insertion may make pairs unordered, so we do not use binary search
+        List<IndexValuePair> ans = new ArrayList<>(pairs.size());
+        for(IndexValuePair pair : pairs){
+            if(pair.timestamp() >= minTimestamp){
+                ans.add(pair);
+            }
+        }
+        return ans;
     }
 
     public SortedIntervalSet generateIntervalSet(List<IndexValuePair> pairs, long leftOffset, long rightOffset){
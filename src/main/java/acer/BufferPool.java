@@ -4,6 +4,7 @@ import common.IndexValuePair;
 import compressor.*;
 import condition.ICQueryQuad;
 import org.roaringbitmap.RangeBitmap;
+import store.RID;
 
 import java.nio.ByteBuffer;
 import java.util.*;
@@ -12,12 +13,28 @@ public class BufferPool {
     private int recordNum = 0;                                  // number of stored event
     private final int indexAttrNum;                                 // number of indexed attribute
     private final HashMap<String, SingleBuffer> buffers;        // buffer events, key is event type, value is a single buffer
+    private boolean coveringColumns = false;                    // store indexed attribute values in clusters
 
     public BufferPool(int indexAttrNum) {
         this.indexAttrNum = indexAttrNum;
         this.buffers = new HashMap<>();
     }
 
+    /**
+     * covering columns let queries read indexed attribute values without fetching events (see IdxBlkMetaInfo)
+     * @param coveringColumns   whether next index blocks store covering columns
+     */
+    public void setCoveringColumns(boolean coveringColumns){
+        if(coveringColumns && !Parameters.OPTIMIZED_LAYOUT){
+            throw new RuntimeException("covering columns need optimized index block layout");
+        }
+        this.coveringColumns = coveringColumns;
+    }
+
+    public boolean hasCoveringColumns(){
+        return coveringColumns;
+    }
+
     /**
      * here we support insertion or deletion operations
      * @param orderedFlag       out-of-order or in-order
@@ -84,15 +101,14 @@ public class BufferPool {
         for(HashMap.Entry<String, SingleBuffer> entry : buffers.entrySet()) {
             String curType = entry.getKey();
             SingleBuffer eventBuffer = entry.getValue();
-            List<TemporaryTriple> triples = eventBuffer.getAllTriples();
-            int size = triples.size();
+            int size = eventBuffer.getSize();
             if(!orderedFlag){
-                triples.sort(Comparator.comparingLong(TemporaryTriple::timestamp));
+                eventBuffer.sortByTimestamp();
             }
 
             // collect cluster information
-            long startTime = triples.get(0).timestamp();
-            long endTime = triples.get(size - 1).timestamp();
+            long startTime = eventBuffer.getTimestamp(0);
+            long endTime = eventBuffer.getTimestamp(size - 1);
             long[] minValues = new long[indexAttrNum];
             long[] maxValues = new long[indexAttrNum];
             System.arraycopy(eventBuffer.getMinValues(), 0, minValues, 0, indexAttrNum);
@@ -100,14 +116,15 @@ public class BufferPool {
 
             List<Long> clusterTsList = new ArrayList<>(size);
             List<Long> clusterRIDList = new ArrayList<>(size);
-            for(int i = 0; i < size; i++) {
-                TemporaryTriple triple = triples.get(i);
-                long[] curAttrValues = triple.attrValues();
-                for (int k = 0; k < indexAttrNum; ++k) {
-                    appenders[k].add(curAttrValues[k] - minValues[k]);
+            for (int k = 0; k < indexAttrNum; ++k) {
+                long[] column = eventBuffer.getColumn(k);
+                for(int i = 0; i < size; i++) {
+                    appenders[k].add(column[i] - minValues[k]);
                 }
-                clusterTsList.add(triple.timestamp());
-                clusterRIDList.add(triple.rid().getLongValue());
+            }
+            for(int i = 0; i < size; i++) {
+                clusterTsList.add(eventBuffer.getTimestamp(i));
+                clusterRIDList.add(eventBuffer.getRID(i).getLongValue());
             }
 
             if(Parameters.OPTIMIZED_LAYOUT) {
@@ -131,10 +148,19 @@ public class BufferPool {
                         compressedClusterTs = DeltaCompressor.compress(clusterTsList);
                         compressedClusterRID = DeltaCompressor.compress(clusterRIDList);
                     }
+                    case BLOCK_FOR -> {
+                        compressedClusterTs = DeltaBlockFORCompressor.compress(clusterTsList);
+                        compressedClusterRID = DeltaBlockFORCompressor.compress(clusterRIDList);
+                    }
                     default -> throw new IllegalStateException("We cannot support " + Parameters.COMPRESSOR);
                 }
                 bufferList.add(compressedClusterTs);
                 bufferList.add(compressedClusterRID);
+                if(coveringColumns){
+                    for (int k = 0; k < indexAttrNum; ++k) {
+                        bufferList.add(FORCompressor.compress(eventBuffer.getColumn(k), size));
+                    }
+                }
             }else{
                 idxBlkTsList.addAll(clusterTsList);
                 idxBlkRIDList.addAll(clusterRIDList);
@@ -169,37 +195,50 @@ public class BufferPool {
                     compressedClusterTs = DeltaCompressor.compress(idxBlkTsList);
                     compressedClusterRID = DeltaCompressor.compress(idxBlkRIDList);
                 }
+                case BLOCK_FOR -> {
+                    compressedClusterTs = DeltaBlockFORCompressor.compress(idxBlkTsList);
+                    compressedClusterRID = DeltaBlockFORCompressor.compress(idxBlkRIDList);
+                }
                 default -> throw new IllegalStateException("We cannot support " + Parameters.COMPRESSOR);
             }
             bufferList.add(compressedClusterTs);
             bufferList.add(compressedClusterRID);
         }
 
-        return serialize(appenders, bufferList, idxBlkMetaInfoList);
+        return serialize(appenders, bufferList, coveringColumns ? indexAttrNum : 0, idxBlkMetaInfoList);
     }
 
     public List<IndexValuePair> query(boolean orderedFlag, String eventType, List<ICQueryQuad> icQuads){
+        return query(orderedFlag, eventType, icQuads, null);
+    }
+
+    /**
+     * @param orderedFlag       out-of-order or in-order
+     * @param eventType         type
+     * @param icQuads           independent constraints
+     * @param coveredValues     if not null, put rid key -> indexed attribute values of selected events
+     * @return                  index value pairs
+     */
+    public List<IndexValuePair> query(boolean orderedFlag, String eventType, List<ICQueryQuad> icQuads, Map<Long, long[]> coveredValues){
         SingleBuffer buffer = buffers.get(eventType);
         if(buffer == null || buffer.getSize() == 0){
             return new ArrayList<>(8);
         }
 
+        // [updated] columns are filtered into a selection bitmap, then we visit selected positions
+        long[] bitmap = buffer.select(icQuads);
         List<IndexValuePair> pairs = new ArrayList<>(buffer.getSize() * 2 /3);
-        for(TemporaryTriple triple : buffer.getAllTriples()) {
-            boolean satisfy = true;
-            long[] attrValues = triple.attrValues();
-            for (ICQueryQuad quad : icQuads) {
-                int idx = quad.idx();
-                long min = quad.min();
-                long max = quad.max();
-                if (attrValues[idx] < min || attrValues[idx] > max) {
-                    satisfy = false;
-                    break;
+        for(int w = 0; w < bitmap.length; w++){
+            long word = bitmap[w];
+            while(word != 0){
+                int pos = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                RID rid = buffer.getRID(pos);
+                pairs.add(new IndexValuePair(buffer.getTimestamp(pos), rid));
+                if(coveredValues != null){
+                    coveredValues.put(rid.getLongKey(), buffer.getAttrValues(pos));
                 }
             }
-            if (satisfy) {
-                pairs.add(new IndexValuePair(triple.timestamp(), triple.rid()));
-            }
         }
 
         if(!orderedFlag){
@@ -217,11 +256,13 @@ public class BufferPool {
     /**
      * 1KB alignment, update idxBlkMetaInfoList
      * @param appenders                 appender array
-     * @param buffers                   <ts, rid> buffers
+     * @param buffers                   <ts, rid> buffers (and covering columns)
+     * @param columnNum                 number of covering columns of each cluster
      * @param idxBlkMetaInfoList        index block information list
      * @return                          byte buffer
      */
-    public static ByteBuffer serialize(RangeBitmap.Appender[] appenders, List<long[]> buffers, List<IdxBlkMetaInfo> idxBlkMetaInfoList){
+    public static ByteBuffer serialize(RangeBitmap.Appender[] appenders, List<long[]> buffers, int columnNum,
+                                       List<IdxBlkMetaInfo> idxBlkMetaInfoList){
         int indexAttrNum = appenders.length;
         int bufferSize = buffers.size();
         int[] sizes = Parameters.OPTIMIZED_LAYOUT ? new int[indexAttrNum + bufferSize] : new int[indexAttrNum + 2];
@@ -273,7 +314,7 @@ public class BufferPool {
             idxBlkStartPos = idxBlkMetaInfo.blockSize() + idxBlkMetaInfo.storagePosition();
         }
         // append idxBlkMetaInfo to IdxBlkMetaInfo list
-        IdxBlkMetaInfo idxBlkMetaInfo = new IdxBlkMetaInfo(idxBlkStartPos, blkSize, sizes);
+        IdxBlkMetaInfo idxBlkMetaInfo = new IdxBlkMetaInfo(idxBlkStartPos, blkSize, sizes, columnNum);
         idxBlkMetaInfoList.add(idxBlkMetaInfo);
 
         return buffer;
@@ -0,0 +1,103 @@
+package acer;
+
+import common.EventSchema;
+import pattern.QueryPattern;
+
+import java.util.*;
+
+/**
+ * Continuous (standing) query manager
+ * ACER routes each new event to standing queries whose variables have the same event type,
+ * then the event is checked by independent constraints before it is consumed by the NFA of the query.
+ * -------------------------------------------------------------------------------------
+ * When a pattern is registered, ACER uses its index to obtain historical events (backfill),
+ * and then the NFA keeps partial matches alive to process subsequent events.
+ * Note that standing queries process events in arrival order.
+ */
+public class ContinuousQueryManager {
+    // remove timeout partial matches every EXPIRE_INTERVAL consumed events
+    private static final int EXPIRE_INTERVAL = 1024;
+
+    private int nextQueryId;                                        // query id generator
+    private final Map<Integer, StandingQuery> queries;              // query id -> standing query
+    private final Map<String, List<StandingQuery>> typeRouter;      // event type -> standing queries
+
+    public ContinuousQueryManager(){
+        nextQueryId = 0;
+        queries = new LinkedHashMap<>();
+        typeRouter = new HashMap<>();
+    }
+
+    /**
+     * register a standing query
+     * @param pattern           query pattern
+     * @param listener          callback
+     * @param schema            event schema
+     * @param historicalEvents  events used to backfill (sorted by timestamp)
+     * @return                  query id
+     */
+    public int register(QueryPattern pattern, MatchListener listener, EventSchema schema, List<byte[]> historicalEvents){
+        int queryId = nextQueryId++;
+        StandingQuery query = new StandingQuery(queryId, pattern, listener, schema);
+        // backfill
+        for(byte[] event : historicalEvents){
+            query.consume(schema, event, EXPIRE_INTERVAL);
+        }
+
+        queries.put(queryId, query);
+        for(String eventType : new HashSet<>(pattern.getVarTypeMap().values())){
+            typeRouter.computeIfAbsent(eventType, k -> new ArrayList<>(4)).add(query);
+        }
+        return queryId;
+    }
+
+    public boolean unregister(int queryId){
+        StandingQuery query = queries.remove(queryId);
+        if(query == null){
+            return false;
+        }
+        for(List<StandingQuery> routedQueries : typeRouter.values()){
+            routedQueries.remove(query);
+        }
+        typeRouter.values().removeIf(List::isEmpty);
+        return true;
+    }
+
+    /**
+     * route a new event to standing queries
+     * @param schema        event schema
+     * @param eventType     event type
+     * @param record        byte record
+     */
+    public void route(EventSchema schema, String eventType, byte[] record){
+        List<StandingQuery> routedQueries = typeRouter.get(eventType);
+        if(routedQueries == null){
+            return;
+        }
+        for(StandingQuery query : routedQueries){
+            if(query.accept(schema, eventType, record)){
+                query.consume(schema, record, EXPIRE_INTERVAL);
+            }
+        }
+    }
+
+    public boolean isEmpty(){
+        return queries.isEmpty();
+    }
+
+    public long getTotalCount(int queryId){
+        StandingQuery query = queries.get(queryId);
+        if(query == null){
+            throw new IllegalArgumentException("standing query " + queryId + " does not exist");
+        }
+        return query.getTotalCount();
+    }
+
+    public void print(){
+        System.out.println("standing queries: " + queries.size());
+        for(StandingQuery query : queries.values()){
+            System.out.println("queryId: " + query.getQueryId() + " pattern: " + query.getPattern().getPatternStr() +
+                    " delivered matches: " + query.getTotalCount());
+        }
+    }
+}
@@ -10,11 +10,16 @@ package acer;
  * CASE 2: otherwise, then length of sizes is N + 2
  * format : |rbSize_1|....|rbSize_N|tsSize_1|ridSize_1|
  * ---------------------------------------------------------------------------------------
+ * CASE 3: covering columns (see ACER.enableCoveringColumns), each cluster also stores
+ * indexed attribute values (FOR compressed), then length of sizes is N + g(2 + N)
+ * format : |rbSize_1|....|rbSize_N|tsSize_1|ridSize_1|colSize_1_1|...|colSize_1_N|...|
+ * ---------------------------------------------------------------------------------------
  * @param storagePosition           file start position
  * @param blockSize                 index block size
  * @param sizes                     range bitmap size list, ts & rid list
+ * @param columnNum                 number of covering columns of each cluster (0 or N)
  */
-public record IdxBlkMetaInfo(long storagePosition, int blockSize, int[] sizes) {
+public record IdxBlkMetaInfo(long storagePosition, int blockSize, int[] sizes, int columnNum) {
 
     public void print(int indexAttrNum){
         StringBuilder str = new StringBuilder(160);
@@ -32,14 +37,16 @@ public record IdxBlkMetaInfo(long storagePosition, int blockSize, int[] sizes) {
         }
 
         if(Parameters.OPTIMIZED_LAYOUT){
-            int g = (sizes.length - indexAttrNum) >> 1;
+            int stride = 2 + columnNum;
+            int g = (sizes.length - indexAttrNum) / stride;
             str.append("|#<tsSize, ridSize> is: ").append(g).append(" values: [");
             for(int i = 0; i < g; i++){
-                if(i != g - 1){
-                    str.append("<").append(sizes[i * 2]).append(",").append(sizes[i * 2 + 1]).append(">").append(",");
-                }else{
-                    str.append("<").append(sizes[i * 2]).append(",").append(sizes[i * 2 + 1]).append(">").append("]");
-                }
+                int ptr = indexAttrNum + i * stride;
+                str.append("<").append(sizes[ptr]).append(",").append(sizes[ptr + 1]).append(">");
+                str.append(i != g - 1 ? "," : "]");
+            }
+            if(columnNum != 0){
+                str.append("|covering columns: ").append(columnNum);
             }
         }else{
             if(sizes.length != indexAttrNum + 2){
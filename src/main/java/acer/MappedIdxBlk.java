@@ -1,6 +1,7 @@
 package acer;
 
 import common.IndexValuePair;
+import common.Metrics;
 import compressor.*;
 import condition.ICQueryQuad;
 import store.RID;
@@ -13,6 +14,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
@@ -30,6 +32,13 @@ public class MappedIdxBlk {
     private long[] clusterTsList;
     private long[] clusterRIDList;
 
+    // covering columns are decoded on demand (see IdxBlkMetaInfo)
+    private final long[] columnPositions;   // start positions of covering columns, null means no covering column
+    private final int[] columnSizes;        // sizes of covering columns
+    private final FileChannel fileChannel;  // read covering columns from file
+    private final ByteBuffer entireBuffer;  // or read covering columns from entire index block
+    private final long[][] columns;         // decoded covering columns
+
     /**
      * Load on demand instead of loading all the contents of the index block
      * @param metaInfo              meta information for a given index block
@@ -47,6 +56,9 @@ public class MappedIdxBlk {
 
         this.startPos = startPos;
         this.offset = offset;
+        this.fileChannel = fileChannel;
+        entireBuffer = null;
+        columns = new long[indexAttrNum][];
 
         rangeBitmaps = new RangeBitmap[indexAttrNum];
 
@@ -59,6 +71,7 @@ public class MappedIdxBlk {
         }
         for(int i : idxs) {
             ByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, rbStartPos[i], sizes[i]);
+            Metrics.BYTES_MAPPED.add(sizes[i]);
             rangeBitmaps[i] = RangeBitmap.map(buffer);
         }
 
@@ -70,42 +83,68 @@ public class MappedIdxBlk {
             eventNum = offset;
 
             // |rbSize_1|....|rbSize_N|tsSize_1|ridSize_1|...|tsSize_g|ridSize_g|
+            // covering columns follow <tsSize, ridSize> of each cluster
+            int stride = 2 + metaInfo.columnNum();
             long tsStartPos = rbStartPos[indexAttrNum];
             int ptr = indexAttrNum;
             for(int i = 0; i < clusterId; i++){
-                tsStartPos += (sizes[ptr] + sizes[ptr + 1]);
-                ptr += 2;
+                for(int j = 0; j < stride; j++){
+                    tsStartPos += sizes[ptr + j];
+                }
+                ptr += stride;
             }
             long ridStartPos = tsStartPos + sizes[ptr];
             tsListBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, tsStartPos, sizes[ptr]);
             ridListBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, ridStartPos, sizes[ptr + 1]);
+            Metrics.BYTES_MAPPED.add(sizes[ptr] + sizes[ptr + 1]);
+            if(metaInfo.columnNum() != 0){
+                columnPositions = new long[indexAttrNum];
+                columnSizes = new int[indexAttrNum];
+                long columnPos = ridStartPos + sizes[ptr + 1];
+                for(int i = 0; i < indexAttrNum; i++){
+                    columnPositions[i] = columnPos;
+                    columnSizes[i] = sizes[ptr + 2 + i];
+                    columnPos += columnSizes[i];
+                }
+            }else{
+                columnPositions = null;
+                columnSizes = null;
+            }
         }else{
+            columnPositions = null;
+            columnSizes = null;
             long tsListPosition = rbStartPos[indexAttrNum];
             long ridListPosition = tsListPosition + sizes[indexAttrNum];
             tsListBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, tsListPosition, sizes[indexAttrNum]);
             ridListBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, ridListPosition, sizes[indexAttrNum + 1]);
+            Metrics.BYTES_MAPPED.add(sizes[indexAttrNum] + sizes[indexAttrNum + 1]);
         }
 
         long[] tsList;
         long[] ridList;
 
         switch (Parameters.COMPRESSOR) {
+            // [updated] decoders read words of buffers directly instead of reading bits by ByteBufferBitInput
             case DELTA_2 -> {
-                tsList = DeltaOfDeltaDecompressor.decompress(new ByteBufferBitInput(tsListBuffer), eventNum);
-                ridList = DeltaOfDeltaDecompressor.decompress(new ByteBufferBitInput(ridListBuffer), eventNum);
+                tsList = DeltaOfDeltaDecompressor.decompress(tsListBuffer, eventNum);
+                ridList = DeltaOfDeltaDecompressor.decompress(ridListBuffer, eventNum);
             }
             case VAR_INT -> {
-                tsList = DeltaVarIntDecompressor.decompress(new ByteBufferBitInput(tsListBuffer), eventNum);
-                ridList = DeltaVarIntDecompressor.decompress(new ByteBufferBitInput(ridListBuffer), eventNum);
+                tsList = DeltaVarIntDecompressor.decompress(tsListBuffer, eventNum);
+                ridList = DeltaVarIntDecompressor.decompress(ridListBuffer, eventNum);
             }
             case SIMPLE_8B -> {
-                tsList = DeltaSimple8BDecompressor.decompress(new ByteBufferBitInput(tsListBuffer), eventNum);
-                ridList = DeltaSimple8BDecompressor.decompress(new ByteBufferBitInput(ridListBuffer), eventNum);
+                tsList = DeltaSimple8BDecompressor.decompress(tsListBuffer, eventNum);
+                ridList = DeltaSimple8BDecompressor.decompress(ridListBuffer, eventNum);
             }
             case DELTA -> {
                 tsList = DeltaDecompressor.decompress(tsListBuffer, eventNum);
                 ridList = DeltaDecompressor.decompress(ridListBuffer, eventNum);
             }
+            case BLOCK_FOR -> {
+                tsList = DeltaBlockFORDecompressor.decompress(tsListBuffer, eventNum);
+                ridList = DeltaBlockFORDecompressor.decompress(ridListBuffer, eventNum);
+            }
             default -> throw new RuntimeException("Unsupported compression type: " + Parameters.COMPRESSOR);
         }
 
@@ -140,9 +179,13 @@ public class MappedIdxBlk {
         long storagePosition = metaInfo.storagePosition();
         int blkSize = metaInfo.blockSize();
         ByteBuffer entireBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, storagePosition, blkSize);
+        Metrics.BYTES_MAPPED.add(blkSize);
 
         this.startPos = startPos;
         this.offset = offset;
+        this.fileChannel = null;
+        this.entireBuffer = entireBuffer;
+        columns = new long[indexAttrNum][];
 
         rangeBitmaps = new RangeBitmap[indexAttrNum];
 
@@ -166,13 +209,29 @@ public class MappedIdxBlk {
         if(Parameters.OPTIMIZED_LAYOUT){
             eventNum = offset;
             // |rbSize_1|....|rbSize_N|tsSize_1|ridSize_1|...|tsSize_g|ridSize_g|
+            int stride = 2 + metaInfo.columnNum();
             int tsStartPos = rbStartPos[indexAttrNum];
             int ptr = indexAttrNum;
             for(int i = 0; i < clusterId; i++){
-                tsStartPos += (sizes[ptr] + sizes[ptr + 1]);
-                ptr += 2;
+                for(int j = 0; j < stride; j++){
+                    tsStartPos += sizes[ptr + j];
+                }
+                ptr += stride;
             }
             int ridStartPos = tsStartPos + sizes[ptr];
+            if(metaInfo.columnNum() != 0){
+                columnPositions = new long[indexAttrNum];
+                columnSizes = new int[indexAttrNum];
+                long columnPos = ridStartPos + sizes[ptr + 1];
+                for(int i = 0; i < indexAttrNum; i++){
+                    columnPositions[i] = columnPos;
+                    columnSizes[i] = sizes[ptr + 2 + i];
+                    columnPos += columnSizes[i];
+                }
+            }else{
+                columnPositions = null;
+                columnSizes = null;
+            }
             byte[] tsBytes = new byte[sizes[ptr]];
             entireBuffer.get(tsStartPos, tsBytes);
             tsListBuffer = ByteBuffer.wrap(tsBytes);
@@ -180,6 +239,8 @@ public class MappedIdxBlk {
             entireBuffer.get(ridStartPos, ridBytes);
             ridListBuffer = ByteBuffer.wrap(ridBytes);
         }else{
+            columnPositions = null;
+            columnSizes = null;
             int tsListPosition = rbStartPos[indexAttrNum];
             int ridListPosition = tsListPosition + sizes[indexAttrNum];
             byte[] tsBytes = new byte[sizes[indexAttrNum]];
@@ -193,22 +254,27 @@ public class MappedIdxBlk {
         long[] ridList;
 
         switch (Parameters.COMPRESSOR) {
+            // [updated] decoders read words of buffers directly instead of reading bits by ByteBufferBitInput
             case DELTA_2 -> {
-                tsList = DeltaOfDeltaDecompressor.decompress(new ByteBufferBitInput(tsListBuffer), eventNum);
-                ridList = DeltaOfDeltaDecompressor.decompress(new ByteBufferBitInput(ridListBuffer), eventNum);
+                tsList = DeltaOfDeltaDecompressor.decompress(tsListBuffer, eventNum);
+                ridList = DeltaOfDeltaDecompressor.decompress(ridListBuffer, eventNum);
             }
             case VAR_INT -> {
-                tsList = DeltaVarIntDecompressor.decompress(new ByteBufferBitInput(tsListBuffer), eventNum);
-                ridList = DeltaVarIntDecompressor.decompress(new ByteBufferBitInput(ridListBuffer), eventNum);
+                tsList = DeltaVarIntDecompressor.decompress(tsListBuffer, eventNum);
+                ridList = DeltaVarIntDecompressor.decompress(ridListBuffer, eventNum);
             }
             case SIMPLE_8B -> {
-                tsList = DeltaSimple8BDecompressor.decompress(new ByteBufferBitInput(tsListBuffer), eventNum);
-                ridList = DeltaSimple8BDecompressor.decompress(new ByteBufferBitInput(ridListBuffer), eventNum);
+                tsList = DeltaSimple8BDecompressor.decompress(tsListBuffer, eventNum);
+                ridList = DeltaSimple8BDecompressor.decompress(ridListBuffer, eventNum);
             }
             case DELTA -> {
                 tsList = DeltaDecompressor.decompress(tsListBuffer, eventNum);
                 ridList = DeltaDecompressor.decompress(ridListBuffer, eventNum);
             }
+            case BLOCK_FOR -> {
+                tsList = DeltaBlockFORDecompressor.decompress(tsListBuffer, eventNum);
+                ridList = DeltaBlockFORDecompressor.decompress(ridListBuffer, eventNum);
+            }
             default -> throw new RuntimeException("Unsupported compression type: " + Parameters.COMPRESSOR);
         }
 
@@ -227,13 +293,41 @@ public class MappedIdxBlk {
     }
 
     public List<IndexValuePair> query(List<ICQueryQuad> icQuads){
+        return query(icQuads, null, -1, -1);
+    }
+
+    /**
+     * query this cluster, range query results are shared with other queries via predicate bitmap cache
+     * @param icQuads       independent constraints
+     * @param cache         predicate bitmap cache, null means disable cache
+     * @param blockId       index block id
+     * @param clusterId     cluster id
+     * @return              index value pairs
+     */
+    public List<IndexValuePair> query(List<ICQueryQuad> icQuads, PredicateBitmapCache cache, int blockId, int clusterId){
+        return query(icQuads, cache, blockId, clusterId, null, null);
+    }
+
+    /**
+     * query this cluster and read covering columns of selected events
+     * @param icQuads       independent constraints
+     * @param cache         predicate bitmap cache, null means disable cache
+     * @param blockId       index block id
+     * @param clusterId     cluster id
+     * @param columnIdxs    indexed attributes that need to be read
+     * @param coveredValues if not null, put rid key -> indexed attribute values of selected events
+     * @return              index value pairs
+     */
+    public List<IndexValuePair> query(List<ICQueryQuad> icQuads, PredicateBitmapCache cache, int blockId, int clusterId,
+                                      int[] columnIdxs, Map<Long, long[]> coveredValues){
         RoaringBitmap context = new RoaringBitmap();
         context.add((long) startPos, (offset + startPos));
 
         RoaringBitmap bitmap = Parameters.ENABLE_TRUNCATE ? null : context;
 
         for (ICQueryQuad quad : icQuads) {
-            RoaringBitmap ans = queryRangeBitmapUsingIC(quad, context);
+            RoaringBitmap ans = (cache == null) ? queryRangeBitmapUsingIC(quad, context) :
+                    queryRangeBitmapUsingCache(quad, context, cache, blockId, clusterId);
             if(bitmap == null){
                 bitmap = ans;
             }else{
@@ -243,7 +337,58 @@ public class MappedIdxBlk {
         // note that icQuads maybe empty, so we add this code line
         bitmap = (bitmap == null) ? context : bitmap;
 
-        return getIndexValuePairs(bitmap);
+        List<IndexValuePair> pairs = getIndexValuePairs(bitmap);
+        if(coveredValues != null){
+            putCoveredValues(bitmap, columnIdxs, coveredValues);
+        }
+        return pairs;
+    }
+
+    public boolean hasCoveringColumns(){
+        return columnPositions != null;
+    }
+
+    /**
+     * @param idx       indexed attribute id
+     * @return          values of this attribute in this cluster
+     */
+    public long[] getColumn(int idx){
+        if(columnPositions == null){
+            throw new RuntimeException("this index block does not store covering columns");
+        }
+        if(columns[idx] == null){
+            ByteBuffer columnBuffer;
+            if(entireBuffer != null){
+                byte[] bytes = new byte[columnSizes[idx]];
+                entireBuffer.get((int) columnPositions[idx], bytes);
+                columnBuffer = ByteBuffer.wrap(bytes);
+            }else{
+                try{
+                    columnBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, columnPositions[idx], columnSizes[idx]);
+                    Metrics.BYTES_MAPPED.add(columnSizes[idx]);
+                }catch (IOException e){
+                    throw new RuntimeException(e);
+                }
+            }
+            columns[idx] = FORDecompressor.decompress(columnBuffer, offset);
+        }
+        return columns[idx];
+    }
+
+    private void putCoveredValues(RoaringBitmap bitmap, int[] columnIdxs, Map<Long, long[]> coveredValues){
+        int indexAttrNum = columns.length;
+        long[][] selectedColumns = new long[indexAttrNum][];
+        for(int idx : columnIdxs){
+            selectedColumns[idx] = getColumn(idx);
+        }
+        bitmap.forEach((Consumer<? super Integer>) i -> {
+            int pos = i - startPos;
+            long[] values = new long[indexAttrNum];
+            for(int idx : columnIdxs){
+                values[idx] = selectedColumns[idx][pos];
+            }
+            coveredValues.put(clusterRIDList[pos], values);
+        });
     }
 
     private RoaringBitmap queryRangeBitmapUsingIC(ICQueryQuad quad, RoaringBitmap context) {
@@ -271,6 +416,35 @@ public class MappedIdxBlk {
         return rangeQueryRB;
     }
 
+    private RoaringBitmap queryRangeBitmapUsingCache(ICQueryQuad quad, RoaringBitmap context,
+                                                     PredicateBitmapCache cache, int blockId, int clusterId){
+        int idx = quad.idx();
+        int mark = quad.mark();
+        // mark = 1 does not have maximum value, mark = 2 does not have minimum value
+        long min = (mark == 2) ? Long.MIN_VALUE : quad.min();
+        long max = (mark == 1) ? Long.MAX_VALUE : quad.max();
+
+        PredicateBitmapCache.CachedBitmap covering = cache.getCovering(blockId, clusterId, idx, min, max);
+        RoaringBitmap rangeQueryRB;
+        if(covering == null){
+            rangeQueryRB = queryRangeBitmapUsingIC(quad, context);
+        }else if(covering.min() == min && covering.max() == max){
+            // caller will modify the result, so we return a copy
+            return covering.bitmap().clone();
+        }else{
+            // wider range is cached, we only evaluate the missing bound inside cached bitmap
+            rangeQueryRB = covering.bitmap();
+            if(min > covering.min()){
+                rangeQueryRB = rangeBitmaps[idx].gte(min, rangeQueryRB);
+            }
+            if(max < covering.max()){
+                rangeQueryRB = rangeBitmaps[idx].lte(max, rangeQueryRB);
+            }
+        }
+        cache.put(blockId, clusterId, idx, min, max, rangeQueryRB);
+        return rangeQueryRB.clone();
+    }
+
     /**
      * note that we must subtract the offset
      * @param bitmap        indicate which locations/positions are selected
@@ -0,0 +1,23 @@
+package acer;
+
+import automaton.Tuple;
+
+/**
+ * callback of a standing (continuous) query
+ * if the return clause of the pattern contains COUNT, ACER calls onCount,
+ * otherwise, ACER calls onMatch for each new matched tuple
+ */
+public interface MatchListener {
+    /**
+     * new matched tuple
+     * @param tuple         matched tuple
+     */
+    void onMatch(Tuple tuple);
+
+    /**
+     * number of matches changes
+     * @param newCount      number of new matches
+     * @param totalCount    number of matches since this query was registered (include backfill matches)
+     */
+    default void onCount(long newCount, long totalCount){}
+}
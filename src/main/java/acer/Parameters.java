@@ -1,5 +1,6 @@
 package acer;
 
+import common.MatchEngine;
 import compressor.CompressorAlgorithm;
 
 public class Parameters {
@@ -14,6 +15,18 @@ public class Parameters {
 
     public static final int PAGE_SIZE = 8 * 1024;
 
+    // match filtered events with multiple threads (see automaton.ParallelMatcher),
+    // disabled by default, ACER.setMatchThreadNum enables it for one index
+    static final boolean ENABLE_PARALLEL_MATCHING = false;
+
+    // number of matching threads when parallel matching is enabled
+    static final int MATCH_THREAD_NUM = Runtime.getRuntime().availableProcessors();
+
+    // LAZY_NFA starts partial matches from the rarest variable (see automaton.LazyNFA),
+    // patterns or events that it cannot process fall back to NFA
+    // JOIN evaluates SEQ pattern with skip-till-any-match as window joins of filtered candidates (see automaton.JoinMatcher)
+    static final MatchEngine MATCH_ENGINE = MatchEngine.NFA;
+
     // please do not change this parameter
     // when true/enable ==> query range bitmap call bellow function
     //     rb.gte(long value, RoaringBitmap context) or rb.lte(long value, RoaringBitmap context)
@@ -0,0 +1,141 @@
+package acer;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+
+/**
+ * Cluster-level predicate bitmap cache
+ * key is (blockId, clusterId, attribute index, value range), value is the range query result of a range bitmap.
+ * Index blocks are immutable after they are written, so a cached bitmap never becomes stale.
+ * -------------------------------------------------------------------------------------
+ * containment reuse: if the cache holds a wider range [min', max'] of the same cluster and attribute,
+ * the narrower query [min, max] only needs to evaluate gte/lte inside the cached bitmap (as the context),
+ * e.g., cached [10, 90], query [20, 90] => rb.gte(20, cachedBitmap)
+ * -------------------------------------------------------------------------------------
+ * Entries are evicted in LRU order when the total bitmap size exceeds the memory budget.
+ * All public functions are synchronized since different queries share a cache.
+ */
+public class PredicateBitmapCache {
+    // which range bitmap of which cluster
+    record ClusterAttr(int blockId, int clusterId, int attrIdx){}
+
+    record EntryKey(ClusterAttr clusterAttr, long min, long max){}
+
+    /**
+     * cached range query result, note that min/max are relative values (value - cluster min value)
+     * @param min       minimum value, Long.MIN_VALUE means no lower bound
+     * @param max       maximum value, Long.MAX_VALUE means no upper bound
+     * @param bitmap    positions whose values fall in [min, max]
+     */
+    public record CachedBitmap(long min, long max, RoaringBitmap bitmap){
+        public boolean contains(long queryMin, long queryMax){
+            return min <= queryMin && max >= queryMax;
+        }
+    }
+
+    private final long budget;                                              // memory budget (bytes)
+    private long usedBytes;                                                 // estimated used memory (bytes)
+    private final LinkedHashMap<EntryKey, CachedBitmap> lruMap;             // access order is LRU order
+    private final HashMap<ClusterAttr, List<CachedBitmap>> rangeMap;        // used to find a wider range
+    private long exactHitNum;                                               // number of exact hits
+    private long containHitNum;                                             // number of containment hits
+    private long missNum;                                                   // number of misses
+
+    public PredicateBitmapCache(long budget){
+        this.budget = budget;
+        usedBytes = 0;
+        lruMap = new LinkedHashMap<>(1024, 0.75f, true);
+        rangeMap = new HashMap<>(1024);
+    }
+
+    /**
+     * find the cached bitmap with the minimum cardinality whose range contains [min, max]
+     * @param blockId       index block id
+     * @param clusterId     cluster id
+     * @param attrIdx       attribute index
+     * @param min           minimum value
+     * @param max           maximum value
+     * @return              cached bitmap (read only), null if no cached range contains [min, max]
+     */
+    public synchronized CachedBitmap getCovering(int blockId, int clusterId, int attrIdx, long min, long max){
+        ClusterAttr clusterAttr = new ClusterAttr(blockId, clusterId, attrIdx);
+        // exact hit
+        CachedBitmap exact = lruMap.get(new EntryKey(clusterAttr, min, max));
+        if(exact != null){
+            exactHitNum++;
+            return exact;
+        }
+
+        List<CachedBitmap> candidates = rangeMap.get(clusterAttr);
+        CachedBitmap covering = null;
+        if(candidates != null){
+            for(CachedBitmap candidate : candidates){
+                if(candidate.contains(min, max) &&
+                        (covering == null || candidate.bitmap().getCardinality() < covering.bitmap().getCardinality())){
+                    covering = candidate;
+                }
+            }
+        }
+
+        if(covering != null){
+            containHitNum++;
+            // update LRU order
+            lruMap.get(new EntryKey(clusterAttr, covering.min(), covering.max()));
+        }else{
+            missNum++;
+        }
+        return covering;
+    }
+
+    public synchronized void put(int blockId, int clusterId, int attrIdx, long min, long max, RoaringBitmap bitmap){
+        long bytes = estimateBytes(bitmap);
+        if(bytes > budget){
+            return;
+        }
+        ClusterAttr clusterAttr = new ClusterAttr(blockId, clusterId, attrIdx);
+        EntryKey key = new EntryKey(clusterAttr, min, max);
+        if(lruMap.containsKey(key)){
+            return;
+        }
+        CachedBitmap cachedBitmap = new CachedBitmap(min, max, bitmap);
+        lruMap.put(key, cachedBitmap);
+        rangeMap.computeIfAbsent(clusterAttr, k -> new ArrayList<>(4)).add(cachedBitmap);
+        usedBytes += bytes;
+
+        // evict least recently used bitmaps
+        Iterator<Map.Entry<EntryKey, CachedBitmap>> it = lruMap.entrySet().iterator();
+        while(usedBytes > budget && it.hasNext()){
+            Map.Entry<EntryKey, CachedBitmap> entry = it.next();
+            CachedBitmap evicted = entry.getValue();
+            ClusterAttr evictedClusterAttr = entry.getKey().clusterAttr();
+            List<CachedBitmap> list = rangeMap.get(evictedClusterAttr);
+            list.remove(evicted);
+            if(list.isEmpty()){
+                rangeMap.remove(evictedClusterAttr);
+            }
+            usedBytes -= estimateBytes(evicted.bitmap());
+            it.remove();
+        }
+    }
+
+    public synchronized void clear(){
+        lruMap.clear();
+        rangeMap.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized int size(){ return lruMap.size(); }
+
+    public synchronized long getUsedBytes(){ return usedBytes; }
+
+    public synchronized void print(){
+        System.out.println("predicate bitmap cache | entries: " + lruMap.size() + " | used bytes: " + usedBytes +
+                " | exact hit: " + exactHitNum + " | contain hit: " + containHitNum + " | miss: " + missNum);
+    }
+
+    private static long estimateBytes(RoaringBitmap bitmap){
+        // bitmap + key + map nodes
+        return bitmap.getLongSizeInBytes() + 96;
+    }
+}
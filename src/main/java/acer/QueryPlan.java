@@ -0,0 +1,281 @@
+package acer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * plan of two phase filtering (see ACER.twoPhaseFilteringByVariable), EXPLAIN [ANALYZE] returns it
+ * -------------------------------------------------------------------------------------
+ * plan: variables in ascending order of estimated selectivity, the first variable (minimum weight)
+ * that generates the interval set, and estimated candidates of each variable
+ * analyze: clusters that overlap the interval set, clusters skipped by min/max values,
+ * candidates that survive each step, and costs of each step
+ * -------------------------------------------------------------------------------------
+ * note that other variables only query clusters that overlap the interval set,
+ * so their actual candidates are not comparable with estimated candidates,
+ * we only flag mis-estimated selectivity of the first variable
+ */
+public class QueryPlan {
+    // actual/estimated (or estimated/actual) candidates of the first variable that is regarded as mis-estimated
+    public static final double MIS_ESTIMATE_RATIO = 10;
+
+    /**
+     * filtering step of a variable, counts and costs are set when the plan is analyzed
+     */
+    public static class VariableStep {
+        private final String varName;
+        private final String eventType;
+        private final double selectivity;           // estimated selectivity
+        private final double weight;                // selectivity * scale, minimum weight is chosen first
+        private int clusterNum;                     // clusters of event type
+        private int examinedClusterNum;             // clusters that overlap the interval set (or minimum timestamp)
+        private int prunedClusterNum;               // examined clusters skipped by min/max values
+        private int indexCandidateNum;              // candidates from index blocks and buffer
+        private int intervalCandidateNum;           // candidates after step 4 (filter with interval set)
+        private int finalCandidateNum;              // candidates after step 5 (filter again)
+        private long queryCost;                     // [ns] query index blocks and buffer
+        private long filterCost;                    // [ns] filter with interval set
+
+        VariableStep(String varName, String eventType, double selectivity, double weight){
+            this.varName = varName;
+            this.eventType = eventType;
+            this.selectivity = selectivity;
+            this.weight = weight;
+        }
+
+        public String getVarName(){
+            return varName;
+        }
+
+        public String getEventType(){
+            return eventType;
+        }
+
+        public double getSelectivity(){
+            return selectivity;
+        }
+
+        public double getWeight(){
+            return weight;
+        }
+
+        public int getClusterNum(){
+            return clusterNum;
+        }
+
+        public int getExaminedClusterNum(){
+            return examinedClusterNum;
+        }
+
+        public int getPrunedClusterNum(){
+            return prunedClusterNum;
+        }
+
+        public int getIndexCandidateNum(){
+            return indexCandidateNum;
+        }
+
+        public int getIntervalCandidateNum(){
+            return intervalCandidateNum;
+        }
+
+        public int getFinalCandidateNum(){
+            return finalCandidateNum;
+        }
+
+        public long getQueryCost(){
+            return queryCost;
+        }
+
+        public long getFilterCost(){
+            return filterCost;
+        }
+
+        void setClusters(int clusterNum, int examinedClusterNum){
+            this.clusterNum = clusterNum;
+            this.examinedClusterNum = examinedClusterNum;
+        }
+
+        void addPrunedCluster(){
+            prunedClusterNum++;
+        }
+
+        void setIndexCandidates(int indexCandidateNum, long queryCost){
+            this.indexCandidateNum = indexCandidateNum;
+            this.queryCost = queryCost;
+        }
+
+        void setIntervalCandidates(int intervalCandidateNum, long filterCost){
+            this.intervalCandidateNum = intervalCandidateNum;
+            this.filterCost += filterCost;
+        }
+
+        void setFinalCandidates(int finalCandidateNum, long filterCost){
+            this.finalCandidateNum = finalCandidateNum;
+            this.filterCost += filterCost;
+        }
+    }
+
+    private final boolean analyzed;
+    private final long eventNum;                    // number of inserted events
+    private final List<VariableStep> steps;         // ascending order of selectivity
+    private VariableStep firstStep;                 // variable that generates the interval set
+    private long leftOffset;
+    private long rightOffset;
+    private int intervalNum;                        // intervals after step 3
+    private long filterCost;                        // [ns]
+    private long scanCost;                          // [ns]
+    private long matchCost;                         // [ns]
+    private int scannedEventNum;
+    private long matchNum;
+
+    QueryPlan(boolean analyzed, long eventNum, int variableNum){
+        this.analyzed = analyzed;
+        this.eventNum = eventNum;
+        steps = new ArrayList<>(variableNum);
+    }
+
+    public boolean isAnalyzed(){
+        return analyzed;
+    }
+
+    public List<VariableStep> getSteps(){
+        return steps;
+    }
+
+    public VariableStep getFirstStep(){
+        return firstStep;
+    }
+
+    public long getLeftOffset(){
+        return leftOffset;
+    }
+
+    public long getRightOffset(){
+        return rightOffset;
+    }
+
+    public int getIntervalNum(){
+        return intervalNum;
+    }
+
+    public long getFilterCost(){
+        return filterCost;
+    }
+
+    public long getScanCost(){
+        return scanCost;
+    }
+
+    public long getMatchCost(){
+        return matchCost;
+    }
+
+    public int getScannedEventNum(){
+        return scannedEventNum;
+    }
+
+    public long getMatchNum(){
+        return matchNum;
+    }
+
+    /**
+     * @param step      step of a variable
+     * @return          estimated candidates of the variable
+     */
+    public double estimateCandidateNum(VariableStep step){
+        return step.selectivity * eventNum;
+    }
+
+    /**
+     * @return          true if the plan is analyzed and candidates of the first variable differ from
+     *                  the estimation by more than MIS_ESTIMATE_RATIO times
+     */
+    public boolean isMisEstimated(){
+        if(!analyzed){
+            return false;
+        }
+        // at least one candidate, so that tiny estimations are not flagged
+        double estimated = Math.max(estimateCandidateNum(firstStep), 1);
+        double actual = Math.max(firstStep.indexCandidateNum, 1);
+        return Math.max(estimated / actual, actual / estimated) >= MIS_ESTIMATE_RATIO;
+    }
+
+    VariableStep addStep(String varName, String eventType, double selectivity, double weight){
+        VariableStep step = new VariableStep(varName, eventType, selectivity, weight);
+        steps.add(step);
+        return step;
+    }
+
+    void setFirstStep(VariableStep firstStep, long leftOffset, long rightOffset){
+        this.firstStep = firstStep;
+        this.leftOffset = leftOffset;
+        this.rightOffset = rightOffset;
+    }
+
+    void setIntervalNum(int intervalNum){
+        this.intervalNum = intervalNum;
+    }
+
+    void setFilterCost(long filterCost){
+        this.filterCost = filterCost;
+    }
+
+    void setScan(int scannedEventNum, long scanCost){
+        this.scannedEventNum = scannedEventNum;
+        this.scanCost = scanCost;
+    }
+
+    void setMatch(long matchNum, long matchCost){
+        this.matchNum = matchNum;
+        this.matchCost = matchCost;
+    }
+
+    private static String ms(long nanos){
+        return String.format("%.3fms", nanos / 1_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder(512);
+        str.append(analyzed ? "EXPLAIN ANALYZE" : "EXPLAIN").append(" (events: ").append(eventNum).append(")\n");
+        str.append("Filter: two phase filtering, first variable: ").append(firstStep.varName);
+        str.append(", window: [t").append(leftOffset >= 0 ? "+" : "").append(leftOffset);
+        str.append(", t+").append(rightOffset).append("]");
+        if(analyzed){
+            str.append(", intervals: ").append(intervalNum).append(", cost: ").append(ms(filterCost));
+        }
+        str.append('\n');
+
+        int order = 1;
+        for(VariableStep step : steps){
+            str.append("  ").append(order++).append(". ").append(step.varName).append(" (").append(step.eventType).append(")");
+            str.append(step == firstStep ? " [first]" : "");
+            str.append(String.format(" est. sel: %.6f, weight: %.6f, est. candidates: %.0f",
+                    step.selectivity, step.weight, estimateCandidateNum(step)));
+            str.append('\n');
+            if(analyzed){
+                str.append("     clusters: ").append(step.examinedClusterNum).append("/").append(step.clusterNum);
+                str.append(step == firstStep ? " examined" : " overlap interval set");
+                str.append(", ").append(step.prunedClusterNum).append(" skipped by min/max");
+                str.append(", cost: ").append(ms(step.queryCost)).append('\n');
+                str.append("     candidates: ").append(step.indexCandidateNum);
+                if(step == firstStep){
+                    str.append(String.format(" (actual sel: %.6f)", eventNum == 0 ? 0 : (double) step.indexCandidateNum / eventNum));
+                }
+                str.append(" -> ").append(step.intervalCandidateNum).append(" (interval set)");
+                str.append(" -> ").append(step.finalCandidateNum).append(" (filter again)");
+                str.append(", cost: ").append(ms(step.filterCost)).append('\n');
+            }
+        }
+        if(analyzed){
+            if(isMisEstimated()){
+                str.append("Warning: candidates of first variable differ from estimation by more than ");
+                str.append((int) MIS_ESTIMATE_RATIO).append(" times\n");
+            }
+            str.append("Scan: ").append(scannedEventNum).append(" events, cost: ").append(ms(scanCost)).append('\n');
+            str.append("Match: ").append(matchNum).append(" tuples, cost: ").append(ms(matchCost)).append('\n');
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,127 @@
+package acer;
+
+import automaton.Tuple;
+
+import java.util.*;
+
+/**
+ * Versioned query result cache
+ * key is (result kind, normalized query pattern), value is a cached result.
+ * Each cached result records the data version (number of inserted events)
+ * and the watermark (maximum timestamp) of the index when it was computed.
+ * -------------------------------------------------------------------------------------
+ * A cached result is split into two parts:
+ * stable part: matches whose end time < watermark, these matches only contain events
+ * whose timestamps are smaller than watermark, in-order insertions cannot change them
+ * tail part: matches whose end time >= watermark, they may change after new insertions
+ * -------------------------------------------------------------------------------------
+ * When the version changes and all new events arrived in order,
+ * we only need to process events whose timestamps >= watermark - tau to refresh the tail part.
+ * Entries are evicted in LRU order when the estimated memory exceeds the budget.
+ */
+public class QueryResultCache {
+    /**
+     * cached result, for count query, tuple lists are null
+     * @param version       data version when this result was computed
+     * @param watermark     maximum timestamp when this result was computed
+     * @param stableCount   number of matches whose end time < watermark
+     * @param tailCount     number of matches whose end time >= watermark
+     * @param stableTuples  matches whose end time < watermark
+     * @param tailTuples    matches whose end time >= watermark
+     * @param bytes         estimated memory size
+     */
+    public record CachedResult(long version, long watermark, long stableCount, long tailCount,
+                               List<Tuple> stableTuples, List<Tuple> tailTuples, long bytes){
+        public long count(){
+            return stableCount + tailCount;
+        }
+
+        public List<Tuple> tuples(){
+            List<Tuple> ans = new ArrayList<>(stableTuples.size() + tailTuples.size());
+            ans.addAll(stableTuples);
+            ans.addAll(tailTuples);
+            return ans;
+        }
+    }
+
+    private final long budget;                                  // memory budget (bytes)
+    private long usedBytes;                                     // estimated used memory (bytes)
+    private final LinkedHashMap<String, CachedResult> cache;    // access order is LRU order
+    private long hitNum;                                        // number of exact hits
+    private long refreshNum;                                    // number of incremental refreshes
+    private long missNum;                                       // number of misses
+
+    public QueryResultCache(long budget){
+        this.budget = budget;
+        usedBytes = 0;
+        cache = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    public synchronized CachedResult get(String key){
+        return cache.get(key);
+    }
+
+    public static CachedResult countResult(long version, long watermark, long stableCount, long tailCount, String key){
+        // key (char array) + entry + map node
+        long bytes = key.length() * 2L + 128;
+        return new CachedResult(version, watermark, stableCount, tailCount, null, null, bytes);
+    }
+
+    public static CachedResult tupleResult(long version, long watermark, List<Tuple> stableTuples, List<Tuple> tailTuples, String key){
+        long bytes = key.length() * 2L + 128 + estimateBytes(stableTuples) + estimateBytes(tailTuples);
+        return new CachedResult(version, watermark, stableTuples.size(), tailTuples.size(), stableTuples, tailTuples, bytes);
+    }
+
+    public synchronized void put(String key, CachedResult result){
+        CachedResult old = cache.remove(key);
+        if(old != null){
+            usedBytes -= old.bytes();
+        }
+        // a result that is larger than the budget is never cached
+        if(result.bytes() > budget){
+            return;
+        }
+        cache.put(key, result);
+        usedBytes += result.bytes();
+
+        // evict least recently used entries
+        Iterator<Map.Entry<String, CachedResult>> it = cache.entrySet().iterator();
+        while(usedBytes > budget && it.hasNext()){
+            Map.Entry<String, CachedResult> entry = it.next();
+            usedBytes -= entry.getValue().bytes();
+            it.remove();
+        }
+    }
+
+    public synchronized void clear(){
+        cache.clear();
+        usedBytes = 0;
+    }
+
+    synchronized void recordHit(){ hitNum++; }
+
+    synchronized void recordRefresh(){ refreshNum++; }
+
+    synchronized void recordMiss(){ missNum++; }
+
+    public synchronized long getUsedBytes(){ return usedBytes; }
+
+    public synchronized int size(){ return cache.size(); }
+
+    public synchronized void print(){
+        System.out.println("result cache | entries: " + cache.size() + " | used bytes: " + usedBytes +
+                " | hit: " + hitNum + " | refresh: " + refreshNum + " | miss: " + missNum);
+    }
+
+    private static long estimateBytes(List<Tuple> tuples){
+        long bytes = 0;
+        for(Tuple t : tuples){
+            // tuple object + list
+            bytes += 64;
+            for(String event : t.getEvents()){
+                bytes += 48 + event.length() * 2L;
+            }
+        }
+        return bytes;
+    }
+}
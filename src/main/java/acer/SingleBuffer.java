@@ -1,47 +1,66 @@
 package acer;
 
-import java.util.ArrayList;
+import condition.ICQueryQuad;
+import store.RID;
+
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * [updated] here we support deletion operation and out-of-order insertion
  * a single buffer binds an event type
+ * [updated] events are stored column-wise (a long array per indexed attribute) instead of a list of triples,
+ * so independent constraints are evaluated by tight loops over arrays and generate selection bitmaps
  */
 public class SingleBuffer {
     private boolean hasUpdateMinMax = false;            // update flag
     private final long[] minValues;                     // attribute synopsis -> minimum values
     private final long[] maxValues;                     // attribute synopsis -> maximum values
-    private final List<TemporaryTriple> triples;    // all quads have same type
+    private int size;                                   // number of events
+    private long[] timestamps;                          // timestamp column
+    private RID[] rids;                                 // rid column
+    private final long[][] columns;                     // columns[i] stores values of i-th indexed attribute
 
     public SingleBuffer(int indexAttrNum){
         minValues = new long[indexAttrNum];
         maxValues = new long[indexAttrNum];
-        triples = new ArrayList<>(512);
+        int capacity = 512;
+        timestamps = new long[capacity];
+        rids = new RID[capacity];
+        columns = new long[indexAttrNum][capacity];
     }
 
     public void append(TemporaryTriple triple){
-        triples.add(triple);
+        if(size == timestamps.length){
+            int capacity = size + (size >> 1);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            rids = Arrays.copyOf(rids, capacity);
+            for(int i = 0; i < columns.length; i++){
+                columns[i] = Arrays.copyOf(columns[i], capacity);
+            }
+        }
+        timestamps[size] = triple.timestamp();
+        rids[size] = triple.rid();
+        long[] attrValues = triple.attrValues();
+        for(int i = 0; i < columns.length; i++){
+            columns[i][size] = attrValues[i];
+        }
+        size++;
+        hasUpdateMinMax = false;
     }
 
     public void setMinMaxValues(){
         int indexAttrNum = minValues.length;
-        // initialization
         for(int i = 0; i < indexAttrNum; i++){
-            minValues[i] = Long.MAX_VALUE;
-            maxValues[i] = Long.MIN_VALUE;
-        }
-
-        for(TemporaryTriple quad : triples){
-            long[] attrValues = quad.attrValues();
-            for(int i = 0; i < indexAttrNum; i++){
-                long attrValue = attrValues[i];
-                if(attrValue < minValues[i]){
-                    minValues[i] = attrValue;
-                }
-                if(attrValue > maxValues[i]){
-                    maxValues[i] = attrValue;
-                }
+            long[] column = columns[i];
+            long minValue = Long.MAX_VALUE;
+            long maxValue = Long.MIN_VALUE;
+            for(int j = 0; j < size; j++){
+                minValue = Math.min(minValue, column[j]);
+                maxValue = Math.max(maxValue, column[j]);
             }
+            minValues[i] = minValue;
+            maxValues[i] = maxValue;
         }
         hasUpdateMinMax = true;
     }
@@ -72,16 +91,112 @@ public class SingleBuffer {
         return ranges;
     }
 
-    public List<TemporaryTriple> getAllTriples(){
-        return triples;
+    public long getTimestamp(int pos){
+        return timestamps[pos];
+    }
+
+    public RID getRID(int pos){
+        return rids[pos];
+    }
+
+    /**
+     * @param idx   indexed attribute index
+     * @return      column of this attribute, only the first getSize() values are valid
+     */
+    public long[] getColumn(int idx){
+        return columns[idx];
+    }
+
+    /**
+     * @param pos   position of an event
+     * @return      indexed attribute values of this event
+     */
+    public long[] getAttrValues(int pos){
+        long[] attrValues = new long[columns.length];
+        for(int i = 0; i < columns.length; i++){
+            attrValues[i] = columns[i][pos];
+        }
+        return attrValues;
+    }
+
+    /**
+     * out-of-order insertion needs to sort events before generating an index block,
+     * events with the same timestamp keep their insertion order
+     */
+    public void sortByTimestamp(){
+        Integer[] positions = new Integer[size];
+        boolean sorted = true;
+        for(int i = 0; i < size; i++){
+            positions[i] = i;
+            if(i > 0 && timestamps[i - 1] > timestamps[i]){
+                sorted = false;
+            }
+        }
+        if(sorted){
+            return;
+        }
+        Arrays.sort(positions, (i, j) -> Long.compare(timestamps[i], timestamps[j]));
+        long[] oldTimestamps = timestamps.clone();
+        RID[] oldRids = rids.clone();
+        for(int i = 0; i < size; i++){
+            timestamps[i] = oldTimestamps[positions[i]];
+            rids[i] = oldRids[positions[i]];
+        }
+        for(long[] column : columns){
+            long[] oldColumn = column.clone();
+            for(int i = 0; i < size; i++){
+                column[i] = oldColumn[positions[i]];
+            }
+        }
+    }
+
+    /**
+     * evaluate independent constraints column by column, each constraint is checked without branches:
+     * min <= v <= max iff (v - min) <= (max - min) as unsigned values, and the borrow bit of
+     * (max - min) - (v - min) tells whether it holds, so a bitmap word is built from 64 comparisons
+     * @param icQuads   independent constraints
+     * @return          selection bitmap, i-th bit of word (i >> 6) is 1 if i-th event satisfies all constraints
+     */
+    public long[] select(List<ICQueryQuad> icQuads){
+        int wordNum = (size + 63) >>> 6;
+        long[] bitmap = new long[wordNum];
+        Arrays.fill(bitmap, -1L);
+        if((size & 63) != 0){
+            bitmap[wordNum - 1] = (1L << (size & 63)) - 1;
+        }
+        for(ICQueryQuad quad : icQuads){
+            long[] column = columns[quad.idx()];
+            long min = quad.min();
+            long range = quad.max() - min;
+            if(quad.max() < min){
+                Arrays.fill(bitmap, 0);
+                break;
+            }
+            for(int w = 0; w < wordNum; w++){
+                if(bitmap[w] == 0){
+                    continue;
+                }
+                int start = w << 6;
+                int end = Math.min(start + 64, size);
+                long word = 0;
+                for(int i = start; i < end; i++){
+                    long offset = column[i] - min;
+                    // borrow of unsigned (range - offset), it is 1 iff offset > range
+                    long borrow = ((~range & offset) | (~(range ^ offset) & (range - offset))) >>> 63;
+                    word |= (borrow ^ 1) << (i - start);
+                }
+                bitmap[w] &= word;
+            }
+        }
+        return bitmap;
     }
 
     public int getSize(){
-        return triples.size();
+        return size;
     }
 
     public void clear(){
         hasUpdateMinMax = false;
-        triples.clear();
+        size = 0;
     }
 }
@@ -0,0 +1,118 @@
+package acer;
+
+import automaton.NFA;
+import automaton.TransitionPredicate;
+import automaton.Tuple;
+import common.EventSchema;
+import pattern.QueryPattern;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a standing query keeps its NFA (and partial matches) alive across insertions
+ */
+class StandingQuery {
+    private final int queryId;                                              // query id
+    private final QueryPattern pattern;                                     // query pattern
+    private final NFA nfa;                                                  // automata, partial matches are kept in it
+    private final MatchListener listener;                                   // callback
+    private final boolean countOnly;                                        // return count(*) or tuples
+    private final Map<String, List<String>> typeVarNames;                   // event type -> its variables
+    private final Map<String, TransitionPredicate[]> typePredicates;        // event type -> compiled ics of its variables
+    private long totalCount;                                                // number of delivered matches
+    private int consumedNum;                                                // number of consumed events since last expiration
+
+    StandingQuery(int queryId, QueryPattern pattern, MatchListener listener, EventSchema schema){
+        this.queryId = queryId;
+        this.pattern = pattern;
+        this.listener = listener;
+        String returnStr = pattern.getReturnStr();
+        countOnly = returnStr != null && returnStr.contains("COUNT");
+        nfa = new NFA();
+        nfa.generateNFAUsingQueryPattern(pattern);
+
+        typeVarNames = new HashMap<>();
+        for(Map.Entry<String, String> entry : pattern.getVarTypeMap().entrySet()){
+            typeVarNames.computeIfAbsent(entry.getValue(), k -> new ArrayList<>(2)).add(entry.getKey());
+        }
+        typePredicates = new HashMap<>();
+        for(Map.Entry<String, List<String>> entry : typeVarNames.entrySet()){
+            typePredicates.put(entry.getKey(), compile(schema, entry.getKey(), entry.getValue()));
+        }
+        totalCount = 0;
+        consumedNum = 0;
+    }
+
+    int getQueryId(){ return queryId; }
+
+    QueryPattern getPattern(){ return pattern; }
+
+    long getTotalCount(){ return totalCount; }
+
+    /**
+     * check whether the event can be matched by at least one variable
+     * @param schema        event schema
+     * @param eventType     event type
+     * @param record        byte record
+     * @return              true if some variable's independent constraints are satisfied
+     */
+    boolean accept(EventSchema schema, String eventType, byte[] record){
+        TransitionPredicate[] predicates = typePredicates.get(eventType);
+        if(predicates == null){
+            return false;
+        }
+        // predicates compiled before the event type is registered cannot match it
+        if(!predicates[0].isCompiledFor(schema)){
+            predicates = compile(schema, eventType, typeVarNames.get(eventType));
+            typePredicates.put(eventType, predicates);
+        }
+        for(TransitionPredicate predicate : predicates){
+            if(predicate.checkIC(record)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private TransitionPredicate[] compile(EventSchema schema, String eventType, List<String> varNames){
+        TransitionPredicate[] predicates = new TransitionPredicate[varNames.size()];
+        for(int i = 0; i < predicates.length; ++i){
+            predicates[i] = TransitionPredicate.compileIC(schema, eventType, pattern.getICListUsingVarName(varNames.get(i)));
+        }
+        return predicates;
+    }
+
+    /**
+     * consume an event and then push new matches to listener
+     * @param schema            event schema
+     * @param record            byte record
+     * @param expireInterval    remove timeout partial matches every expireInterval events
+     */
+    void consume(EventSchema schema, byte[] record, int expireInterval){
+        nfa.consume(schema, record, pattern.getStrategy());
+        deliver(schema);
+        if(++consumedNum >= expireInterval){
+            nfa.expire(schema.getTimestampFromRecord(record));
+            consumedNum = 0;
+        }
+    }
+
+    void deliver(EventSchema schema){
+        if(countOnly){
+            long newCount = nfa.drainCount();
+            if(newCount > 0){
+                totalCount += newCount;
+                listener.onCount(newCount, totalCount);
+            }
+        }else{
+            List<Tuple> tuples = nfa.drainTuple(schema);
+            for(Tuple t : tuples){
+                listener.onMatch(t);
+            }
+            totalCount += tuples.size();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package acer;
 import automaton.NFA;
 import baselines.Index;
 import common.JsonReader;
+import common.Metrics;
 import common.StatementParser;
 import automaton.Tuple;
 import generator.DataGenerator;
@@ -133,7 +134,7 @@ public class Test_ACER {
         QueryPattern pattern = StatementParser.getQueryPattern(queryStatement);
         long startRunTs = System.currentTimeMillis();
         if(queryStatement.contains("COUNT")){
-            int cnt = index.processCountQueryUsingNFA(pattern, new NFA());
+            long cnt = index.processCountQueryUsingNFA(pattern, new NFA());
             System.out.println("number of tuples: " + cnt);
         }else {
             List<Tuple> tuples = index.processTupleQueryUsingNFA(pattern, new NFA());
@@ -157,7 +158,7 @@ public class Test_ACER {
 
             QueryPattern pattern = StatementParser.getQueryPattern(queryStatement);
             if(queryStatement.contains("COUNT")){
-                int cnt = index.processCountQueryUsingNFA(pattern, new NFA());
+                long cnt = index.processCountQueryUsingNFA(pattern, new NFA());
                 System.out.println("number of tuples: " + cnt);
             }else {
                 List<Tuple> tuples = index.processTupleQueryUsingNFA(pattern, new NFA());
@@ -217,6 +218,8 @@ public class Test_ACER {
     }
 
     public static void main(String[] args) throws FileNotFoundException {
+        // filter/scan/match costs are recorded in metrics
+        Metrics.enable();
         long startRunTs = System.currentTimeMillis();
         String sep = File.separator;
         String prefixPath = System.getProperty("user.dir") + sep + "src" + sep + "main" + sep;
@@ -265,6 +268,7 @@ public class Test_ACER {
 
         long endRunTs = System.currentTimeMillis();
         System.out.println("\ntotal run time: " + (endRunTs - startRunTs) / 1000 + "s.");
+        Metrics.dump(System.out);
     }
 }
 
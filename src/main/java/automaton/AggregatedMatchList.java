@@ -0,0 +1,391 @@
+package automaton;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * aggregated partial match buffer of a state, it is used by count-only NFA
+ * two partial matches behave the same in the future if they have the same start time
+ * and the same attribute values that are used by downstream dependent constraints,
+ * so we only store one row (start time, values, count) for them, e.g.,
+ * SEQ(A a, B b, C c) WHERE a.x < c.x, partial matches (a1, b1), (a1, b2) => row (a1.ts, a1.x, count = 2)
+ * -------------------------------------------------------------------------------------
+ * rows are appended in arrival order and live rows are [head, size) (see PartialMatchList)
+ * keyMap maps (start time, values) to the sequence number of a row, seq - firstSeq + head is its position.
+ * counts added by current event are stored in pendingCounts, they become visible at next beginEvent,
+ * otherwise an event may extend the partial match generated by itself
+ * -------------------------------------------------------------------------------------
+ * [updated] under skip-till-next-match, a row of a state with several transitions is detached from keyMap
+ * when a transition consumes it, and it is removed after all transitions consumed it (see markConsumed)
+ * -------------------------------------------------------------------------------------
+ * [updated] rows can be indexed by value columns like PartialMatchList (see PartialMatchHashIndex and
+ * PartialMatchRangeIndex), a row keeps its sequence number until removeExpired, then indexes are rebuilt
+ */
+class AggregatedMatchList {
+    // key of a row
+    record RowKey(long startTime, long[] values){
+        @Override
+        public boolean equals(Object o){
+            return o instanceof RowKey k && startTime == k.startTime && Arrays.equals(values, k.values);
+        }
+
+        @Override
+        public int hashCode(){
+            return Long.hashCode(startTime) * 31 + Arrays.hashCode(values);
+        }
+    }
+
+    private final int keyWidth;                 // number of value columns
+    private long[] values;                      // values used by downstream dependent constraints
+    private long[] startTimes;                  // start timestamps
+    private long[] counts;                      // number of partial matches visible to current event
+    private long[] pendingCounts;               // number of partial matches generated by current event
+    private int head;                           // position of first live row
+    private int size;                           // position after last row
+    private int visibleEnd;                     // position after last row visible to current event
+    private long firstSeq;                      // sequence number of the row at head
+    private long[] consumedMasks;               // transitions that consumed each row, null if no row is consumed
+    private long createdNum;                    // rows created since last drainCreatedNum
+    private long expiredNum;                    // timeout rows dropped since last drainExpiredNum
+    private final HashMap<RowKey, Long> keyMap; // key -> sequence number
+    private final List<Long> pendingSeqs;       // rows that have pending counts
+    private final List<PartialMatchHashIndex> hashIndexes;      // indexes for equality dependent constraints
+    private final List<PartialMatchRangeIndex> rangeIndexes;    // indexes for band dependent constraints
+
+    AggregatedMatchList(int keyWidth){
+        this.keyWidth = keyWidth;
+        int initCapacity = 64;
+        values = new long[initCapacity * keyWidth];
+        startTimes = new long[initCapacity];
+        counts = new long[initCapacity];
+        pendingCounts = new long[initCapacity];
+        keyMap = new HashMap<>();
+        pendingSeqs = new ArrayList<>();
+        hashIndexes = new ArrayList<>(1);
+        rangeIndexes = new ArrayList<>(1);
+    }
+
+    int getKeyWidth(){
+        return keyWidth;
+    }
+
+    int size(){
+        return size - head;
+    }
+
+    int getVisibleSize(){
+        return visibleEnd - head;
+    }
+
+    /**
+     * each row has a sequence number that does not change when head moves, row id = seq - firstSeq
+     * @return      sequence number of the row at head
+     */
+    long getFirstSeq(){
+        return firstSeq;
+    }
+
+    /**
+     * @param column    value column of equality dependent constraint (see CountPlan.getDCColumns)
+     * @return          hash index of this column
+     */
+    PartialMatchHashIndex getHashIndex(int column){
+        for(PartialMatchHashIndex index : hashIndexes){
+            if(index.getColumn() == column){
+                return index;
+            }
+        }
+        PartialMatchHashIndex index = new PartialMatchHashIndex(column, firstSeq);
+        hashIndexes.add(index);
+        return index;
+    }
+
+    /**
+     * @param column    value column of band dependent constraint (see CountPlan.getDCColumns)
+     * @return          range index of this column
+     */
+    PartialMatchRangeIndex getRangeIndex(int column){
+        for(PartialMatchRangeIndex index : rangeIndexes){
+            if(index.getColumn() == column){
+                return index;
+            }
+        }
+        PartialMatchRangeIndex index = new PartialMatchRangeIndex(column, firstSeq);
+        rangeIndexes.add(index);
+        return index;
+    }
+
+    long getStartTime(int row){
+        return startTimes[head + row];
+    }
+
+    long getCount(int row){
+        return counts[head + row];
+    }
+
+    long getValue(int row, int column){
+        return values[(head + row) * keyWidth + column];
+    }
+
+    private int position(long seq){
+        return (int) (seq - firstSeq) + head;
+    }
+
+    /**
+     * add partial matches, if a row with the same key exists, we only update its count
+     * @param startTime     start time
+     * @param key           values used by downstream dependent constraints
+     * @param count         number of partial matches
+     */
+    void add(long startTime, long[] key, long count){
+        RowKey rowKey = new RowKey(startTime, key);
+        Long seq = keyMap.get(rowKey);
+        if(seq != null){
+            int pos = position(seq);
+            if(pos >= visibleEnd){
+                // row generated by current event
+                counts[pos] += count;
+            }else{
+                if(pendingCounts[pos] == 0){
+                    pendingSeqs.add(seq);
+                }
+                pendingCounts[pos] += count;
+            }
+            return;
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(key, 0, values, size * keyWidth, keyWidth);
+        startTimes[size] = startTime;
+        counts[size] = count;
+        pendingCounts[size] = 0;
+        if(consumedMasks != null){
+            consumedMasks[size] = 0;
+        }
+        keyMap.put(rowKey, firstSeq + size - head);
+        size++;
+        createdNum++;
+    }
+
+    private void ensureCapacity(int rowNum){
+        int capacity = startTimes.length;
+        if(rowNum <= capacity){
+            return;
+        }
+        int liveNum = size - head;
+        if(liveNum + 1 > (capacity >> 1)){
+            int newCapacity = Math.max(rowNum - head, capacity << 1);
+            long[] newValues = new long[newCapacity * keyWidth];
+            long[] newStartTimes = new long[newCapacity];
+            long[] newCounts = new long[newCapacity];
+            long[] newPendingCounts = new long[newCapacity];
+            System.arraycopy(values, head * keyWidth, newValues, 0, liveNum * keyWidth);
+            System.arraycopy(startTimes, head, newStartTimes, 0, liveNum);
+            System.arraycopy(counts, head, newCounts, 0, liveNum);
+            System.arraycopy(pendingCounts, head, newPendingCounts, 0, liveNum);
+            values = newValues;
+            startTimes = newStartTimes;
+            counts = newCounts;
+            pendingCounts = newPendingCounts;
+            if(consumedMasks != null){
+                long[] newConsumedMasks = new long[newCapacity];
+                System.arraycopy(consumedMasks, head, newConsumedMasks, 0, liveNum);
+                consumedMasks = newConsumedMasks;
+            }
+        }else{
+            System.arraycopy(values, head * keyWidth, values, 0, liveNum * keyWidth);
+            System.arraycopy(startTimes, head, startTimes, 0, liveNum);
+            System.arraycopy(counts, head, counts, 0, liveNum);
+            System.arraycopy(pendingCounts, head, pendingCounts, 0, liveNum);
+            if(consumedMasks != null){
+                System.arraycopy(consumedMasks, head, consumedMasks, 0, liveNum);
+            }
+        }
+        visibleEnd -= head;
+        size = liveNum;
+        head = 0;
+    }
+
+    /**
+     * pending counts and rows inserted after calling this function are invisible until next call
+     */
+    void beginEvent(){
+        for(long seq : pendingSeqs){
+            int pos = position(seq);
+            counts[pos] += pendingCounts[pos];
+            pendingCounts[pos] = 0;
+        }
+        pendingSeqs.clear();
+        visibleEnd = size;
+    }
+
+    /**
+     * drop timeout or removed rows from head
+     * @param timestamp     timestamp of current event
+     * @param window        query window
+     */
+    void expireHead(long timestamp, long window){
+        while(head < visibleEnd && !isLive(startTimes[head], timestamp, window) && pendingCounts[head] == 0){
+            if(startTimes[head] != PartialMatchList.REMOVED){
+                // a detached row shares its key with a newer row
+                keyMap.remove(new RowKey(startTimes[head], rowValues(head)), firstSeq);
+                expiredNum++;
+            }
+            head++;
+            firstSeq++;
+        }
+    }
+
+    boolean isLive(int row, long timestamp, long window){
+        return isLive(startTimes[head + row], timestamp, window);
+    }
+
+    private static boolean isLive(long startTime, long timestamp, long window){
+        return startTime != PartialMatchList.REMOVED && timestamp - startTime <= window;
+    }
+
+    private long[] rowValues(int pos){
+        return Arrays.copyOfRange(values, pos * keyWidth, (pos + 1) * keyWidth);
+    }
+
+    /**
+     * skip-till-next-match removes partial matches after they are extended,
+     * partial matches generated by current event (pending count) are kept in a new row
+     * @param row           row id
+     */
+    void markRemoved(int row){
+        int pos = head + row;
+        long startTime = startTimes[pos];
+        long[] key = rowValues(pos);
+        keyMap.remove(new RowKey(startTime, key));
+        startTimes[pos] = PartialMatchList.REMOVED;
+        counts[pos] = 0;
+        long pendingCount = pendingCounts[pos];
+        if(pendingCount != 0){
+            pendingCounts[pos] = 0;
+            pendingSeqs.remove(Long.valueOf(firstSeq + row));
+            add(startTime, key, pendingCount);
+        }
+    }
+
+    /**
+     * @param row               row id
+     * @param transitionIdx     transition index of this state
+     * @return                  true if the transition has consumed this row under skip-till-next-match
+     */
+    boolean isConsumed(int row, int transitionIdx){
+        return consumedMasks != null && (consumedMasks[head + row] & (1L << transitionIdx)) != 0;
+    }
+
+    /**
+     * skip-till-next-match removes a row after each transition of its state extended it (see PartialMatchList),
+     * the first consumption detaches the row from keyMap, later partial matches with the same key go to a new row
+     * @param row               row id
+     * @param transitionIdx     transition index of this state
+     * @param transitionNum     number of transitions of this state (at most 63)
+     */
+    void markConsumed(int row, int transitionIdx, int transitionNum){
+        if(transitionNum == 1){
+            markRemoved(row);
+            return;
+        }
+        if(consumedMasks == null){
+            consumedMasks = new long[startTimes.length];
+        }
+        int pos = head + row;
+        boolean attached = consumedMasks[pos] == 0;
+        consumedMasks[pos] |= 1L << transitionIdx;
+        long startTime = startTimes[pos];
+        long[] key = rowValues(pos);
+        if(consumedMasks[pos] == (1L << transitionNum) - 1){
+            startTimes[pos] = PartialMatchList.REMOVED;
+            counts[pos] = 0;
+        }
+        if(attached){
+            keyMap.remove(new RowKey(startTime, key));
+            long pendingCount = pendingCounts[pos];
+            if(pendingCount != 0){
+                pendingCounts[pos] = 0;
+                pendingSeqs.remove(Long.valueOf(firstSeq + row));
+                add(startTime, key, pendingCount);
+            }
+        }
+    }
+
+    void clear(){
+        head = 0;
+        size = 0;
+        visibleEnd = 0;
+        firstSeq = 0;
+        keyMap.clear();
+        pendingSeqs.clear();
+        clearIndexes();
+    }
+
+    private void clearIndexes(){
+        for(PartialMatchHashIndex index : hashIndexes){
+            index.clear(firstSeq);
+        }
+        for(PartialMatchRangeIndex index : rangeIndexes){
+            index.clear(firstSeq);
+        }
+    }
+
+    /**
+     * NFA adds created and expired rows of all lists to metrics once per event (see NFA.drainMetrics)
+     * @return      number of rows created since last call
+     */
+    long drainCreatedNum(){
+        long num = createdNum;
+        createdNum = 0;
+        return num;
+    }
+
+    /**
+     * @return      number of timeout rows dropped since last call
+     */
+    long drainExpiredNum(){
+        long num = expiredNum;
+        expiredNum = 0;
+        return num;
+    }
+
+    /**
+     * remove rows whose start time < minStartTime and removed rows, it is called between events
+     * @param minStartTime  minimum start time
+     */
+    void removeExpired(long minStartTime){
+        beginEvent();
+        int writePos = 0;
+        keyMap.clear();
+        for(int pos = head; pos < size; ++pos){
+            long startTime = startTimes[pos];
+            if(startTime != PartialMatchList.REMOVED && startTime < minStartTime){
+                expiredNum++;
+            }
+            if(startTime != PartialMatchList.REMOVED && startTime >= minStartTime){
+                if(writePos != pos){
+                    System.arraycopy(values, pos * keyWidth, values, writePos * keyWidth, keyWidth);
+                    startTimes[writePos] = startTime;
+                    counts[writePos] = counts[pos];
+                    pendingCounts[writePos] = 0;
+                    if(consumedMasks != null){
+                        consumedMasks[writePos] = consumedMasks[pos];
+                    }
+                }
+                if(consumedMasks == null || consumedMasks[writePos] == 0){
+                    keyMap.put(new RowKey(startTime, rowValues(writePos)), (long) writePos);
+                }
+                writePos++;
+            }
+        }
+        // sequence numbers change, so indexes are rebuilt
+        head = 0;
+        firstSeq = 0;
+        size = writePos;
+        visibleEnd = size;
+        clearIndexes();
+    }
+}
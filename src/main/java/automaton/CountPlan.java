@@ -0,0 +1,79 @@
+package automaton;
+
+import common.Converter;
+import common.EventSchema;
+
+import java.util.List;
+
+/**
+ * how a transition of count-only NFA reads and generates aggregated rows
+ * column names have the format varName.attrName (see NFA.buildCountPlans)
+ */
+class CountPlan {
+    private final int[] dcColumns;          // columns of previous state that are used by dependent constraints
+    private final int[] keySources;         // source column of each next column, -1 means reading current event
+    private final int[] curPositions;       // start positions of attributes when reading current event
+    private final boolean[] curIsInt;       // INT occupies 4 bytes, FLOAT/DOUBLE occupy 8 bytes
+
+    /**
+     * @param schema        event schema
+     * @param predicate     precompiled predicate of this transition
+     * @param curVarName    variable name of next state
+     * @param srcColumns    columns of previous state
+     * @param nextColumns   columns of next state
+     */
+    CountPlan(EventSchema schema, TransitionPredicate predicate, String curVarName,
+              List<String> srcColumns, List<String> nextColumns){
+        int dcNum = predicate.getDCNum();
+        dcColumns = new int[dcNum];
+        for(int i = 0; i < dcNum; ++i){
+            dcColumns[i] = srcColumns.indexOf(predicate.getPreColumnName(i));
+            if(dcColumns[i] == -1){
+                throw new RuntimeException("cannot find column: " + predicate.getPreColumnName(i));
+            }
+        }
+
+        int keyWidth = nextColumns.size();
+        keySources = new int[keyWidth];
+        curPositions = new int[keyWidth];
+        curIsInt = new boolean[keyWidth];
+        for(int j = 0; j < keyWidth; ++j){
+            String column = nextColumns.get(j);
+            int dotPos = column.indexOf('.');
+            if(column.substring(0, dotPos).equals(curVarName)){
+                keySources[j] = -1;
+                int idx = schema.getAttrNameIdx(column.substring(dotPos + 1));
+                curPositions[j] = schema.getAttrStartPos(idx);
+                curIsInt[j] = schema.getIthAttrType(idx).equals("INT");
+            }else{
+                keySources[j] = srcColumns.indexOf(column);
+                if(keySources[j] == -1){
+                    throw new RuntimeException("cannot find column: " + column);
+                }
+            }
+        }
+    }
+
+    int[] getDCColumns(){
+        return dcColumns;
+    }
+
+    /**
+     * generate values of next row
+     * @param src       aggregated buffer of previous state, null for start state
+     * @param row       row of previous state
+     * @param record    current event
+     * @return          values of next row
+     */
+    long[] project(AggregatedMatchList src, int row, byte[] record){
+        long[] key = new long[keySources.length];
+        for(int j = 0; j < keySources.length; ++j){
+            if(keySources[j] == -1){
+                key[j] = curIsInt[j] ? Converter.readInt(record, curPositions[j]) : Converter.readLong(record, curPositions[j]);
+            }else{
+                key[j] = src.getValue(row, keySources[j]);
+            }
+        }
+        return key;
+    }
+}
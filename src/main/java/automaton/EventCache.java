@@ -52,6 +52,56 @@ public class EventCache {
         return ans;
     }
 
+    /**
+     * insert an event only once, all transitions that consume the same event share one pointer
+     * @param event     byte record
+     * @return          record pointer
+     */
+    public int insertOnce(byte[] event){
+        if(count > 0 && events.get(count - 1) == event){
+            return count - 1;
+        }
+        return insert(event);
+    }
+
+    /**
+     * only keep events referenced by live partial matches, and then update their pointers
+     * standing queries call this function to avoid unbounded memory usage
+     * note that the order of kept events does not change
+     * @param liveLists   partial match buffers
+     */
+    public void compact(List<PartialMatchList> liveLists){
+        boolean[] used = new boolean[count];
+        for(PartialMatchList list : liveLists){
+            int size = list.getPartialMatchSize();
+            int width = list.getWidth();
+            for(int row = 0; row < size; ++row){
+                for(int slot = 0; slot < width; ++slot){
+                    used[list.getPointer(row, slot)] = true;
+                }
+            }
+        }
+        int[] newPositions = new int[count];
+        List<byte[]> liveEvents = new ArrayList<>(512);
+        for(int i = 0; i < count; ++i){
+            if(used[i]){
+                newPositions[i] = liveEvents.size();
+                liveEvents.add(events.get(i));
+            }
+        }
+        for(PartialMatchList list : liveLists){
+            list.remapPointers(newPositions);
+        }
+        events.clear();
+        events.addAll(liveEvents);
+        count = events.size();
+    }
+
+    public void clear(){
+        events.clear();
+        count = 0;
+    }
+
     public List<byte[]> getAllEvents(){
         return events;
     }
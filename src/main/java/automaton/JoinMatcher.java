@@ -0,0 +1,281 @@
+package automaton;
+
+import common.EventSchema;
+import common.IndexValuePair;
+import condition.DependentConstraint;
+import condition.IndependentConstraint;
+import pattern.QueryPattern;
+
+import java.util.*;
+
+/**
+ * join-based evaluation engine, it evaluates a SEQ pattern as a sequence of window joins
+ * over candidate lists of variables (see ACER.twoPhaseFilteringByVariable) instead of simulating NFA.
+ * For skip-till-any-match, a match is a combination of candidate events such that
+ * (1) events are in arrival order of the pattern, (2) they are within the query window,
+ * (3) they satisfy dependent constraints. So we join variables in order of increasing cardinality:
+ * the first variable scans its candidate list, and each following variable is a band join on timestamp,
+ * i.e., a binary search locates the candidates between the matched neighbour variables
+ * and inside [maxTime - tau, minTime + tau], then dependent constraints of this join are checked.
+ * Joins are pipelined (depth first), so intermediate results are not materialized.
+ * -------------------------------------------------------------------------------------
+ * arrival order of events is <timestamp, rid> (see NaiveIndex.mergeIndexValuePair), so matches are the same as NFA,
+ * full matches are delivered to an NFA generated by the same pattern (see NFA.addFullMatch)
+ * -------------------------------------------------------------------------------------
+ * candidates can be projected records built from covering columns (see ACER.enableCoveringColumns),
+ * then output NFA fetches events of delivered matches (see NFA.setMaterializer), count queries never fetch events
+ */
+public class JoinMatcher {
+    private final int varNum;                       // number of variables
+    private final List<String> varNames;            // variable names (pattern order)
+    private final String[] eventTypes;              // event types (pattern order)
+    private final QueryPattern pattern;             // query pattern
+    private final Map<String, Double> weights;      // variable name -> estimated cardinality or selectivity
+    private final long window;                      // query window
+    private final NFA output;                       // receives full matches
+    private int[] order;                            // join order, order[k] is a variable position
+    private TransitionPredicate[] predicates;       // predicate of each join
+    private Candidates[] candidates;                // candidates of each join
+    private EventSchema schema;                     // event schema of current join
+    // current (partial) match, arrays are indexed by variable positions of the pattern
+    private byte[][] records;
+    private long[] timestamps;
+    private long[] keys;
+    private boolean[] matched;
+    private final HashMap<Long, Integer> pointers;  // rid key -> record pointer of output's event cache
+
+    /**
+     * @param pattern       SEQ pattern
+     * @param weights       variable name -> estimated cardinality (or selectivity), small weight is joined first
+     * @param output        NFA generated by the same pattern, it receives full matches
+     */
+    public JoinMatcher(QueryPattern pattern, Map<String, Double> weights, NFA output){
+        if(!pattern.onlyContainSEQ){
+            throw new RuntimeException("join matcher only supports SEQ pattern");
+        }
+        // e.g., PATTERN SEQ(IBM a, Oracle b, IBM c, Oracle d)
+        String[] seqEvent = pattern.getPatternStr().split("[()]")[1].split(",");
+        varNum = seqEvent.length;
+        varNames = new ArrayList<>(varNum);
+        eventTypes = new String[varNum];
+        for(int i = 0; i < varNum; ++i){
+            String[] s = seqEvent[i].trim().split(" ");
+            eventTypes[i] = s[0];
+            varNames.add(s[1].trim());
+        }
+        this.pattern = pattern;
+        this.weights = weights;
+        window = pattern.getTau();
+        this.output = output;
+        pointers = new HashMap<>();
+    }
+
+    /**
+     * @param pattern       query pattern
+     * @return              true if join matcher can process this pattern
+     */
+    public static boolean canProcess(QueryPattern pattern){
+        return pattern.onlyContainSEQ && pattern.getStrategy() == MatchStrategy.SKIP_TILL_ANY_MATCH;
+    }
+
+    /**
+     * join order: small weight first, ties are broken by variable positions
+     * @return      join order (variable names)
+     */
+    public List<String> getJoinOrder(){
+        Integer[] sortedPositions = new Integer[varNum];
+        for(int i = 0; i < varNum; ++i){
+            sortedPositions[i] = i;
+        }
+        Arrays.sort(sortedPositions, Comparator.comparingDouble(i -> weights.getOrDefault(varNames.get(i), Double.MAX_VALUE)));
+        List<String> ans = new ArrayList<>(varNum);
+        for(int position : sortedPositions){
+            ans.add(varNames.get(position));
+        }
+        return ans;
+    }
+
+    /**
+     * join candidate lists of variables, full matches are delivered to output NFA
+     * @param schema        event schema
+     * @param varPairs      variable name -> index value pairs of candidates
+     * @param varEvents     variable name -> candidate events (same order as index value pairs)
+     */
+    public void join(EventSchema schema, Map<String, List<IndexValuePair>> varPairs, Map<String, List<byte[]>> varEvents){
+        this.schema = schema;
+        List<String> joinOrder = getJoinOrder();
+        order = new int[varNum];
+        predicates = new TransitionPredicate[varNum];
+        candidates = new Candidates[varNum];
+        Set<String> joinedVarNames = new HashSet<>();
+        for(int k = 0; k < varNum; ++k){
+            String curVarName = joinOrder.get(k);
+            int position = varNames.indexOf(curVarName);
+            order[k] = position;
+            List<IndependentConstraint> icList = pattern.getICListUsingVarName(curVarName);
+            List<DependentConstraint> dcList = pattern.getDC(joinedVarNames, curVarName);
+            predicates[k] = new TransitionPredicate(schema, eventTypes[position], icList, dcList, curVarName, varNames);
+            candidates[k] = new Candidates(schema, predicates[k], varPairs.get(curVarName), varEvents.get(curVarName));
+            joinedVarNames.add(curVarName);
+            if(candidates[k].size == 0){
+                return;
+            }
+        }
+
+        records = new byte[varNum][];
+        timestamps = new long[varNum];
+        keys = new long[varNum];
+        matched = new boolean[varNum];
+        Candidates first = candidates[0];
+        int position = order[0];
+        for(int i = 0; i < first.size; ++i){
+            bind(position, first, i);
+            probe(1, first.timestamps[i], first.timestamps[i]);
+        }
+        matched[position] = false;
+    }
+
+    private void bind(int position, Candidates c, int i){
+        records[position] = c.records[i];
+        timestamps[position] = c.timestamps[i];
+        keys[position] = c.keys[i];
+        matched[position] = true;
+    }
+
+    /**
+     * band join of current partial match and candidates of order[step]
+     * @param step          join step
+     * @param minTime       minimum timestamp of current partial match
+     * @param maxTime       maximum timestamp of current partial match
+     */
+    private void probe(int step, long minTime, long maxTime){
+        if(step == varNum){
+            // a match ends with its last event (see NFA)
+            output.addFullMatch(schema, records, keys, pointers, minTime, maxTime);
+            return;
+        }
+        // candidate is after previous matched variable and before next matched variable
+        int position = order[step];
+        int prev = position - 1;
+        while(prev >= 0 && !matched[prev]){
+            prev--;
+        }
+        int next = position + 1;
+        while(next < varNum && !matched[next]){
+            next++;
+        }
+
+        Candidates c = candidates[step];
+        int start = c.lowerBound(maxTime - window);
+        if(prev >= 0){
+            start = Math.max(start, c.upperBound(timestamps[prev], keys[prev]));
+        }
+        long maxTimestamp = minTime + window;
+        TransitionPredicate predicate = predicates[step];
+        boolean hasDC = predicate.hasDC();
+        for(int i = start; i < c.size && c.timestamps[i] <= maxTimestamp; ++i){
+            if(next < varNum && compare(c.timestamps[i], c.keys[i], timestamps[next], keys[next]) >= 0){
+                break;
+            }
+            if(hasDC){
+                predicate.loadCurrentValues(c.records[i]);
+                if(!predicate.checkDC(records)){
+                    continue;
+                }
+            }
+            bind(position, c, i);
+            probe(step + 1, Math.min(minTime, c.timestamps[i]), Math.max(maxTime, c.timestamps[i]));
+        }
+        matched[position] = false;
+    }
+
+    private static int compare(long timestamp1, long key1, long timestamp2, long key2){
+        return timestamp1 != timestamp2 ? Long.compare(timestamp1, timestamp2) : Long.compare(key1, key2);
+    }
+
+    /**
+     * candidates of a variable in arrival order, events that violate independent constraints are removed
+     */
+    private static class Candidates {
+        private final long[] timestamps;
+        private final long[] keys;
+        private final byte[][] records;
+        private int size;
+
+        Candidates(EventSchema schema, TransitionPredicate predicate, List<IndexValuePair> pairs, List<byte[]> events){
+            int num = pairs == null ? 0 : pairs.size();
+            timestamps = new long[num];
+            keys = new long[num];
+            records = new byte[num][];
+            boolean sorted = true;
+            for(int i = 0; i < num; ++i){
+                byte[] record = events.get(i);
+                if(!predicate.checkIC(record)){
+                    continue;
+                }
+                IndexValuePair pair = pairs.get(i);
+                timestamps[size] = schema.getTimestampFromRecord(record);
+                keys[size] = pair.rid().getLongKey();
+                records[size] = record;
+                if(size > 0 && compare(timestamps[size - 1], keys[size - 1], timestamps[size], keys[size]) > 0){
+                    sorted = false;
+                }
+                size++;
+            }
+            // out-of-order insertion generates unordered pairs
+            if(!sorted){
+                sort();
+            }
+        }
+
+        private void sort(){
+            Integer[] idxs = new Integer[size];
+            for(int i = 0; i < size; ++i){
+                idxs[i] = i;
+            }
+            Arrays.sort(idxs, (i, j) -> compare(timestamps[i], keys[i], timestamps[j], keys[j]));
+            long[] oldTimestamps = timestamps.clone();
+            long[] oldKeys = keys.clone();
+            byte[][] oldRecords = records.clone();
+            for(int i = 0; i < size; ++i){
+                timestamps[i] = oldTimestamps[idxs[i]];
+                keys[i] = oldKeys[idxs[i]];
+                records[i] = oldRecords[idxs[i]];
+            }
+        }
+
+        /**
+         * @return      position of the first candidate whose timestamp >= timestamp
+         */
+        int lowerBound(long timestamp){
+            int lo = 0;
+            int hi = size;
+            while(lo < hi){
+                int mid = (lo + hi) >>> 1;
+                if(timestamps[mid] < timestamp){
+                    lo = mid + 1;
+                }else{
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * @return      position of the first candidate that arrives after <timestamp, key>
+         */
+        int upperBound(long timestamp, long key){
+            int lo = 0;
+            int hi = size;
+            while(lo < hi){
+                int mid = (lo + hi) >>> 1;
+                if(compare(timestamps[mid], keys[mid], timestamp, key) <= 0){
+                    lo = mid + 1;
+                }else{
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
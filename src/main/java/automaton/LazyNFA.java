@@ -0,0 +1,353 @@
+package automaton;
+
+import common.EventSchema;
+import common.Metadata;
+import condition.DependentConstraint;
+import condition.IndependentConstraint;
+import pattern.QueryPattern;
+
+import java.util.*;
+
+/**
+ * lazy evaluation engine, it matches variables in order of increasing selectivity (rare event first)
+ * NFA creates a partial match for every event of the first variable, e.g.,
+ * SEQ(BATTERY a, ROBBERY b) creates a partial match for each BATTERY event although ROBBERY events are rare.
+ * Here we start partial matches from the rarest variable and buffer events of frequent variables:
+ * 1. events that satisfy independent constraints of a variable are buffered within the query window
+ * 2. a partial match at step k has matched variables order[0], ..., order[k - 1],
+ *    it is extended by buffered events of order[k] that arrived before it (buffer scan),
+ *    and if order[k] is after all matched variables in the pattern, it waits for future events of order[k]
+ * arrival order of events must satisfy the pattern, so each extension only scans events between
+ * the arrival sequence numbers of its neighbour variables. An extension event either arrived before
+ * the partial match (scan) or after it (wait), so each match is generated exactly once.
+ * -------------------------------------------------------------------------------------
+ * LazyNFA processes SEQ patterns under skip-till-any-match and events in timestamp order (see canProcess),
+ * full matches are delivered to an NFA generated by the same pattern,
+ * so callers read matches from that NFA (countTuple, getTuple or its match sink)
+ */
+public class LazyNFA {
+    // a partial match, events and sequence numbers are indexed by variable positions of the pattern
+    private record LazyMatch(byte[][] events, long[] seqs, long minTime, long maxTime){}
+
+    private final int varNum;                       // number of variables
+    private final List<String> varNames;            // variable names (pattern order)
+    private final String[] eventTypes;              // event types (pattern order)
+    private final int[] order;                      // evaluation order, order[k] is a variable position
+    private final long window;                      // query window
+    private final NFA output;                       // receives full matches
+    private final List<List<IndependentConstraint>> icLists;   // independent constraints of each step
+    private final List<List<DependentConstraint>> dcLists;      // dependent constraints of each step
+    private final TransitionPredicate[] predicates; // predicate of each step
+    private EventSchema predicateSchema;            // predicates are compiled for this schema
+    private final EventBuffer[] buffers;            // buffered events of each step (step 0 is not buffered)
+    private final List<List<LazyMatch>> waitings;   // partial matches that wait for future events of each step
+    private final int[] waitingSizes;               // number of waiting partial matches before current event
+    private final boolean[] passIC;                 // whether current event satisfies independent constraints of each step
+    private final HashMap<Long, Integer> pointers;  // sequence number -> record pointer of output's event cache
+    private long seq;                               // sequence number of next event
+
+    /**
+     * @param pattern           SEQ pattern
+     * @param selectivities     variable name -> estimated selectivity (e.g., ACER.estimateSelectivity)
+     * @param output            NFA generated by the same pattern, it receives full matches
+     */
+    public LazyNFA(QueryPattern pattern, Map<String, Double> selectivities, NFA output){
+        if(!pattern.onlyContainSEQ){
+            throw new RuntimeException("lazy NFA only supports SEQ pattern");
+        }
+        // e.g., PATTERN SEQ(IBM a, Oracle b, IBM c, Oracle d)
+        String[] seqEvent = pattern.getPatternStr().split("[()]")[1].split(",");
+        varNum = seqEvent.length;
+        varNames = new ArrayList<>(varNum);
+        eventTypes = new String[varNum];
+        for(int i = 0; i < varNum; ++i){
+            String[] s = seqEvent[i].trim().split(" ");
+            eventTypes[i] = s[0];
+            varNames.add(s[1].trim());
+        }
+
+        // rare variables first, ties are broken by variable positions
+        Integer[] sortedPositions = new Integer[varNum];
+        for(int i = 0; i < varNum; ++i){
+            sortedPositions[i] = i;
+        }
+        Arrays.sort(sortedPositions, Comparator.comparingDouble(i -> selectivities.getOrDefault(varNames.get(i), 1.0)));
+        order = new int[varNum];
+        for(int k = 0; k < varNum; ++k){
+            order[k] = sortedPositions[k];
+        }
+
+        window = pattern.getTau();
+        this.output = output;
+        icLists = new ArrayList<>(varNum);
+        dcLists = new ArrayList<>(varNum);
+        Set<String> matchedVarNames = new HashSet<>();
+        for(int k = 0; k < varNum; ++k){
+            String curVarName = varNames.get(order[k]);
+            icLists.add(pattern.getICListUsingVarName(curVarName));
+            dcLists.add(pattern.getDC(matchedVarNames, curVarName));
+            matchedVarNames.add(curVarName);
+        }
+        predicates = new TransitionPredicate[varNum];
+        EventSchema schema = Metadata.getInstance().getEventSchema(pattern.getSchemaName());
+        if(schema != null){
+            compile(schema);
+        }
+
+        buffers = new EventBuffer[varNum];
+        waitings = new ArrayList<>(varNum);
+        for(int k = 0; k < varNum; ++k){
+            buffers[k] = new EventBuffer();
+            waitings.add(new ArrayList<>());
+        }
+        waitingSizes = new int[varNum];
+        passIC = new boolean[varNum];
+        pointers = new HashMap<>();
+        seq = 0;
+    }
+
+    /**
+     * dependent constraints of a step are resolved to variable positions of the pattern (see TransitionPredicate.checkDC)
+     * @param schema        event schema
+     */
+    private void compile(EventSchema schema){
+        for(int k = 0; k < varNum; ++k){
+            predicates[k] = new TransitionPredicate(schema, eventTypes[order[k]], icLists.get(k), dcLists.get(k),
+                    varNames.get(order[k]), varNames);
+        }
+        predicateSchema = schema;
+    }
+
+    /**
+     * @param pattern       query pattern
+     * @param schema        event schema
+     * @param events        filtered events
+     * @return              true if lazy NFA can process these events
+     */
+    public static boolean canProcess(QueryPattern pattern, EventSchema schema, List<byte[]> events){
+        if(!pattern.onlyContainSEQ || pattern.getStrategy() != MatchStrategy.SKIP_TILL_ANY_MATCH){
+            return false;
+        }
+        // buffered events and waiting partial matches are expired by timestamp of current event
+        long previousTimestamp = Long.MIN_VALUE;
+        for(byte[] event : events){
+            long timestamp = schema.getTimestampFromRecord(event);
+            if(timestamp < previousTimestamp){
+                return false;
+            }
+            previousTimestamp = timestamp;
+        }
+        return true;
+    }
+
+    /**
+     * @return      evaluation order (variable names)
+     */
+    public List<String> getEvaluationOrder(){
+        List<String> ans = new ArrayList<>(varNum);
+        for(int position : order){
+            ans.add(varNames.get(position));
+        }
+        return ans;
+    }
+
+    /**
+     * consume an event, events must be in timestamp order
+     * @param schema        event schema
+     * @param record        event
+     */
+    public void consume(EventSchema schema, byte[] record){
+        if(predicateSchema != schema){
+            compile(schema);
+        }
+        long timestamp = schema.getTimestampFromRecord(record);
+        long curSeq = seq++;
+        long minTime = timestamp - window;
+        for(int k = 1; k < varNum; ++k){
+            buffers[k].expire(minTime);
+            List<LazyMatch> waiting = waitings.get(k);
+            waiting.removeIf(m -> m.minTime() < minTime);
+            waitingSizes[k] = waiting.size();
+        }
+
+        // extend waiting partial matches, partial matches generated by this event are invisible to this event
+        for(int k = 0; k < varNum; ++k){
+            passIC[k] = predicates[k].checkIC(record);
+        }
+        for(int k = 1; k < varNum; ++k){
+            if(!passIC[k] || waitingSizes[k] == 0){
+                continue;
+            }
+            TransitionPredicate predicate = predicates[k];
+            boolean hasDC = predicate.hasDC();
+            if(hasDC){
+                // advance only uses predicates of later steps, so current values are not overwritten
+                predicate.loadCurrentValues(record);
+            }
+            List<LazyMatch> waiting = waitings.get(k);
+            for(int i = 0; i < waitingSizes[k]; ++i){
+                LazyMatch m = waiting.get(i);
+                if(hasDC && !predicate.checkDC(m.events())){
+                    continue;
+                }
+                advance(extend(m, k, record, curSeq, timestamp), k + 1, timestamp);
+            }
+        }
+        // rarest variable starts partial matches
+        if(passIC[0]){
+            byte[][] events = new byte[varNum][];
+            long[] seqs = new long[varNum];
+            events[order[0]] = record;
+            seqs[order[0]] = curSeq;
+            advance(new LazyMatch(events, seqs, timestamp, timestamp), 1, timestamp);
+        }
+        for(int k = 1; k < varNum; ++k){
+            if(passIC[k]){
+                buffers[k].add(curSeq, timestamp, record);
+            }
+        }
+    }
+
+    private LazyMatch extend(LazyMatch m, int step, byte[] record, long recordSeq, long timestamp){
+        int position = order[step];
+        byte[][] events = m.events().clone();
+        long[] seqs = m.seqs().clone();
+        events[position] = record;
+        seqs[position] = recordSeq;
+        return new LazyMatch(events, seqs, Math.min(m.minTime(), timestamp), Math.max(m.maxTime(), timestamp));
+    }
+
+    /**
+     * extend a partial match with buffered events, then it waits for future events if necessary
+     * @param m             partial match that matched order[0], ..., order[step - 1]
+     * @param step          next step
+     * @param endTime       timestamp of current event
+     */
+    private void advance(LazyMatch m, int step, long endTime){
+        if(step == varNum){
+            emit(m, endTime);
+            return;
+        }
+        // arrival order: events of previous variables < event of this variable < events of next variables
+        int position = order[step];
+        long lowSeq = -1;
+        long highSeq = Long.MAX_VALUE;
+        for(int k = 0; k < step; ++k){
+            int matchedPosition = order[k];
+            long matchedSeq = m.seqs()[matchedPosition];
+            if(matchedPosition < position){
+                lowSeq = Math.max(lowSeq, matchedSeq);
+            }else{
+                highSeq = Math.min(highSeq, matchedSeq);
+            }
+        }
+
+        TransitionPredicate predicate = predicates[step];
+        boolean hasDC = predicate.hasDC();
+        EventBuffer buffer = buffers[step];
+        for(int i = buffer.lowerBound(lowSeq + 1); i < buffer.size() && buffer.getSeq(i) < highSeq; ++i){
+            long timestamp = buffer.getTimestamp(i);
+            if(Math.max(m.maxTime(), timestamp) - Math.min(m.minTime(), timestamp) > window){
+                continue;
+            }
+            byte[] record = buffer.getRecord(i);
+            if(hasDC){
+                predicate.loadCurrentValues(record);
+                if(!predicate.checkDC(m.events())){
+                    continue;
+                }
+            }
+            advance(extend(m, step, record, buffer.getSeq(i), timestamp), step + 1, endTime);
+        }
+
+        // events of this variable arrive after all matched events
+        if(highSeq == Long.MAX_VALUE){
+            waitings.get(step).add(m);
+        }
+    }
+
+    private void emit(LazyMatch m, long endTime){
+        // a match ends with the event that generates it (see NFA)
+        output.addFullMatch(predicateSchema, m.events(), m.seqs(), pointers, m.minTime(), endTime);
+    }
+
+    /**
+     * events of a variable in arrival order, expired events are dropped from head
+     */
+    private static class EventBuffer {
+        private long[] seqs;
+        private long[] timestamps;
+        private byte[][] records;
+        private int head;
+        private int size;
+
+        EventBuffer(){
+            seqs = new long[64];
+            timestamps = new long[64];
+            records = new byte[64][];
+        }
+
+        void add(long seq, long timestamp, byte[] record){
+            if(size == seqs.length){
+                int liveNum = size - head;
+                int newCapacity = liveNum + 1 > (seqs.length >> 1) ? seqs.length << 1 : seqs.length;
+                long[] newSeqs = new long[newCapacity];
+                long[] newTimestamps = new long[newCapacity];
+                byte[][] newRecords = new byte[newCapacity][];
+                System.arraycopy(seqs, head, newSeqs, 0, liveNum);
+                System.arraycopy(timestamps, head, newTimestamps, 0, liveNum);
+                System.arraycopy(records, head, newRecords, 0, liveNum);
+                seqs = newSeqs;
+                timestamps = newTimestamps;
+                records = newRecords;
+                head = 0;
+                size = liveNum;
+            }
+            seqs[size] = seq;
+            timestamps[size] = timestamp;
+            records[size] = record;
+            size++;
+        }
+
+        void expire(long minTime){
+            while(head < size && timestamps[head] < minTime){
+                records[head] = null;
+                head++;
+            }
+        }
+
+        int size(){
+            return size;
+        }
+
+        /**
+         * @param seq       sequence number
+         * @return          position of the first event whose sequence number >= seq
+         */
+        int lowerBound(long seq){
+            int lo = head;
+            int hi = size;
+            while(lo < hi){
+                int mid = (lo + hi) >>> 1;
+                if(seqs[mid] < seq){
+                    lo = mid + 1;
+                }else{
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        long getSeq(int i){
+            return seqs[i];
+        }
+
+        long getTimestamp(int i){
+            return timestamps[i];
+        }
+
+        byte[] getRecord(int i){
+            return records[i];
+        }
+    }
+}
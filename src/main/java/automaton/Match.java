@@ -0,0 +1,148 @@
+package automaton;
+
+import common.Converter;
+import common.EventSchema;
+
+import java.util.List;
+
+/**
+ * a full match that is delivered to a MatchSink
+ * matched events are kept as byte records, typed accessors read values at fixed offsets,
+ * and a match is formatted to text only when toTuple or toString is called
+ * -------------------------------------------------------------------------------------
+ * note that NFA reuses a match object when delivering matches,
+ * please call copy() or toTuple() if you want to keep a match after onMatch returns
+ */
+public class Match {
+    private final EventSchema schema;
+    private final List<String> varNames;    // variable names of final state (slot order)
+    private final byte[][] events;          // matched events
+    private long startTime;                 // timestamp of first event
+    private long endTime;                   // timestamp of last event
+
+    public Match(EventSchema schema, List<String> varNames){
+        this.schema = schema;
+        this.varNames = varNames;
+        events = new byte[varNames.size()][];
+    }
+
+    void set(int i, byte[] event){
+        events[i] = event;
+    }
+
+    void setTimes(long startTime, long endTime){
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public int size(){
+        return events.length;
+    }
+
+    public String getVarName(int i){
+        return varNames.get(i);
+    }
+
+    public long getStartTime(){
+        return startTime;
+    }
+
+    public long getEndTime(){
+        return endTime;
+    }
+
+    /**
+     * @param i     i-th event of this match
+     * @return      byte record (please do not modify it)
+     */
+    public byte[] getEvent(int i){
+        return events[i];
+    }
+
+    public String getEventType(int i){
+        return schema.getTypeFromBytesRecord(events[i], schema.getTypeIdx());
+    }
+
+    public long getTimestamp(int i){
+        return schema.getTimestampFromRecord(events[i]);
+    }
+
+    /**
+     * @param i         i-th event of this match
+     * @param attrName  attribute name (INT)
+     * @return          attribute value
+     */
+    public int getInt(int i, String attrName){
+        int idx = schema.getAttrNameIdx(attrName);
+        return Converter.readInt(events[i], schema.getAttrStartPos(idx));
+    }
+
+    /**
+     * FLOAT/DOUBLE values are stored as long values after magnification
+     * @param i         i-th event of this match
+     * @param attrName  attribute name (FLOAT/DOUBLE)
+     * @return          attribute value
+     */
+    public double getDouble(int i, String attrName){
+        int idx = schema.getAttrNameIdx(attrName);
+        long v = Converter.readLong(events[i], schema.getAttrStartPos(idx));
+        return v / Math.pow(10, schema.getIthDecimalLens(idx));
+    }
+
+    /**
+     * @param i         i-th event of this match
+     * @param attrName  attribute name
+     * @return          stored value, i.e., value used by constraints
+     */
+    public long getStoredValue(int i, String attrName){
+        int idx = schema.getAttrNameIdx(attrName);
+        int pos = schema.getAttrStartPos(idx);
+        String attrType = schema.getIthAttrType(idx);
+        if(attrType.equals("INT") || attrType.equals("TYPE")){
+            return Converter.readInt(events[i], pos);
+        }else if(attrType.equals("VARCHAR")){
+            throw new RuntimeException("attribute '" + attrName + "' is not a numeric attribute");
+        }
+        return Converter.readLong(events[i], pos);
+    }
+
+    public String getString(int i, String attrName){
+        return schema.getStringValue(events[i], schema.getAttrNameIdx(attrName));
+    }
+
+    /**
+     * @return      a match that does not share events array with this match
+     */
+    public Match copy(){
+        Match match = new Match(schema, varNames);
+        System.arraycopy(events, 0, match.events, 0, events.length);
+        match.setTimes(startTime, endTime);
+        return match;
+    }
+
+    /**
+     * format this match to a string tuple
+     * @return      tuple
+     */
+    public Tuple toTuple(){
+        Tuple t = new Tuple(events.length);
+        for(byte[] event : events){
+            t.addEvent(schema.byteEventToString(event));
+        }
+        return t;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder ans = new StringBuilder(512);
+        ans.append("[");
+        for(int i = 0; i < events.length; ++i){
+            if(i != 0){
+                ans.append("|");
+            }
+            schema.appendEventString(events[i], ans);
+        }
+        ans.append("]");
+        return ans.toString();
+    }
+}
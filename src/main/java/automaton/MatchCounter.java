@@ -0,0 +1,72 @@
+package automaton;
+
+import java.util.Arrays;
+
+/**
+ * full match counter of a final state, it is used by count-only NFA
+ * we only store (end time, count) pairs, a match ends with the event that generates it,
+ * so adjacent matches usually have the same end time
+ */
+class MatchCounter {
+    private long[] endTimes;        // end timestamps
+    private long[] counts;          // number of matches that end at endTimes[i]
+    private int size;               // number of pairs
+    private long total;             // number of matches
+
+    MatchCounter(){
+        endTimes = new long[64];
+        counts = new long[64];
+        size = 0;
+        total = 0;
+    }
+
+    void add(long endTime, long count){
+        total += count;
+        if(size > 0 && endTimes[size - 1] == endTime){
+            counts[size - 1] += count;
+            return;
+        }
+        if(size == endTimes.length){
+            endTimes = Arrays.copyOf(endTimes, size << 1);
+            counts = Arrays.copyOf(counts, size << 1);
+        }
+        endTimes[size] = endTime;
+        counts[size] = count;
+        size++;
+    }
+
+    /**
+     * add all pairs of another counter, parallel matching merges counters of segments
+     * @param other     another counter
+     */
+    void addAll(MatchCounter other){
+        for(int i = 0; i < other.size; ++i){
+            add(other.endTimes[i], other.counts[i]);
+        }
+    }
+
+    long getTotal(){
+        return total;
+    }
+
+    /**
+     * count matches whose end time falls in [minEndTime, maxEndTime)
+     * @param minEndTime    minimum end time (inclusive)
+     * @param maxEndTime    maximum end time (exclusive)
+     * @return              number of matches
+     */
+    long count(long minEndTime, long maxEndTime){
+        long cnt = 0;
+        for(int i = 0; i < size; ++i){
+            if(endTimes[i] >= minEndTime && endTimes[i] < maxEndTime){
+                cnt += counts[i];
+            }
+        }
+        return cnt;
+    }
+
+    void clear(){
+        size = 0;
+        total = 0;
+    }
+}
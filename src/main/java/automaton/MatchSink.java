@@ -0,0 +1,14 @@
+package automaton;
+
+/**
+ * receive full matches as soon as they are generated (see NFA.setMatchSink)
+ * a sink does not need to keep all matches in memory, and it only formats matches when needed
+ */
+@FunctionalInterface
+public interface MatchSink {
+    /**
+     * new full match, note that the match object is reused after this function returns
+     * @param match         full match
+     */
+    void onMatch(Match match);
+}
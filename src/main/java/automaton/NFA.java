@@ -3,10 +3,10 @@ package automaton;
 import common.*;
 import condition.DependentConstraint;
 import condition.IndependentConstraint;
-import pattern.DecomposeUtils;
 import pattern.QueryPattern;
 
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 /**
  * [updated] ultra efficient NFA to extract matches
@@ -20,20 +20,32 @@ import java.util.*;
  * thus we do not care detailed automata
  */
 public class NFA {
+    // count queries use count-only NFA
+    public static final boolean ENABLE_COUNT_ONLY = true;
+
+    // reuse compiled automata (see NFATemplateCache)
+    public static final boolean ENABLE_NFA_CACHE = true;
+
     private int stateNum;                           // number of states
     private HashMap<Integer, State> stateMap;       // all states
     private long window;                            // query window condition
-    private  Set<State> activeStates;               // active states
+    private final BitSet activeStates;              // ids of active states
+    private final BitSet nextActiveStates;          // ids of states that receive new partial matches
     private final EventCache eventCache;            // event cache
+    private boolean countOnly;                      // count-only NFA does not keep matches, see transferCount
+    private EventSchema countPlanSchema;            // count plans are built for this schema
+    private MatchSink matchSink;                    // full matches are delivered to it instead of being kept
+    private UnaryOperator<byte[]> materializer;     // cached record -> event of a delivered match, null means itself
 
     public NFA(){
         stateNum = 0;
         stateMap = new HashMap<>();
-        activeStates = new HashSet<>();
+        activeStates = new BitSet();
+        nextActiveStates = new BitSet();
         eventCache = new EventCache();
         window = Long.MAX_VALUE;
         State startState = createState("start", true, false);
-        activeStates.add(startState);
+        activeStates.set(startState.getStateId());
     }
 
     /**
@@ -65,7 +77,7 @@ public class NFA {
      * @return all states whose name is stateName
      */
     public List<State> getState(String stateName){
-        // AND(Type1 a, Type2 b) -> a and b has two states
+        // [updated] states of AND/OR pattern are named by their matched variables, e.g., AND(Type1 a, Type2 b) -> a,b
         List<State> states = new ArrayList<>();
         for (State state : stateMap.values()) {
             if(stateName.equals(state.getStateName())){
@@ -96,6 +108,10 @@ public class NFA {
     }
 
     public void printMatch(EventSchema schema){
+        if(countOnly){
+            System.out.println("count-only NFA, result size: " + countTuple());
+            return;
+        }
         List<State> finalStates = getFinalStates();
 
         int count = 0;
@@ -104,8 +120,7 @@ public class NFA {
             //System.out.println(state);
             PartialMatchList partialMatchList = state.getPartialMatchList();
             if(partialMatchList != null){
-                List<PartialMatch> fullMatches = partialMatchList.getPartialMatchList();
-                for(PartialMatch fullMatch : fullMatches){
+                for(PartialMatch fullMatch : partialMatchList.getPartialMatchList()){
                     count++;
                     System.out.println(fullMatch.getSingleMatchedResult(eventCache, schema));
                 }
@@ -114,8 +129,49 @@ public class NFA {
         System.out.println("result size: " + count);
     }
 
+    /**
+     * [updated] when the RETURN clause is COUNT, we generate a count-only NFA,
+     * it propagates match counts and never materializes matches
+     * @param pattern       query pattern
+     */
     public void generateNFAUsingQueryPattern(QueryPattern pattern){
+        String returnStr = pattern.getReturnStr();
+        boolean isCountQuery = returnStr != null && returnStr.contains("COUNT");
+        generateNFAUsingQueryPattern(pattern, ENABLE_COUNT_ONLY && isCountQuery);
+    }
+
+    /**
+     * @param pattern       query pattern
+     * @param countOnly     true: generate a count-only NFA, getTuple cannot be called
+     */
+    public void generateNFAUsingQueryPattern(QueryPattern pattern, boolean countOnly){
+        EventSchema schema = Metadata.getInstance().getEventSchema(pattern.getSchemaName());
+        // [updated] a fresh NFA is instantiated from a cached template, so repeated queries skip compilation
+        if(ENABLE_NFA_CACHE && schema != null && stateNum == 1 && stateMap.get(0).getTransactions().isEmpty()){
+            NFATemplateCache cache = NFATemplateCache.getInstance();
+            // normalized key ignores letter case, so we also keep original pattern string
+            String key = (countOnly ? "COUNT|" : "TUPLE|") + pattern.getPatternStr() + "|" + pattern.getNormalizedKey();
+            NFA template = cache.getTemplate(key, schema);
+            if(template == null){
+                template = new NFA();
+                template.build(pattern, countOnly, schema);
+                cache.putTemplate(key, schema, template);
+            }
+            instantiate(template);
+            return;
+        }
+        build(pattern, countOnly, schema);
+    }
+
+    /**
+     * create states and transitions, and then compile predicates
+     * @param pattern       query pattern
+     * @param countOnly     true: generate a count-only NFA
+     * @param schema        event schema, null means predicates are compiled when consuming events
+     */
+    private void build(QueryPattern pattern, boolean countOnly, EventSchema schema){
         this.window = pattern.getTau();
+        this.countOnly = countOnly;
 
         if(pattern.onlyContainSEQ){
             // e.g., PATTERN SEQ(IBM a, Oracle b, IBM c, Oracle d)
@@ -134,114 +190,406 @@ public class NFA {
             int varNum = varNames.length;
 
             // create all states
-            for(int i = 0; i < varNum - 1; ++i){
-                createState(varNames[i], false, false);
+            stateMap.get(0).setVarNames(List.of());
+            for(int i = 0; i < varNum; ++i){
+                State state = createState(varNames[i], false, i == varNum - 1);
+                state.setVarNames(List.of(varNames).subList(0, i + 1));
             }
-            createState(varNames[varNum - 1], false, true);
 
             Set<String> preVarName = new HashSet<>();
+            List<String> preVarNames = new ArrayList<>(varNum);
             // add all transaction
             for(int i = 0; i < varNum; ++i){
                 String curVarName = varNames[i];
                 List<IndependentConstraint> icList = pattern.getICListUsingVarName(curVarName);
                 List<DependentConstraint> dcList = pattern.getDC(preVarName, curVarName);
-                addTransition(stateMap.get(i), stateMap.get(i + 1), eventTypes[i], icList, dcList);
+                addTransition(stateMap.get(i), stateMap.get(i + 1), eventTypes[i], icList, dcList, new ArrayList<>(preVarNames));
                 preVarName.add(curVarName);
+                preVarNames.add(curVarName);
             }
         }else{
+            // [updated] AND/OR operators are evaluated natively instead of being expanded into sequential queries
             String patternStr = pattern.getPatternStr().substring(8);
-            List<String> seqQueries = DecomposeUtils.decomposingCEP(patternStr);
-
-            for(String query : seqQueries){
-                // e.g., PATTERN SEQ(IBM a, Oracle b, IBM c, Oracle d)
-                String[] seqStatement = query.split("[()]");
-                // seqEvent = "IBM a, Oracle b, IBM c, Oracle d"
-                String[] seqEvent = seqStatement[1].split(",");
-                String[] varNames = new String[seqEvent.length];
-                String[] eventTypes = new String[seqEvent.length];
-
-                for(int i = 0; i < seqEvent.length; ++i){
-                    String[] s = seqEvent[i].trim().split(" ");
-                    eventTypes[i] = s[0];
-                    varNames[i] = s[1].trim();
+            PatternAutomaton automaton = ENABLE_NFA_CACHE ? NFATemplateCache.getInstance().getAutomaton(patternStr) :
+                    new PatternAutomaton(patternStr);
+
+            // create all states, state 0 is start state
+            stateMap.get(0).setVarNames(automaton.getVarNames(0));
+            for(int id = 1; id < automaton.getStateNum(); ++id){
+                List<String> stateVarNames = automaton.getVarNames(id);
+                State state = createState(String.join(",", stateVarNames), false, automaton.isFinal(id));
+                state.setVarNames(stateVarNames);
+            }
+
+            // add all transactions
+            for(PatternAutomaton.Edge edge : automaton.getEdges()){
+                String curVarName = automaton.getVarName(edge.varIdx());
+                List<String> preVarNames = automaton.getVarNames(edge.from());
+                List<IndependentConstraint> icList = pattern.getICListUsingVarName(curVarName);
+                List<DependentConstraint> dcList = pattern.getDC(new HashSet<>(preVarNames), curVarName);
+                int insertSlot = automaton.getVarNames(edge.to()).indexOf(curVarName);
+                addTransition(stateMap.get(edge.from()), stateMap.get(edge.to()), automaton.getEventType(edge.varIdx()),
+                        icList, dcList, preVarNames, curVarName, insertSlot);
+            }
+        }
+
+        // [updated] precompile predicates, if the schema is unknown here, predicates are compiled when consuming events
+        if(schema != null){
+            for(State state : stateMap.values()){
+                for(Transition transition : state.getTransactions()){
+                    transition.compile(schema);
                 }
+            }
+            if(countOnly){
+                buildCountPlans(schema);
+            }
+        }
+        if(countOnly){
+            for(State state : getFinalStates()){
+                state.bindMatchCounter(new MatchCounter());
+            }
+        }
+    }
 
-                int varNum = varNames.length;
+    /**
+     * copy states and transitions of a compiled template, compiled predicates and count plans are shared,
+     * only per-execution state (buffers, counters and scratch values) is allocated
+     * @param template      compiled NFA that never consumes events
+     */
+    private void instantiate(NFA template){
+        window = template.window;
+        countOnly = template.countOnly;
+        countPlanSchema = template.countPlanSchema;
+        stateMap.get(0).setVarNames(template.stateMap.get(0).getVarNames());
+        for(int id = 1; id < template.stateNum; ++id){
+            State state = template.stateMap.get(id);
+            createState(state.getStateName(), false, state.getIsFinal()).setVarNames(state.getVarNames());
+        }
+        for(int id = 0; id < template.stateNum; ++id){
+            State templateState = template.stateMap.get(id);
+            State state = stateMap.get(id);
+            for(Transition transition : templateState.getTransactions()){
+                state.bindTransaction(transition.copy(stateMap.get(transition.getNextState().getStateId())));
+            }
+            AggregatedMatchList aggregatedList = templateState.getAggregatedList();
+            if(aggregatedList != null){
+                state.bindAggregatedList(new AggregatedMatchList(aggregatedList.getKeyWidth()));
+            }
+            if(templateState.getMatchCounter() != null){
+                state.bindMatchCounter(new MatchCounter());
+            }
+        }
+    }
 
-                List<State> createStates = new ArrayList<>(varNum);
+    /**
+     * remove all partial matches, matches and cached events, then this NFA can process another event list
+     * it is cheaper than generating a new NFA since states, transitions and predicates are kept
+     */
+    public void reset(){
+        for(State state : stateMap.values()){
+            state.bindBuffer(null);
+            AggregatedMatchList aggregatedList = state.getAggregatedList();
+            if(aggregatedList != null){
+                aggregatedList.clear();
+            }
+            MatchCounter matchCounter = state.getMatchCounter();
+            if(matchCounter != null){
+                matchCounter.clear();
+            }
+        }
+        eventCache.clear();
+        activeStates.clear();
+        activeStates.set(0);
+        nextActiveStates.clear();
+    }
 
-                // create all states
-                if(varNum == 1){
-                    State curState = createState(varNames[0], false, true);
-                    createStates.add(curState);
-                }else{
-                    for(int i = 0; i < varNum - 1; ++i){
-                        State curState = createState(varNames[i], false, false);
-                        createStates.add(curState);
-                    }
-                    // final state
-                    State curState = createState(varNames[varNum - 1], false, true);
-                    createStates.add(curState);
-                }
+    /**
+     * bind aggregated buffers and count plans, each aggregated row of a state keeps values of columns
+     * used by dependent constraints of its downstream transitions, e.g.,
+     * SEQ(A a, B b, C c) WHERE a.x < c.x AND b.y < c.y, columns of state a: [a.x], columns of state b: [a.x, b.y]
+     * @param schema        event schema
+     */
+    private void buildCountPlans(EventSchema schema){
+        Map<State, List<String>> columnMap = new HashMap<>();
+        State startState = stateMap.get(0);
+        collectColumns(startState, schema, columnMap);
+        for(State state : stateMap.values()){
+            if(!state.getIsFinal() && state != startState){
+                state.bindAggregatedList(new AggregatedMatchList(columnMap.get(state).size()));
+            }
+            for(Transition transition : state.getTransactions()){
+                State nextState = transition.getNextState();
+                CountPlan plan = new CountPlan(schema, transition.getPredicate(schema), transition.getVarName(),
+                        columnMap.get(state), columnMap.get(nextState));
+                transition.setCountPlan(plan);
+            }
+        }
+        countPlanSchema = schema;
+    }
 
-                Set<String> preVarName = new HashSet<>();
-                // add all transactions
-                State preState = stateMap.get(0);
-                for(int i = 0; i < varNum; ++i){
-                    String curVarName = varNames[i];
-                    List<IndependentConstraint> icList = pattern.getICListUsingVarName(curVarName);
-                    List<DependentConstraint> dcList = pattern.getDC(preVarName, curVarName);
-                    State curState = createStates.get(i);
-                    addTransition(preState, curState, eventTypes[i], icList, dcList);
-                    preState = curState;
-                    preVarName.add(curVarName);
+    private List<String> collectColumns(State state, EventSchema schema, Map<State, List<String>> columnMap){
+        // states of AND/OR pattern can be reached by several paths
+        List<String> collected = columnMap.get(state);
+        if(collected != null){
+            return collected;
+        }
+        // LinkedHashSet keeps column order
+        Set<String> columns = new LinkedHashSet<>();
+        for(Transition transition : state.getTransactions()){
+            TransitionPredicate predicate = transition.getPredicate(schema);
+            for(int i = 0; i < predicate.getDCNum(); ++i){
+                columns.add(predicate.getPreColumnName(i));
+            }
+            String curVarPrefix = transition.getVarName() + ".";
+            for(String column : collectColumns(transition.getNextState(), schema, columnMap)){
+                if(!column.startsWith(curVarPrefix)){
+                    columns.add(column);
                 }
             }
         }
+        List<String> ans = new ArrayList<>(columns);
+        columnMap.put(state, ans);
+        return ans;
     }
 
     public void addTransition(State curState, State nextState, String nextEventType,
-                              List<IndependentConstraint> icList, List<DependentConstraint> dcList){
+                              List<IndependentConstraint> icList, List<DependentConstraint> dcList,
+                              List<String> preVarNames){
         // append
-        Transition transition = new Transition(nextEventType, icList, dcList, nextState);
+        Transition transition = new Transition(nextEventType, icList, dcList, nextState, preVarNames);
+        curState.bindTransaction(transition);
+    }
+
+    /**
+     * @param preVarNames   variable names of current state (in slot order)
+     * @param varName       variable name of consumed events
+     * @param insertSlot    slot of consumed event in partial matches of next state
+     */
+    public void addTransition(State curState, State nextState, String nextEventType,
+                              List<IndependentConstraint> icList, List<DependentConstraint> dcList,
+                              List<String> preVarNames, String varName, int insertSlot){
+        Transition transition = new Transition(nextEventType, icList, dcList, nextState, preVarNames, varName, insertSlot);
         curState.bindTransaction(transition);
     }
 
     /**
      * NFA consume an event
      * for each active state, judge whether it can transfer next state
+     * [updated] partial matches generated by this event are invisible to this event
      * @param schema        event schema
      * @param eventRecord   event
      * @param matchStrategy skip-till-any-match or skip-till-next-match
      */
     public void consume(EventSchema schema, byte[] eventRecord, MatchStrategy matchStrategy){
-        // to speedup match, we use time window to delete can not match tuples
-        Set<State> allNextStates = new HashSet<>();
-        boolean hasInserted = false;
-        int curCount = eventCache.getCount();
-        for(State state : activeStates){
+        consume(schema, eventRecord, matchStrategy, true);
+    }
+
+    /**
+     * NFA consume an event
+     * @param schema        event schema
+     * @param eventRecord   event
+     * @param matchStrategy skip-till-any-match or skip-till-next-match
+     * @param canStart      false: this event only extends existing partial matches (see ParallelMatcher)
+     */
+    public void consume(EventSchema schema, byte[] eventRecord, MatchStrategy matchStrategy, boolean canStart){
+        if(countOnly){
+            consumeCount(schema, eventRecord, matchStrategy, canStart);
+            return;
+        }
+        long timestamp = schema.getTimestampFromRecord(eventRecord);
+        for(int id = activeStates.nextSetBit(0); id >= 0; id = activeStates.nextSetBit(id + 1)){
+            PartialMatchList partialMatchList = stateMap.get(id).getPartialMatchList();
+            if(partialMatchList != null){
+                partialMatchList.beginEvent();
+            }
+        }
+
+        nextActiveStates.clear();
+        for(int id = activeStates.nextSetBit(0); id >= 0; id = activeStates.nextSetBit(id + 1)){
+            State state = stateMap.get(id);
+            if(id == 0 && !canStart){
+                continue;
+            }
             if(!state.getIsFinal()){
                 // using match strategy
-                Set<State> nextStates = state.transfer(eventCache, eventRecord, window, matchStrategy, schema, hasInserted);
-                allNextStates.addAll(nextStates);
-                if(eventCache.getCount() != curCount){
-                    hasInserted = true;
+                state.transfer(eventCache, eventRecord, timestamp, window, matchStrategy, schema, nextActiveStates);
+                // to speedup match, a state without partial matches becomes inactive
+                PartialMatchList partialMatchList = state.getPartialMatchList();
+                if(id != 0 && partialMatchList.getPartialMatchSize() == 0){
+                    activeStates.clear(id);
                 }
             }
         }
-        // add start state, maybe has performance bottle
-        activeStates.addAll(allNextStates);
+        activeStates.or(nextActiveStates);
+        drainMetrics();
+        if(matchSink != null){
+            deliverMatches(schema);
+        }
+    }
+
+    /**
+     * lists count created and expired rows, shared counters are updated once per event rather than once per row
+     */
+    private void drainMetrics(){
+        long createdNum = 0;
+        long expiredNum = 0;
+        for(int id = 0; id < stateNum; ++id){
+            State state = stateMap.get(id);
+            if(countOnly){
+                AggregatedMatchList aggregatedList = state.getAggregatedList();
+                if(aggregatedList != null){
+                    createdNum += aggregatedList.drainCreatedNum();
+                    expiredNum += aggregatedList.drainExpiredNum();
+                }
+            }else{
+                PartialMatchList partialMatchList = state.getPartialMatchList();
+                if(partialMatchList != null){
+                    createdNum += partialMatchList.drainCreatedNum();
+                    expiredNum += partialMatchList.drainExpiredNum();
+                }
+            }
+        }
+        Metrics.PARTIAL_MATCHES_CREATED.add(createdNum);
+        Metrics.PARTIAL_MATCHES_EXPIRED.add(expiredNum);
+    }
+
+    /**
+     * partial match indexes are enabled by default, disabling them makes states scan partial matches,
+     * so that tests can compare indexed transfer with scanning
+     * @param useHashIndex  probe hash indexes for equality dependent constraints (see PartialMatchHashIndex)
+     */
+    void setHashIndex(boolean useHashIndex){
+        for(State state : stateMap.values()){
+            state.setHashIndex(useHashIndex);
+        }
+    }
+
+    /**
+     * @param useRangeIndex probe range indexes for band dependent constraints (see PartialMatchRangeIndex)
+     */
+    void setRangeIndex(boolean useRangeIndex){
+        for(State state : stateMap.values()){
+            state.setRangeIndex(useRangeIndex);
+        }
+    }
+
+    /**
+     * full matches are delivered to sink and then removed from final states
+     * @param sink          match sink, null means matches are kept in final states (see getTuple)
+     */
+    public void setMatchSink(MatchSink sink){
+        if(sink != null && countOnly){
+            throw new RuntimeException("count-only NFA does not generate matches, please call countTuple");
+        }
+        matchSink = sink;
+    }
+
+    public MatchSink getMatchSink(){
+        return matchSink;
+    }
+
+    /**
+     * late materialization: events are consumed as projected records (see ACER.enableCoveringColumns),
+     * and a full event is only built when a match is delivered (getTuple, forEachMatch, or match sink)
+     * @param materializer  projected record -> full event, null means cached records are delivered
+     */
+    public void setMaterializer(UnaryOperator<byte[]> materializer){
+        this.materializer = materializer;
+    }
+
+    private void deliverMatches(EventSchema schema){
+        for(State state : getFinalStates()){
+            PartialMatchList partialMatchList = state.getPartialMatchList();
+            if(partialMatchList != null && partialMatchList.getPartialMatchSize() != 0){
+                deliver(schema, partialMatchList, eventCache, Long.MIN_VALUE, Long.MAX_VALUE, matchSink, materializer);
+                partialMatchList.clear();
+            }
+        }
+    }
+
+    private static void deliver(EventSchema schema, PartialMatchList partialMatchList, EventCache cache,
+                                long minEndTime, long maxEndTime, MatchSink sink, UnaryOperator<byte[]> materializer){
+        Match match = new Match(schema, partialMatchList.getStateNames());
+        int size = partialMatchList.getPartialMatchSize();
+        int width = partialMatchList.getWidth();
+        for(int row = 0; row < size; ++row){
+            long endTime = partialMatchList.getEndTime(row);
+            if(endTime < minEndTime || endTime >= maxEndTime){
+                continue;
+            }
+            for(int slot = 0; slot < width; ++slot){
+                byte[] record = cache.get(partialMatchList.getPointer(row, slot));
+                match.set(slot, materializer == null ? record : materializer.apply(record));
+            }
+            match.setTimes(partialMatchList.getStartTime(row), endTime);
+            sink.onMatch(match);
+        }
+    }
+
+    /**
+     * visit full matches whose end time falls in [minEndTime, maxEndTime) without formatting them
+     * @param schema        event schema
+     * @param minEndTime    minimum end time (inclusive)
+     * @param maxEndTime    maximum end time (exclusive)
+     * @param sink          match sink
+     */
+    public void forEachMatch(EventSchema schema, long minEndTime, long maxEndTime, MatchSink sink){
+        if(countOnly){
+            throw new RuntimeException("count-only NFA does not keep matches, please call countTuple");
+        }
+        for(State state : getFinalStates()){
+            PartialMatchList partialMatchList = state.getPartialMatchList();
+            if(partialMatchList != null){
+                deliver(schema, partialMatchList, eventCache, minEndTime, maxEndTime, sink, materializer);
+            }
+        }
+    }
+
+    private void consumeCount(EventSchema schema, byte[] eventRecord, MatchStrategy matchStrategy, boolean canStart){
+        if(countPlanSchema != schema){
+            buildCountPlans(schema);
+        }
+        long timestamp = schema.getTimestampFromRecord(eventRecord);
+        for(int id = activeStates.nextSetBit(0); id >= 0; id = activeStates.nextSetBit(id + 1)){
+            AggregatedMatchList aggregatedList = stateMap.get(id).getAggregatedList();
+            if(aggregatedList != null){
+                aggregatedList.beginEvent();
+            }
+        }
+
+        nextActiveStates.clear();
+        for(int id = activeStates.nextSetBit(0); id >= 0; id = activeStates.nextSetBit(id + 1)){
+            State state = stateMap.get(id);
+            if(id == 0 && !canStart){
+                continue;
+            }
+            if(!state.getIsFinal()){
+                state.transferCount(eventRecord, timestamp, window, matchStrategy, schema, nextActiveStates);
+                if(id != 0 && state.getAggregatedList().size() == 0){
+                    activeStates.clear(id);
+                }
+            }
+        }
+        activeStates.or(nextActiveStates);
+        drainMetrics();
     }
 
     // this function is used to debug
     public void printMatchIds(){
         List<State> finalStates = getFinalStates();
         for(State state : finalStates){
+            if(countOnly){
+                System.out.println("stateName: " + state.getStateName() + " stateId: " + state.getStateId() +
+                        " count: " + state.getMatchCounter().getTotal());
+                continue;
+            }
             PartialMatchList partialMatchList = state.getPartialMatchList();
-            List<PartialMatch> matches = partialMatchList.getPartialMatchList();
-            System.out.println("stateName: " + state.getStateName() + " stateId: " + state.getStateId() + " size: " + matches.size());
-            for(PartialMatch match : matches){
-                System.out.println("match: " + match);
+            int size = (partialMatchList == null) ? 0 : partialMatchList.getPartialMatchSize();
+            System.out.println("stateName: " + state.getStateName() + " stateId: " + state.getStateId() + " size: " + size);
+            if(partialMatchList != null){
+                for(PartialMatch match : partialMatchList.getPartialMatchList()){
+                    System.out.println("match: " + match);
+                }
             }
         }
     }
@@ -252,46 +600,262 @@ public class NFA {
      * @return              tuple list
      */
     public List<Tuple> getTuple(EventSchema schema){
-        List<Tuple> ans = new ArrayList<>();
+        return getTuple(schema, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * skip-till-any-match generates combinatorial matches, count-only NFA can count more than Integer.MAX_VALUE
+     * @return              number of full matches
+     */
+    public long countTuple(){
+        if(countOnly){
+            long cnt = 0;
+            for(State state : getFinalStates()){
+                cnt += state.getMatchCounter().getTotal();
+            }
+            return cnt;
+        }
+        long cnt = 0;
+        // find results from final states
         for(State state : stateMap.values()){
             if(state.getIsFinal()){
                 PartialMatchList partialMatchList = state.getPartialMatchList();
                 if(partialMatchList != null){
-                    List<PartialMatch> matches = partialMatchList.getPartialMatchList();
-                    for(PartialMatch match : matches){
-                        List<Integer> pointers = match.getRecordPointers();
-                        Tuple t = new Tuple(pointers.size());
-                        for(int ptr : pointers){
-                            byte[] record = eventCache.get(ptr);
-                            String event = schema.byteEventToString(record);
-                            t.addEvent(event);
-                        }
-                        ans.add(t);
-                    }
+                    cnt += partialMatchList.getPartialMatchSize();
                 }
             }
         }
-        return ans;
+        return  cnt;
     }
 
-    public int countTuple(){
-        int cnt = 0;
-        // find results from final states
+    /**
+     * count full matches whose end time falls in [minEndTime, maxEndTime)
+     * result cache uses this function to split stable matches and newly matches
+     * @param minEndTime    minimum end time (inclusive)
+     * @param maxEndTime    maximum end time (exclusive)
+     * @return              number of matches
+     */
+    public long countTuple(long minEndTime, long maxEndTime){
+        if(countOnly){
+            long cnt = 0;
+            for(State state : getFinalStates()){
+                cnt += state.getMatchCounter().count(minEndTime, maxEndTime);
+            }
+            return cnt;
+        }
+        long cnt = 0;
         for(State state : stateMap.values()){
             if(state.getIsFinal()){
                 PartialMatchList partialMatchList = state.getPartialMatchList();
                 if(partialMatchList != null){
-                    List<PartialMatch> fullMatches = partialMatchList.getPartialMatchList();
-                    cnt += fullMatches.size();
+                    int size = partialMatchList.getPartialMatchSize();
+                    for(int row = 0; row < size; ++row){
+                        long endTime = partialMatchList.getEndTime(row);
+                        if(endTime >= minEndTime && endTime < maxEndTime){
+                            cnt++;
+                        }
+                    }
                 }
             }
         }
-        return  cnt;
+        return cnt;
+    }
+
+    /**
+     * obtain full matches whose end time falls in [minEndTime, maxEndTime)
+     * @param schema        event schema
+     * @param minEndTime    minimum end time (inclusive)
+     * @param maxEndTime    maximum end time (exclusive)
+     * @return              tuple list
+     */
+    public List<Tuple> getTuple(EventSchema schema, long minEndTime, long maxEndTime){
+        List<Tuple> ans = new ArrayList<>();
+        forEachMatch(schema, minEndTime, maxEndTime, match -> ans.add(match.toTuple()));
+        return ans;
+    }
+
+    /**
+     * move full matches of another NFA into this NFA, both NFAs are generated by the same query pattern
+     * events referenced by moved matches are copied into this event cache
+     * if a sink is bound, matches of another NFA are delivered to the sink instead
+     * @param other         another NFA (e.g., NFA of a time segment, see ParallelMatcher)
+     * @param schema        event schema
+     */
+    public void merge(NFA other, EventSchema schema){
+        if(countOnly != other.countOnly || stateNum != other.stateNum){
+            throw new RuntimeException("cannot merge NFAs that are generated by different query patterns");
+        }
+        if(matchSink != null){
+            // matches are delivered directly, so we do not copy events
+            for(State otherState : other.getFinalStates()){
+                PartialMatchList partialMatchList = otherState.getPartialMatchList();
+                if(partialMatchList != null){
+                    deliver(schema, partialMatchList, other.eventCache, Long.MIN_VALUE, Long.MAX_VALUE, matchSink, materializer);
+                }
+            }
+            return;
+        }
+        int[] newPointers = null;
+        for(State state : getFinalStates()){
+            State otherState = other.stateMap.get(state.getStateId());
+            if(countOnly){
+                state.getMatchCounter().addAll(otherState.getMatchCounter());
+                continue;
+            }
+            PartialMatchList src = otherState.getPartialMatchList();
+            if(src == null || src.getPartialMatchSize() == 0){
+                continue;
+            }
+            PartialMatchList dst = state.getPartialMatchList();
+            if(dst == null){
+                dst = new PartialMatchList(new ArrayList<>(src.getStateNames()));
+                state.bindBuffer(dst);
+            }
+            if(newPointers == null){
+                newPointers = new int[other.eventCache.getCount()];
+                Arrays.fill(newPointers, -1);
+            }
+            int width = src.getWidth();
+            int[] rowPointers = new int[width];
+            int size = src.getPartialMatchSize();
+            for(int row = 0; row < size; ++row){
+                for(int slot = 0; slot < width; ++slot){
+                    int pointer = src.getPointer(row, slot);
+                    if(newPointers[pointer] == -1){
+                        newPointers[pointer] = eventCache.insert(other.eventCache.get(pointer));
+                    }
+                    rowPointers[slot] = newPointers[pointer];
+                }
+                dst.addMatch(rowPointers, src.getStartTime(row), src.getEndTime(row));
+            }
+        }
+    }
+
+    /**
+     * deliver a match generated by another NFA of the same pattern to the match sink (see ParallelMatcher)
+     * @param match         match whose events are cached records of the other NFA
+     */
+    void deliver(Match match){
+        if(materializer != null){
+            for(int i = 0; i < match.size(); ++i){
+                match.set(i, materializer.apply(match.getEvent(i)));
+            }
+        }
+        matchSink.onMatch(match);
+    }
+
+    /**
+     * deliver a full match found by another engine (see LazyNFA and JoinMatcher),
+     * SEQ pattern only has one final state
+     * @param schema        event schema
+     * @param records       events of the match (pattern order)
+     * @param keys          unique keys of these events, an event is cached once
+     * @param pointers      event key -> record pointer of event cache (owned by caller)
+     * @param startTime     start timestamp
+     * @param endTime       end timestamp
+     */
+    void addFullMatch(EventSchema schema, byte[][] records, long[] keys, Map<Long, Integer> pointers, long startTime, long endTime){
+        State finalState = stateMap.get(stateNum - 1);
+        if(countOnly){
+            finalState.getMatchCounter().add(endTime, 1);
+            return;
+        }
+        if(matchSink != null){
+            Match match = new Match(schema, finalState.getVarNames());
+            for(int i = 0; i < records.length; ++i){
+                match.set(i, materializer == null ? records[i] : materializer.apply(records[i]));
+            }
+            match.setTimes(startTime, endTime);
+            matchSink.onMatch(match);
+            return;
+        }
+        int[] rowPointers = new int[records.length];
+        for(int i = 0; i < records.length; ++i){
+            byte[] record = records[i];
+            rowPointers[i] = pointers.computeIfAbsent(keys[i], k -> eventCache.insert(record));
+        }
+        PartialMatchList partialMatchList = finalState.getPartialMatchList();
+        if(partialMatchList == null){
+            partialMatchList = new PartialMatchList(finalState.getVarNames());
+            finalState.bindBuffer(partialMatchList);
+        }
+        partialMatchList.addMatch(rowPointers, startTime, endTime);
+    }
+
+    /**
+     * obtain full matches and then remove them from final states
+     * standing (continuous) queries call this function after consuming events
+     * @param schema        event schema
+     * @return              new matched tuples
+     */
+    public List<Tuple> drainTuple(EventSchema schema){
+        List<Tuple> ans = getTuple(schema);
+        clearFinalStates();
+        return ans;
+    }
+
+    /**
+     * count full matches and then remove them from final states
+     * @return              number of new matches
+     */
+    public long drainCount(){
+        long cnt = countTuple();
+        clearFinalStates();
+        return cnt;
+    }
+
+    private void clearFinalStates(){
+        for(State state : stateMap.values()){
+            if(countOnly && state.getIsFinal()){
+                state.getMatchCounter().clear();
+                continue;
+            }
+            PartialMatchList partialMatchList = state.getPartialMatchList();
+            if(state.getIsFinal() && partialMatchList != null){
+                partialMatchList.clear();
+            }
+        }
+    }
+
+    /**
+     * remove partial matches that cannot be extended after currentTime,
+     * then remove events that are not referenced by any match from event cache
+     * @param currentTime   current timestamp
+     */
+    public void expire(long currentTime){
+        if(countOnly){
+            // count-only NFA does not store events
+            for(State state : stateMap.values()){
+                AggregatedMatchList aggregatedList = state.getAggregatedList();
+                if(aggregatedList != null){
+                    aggregatedList.removeExpired(currentTime - window);
+                }
+            }
+            drainMetrics();
+            return;
+        }
+        List<PartialMatchList> liveLists = new ArrayList<>(stateNum);
+        for(State state : stateMap.values()){
+            PartialMatchList partialMatchList = state.getPartialMatchList();
+            if(partialMatchList == null){
+                continue;
+            }
+            if(!state.getIsFinal()){
+                partialMatchList.removeExpired(currentTime - window);
+            }
+            liveLists.add(partialMatchList);
+        }
+        drainMetrics();
+        eventCache.compact(liveLists);
+    }
+
+    public boolean isCountOnly(){
+        return countOnly;
     }
 
     public void printActiveStates(){
-        for(State state : activeStates){
-            System.out.println(state);
+        for(int id = activeStates.nextSetBit(0); id >= 0; id = activeStates.nextSetBit(id + 1)){
+            System.out.println(stateMap.get(id));
         }
     }
 
@@ -0,0 +1,100 @@
+package automaton;
+
+import common.EventSchema;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * compiled automata cache (singleton)
+ * templates: (NFA kind, normalized query pattern) -> compiled NFA whose states, transitions,
+ * predicates and count plans are built, a template never consumes events,
+ * NFA.generateNFAUsingQueryPattern copies its structure and shares compiled predicates (see NFA.instantiate)
+ * automata: pattern string -> automaton of AND/OR pattern, queries that only differ in constants
+ * (i.e., parameterized queries) share it and skip subset construction (see PatternAutomaton)
+ * -------------------------------------------------------------------------------------
+ * both maps are evicted in LRU order, a template is dropped when its schema is recreated
+ */
+public class NFATemplateCache {
+    // maximum number of entries of each map
+    public static final int CAPACITY = 256;
+
+    private record Template(EventSchema schema, NFA nfa){}
+
+    private static final NFATemplateCache instance = new NFATemplateCache();
+
+    private final LinkedHashMap<String, Template> templates;
+    private final LinkedHashMap<String, PatternAutomaton> automata;
+    private long hitNum;                                    // number of template hits
+    private long missNum;                                   // number of template misses
+
+    private NFATemplateCache(){
+        templates = new LinkedHashMap<>(64, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest){
+                return size() > CAPACITY;
+            }
+        };
+        automata = new LinkedHashMap<>(64, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PatternAutomaton> eldest){
+                return size() > CAPACITY;
+            }
+        };
+    }
+
+    public static NFATemplateCache getInstance(){
+        return instance;
+    }
+
+    /**
+     * @param key       NFA kind and normalized query pattern
+     * @param schema    event schema
+     * @return          compiled template, null if it is not cached or compiled for another schema
+     */
+    synchronized NFA getTemplate(String key, EventSchema schema){
+        Template template = templates.get(key);
+        if(template == null || template.schema() != schema){
+            missNum++;
+            return null;
+        }
+        hitNum++;
+        return template.nfa();
+    }
+
+    synchronized void putTemplate(String key, EventSchema schema, NFA nfa){
+        templates.put(key, new Template(schema, nfa));
+    }
+
+    /**
+     * @param patternStr    pattern string without "PATTERN "
+     * @return              automaton of patternStr, it is immutable and shared by NFAs
+     */
+    synchronized PatternAutomaton getAutomaton(String patternStr){
+        PatternAutomaton automaton = automata.get(patternStr);
+        if(automaton == null){
+            automaton = new PatternAutomaton(patternStr);
+            automata.put(patternStr, automaton);
+        }
+        return automaton;
+    }
+
+    public synchronized long getHitNum(){
+        return hitNum;
+    }
+
+    public synchronized long getMissNum(){
+        return missNum;
+    }
+
+    public synchronized void clear(){
+        templates.clear();
+        automata.clear();
+        hitNum = 0;
+        missNum = 0;
+    }
+
+    public synchronized void print(){
+        System.out.println("nfa template cache -> templates: " + templates.size() + " automata: " +
+                automata.size() + " hits: " + hitNum + " misses: " + missNum);
+    }
+}
@@ -0,0 +1,261 @@
+package automaton;
+
+import common.EventSchema;
+import pattern.QueryPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * parallel matching over time-partitioned event segments
+ * a match lasts at most tau, so filtered events can be split into segments and matched independently:
+ * segment k owns matches whose first events are in [starts[k], starts[k + 1]),
+ * its NFA consumes events from starts[k], and events after starts[k + 1] (overlap region) only extend partial matches.
+ * we stop a segment at the first event that no later event can extend its partial matches, i.e.,
+ * timestamps of all remaining events > maximum start timestamp of owned events + tau
+ * -------------------------------------------------------------------------------------
+ * each match is generated by exactly one segment, so we do not need to deduplicate matches.
+ * a partial match does not depend on other partial matches under skip-till-any-match and skip-till-next-match,
+ * so results equal to results of a single NFA. Finally, matches of segments are merged into the given NFA
+ * -------------------------------------------------------------------------------------
+ * if the given NFA has a match sink, segments do not keep their matches until merging,
+ * they hand off batches of matches through a bounded queue, and the calling thread delivers them to the sink,
+ * so the sink is never called concurrently. A segment blocks when the queue is full,
+ * and matches of different segments may be interleaved.
+ */
+public class ParallelMatcher {
+    // minimum number of owned events of a segment, small segments cannot amortize overlap region
+    public static final int MIN_SEGMENT_SIZE = 8 * 1024;
+
+    // matches of a segment are handed off in batches, a segment can hand off
+    // BATCHES_PER_SEGMENT batches before the calling thread delivers them
+    static final int BATCH_SIZE = 256;
+    static final int BATCHES_PER_SEGMENT = 2;
+
+    // a segment puts it into the queue after its last batch
+    private static final List<Match> END = new ArrayList<>(0);
+
+    // one pool per thread number, pools are never shut down since concurrent queries
+    // (e.g., two ACER instances with different match thread numbers) may share a pool
+    private static final Map<Integer, ExecutorService> pools = new ConcurrentHashMap<>();
+
+    private static ExecutorService getPool(int threadNum){
+        return pools.computeIfAbsent(threadNum, n -> Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "acer-match-" + n);
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    /**
+     * @param nfa           automata generated by pattern, matches of all segments are merged into it
+     * @param pattern       query pattern
+     * @param schema        event schema
+     * @param events        filtered events
+     * @param threadNum     number of threads
+     */
+    public static void consume(NFA nfa, QueryPattern pattern, EventSchema schema, List<byte[]> events, int threadNum){
+        match(nfa, pattern, schema, events, threadNum);
+    }
+
+    /**
+     * @return              peak number of matches buffered between segments and the match sink,
+     *                      0 if nfa has no match sink or events are matched by one segment
+     */
+    static int match(NFA nfa, QueryPattern pattern, EventSchema schema, List<byte[]> events, int threadNum){
+        int eventNum = events.size();
+        int segmentNum = Math.min(threadNum, eventNum / MIN_SEGMENT_SIZE);
+        if(segmentNum <= 1){
+            for(byte[] event : events){
+                nfa.consume(schema, event, pattern.getStrategy());
+            }
+            return 0;
+        }
+
+        int[] starts = new int[segmentNum + 1];
+        for(int k = 0; k <= segmentNum; ++k){
+            starts[k] = (int) ((long) eventNum * k / segmentNum);
+        }
+        int[] ends = computeEnds(events, schema, starts, pattern.getTau());
+
+        // NFAs are generated by calling thread, then each thread only touches its own NFA
+        boolean streaming = nfa.getMatchSink() != null;
+        BlockingQueue<List<Match>> queue = streaming ? new ArrayBlockingQueue<>(segmentNum * BATCHES_PER_SEGMENT) : null;
+        AtomicInteger bufferedNum = new AtomicInteger();
+        AtomicInteger peakBufferedNum = new AtomicInteger();
+        List<NFA> segmentNFAs = new ArrayList<>(segmentNum);
+        for(int k = 0; k < segmentNum; ++k){
+            NFA segmentNFA = new NFA();
+            segmentNFA.generateNFAUsingQueryPattern(pattern, nfa.isCountOnly());
+            if(streaming){
+                segmentNFA.setMatchSink(new SegmentSink(queue, bufferedNum, peakBufferedNum));
+            }
+            segmentNFAs.add(segmentNFA);
+        }
+
+        ExecutorService executor = getPool(threadNum);
+        List<Future<?>> futures = new ArrayList<>(segmentNum);
+        for(int k = 0; k < segmentNum; ++k){
+            NFA segmentNFA = segmentNFAs.get(k);
+            int start = starts[k];
+            int ownedEnd = starts[k + 1];
+            int end = ends[k];
+            futures.add(executor.submit(() -> {
+                try{
+                    for(int i = start; i < end; ++i){
+                        segmentNFA.consume(schema, events.get(i), pattern.getStrategy(), i < ownedEnd);
+                    }
+                    if(streaming){
+                        ((SegmentSink) segmentNFA.getMatchSink()).flush();
+                    }
+                }finally{
+                    if(streaming){
+                        SegmentSink.handOff(queue, END);
+                    }
+                }
+            }));
+        }
+        if(streaming){
+            deliver(nfa, queue, bufferedNum, futures);
+        }
+        for(int k = 0; k < segmentNum; ++k){
+            try{
+                futures.get(k).get();
+            }catch (InterruptedException | ExecutionException e){
+                throw new RuntimeException("segment " + k + " fails to match events", e);
+            }
+            if(!streaming){
+                nfa.merge(segmentNFAs.get(k), schema);
+            }
+        }
+        return peakBufferedNum.get();
+    }
+
+    /**
+     * calling thread delivers handed off matches until all segments finish,
+     * if delivering fails, segments are cancelled so that they do not block on the full queue
+     */
+    private static void deliver(NFA nfa, BlockingQueue<List<Match>> queue, AtomicInteger bufferedNum, List<Future<?>> futures){
+        int endNum = 0;
+        boolean delivered = false;
+        try{
+            while(endNum < futures.size()){
+                List<Match> batch = queue.take();
+                if(batch == END){
+                    endNum++;
+                    continue;
+                }
+                for(Match match : batch){
+                    nfa.deliver(match);
+                }
+                bufferedNum.addAndGet(-BATCH_SIZE);
+            }
+            delivered = true;
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while delivering matches", e);
+        }finally{
+            if(!delivered){
+                for(Future<?> future : futures){
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * sink of a segment NFA, it copies matches to a batch and hands off full batches
+     */
+    private static class SegmentSink implements MatchSink {
+        private final BlockingQueue<List<Match>> queue;
+        private final AtomicInteger bufferedNum;        // reserved slots of batches that are not delivered
+        private final AtomicInteger peakBufferedNum;
+        private List<Match> batch;
+
+        SegmentSink(BlockingQueue<List<Match>> queue, AtomicInteger bufferedNum, AtomicInteger peakBufferedNum){
+            this.queue = queue;
+            this.bufferedNum = bufferedNum;
+            this.peakBufferedNum = peakBufferedNum;
+            batch = null;
+        }
+
+        @Override
+        public void onMatch(Match match){
+            if(batch == null){
+                int num = bufferedNum.addAndGet(BATCH_SIZE);
+                peakBufferedNum.accumulateAndGet(num, Math::max);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+            // segment NFA reuses the match object
+            batch.add(match.copy());
+            if(batch.size() == BATCH_SIZE){
+                flush();
+            }
+        }
+
+        void flush(){
+            if(batch != null){
+                handOff(queue, batch);
+                batch = null;
+            }
+        }
+
+        static void handOff(BlockingQueue<List<Match>> queue, List<Match> batch){
+            try{
+                queue.put(batch);
+            }catch (InterruptedException e){
+                // delivering fails and this segment is cancelled
+                Thread.currentThread().interrupt();
+                throw new CancellationException("segment is cancelled");
+            }
+        }
+    }
+
+    /**
+     * events may be out-of-order, so we use suffix minimum timestamps to find end position of each segment
+     * @param events        events
+     * @param schema        event schema
+     * @param starts        start positions of segments
+     * @param tau           query window
+     * @return              end positions (exclusive) of segments
+     */
+    static int[] computeEnds(List<byte[]> events, EventSchema schema, int[] starts, long tau){
+        int eventNum = events.size();
+        long[] timestamps = new long[eventNum];
+        for(int i = 0; i < eventNum; ++i){
+            timestamps[i] = schema.getTimestampFromRecord(events.get(i));
+        }
+        long[] suffixMin = new long[eventNum + 1];
+        suffixMin[eventNum] = Long.MAX_VALUE;
+        for(int i = eventNum - 1; i >= 0; --i){
+            suffixMin[i] = Math.min(timestamps[i], suffixMin[i + 1]);
+        }
+
+        int segmentNum = starts.length - 1;
+        int[] ends = new int[segmentNum];
+        for(int k = 0; k < segmentNum; ++k){
+            long maxStartTime = Long.MIN_VALUE;
+            for(int i = starts[k]; i < starts[k + 1]; ++i){
+                maxStartTime = Math.max(maxStartTime, timestamps[i]);
+            }
+            // overflow means all remaining events may extend partial matches
+            long bound = maxStartTime > Long.MAX_VALUE - tau ? Long.MAX_VALUE : maxStartTime + tau;
+            int end = starts[k + 1];
+            while(end < eventNum && suffixMin[end] <= bound){
+                end++;
+            }
+            ends[k] = end;
+        }
+        return ends;
+    }
+}
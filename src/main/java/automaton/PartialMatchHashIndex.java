@@ -0,0 +1,145 @@
+package automaton;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * hash index of a partial match buffer for an equality dependent constraint, e.g.,
+ * SEQ(A v1, B v2) WHERE v2.District = v1.District, partial matches of state v1 are partitioned by v1.District,
+ * an event of type B only probes the bucket whose key equals its District
+ * -------------------------------------------------------------------------------------
+ * a bucket stores sequence numbers (see PartialMatchList.getFirstSeq) in ascending order.
+ * the index is updated lazily: before probing, rows that are not indexed are inserted (see catchUp).
+ * rows dropped from head are removed from the front of a bucket when the bucket is probed,
+ * and all buckets are purged after many rows are dropped
+ */
+class PartialMatchHashIndex {
+    // use hash index when a transition has an equality dependent constraint
+    static final boolean ENABLE_HASH_INDEX = true;
+
+    // sequence numbers of rows that have the same key
+    static class Bucket {
+        private long[] seqs = new long[4];
+        private int start = 0;
+        private int end = 0;
+
+        void add(long seq){
+            if(end == seqs.length){
+                if(start > (end >> 1)){
+                    System.arraycopy(seqs, start, seqs, 0, end - start);
+                }else{
+                    seqs = Arrays.copyOf(seqs, seqs.length << 1);
+                    System.arraycopy(seqs, start, seqs, 0, end - start);
+                }
+                end -= start;
+                start = 0;
+            }
+            seqs[end++] = seq;
+        }
+
+        void removeBefore(long firstSeq){
+            while(start < end && seqs[start] < firstSeq){
+                start++;
+            }
+        }
+
+        int size(){
+            return end - start;
+        }
+
+        long get(int i){
+            return seqs[start + i];
+        }
+    }
+
+    private final long column;                      // indexed column (see TransitionPredicate.getPreColumn)
+    private final HashMap<Long, Bucket> buckets;    // key -> bucket
+    private long indexedSeq;                        // rows whose sequence numbers < indexedSeq are indexed
+    private long purgedSeq;                         // first sequence number when purging all buckets last time
+
+    PartialMatchHashIndex(long column, long firstSeq){
+        this.column = column;
+        buckets = new HashMap<>();
+        indexedSeq = firstSeq;
+        purgedSeq = firstSeq;
+    }
+
+    long getColumn(){
+        return column;
+    }
+
+    /**
+     * insert rows that are visible to current event but not indexed
+     * @param list          partial match buffer
+     * @param cache         event cache
+     * @param predicate     precompiled predicate, it reads value of the indexed attribute
+     * @param dcIdx         id of the dependent constraint on the indexed column
+     */
+    void catchUp(PartialMatchList list, EventCache cache, TransitionPredicate predicate, int dcIdx){
+        long firstSeq = list.getFirstSeq();
+        long visibleEndSeq = firstSeq + list.getVisibleSize();
+        for(long seq = Math.max(indexedSeq, firstSeq); seq < visibleEndSeq; ++seq){
+            long key = predicate.readPreValue(cache, list, (int) (seq - firstSeq), dcIdx);
+            buckets.computeIfAbsent(key, k -> new Bucket()).add(seq);
+        }
+        finishCatchUp(firstSeq, visibleEndSeq);
+    }
+
+    /**
+     * count-only NFA: the indexed column is a value column of aggregated rows (see CountPlan.getDCColumns)
+     * @param list          aggregated partial match buffer
+     */
+    void catchUp(AggregatedMatchList list){
+        long firstSeq = list.getFirstSeq();
+        long visibleEndSeq = firstSeq + list.getVisibleSize();
+        for(long seq = Math.max(indexedSeq, firstSeq); seq < visibleEndSeq; ++seq){
+            long key = list.getValue((int) (seq - firstSeq), (int) column);
+            buckets.computeIfAbsent(key, k -> new Bucket()).add(seq);
+        }
+        finishCatchUp(firstSeq, visibleEndSeq);
+    }
+
+    private void finishCatchUp(long firstSeq, long visibleEndSeq){
+        indexedSeq = Math.max(indexedSeq, visibleEndSeq);
+
+        // purge all buckets after many rows are dropped from head
+        if(firstSeq - purgedSeq > Math.max(1024, indexedSeq - firstSeq)){
+            Iterator<Bucket> it = buckets.values().iterator();
+            while(it.hasNext()){
+                Bucket bucket = it.next();
+                bucket.removeBefore(firstSeq);
+                if(bucket.size() == 0){
+                    it.remove();
+                }
+            }
+            purgedSeq = firstSeq;
+        }
+    }
+
+    /**
+     * @param key       value of indexed attribute
+     * @param firstSeq  sequence number of the row at head
+     * @return          bucket, null if no partial match has this key
+     */
+    Bucket probe(long key, long firstSeq){
+        Bucket bucket = buckets.get(key);
+        if(bucket != null){
+            bucket.removeBefore(firstSeq);
+        }
+        return bucket;
+    }
+
+    /**
+     * @return          number of buckets, buckets of dropped rows are removed when probing or purging
+     */
+    int getKeyNum(){
+        return buckets.size();
+    }
+
+    void clear(long firstSeq){
+        buckets.clear();
+        indexedSeq = firstSeq;
+        purgedSeq = firstSeq;
+    }
+}
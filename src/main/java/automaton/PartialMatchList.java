@@ -1,26 +1,63 @@
 package automaton;
 
+
 import java.util.ArrayList;
 import java.util.List;
 
-
-
+/**
+ * [updated] partial match buffer of a state
+ * partial matches are stored as rows in primitive arenas to avoid object allocation:
+ * pointers:    |ptr_0_0|...|ptr_0_{w-1}|ptr_1_0|...|ptr_1_{w-1}|...  (w = number of slots)
+ * startTimes:  |start_0|start_1|...
+ * endTimes:    |end_0|end_1|...
+ * -------------------------------------------------------------------------------------
+ * rows are appended in arrival order, live rows are [head, size), functions use logical row ids (row - head)
+ * window expiry only advances head, i.e., O(1) per expired row and no live row is moved.
+ * a row in the middle can time out earlier than rows before it, or be removed by skip-till-next-match,
+ * such row is skipped during scanning (removed rows are marked by REMOVED),
+ * it is dropped when head reaches it, this happens within a window since it ends no earlier than rows before it
+ * -------------------------------------------------------------------------------------
+ * visible rows: rows inserted when NFA is processing an event are invisible to this event,
+ * otherwise an event may extend the partial match generated by itself
+ * -------------------------------------------------------------------------------------
+ * [updated] a state of AND/OR pattern can have several transitions (see PatternAutomaton),
+ * under skip-till-next-match a row is removed after all transitions consumed it (see markConsumed)
+ */
 public class PartialMatchList {
+    // start time of rows removed by skip-till-next-match
+    static final long REMOVED = Long.MIN_VALUE;
+
     private final List<String> stateNames;
-    private final List<PartialMatch> partialMatchList;
+    private final int width;                    // number of pointer slots of each row
+    private int[] pointers;                     // record pointers
+    private long[] startTimes;                  // start timestamps
+    private long[] endTimes;                    // end timestamps
+    private int head;                           // position of first live row
+    private int size;                           // position after last row
+    private int visibleEnd;                     // position after last row visible to current event
+    private long firstSeq;                      // sequence number of the row at head
+    private long[] consumedMasks;               // transitions that consumed each row, null if no row is consumed
+    private long createdNum;                    // rows created since last drainCreatedNum
+    private long expiredNum;                    // timeout rows dropped since last drainExpiredNum
+    private final List<PartialMatchHashIndex> hashIndexes;      // indexes for equality dependent constraints
+    private final List<PartialMatchRangeIndex> rangeIndexes;    // indexes for band dependent constraints
 
     public PartialMatchList(List<String> stateNames){
-        // this.length = length;
         this.stateNames = stateNames;
-        partialMatchList = new ArrayList<>(1024);
-    }
-
-    public List<PartialMatch> getPartialMatchList(){
-        return partialMatchList;
+        width = stateNames.size();
+        int initCapacity = 64;
+        pointers = new int[initCapacity * width];
+        startTimes = new long[initCapacity];
+        endTimes = new long[initCapacity];
+        head = 0;
+        size = 0;
+        visibleEnd = 0;
+        hashIndexes = new ArrayList<>(1);
+        rangeIndexes = new ArrayList<>(1);
     }
 
     public int findStateNamePosition(String stateName){
-        // below code is slow
+        // below code is slow, so please call it outside loops
         for(int i = 0; i < stateNames.size(); ++i){
             if(stateNames.get(i).equals(stateName)){
                 return i;
@@ -29,15 +66,356 @@ public class PartialMatchList {
         throw new RuntimeException("cannot find stateName: " + stateName);
     }
 
-    public void addPartialMatch(PartialMatch match){
-        partialMatchList.add(match);
-    }
-
     public List<String> getStateNames(){
         return stateNames;
     }
 
+    public int getWidth(){
+        return width;
+    }
+
     public int getPartialMatchSize(){
-        return partialMatchList.size();
+        return size - head;
+    }
+
+    /**
+     * each row has a sequence number that does not change when head moves, row id = seq - firstSeq
+     * @return      sequence number of the row at head
+     */
+    long getFirstSeq(){
+        return firstSeq;
+    }
+
+    /**
+     * transitions of a state may probe different columns, so each column has its own index
+     * @param column    pre column of equality dependent constraint
+     * @return          hash index of this column
+     */
+    PartialMatchHashIndex getHashIndex(long column){
+        for(PartialMatchHashIndex index : hashIndexes){
+            if(index.getColumn() == column){
+                return index;
+            }
+        }
+        PartialMatchHashIndex index = new PartialMatchHashIndex(column, firstSeq);
+        hashIndexes.add(index);
+        return index;
+    }
+
+    /**
+     * @param column    pre column of band dependent constraint
+     * @return          range index of this column
+     */
+    PartialMatchRangeIndex getRangeIndex(long column){
+        for(PartialMatchRangeIndex index : rangeIndexes){
+            if(index.getColumn() == column){
+                return index;
+            }
+        }
+        PartialMatchRangeIndex index = new PartialMatchRangeIndex(column, firstSeq);
+        rangeIndexes.add(index);
+        return index;
+    }
+
+    public int getPointer(int row, int slot){
+        return pointers[(head + row) * width + slot];
+    }
+
+    public long getStartTime(int row){
+        return startTimes[head + row];
+    }
+
+    public long getEndTime(int row){
+        return endTimes[head + row];
+    }
+
+    /**
+     * before appending a row, reuse space before head or enlarge arenas
+     * @param rowNum    number of rows after appending
+     */
+    private void ensureCapacity(int rowNum){
+        int capacity = startTimes.length;
+        if(rowNum <= capacity){
+            return;
+        }
+        int liveNum = size - head;
+        // when most of rows are live we enlarge arenas, otherwise we only move live rows to the front
+        if(liveNum + 1 > (capacity >> 1)){
+            int newCapacity = Math.max(rowNum - head, capacity << 1);
+            int[] newPointers = new int[newCapacity * width];
+            long[] newStartTimes = new long[newCapacity];
+            long[] newEndTimes = new long[newCapacity];
+            System.arraycopy(pointers, head * width, newPointers, 0, liveNum * width);
+            System.arraycopy(startTimes, head, newStartTimes, 0, liveNum);
+            System.arraycopy(endTimes, head, newEndTimes, 0, liveNum);
+            pointers = newPointers;
+            startTimes = newStartTimes;
+            endTimes = newEndTimes;
+            if(consumedMasks != null){
+                long[] newConsumedMasks = new long[newCapacity];
+                System.arraycopy(consumedMasks, head, newConsumedMasks, 0, liveNum);
+                consumedMasks = newConsumedMasks;
+            }
+        }else{
+            System.arraycopy(pointers, head * width, pointers, 0, liveNum * width);
+            System.arraycopy(startTimes, head, startTimes, 0, liveNum);
+            System.arraycopy(endTimes, head, endTimes, 0, liveNum);
+            if(consumedMasks != null){
+                System.arraycopy(consumedMasks, head, consumedMasks, 0, liveNum);
+            }
+        }
+        visibleEnd -= head;
+        size = liveNum;
+        head = 0;
+    }
+
+    /**
+     * append a partial match that only contains one event
+     * @param pointer       record pointer
+     * @param timestamp     timestamp of this event
+     */
+    public void addPartialMatch(int pointer, long timestamp){
+        ensureCapacity(size + 1);
+        pointers[size * width] = pointer;
+        startTimes[size] = timestamp;
+        endTimes[size] = timestamp;
+        resetConsumedMask();
+        size++;
+        createdNum++;
+    }
+
+    /**
+     * copy a row of previous state and append a record pointer
+     * @param src           partial match buffer of previous state (its width is this.width - 1)
+     * @param srcRow        row of previous state
+     * @param pointer       new record pointer
+     * @param endTime       timestamp of new record
+     */
+    public void addExtendedMatch(PartialMatchList src, int srcRow, int pointer, long endTime){
+        addExtendedMatch(src, srcRow, pointer, endTime, src.width);
+    }
+
+    /**
+     * [updated] copy a row of previous state and insert a record pointer at insertSlot,
+     * slots of AND/OR pattern follow variable order of pattern string rather than arrival order
+     * @param src           partial match buffer of previous state (its width is this.width - 1)
+     * @param srcRow        row of previous state
+     * @param pointer       new record pointer
+     * @param endTime       timestamp of new record
+     * @param insertSlot    slot of new record pointer
+     */
+    void addExtendedMatch(PartialMatchList src, int srcRow, int pointer, long endTime, int insertSlot){
+        ensureCapacity(size + 1);
+        int srcWidth = src.width;
+        int srcPos = src.head + srcRow;
+        int dstPos = size * width;
+        System.arraycopy(src.pointers, srcPos * srcWidth, pointers, dstPos, insertSlot);
+        pointers[dstPos + insertSlot] = pointer;
+        System.arraycopy(src.pointers, srcPos * srcWidth + insertSlot, pointers, dstPos + insertSlot + 1, srcWidth - insertSlot);
+        startTimes[size] = src.startTimes[srcPos];
+        endTimes[size] = endTime;
+        resetConsumedMask();
+        size++;
+        createdNum++;
+    }
+
+    /**
+     * append a partial match whose record pointers are given, parallel matching uses it to merge matches
+     * @param rowPointers   record pointers (length is width)
+     * @param startTime     start timestamp
+     * @param endTime       end timestamp
+     */
+    void addMatch(int[] rowPointers, long startTime, long endTime){
+        ensureCapacity(size + 1);
+        System.arraycopy(rowPointers, 0, pointers, size * width, width);
+        startTimes[size] = startTime;
+        endTimes[size] = endTime;
+        resetConsumedMask();
+        size++;
+    }
+
+    /**
+     * rows inserted after calling this function are invisible until next call
+     */
+    public void beginEvent(){
+        visibleEnd = size;
+    }
+
+    public int getVisibleSize(){
+        return visibleEnd - head;
+    }
+
+    /**
+     * drop timeout or removed rows from head
+     * @param timestamp     timestamp of current event
+     * @param window        query window
+     */
+    void expireHead(long timestamp, long window){
+        while(head < visibleEnd && !isLive(startTimes[head], timestamp, window)){
+            if(startTimes[head] != REMOVED){
+                expiredNum++;
+            }
+            head++;
+            firstSeq++;
+        }
+        if(head == size){
+            // all rows are dropped, then we reuse arenas from position 0
+            head = size = visibleEnd = 0;
+        }
+    }
+
+    /**
+     * whether a row can be extended by current event
+     * @param row           row id
+     * @param timestamp     timestamp of current event
+     * @param window        query window
+     * @return              true if the row is not removed and not timeout
+     */
+    boolean isLive(int row, long timestamp, long window){
+        return isLive(startTimes[head + row], timestamp, window);
+    }
+
+    private static boolean isLive(long startTime, long timestamp, long window){
+        return startTime != REMOVED && timestamp - startTime <= window;
+    }
+
+    /**
+     * skip-till-next-match removes a row after it is extended
+     * @param row           row id
+     */
+    void markRemoved(int row){
+        startTimes[head + row] = REMOVED;
+    }
+
+    /**
+     * @param row               row id
+     * @param transitionIdx     transition index of this state
+     * @return                  true if the transition has consumed this row under skip-till-next-match
+     */
+    boolean isConsumed(int row, int transitionIdx){
+        return consumedMasks != null && (consumedMasks[head + row] & (1L << transitionIdx)) != 0;
+    }
+
+    /**
+     * skip-till-next-match removes a row after each transition of its state extended it,
+     * e.g., AND(A a, B b): partial match (a1) is extended by b1 and then by b2 is not allowed,
+     * but (a1) can still be extended by another a-branch of the same state
+     * @param row               row id
+     * @param transitionIdx     transition index of this state
+     * @param transitionNum     number of transitions of this state (at most 63)
+     */
+    void markConsumed(int row, int transitionIdx, int transitionNum){
+        if(transitionNum == 1){
+            markRemoved(row);
+            return;
+        }
+        if(consumedMasks == null){
+            consumedMasks = new long[startTimes.length];
+        }
+        int pos = head + row;
+        consumedMasks[pos] |= 1L << transitionIdx;
+        if(consumedMasks[pos] == (1L << transitionNum) - 1){
+            startTimes[pos] = REMOVED;
+        }
+    }
+
+    private void resetConsumedMask(){
+        if(consumedMasks != null){
+            consumedMasks[size] = 0;
+        }
+    }
+
+    public void clear(){
+        firstSeq += size - head;
+        head = 0;
+        size = 0;
+        visibleEnd = 0;
+        clearIndexes();
+    }
+
+    private void clearIndexes(){
+        for(PartialMatchHashIndex index : hashIndexes){
+            index.clear(firstSeq);
+        }
+        for(PartialMatchRangeIndex index : rangeIndexes){
+            index.clear(firstSeq);
+        }
+    }
+
+    /**
+     * NFA adds created and expired rows of all lists to metrics once per event (see NFA.drainMetrics)
+     * @return      number of rows created since last call
+     */
+    long drainCreatedNum(){
+        long num = createdNum;
+        createdNum = 0;
+        return num;
+    }
+
+    /**
+     * @return      number of timeout rows dropped since last call
+     */
+    long drainExpiredNum(){
+        long num = expiredNum;
+        expiredNum = 0;
+        return num;
+    }
+
+    /**
+     * remove rows whose start time < minStartTime and removed rows
+     * @param minStartTime  minimum start time
+     */
+    public void removeExpired(long minStartTime){
+        int writePos = 0;
+        for(int pos = head; pos < size; ++pos){
+            long startTime = startTimes[pos];
+            if(startTime != REMOVED && startTime < minStartTime){
+                expiredNum++;
+            }
+            if(startTime != REMOVED && startTime >= minStartTime){
+                if(writePos != pos){
+                    System.arraycopy(pointers, pos * width, pointers, writePos * width, width);
+                    startTimes[writePos] = startTime;
+                    endTimes[writePos] = endTimes[pos];
+                    if(consumedMasks != null){
+                        consumedMasks[writePos] = consumedMasks[pos];
+                    }
+                }
+                writePos++;
+            }
+        }
+        // sequence numbers change, so indexes are rebuilt
+        firstSeq += size - head;
+        head = 0;
+        size = writePos;
+        visibleEnd = size;
+        clearIndexes();
+    }
+
+    /**
+     * update record pointers after event cache is compacted
+     * @param newPositions  old pointer -> new pointer
+     */
+    void remapPointers(int[] newPositions){
+        int end = size * width;
+        for(int i = head * width; i < end; ++i){
+            pointers[i] = newPositions[pointers[i]];
+        }
+    }
+
+    /**
+     * materialize partial matches, this function is used to output or debug
+     * @return          partial match list
+     */
+    public List<PartialMatch> getPartialMatchList(){
+        List<PartialMatch> ans = new ArrayList<>(size - head);
+        for(int pos = head; pos < size; ++pos){
+            List<Integer> recordPointers = new ArrayList<>(width);
+            for(int slot = 0; slot < width; ++slot){
+                recordPointers.add(pointers[pos * width + slot]);
+            }
+            ans.add(new PartialMatch(startTimes[pos], endTimes[pos], recordPointers));
+        }
+        return ans;
     }
 }
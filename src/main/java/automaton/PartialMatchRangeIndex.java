@@ -0,0 +1,190 @@
+package automaton;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * sorted index of a partial match buffer for band dependent constraints, e.g.,
+ * SEQ(A v1, B v2) WHERE v1.beat - 20 <= v2.beat AND v2.beat <= v1.beat + 20,
+ * partial matches of state v1 are sorted by v1.beat, an event of type B only visits keys in [beat - 20, beat + 20]
+ * -------------------------------------------------------------------------------------
+ * it is maintained like PartialMatchHashIndex: rows are inserted lazily before probing,
+ * rows dropped from head are removed from buckets in the probed range, and all buckets are purged periodically.
+ * candidates are sorted by sequence number, so partial matches are extended in the same order as scanning.
+ * a range that covers many rows (e.g., v0.a1 < v1.a1) is not probed, since scanning is cheaper
+ */
+class PartialMatchRangeIndex {
+    // use range index when a transition has a dependent constraint that bounds previous variable
+    static final boolean ENABLE_RANGE_INDEX = true;
+    // scan partial matches if the probed range covers more than 1/SCAN_RATIO of indexed keys or rows
+    static final int SCAN_RATIO = 16;
+
+    private final long column;                                  // indexed column (see TransitionPredicate.getPreColumn)
+    private final TreeMap<Long, PartialMatchHashIndex.Bucket> buckets;   // key -> bucket
+    private long indexedSeq;                                    // rows whose sequence numbers < indexedSeq are indexed
+    private long purgedSeq;                                     // first sequence number when purging all buckets last time
+    private long[] candidates;                                  // sequence numbers of last probe
+    private long[] marks;                                       // bitmap of candidates, bit i means firstSeq + i
+    private int candidateNum;                                   // number of candidates of last probe
+    private final long[] range;                                 // [min, max] of last probe
+
+    PartialMatchRangeIndex(long column, long firstSeq){
+        this.column = column;
+        buckets = new TreeMap<>();
+        indexedSeq = firstSeq;
+        purgedSeq = firstSeq;
+        candidates = new long[64];
+        marks = new long[16];
+        candidateNum = 0;
+        range = new long[2];
+    }
+
+    long getColumn(){
+        return column;
+    }
+
+    /**
+     * insert rows that are visible to current event but not indexed
+     * @param list          partial match buffer
+     * @param cache         event cache
+     * @param predicate     precompiled predicate, it reads value of the indexed attribute
+     * @param dcIdx         id of the dependent constraint on the indexed column
+     */
+    void catchUp(PartialMatchList list, EventCache cache, TransitionPredicate predicate, int dcIdx){
+        long firstSeq = list.getFirstSeq();
+        long visibleEndSeq = firstSeq + list.getVisibleSize();
+        for(long seq = Math.max(indexedSeq, firstSeq); seq < visibleEndSeq; ++seq){
+            long key = predicate.readPreValue(cache, list, (int) (seq - firstSeq), dcIdx);
+            buckets.computeIfAbsent(key, k -> new PartialMatchHashIndex.Bucket()).add(seq);
+        }
+        finishCatchUp(firstSeq, visibleEndSeq);
+    }
+
+    /**
+     * count-only NFA: the indexed column is a value column of aggregated rows (see CountPlan.getDCColumns)
+     * @param list          aggregated partial match buffer
+     */
+    void catchUp(AggregatedMatchList list){
+        long firstSeq = list.getFirstSeq();
+        long visibleEndSeq = firstSeq + list.getVisibleSize();
+        for(long seq = Math.max(indexedSeq, firstSeq); seq < visibleEndSeq; ++seq){
+            long key = list.getValue((int) (seq - firstSeq), (int) column);
+            buckets.computeIfAbsent(key, k -> new PartialMatchHashIndex.Bucket()).add(seq);
+        }
+        finishCatchUp(firstSeq, visibleEndSeq);
+    }
+
+    private void finishCatchUp(long firstSeq, long visibleEndSeq){
+        indexedSeq = Math.max(indexedSeq, visibleEndSeq);
+
+        // purge all buckets after many rows are dropped from head
+        if(firstSeq - purgedSeq > Math.max(1024, indexedSeq - firstSeq)){
+            Iterator<PartialMatchHashIndex.Bucket> it = buckets.values().iterator();
+            while(it.hasNext()){
+                PartialMatchHashIndex.Bucket bucket = it.next();
+                bucket.removeBefore(firstSeq);
+                if(bucket.size() == 0){
+                    it.remove();
+                }
+            }
+            purgedSeq = firstSeq;
+        }
+    }
+
+    /**
+     * collect sequence numbers of rows whose keys fall in the range derived from current event, see getCandidate
+     * rows are marked in a bitmap relative to firstSeq, walking the bitmap yields candidates in ascending order
+     * @param predicate     precompiled predicate, current values have been loaded
+     * @param dcIdx         id of the dependent constraint on the indexed column
+     * @param firstSeq      sequence number of the row at head
+     * @return              number of candidates, -1 if the range covers many indexed rows and scanning is cheaper
+     */
+    int probe(TransitionPredicate predicate, int dcIdx, long firstSeq){
+        candidateNum = 0;
+        predicate.getProbeRange(dcIdx, range);
+        long min = range[0];
+        long max = range[1];
+        if(min > max || buckets.isEmpty()){
+            return 0;
+        }
+        // visiting a bucket is much slower than checking a row, so wide ranges are not probed,
+        // keys are assumed to be uniformly distributed when estimating the share of rows in the range
+        long firstKey = buckets.firstKey();
+        long lastKey = buckets.lastKey();
+        double keySpan = (double) lastKey - firstKey + 1;
+        double rangeSpan = (double) Math.min(max, lastKey) - Math.max(min, firstKey) + 1;
+        if(rangeSpan <= 0){
+            return 0;
+        }
+        if(rangeSpan * SCAN_RATIO > keySpan){
+            return -1;
+        }
+        long rowNum = indexedSeq - firstSeq;
+        long maxCandidateNum = rowNum / SCAN_RATIO;
+        int wordNum = (int) ((rowNum + 63) >>> 6);
+        if(marks.length < wordNum){
+            marks = new long[Math.max(wordNum, marks.length << 1)];
+        }
+        int minWord = wordNum;
+        int maxWord = -1;
+        Iterator<Map.Entry<Long, PartialMatchHashIndex.Bucket>> it = buckets.subMap(min, true, max, true).entrySet().iterator();
+        while(it.hasNext()){
+            PartialMatchHashIndex.Bucket bucket = it.next().getValue();
+            bucket.removeBefore(firstSeq);
+            int size = bucket.size();
+            if(size == 0){
+                it.remove();
+                continue;
+            }
+            candidateNum += size;
+            if(candidateNum > maxCandidateNum){
+                // unselective range, e.g., v0.a1 < v1.a1
+                if(maxWord >= minWord){
+                    Arrays.fill(marks, minWord, maxWord + 1, 0);
+                }
+                candidateNum = 0;
+                return -1;
+            }
+            for(int i = 0; i < size; ++i){
+                int offset = (int) (bucket.get(i) - firstSeq);
+                int word = offset >>> 6;
+                marks[word] |= 1L << offset;
+                minWord = Math.min(minWord, word);
+                maxWord = Math.max(maxWord, word);
+            }
+        }
+        if(candidates.length < candidateNum){
+            candidates = new long[Math.max(candidateNum, candidates.length << 1)];
+        }
+        int num = 0;
+        for(int word = minWord; word <= maxWord; ++word){
+            long bits = marks[word];
+            marks[word] = 0;
+            while(bits != 0){
+                candidates[num++] = firstSeq + ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return candidateNum;
+    }
+
+    long getCandidate(int i){
+        return candidates[i];
+    }
+
+    /**
+     * @return          number of buckets, buckets of dropped rows are removed when probing or purging
+     */
+    int getKeyNum(){
+        return buckets.size();
+    }
+
+    void clear(long firstSeq){
+        buckets.clear();
+        indexedSeq = firstSeq;
+        purgedSeq = firstSeq;
+        candidateNum = 0;
+    }
+}
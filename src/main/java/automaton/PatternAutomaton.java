@@ -0,0 +1,222 @@
+package automaton;
+
+import pattern.PatternOperator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * [updated] native automaton of a complex event pattern with SEQ, AND and OR operators
+ * previous version decomposed AND(X, Y) into SEQ(X, Y) and SEQ(Y, X), so AND of k components generated
+ * k! sequential branches, and each branch had its own states and duplicated partial matches.
+ * Here a state is the set of matched variables, e.g., SEQ(AND(A a, B b), AND(C c, D d)) has states
+ * {}, {a}, {b}, {a,b}, {a,b,c}, {a,b,d}, {a,b,c,d}, partial matches that matched the same variables share a state.
+ * Whether a variable can be matched next only depends on the set of matched variables (see next function),
+ * so each match is generated once. Semantics are the same as decomposition, i.e., AND(X, Y) = SEQ(X, Y) OR SEQ(Y, X).
+ * -------------------------------------------------------------------------------------
+ * variables are numbered by their positions in pattern string,
+ * partial matches of a state store record pointers in this order (see getVarNames)
+ */
+class PatternAutomaton {
+    // node of pattern tree, leaf node has null operator
+    private record Node(PatternOperator operator, List<Node> children, long mask){}
+
+    // transition of automaton, it consumes an event of variable varIdx
+    record Edge(int from, int varIdx, int to){}
+
+    private final List<String> varNames;        // variable names (in pattern string order)
+    private final List<String> eventTypes;      // event types of variables
+    private final List<Long> stateMasks;        // state id -> matched variables (bitmap)
+    private final List<Boolean> finals;         // state id -> final state
+    private final List<Edge> edges;             // transitions
+
+    /**
+     * @param patternStr    e.g., SEQ(AND(A a, B b), OR(C c, D d))
+     */
+    PatternAutomaton(String patternStr){
+        varNames = new ArrayList<>();
+        eventTypes = new ArrayList<>();
+        Node root = parse(patternStr.trim());
+
+        // breadth first search from the empty set, state id 0 is start state
+        stateMasks = new ArrayList<>();
+        finals = new ArrayList<>();
+        edges = new ArrayList<>();
+        Map<Long, Integer> stateIds = new HashMap<>();
+        stateMasks.add(0L);
+        finals.add(false);
+        stateIds.put(0L, 0);
+        for(int id = 0; id < stateMasks.size(); ++id){
+            long matched = stateMasks.get(id);
+            long nextVars = next(root, matched);
+            while(nextVars != 0){
+                int varIdx = Long.numberOfTrailingZeros(nextVars);
+                nextVars &= nextVars - 1;
+                long nextMatched = matched | (1L << varIdx);
+                Integer nextId = stateIds.get(nextMatched);
+                if(nextId == null){
+                    nextId = stateMasks.size();
+                    stateMasks.add(nextMatched);
+                    finals.add(isComplete(root, nextMatched));
+                    stateIds.put(nextMatched, nextId);
+                }
+                edges.add(new Edge(id, varIdx, nextId));
+            }
+        }
+    }
+
+    private Node parse(String str){
+        int leftBracket = str.indexOf('(');
+        if(leftBracket == -1){
+            // leaf node, e.g., IBM a
+            String[] s = str.trim().split("\\s+");
+            if(s.length != 2){
+                throw new RuntimeException("cannot parse pattern: " + str);
+            }
+            if(varNames.contains(s[1])){
+                throw new RuntimeException("variable " + s[1] + " appears more than once");
+            }
+            if(varNames.size() == Long.SIZE - 1){
+                throw new RuntimeException("pattern has too many variables");
+            }
+            eventTypes.add(s[0]);
+            varNames.add(s[1]);
+            return new Node(null, List.of(), 1L << (varNames.size() - 1));
+        }
+
+        String operatorStr = str.substring(0, leftBracket).trim().toUpperCase();
+        PatternOperator operator;
+        switch (operatorStr) {
+            case "SEQ" -> operator = PatternOperator.SEQ;
+            case "AND" -> operator = PatternOperator.AND;
+            case "OR" -> operator = PatternOperator.OR;
+            default -> throw new RuntimeException("do not support '" + operatorStr + "' pattern operator");
+        }
+
+        // split components by commas whose bracket depth is 1, operators can have more than two components
+        List<Node> children = new ArrayList<>();
+        long mask = 0;
+        int depth = 0;
+        int start = leftBracket + 1;
+        int rightBracket = str.lastIndexOf(')');
+        for(int i = leftBracket; i <= rightBracket; ++i){
+            char c = str.charAt(i);
+            if(c == '('){
+                depth++;
+            }else if(c == ')'){
+                depth--;
+            }
+            if((c == ',' && depth == 1) || i == rightBracket){
+                Node child = parse(str.substring(start, i));
+                children.add(child);
+                mask |= child.mask();
+                start = i + 1;
+            }
+        }
+        return new Node(operator, children, mask);
+    }
+
+    /**
+     * @param node      pattern node
+     * @param matched   matched variables
+     * @return          variables of this node that can be matched next
+     */
+    private static long next(Node node, long matched){
+        long local = matched & node.mask();
+        if(node.operator() == null){
+            return local == 0 ? node.mask() : 0;
+        }
+        long ans = 0;
+        switch (node.operator()) {
+            case SEQ -> {
+                // the first component that is not complete
+                for(Node child : node.children()){
+                    if(!isComplete(child, matched)){
+                        return next(child, matched);
+                    }
+                }
+            }
+            case AND -> {
+                // AND(X, Y) = SEQ(X, Y) OR SEQ(Y, X), i.e., a started component is finished before others start
+                for(Node child : node.children()){
+                    long childMatched = matched & child.mask();
+                    if(childMatched != 0 && !isComplete(child, matched)){
+                        return next(child, matched);
+                    }
+                }
+                for(Node child : node.children()){
+                    if((matched & child.mask()) == 0){
+                        ans |= next(child, matched);
+                    }
+                }
+            }
+            case OR -> {
+                // once a component is chosen, other components cannot be matched
+                for(Node child : node.children()){
+                    if(local == 0){
+                        ans |= next(child, matched);
+                    }else if((matched & child.mask()) != 0){
+                        return next(child, matched);
+                    }
+                }
+            }
+        }
+        return ans;
+    }
+
+    private static boolean isComplete(Node node, long matched){
+        if(node.operator() == null){
+            return (matched & node.mask()) != 0;
+        }
+        if(node.operator() == PatternOperator.OR){
+            for(Node child : node.children()){
+                if((matched & child.mask()) != 0){
+                    return isComplete(child, matched);
+                }
+            }
+            return false;
+        }
+        for(Node child : node.children()){
+            if(!isComplete(child, matched)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getStateNum(){
+        return stateMasks.size();
+    }
+
+    boolean isFinal(int stateId){
+        return finals.get(stateId);
+    }
+
+    List<Edge> getEdges(){
+        return edges;
+    }
+
+    String getVarName(int varIdx){
+        return varNames.get(varIdx);
+    }
+
+    String getEventType(int varIdx){
+        return eventTypes.get(varIdx);
+    }
+
+    /**
+     * @param stateId   state id
+     * @return          matched variables of this state (in pattern string order)
+     */
+    List<String> getVarNames(int stateId){
+        long matched = stateMasks.get(stateId);
+        List<String> ans = new ArrayList<>(Long.bitCount(matched));
+        while(matched != 0){
+            ans.add(varNames.get(Long.numberOfTrailingZeros(matched)));
+            matched &= matched - 1;
+        }
+        return ans;
+    }
+}
@@ -0,0 +1,108 @@
+package automaton;
+
+import common.ComparedOperator;
+import common.Converter;
+import condition.DependentConstraint;
+
+/**
+ * generate specialized predicates for a transition
+ * all decisions that do not depend on events (column width, comparison operator,
+ * which side current variable is on, whether arithmetic is needed) are made once here,
+ * each generated lambda only contains the remaining comparison, so JIT can inline it into the scan loop
+ * -------------------------------------------------------------------------------------
+ * e.g., v1.a1 + 5 <= v2.a1 where v2 is current variable
+ * => (curValue, preValue) -> curValue >= preValue + 5
+ * constraints with multiples (e.g., v1.a3 * 2 + 5 <= v2.a3) fall back to DependentConstraint.satisfy
+ */
+class PredicateCodegen {
+    // check event type and all independent constraints of a record
+    @FunctionalInterface
+    interface RecordPredicate {
+        boolean test(byte[] record);
+    }
+
+    // check a dependent constraint between the value of current event and the value of previous event
+    @FunctionalInterface
+    interface DCPredicate {
+        boolean test(long curValue, long preValue);
+    }
+
+    /**
+     * chain type check and range checks, type check is the first one since it is the most selective
+     * @param typePos       start position of event type
+     * @param typeId        event type id
+     * @param positions     start positions of attributes
+     * @param isInt         column width of attributes
+     * @param mins          minimum values
+     * @param maxs          maximum values
+     * @return              generated predicate
+     */
+    static RecordPredicate compileIC(int typePos, int typeId, int[] positions, boolean[] isInt, long[] mins, long[] maxs){
+        RecordPredicate predicate = record -> Converter.readInt(record, typePos) == typeId;
+        for(int i = 0; i < positions.length; ++i){
+            RecordPredicate pre = predicate;
+            RecordPredicate range = compileRange(positions[i], isInt[i], mins[i], maxs[i]);
+            predicate = record -> pre.test(record) && range.test(record);
+        }
+        return predicate;
+    }
+
+    private static RecordPredicate compileRange(int pos, boolean isInt, long min, long max){
+        // one side ranges only need one comparison
+        if(isInt){
+            if(min <= Integer.MIN_VALUE){
+                return record -> Converter.readInt(record, pos) <= max;
+            }else if(max >= Integer.MAX_VALUE){
+                return record -> Converter.readInt(record, pos) >= min;
+            }
+            return record -> {
+                int value = Converter.readInt(record, pos);
+                return value >= min && value <= max;
+            };
+        }else{
+            if(min == Long.MIN_VALUE){
+                return record -> Converter.readLong(record, pos) <= max;
+            }else if(max == Long.MAX_VALUE){
+                return record -> Converter.readLong(record, pos) >= min;
+            }
+            return record -> {
+                long value = Converter.readLong(record, pos);
+                return value >= min && value <= max;
+            };
+        }
+    }
+
+    /**
+     * @param dc            dependent constraint
+     * @param curIsLeft     whether current variable is varName1
+     * @return              generated predicate
+     */
+    static DCPredicate compileDC(DependentConstraint dc, boolean curIsLeft){
+        if(!dc.hasUnitMultiple()){
+            return curIsLeft ? dc::satisfy : (curValue, preValue) -> dc.satisfy(preValue, curValue);
+        }
+
+        // left + leftAddend cmp right + rightAddend => left cmp right + delta
+        // if current variable is on the right side, we swap both sides and the comparison operator
+        long delta = dc.getSignedRightAddend() - dc.getSignedLeftAddend();
+        ComparedOperator cmp = curIsLeft ? dc.getCMP() : swap(dc.getCMP());
+        long curDelta = curIsLeft ? delta : -delta;
+        return switch (cmp) {
+            case LT -> (curValue, preValue) -> curValue < preValue + curDelta;
+            case LE -> (curValue, preValue) -> curValue <= preValue + curDelta;
+            case GT -> (curValue, preValue) -> curValue > preValue + curDelta;
+            case GE -> (curValue, preValue) -> curValue >= preValue + curDelta;
+            case EQ -> (curValue, preValue) -> curValue == preValue + curDelta;
+        };
+    }
+
+    static ComparedOperator swap(ComparedOperator cmp){
+        return switch (cmp) {
+            case LT -> ComparedOperator.GT;
+            case LE -> ComparedOperator.GE;
+            case GT -> ComparedOperator.LT;
+            case GE -> ComparedOperator.LE;
+            case EQ -> ComparedOperator.EQ;
+        };
+    }
+}
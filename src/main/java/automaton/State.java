@@ -1,9 +1,7 @@
 package automaton;
 
 
-import common.Converter;
 import common.EventSchema;
-import condition.DependentConstraint;
 
 import java.util.*;
 
@@ -15,9 +13,14 @@ public class State {
     private final String stateName;                 // state name
     private final int stateId;                      // stateId can unique represent a state
     private final List<Transition> transitions;     // edges / transitions
+    private List<String> varNames;                  // variables of partial matches (slot order), null means unknown
     private PartialMatchList partialMatchList;    // partial match buffer
+    private AggregatedMatchList aggregatedList;     // aggregated partial match buffer (count-only NFA)
+    private MatchCounter matchCounter;              // full match counter of final state (count-only NFA)
     private boolean isFinal;                        // final state
     private boolean isStart;                        // start state
+    private boolean useHashIndex;                   // probe hash indexes for equality dependent constraints
+    private boolean useRangeIndex;                  // probe range indexes for band dependent constraints
 
     public State(String stateName, int stateId){
         this.stateName = stateName;
@@ -26,6 +29,8 @@ public class State {
         partialMatchList = null;
         isFinal = false;
         isStart = false;
+        useHashIndex = PartialMatchHashIndex.ENABLE_HASH_INDEX;
+        useRangeIndex = PartialMatchRangeIndex.ENABLE_RANGE_INDEX;
     }
 
     public boolean getIsFinal(){
@@ -52,165 +57,328 @@ public class State {
         transitions.add(transition);
     }
 
+    /**
+     * @param varNames      variables matched by partial matches of this state (in slot order)
+     */
+    public void setVarNames(List<String> varNames){
+        this.varNames = varNames;
+    }
+
+    public List<String> getVarNames(){
+        return varNames;
+    }
+
+    /**
+     * create a buffer and bind to this state
+     * @param preVarNames   variable names of previous state, it is used when varNames is unknown
+     * @return              partial match buffer
+     */
+    private PartialMatchList createBuffer(List<String> preVarNames){
+        List<String> names = varNames;
+        if(names == null){
+            names = new ArrayList<>(preVarNames);
+            names.add(stateName);
+        }
+        partialMatchList = new PartialMatchList(names);
+        return partialMatchList;
+    }
+
     public void bindBuffer(PartialMatchList partialMatchList){
         this.partialMatchList = partialMatchList;
     }
 
-    // we need ptr
-    public Set<State> transfer(EventCache cache, byte[] record, long window, MatchStrategy matchStrategy, EventSchema schema, boolean hasInserted){
-        Set<State> nextStates = new HashSet<>();
-        long timestamp = schema.getTimestampFromRecord(record);
-        String[] attrTypes = schema.getAttrTypes();
+    void setHashIndex(boolean useHashIndex){
+        this.useHashIndex = useHashIndex;
+    }
 
-        int recordPointer = -1;
+    void setRangeIndex(boolean useRangeIndex){
+        this.useRangeIndex = useRangeIndex;
+    }
 
+    /**
+     * [updated] allocation-free transfer
+     * partial matches are rows of primitive arenas (see PartialMatchList),
+     * extension copies a row into next state's arena, timeout rows are dropped from head
+     * @param cache             event cache
+     * @param record            event
+     * @param timestamp         timestamp of this event
+     * @param window            query window
+     * @param matchStrategy     match strategy
+     * @param schema            event schema
+     * @param nextActiveStates  ids of states that receive new partial matches
+     */
+    public void transfer(EventCache cache, byte[] record, long timestamp, long window, MatchStrategy matchStrategy,
+                         EventSchema schema, BitSet nextActiveStates){
+        // expired partial matches are dropped from head in O(1), then scanning starts at the first live match
+        if(!isStart){
+            partialMatchList.expireHead(timestamp, window);
+        }
         // for each transaction
-        for(Transition transition : transitions){
+        int transitionNum = transitions.size();
+        for(int t = 0; t < transitionNum; ++t){
+            Transition transition = transitions.get(t);
             // first check independent constraints
-            if(transition.checkIC(schema, record)){
-                State nextState = transition.getNextState();
-                boolean hasTransition = false;
-                // here we need to judge whether current state whether is start state
-                // if yes, then we directly add this record to next state's match buffer
-                // otherwise, we need to check dependent predicates
-                if(isStart){
-                    if(hasInserted){
-                        recordPointer = cache.getLastRecordPtr();
-                    }else{
-                        recordPointer = cache.insert(record);
-                        hasInserted = true;
-                    }
-                    // this state is start state, we need to generate a partial match
-                    List<Integer> eventPointers = new ArrayList<>(4);
-                    eventPointers.add(recordPointer);
-                    // generate a partial match, start time and end time is record's timestamp
-                    PartialMatch match = new PartialMatch(timestamp, timestamp, eventPointers);
-                    // add the partial match to match buffer
-                    PartialMatchList nextMatchCache =  nextState.getPartialMatchList();
-                    if(nextMatchCache == null){
-                        // create a buffer and bind to a state
-                        List<String> stateNames = new ArrayList<>();
-                        stateNames.add(nextState.stateName);
-                        nextMatchCache = new PartialMatchList(stateNames);
-                        nextState.bindBuffer(nextMatchCache);
-                    }
-                    nextMatchCache.addPartialMatch(match);
-                    hasTransition = true;
+            TransitionPredicate predicate = transition.getPredicate(schema);
+            if(!predicate.checkIC(record)){
+                continue;
+            }
+            State nextState = transition.getNextState();
+            // here we need to judge whether current state whether is start state
+            // if yes, then we directly add this record to next state's match buffer
+            // otherwise, we need to check dependent predicates
+            if(isStart){
+                int recordPointer = cache.insertOnce(record);
+                PartialMatchList nextMatchCache = nextState.getPartialMatchList();
+                if(nextMatchCache == null){
+                    nextMatchCache = nextState.createBuffer(List.of());
                 }
-                else{
-                    List<PartialMatch> curPartialMatches = partialMatchList.getPartialMatchList();
-                    Iterator<PartialMatch> it = curPartialMatches.iterator();
-
-                    while(it.hasNext()){
-                        PartialMatch curMatch = it.next();
-                        long matchStartTime = curMatch.getStartTime();
-                        boolean timeout = timestamp - matchStartTime > window;
-                        //if timeout we need to remove this partial match
-                        if(timeout){
-                            it.remove();
-                        }
-                        // please note that timestamp is non-decreasing
-                        else{
-                            boolean satisfyAllDC = true;
-                            for(DependentConstraint dc : transition.getDCList()){
-                                String varName1 = dc.getVarName1();
-                                String varName2 = dc.getVarName2();
-                                // we only read int/float/double/long values
-                                long value1, value2;
-                                int idx = schema.getAttrNameIdx(dc.getAttrName());
-                                if(varName1.equals(nextState.getStateName())){
-                                    // find varName2 position
-                                    int pos = partialMatchList.findStateNamePosition(varName2);
-                                    //if(pos == -1){throw new RuntimeException("bug");}
-                                    byte[] record2 = cache.get(curMatch.getPointer(pos));
-                                    if (attrTypes[idx].equals("INT")) {
-                                        value2 = Converter.bytesToInt(schema.getIthAttrBytes(record2, idx));
-                                        value1 = Converter.bytesToInt(schema.getIthAttrBytes(record, idx));
-                                    } else if (attrTypes[idx].contains("FLOAT") || attrTypes[idx].contains("DOUBLE")) {
-                                        // Because the magnification has already been increased during storage,
-                                        // there is no need to increase the magnification here
-                                        value2 = Converter.bytesToLong(schema.getIthAttrBytes(record2, idx));
-                                        value1 = Converter.bytesToLong(schema.getIthAttrBytes(record, idx));
-                                    } else {
-                                        throw new RuntimeException("Wrong index position.");
-                                    }
-
-                                    if(!dc.satisfy(value1, value2)){
-                                        satisfyAllDC = false;
-                                        break;
-                                    }
-                                }
-                                else if(varName2.equals(nextState.getStateName())){
-                                    // find varName1 position
-                                    int pos = partialMatchList.findStateNamePosition(varName1);
-                                    //if(pos == -1){throw new RuntimeException("bug");}
-                                    byte[] record1 = cache.get(curMatch.getPointer(pos));
-                                    if (attrTypes[idx].equals("INT")) {
-                                        value1 = Converter.bytesToInt(schema.getIthAttrBytes(record1, idx));
-                                        value2 = Converter.bytesToInt(schema.getIthAttrBytes(record, idx));
-                                    } else if (attrTypes[idx].contains("FLOAT") || attrTypes[idx].contains("DOUBLE")) {
-                                        value1 = Converter.bytesToLong(schema.getIthAttrBytes(record1, idx));
-                                        value2 = Converter.bytesToLong(schema.getIthAttrBytes(record, idx));
-                                    } else {
-                                        throw new RuntimeException("Wrong index position.");
-                                    }
-
-                                    if(!dc.satisfy(value1, value2)){
-                                        satisfyAllDC = false;
-                                        break;
-                                    }
-                                }
-                                else{
-                                    throw new RuntimeException("bug");
-                                }
-                            }
-
-                            if(satisfyAllDC){
-                                if(matchStrategy == MatchStrategy.SKIP_TILL_NEXT_MATCH){
-                                    it.remove();
-                                }else if(matchStrategy == MatchStrategy.STRICT_CONTIGUOUS){
-                                    throw new RuntimeException("currently, we do not implement STRICT_CONTIGUOUS interface");
-                                }
-
-                                if(hasInserted){
-                                    recordPointer = cache.getLastRecordPtr();
-                                }else{
-                                    recordPointer = cache.insert(record);
-                                    hasInserted = true;
-                                }
-
-                                // create a match and add it to next buffer
-                                List<Integer> newEventPointers = new ArrayList<>(curMatch.getRecordPointers());
-                                newEventPointers.add(recordPointer);
-                                PartialMatch match = new PartialMatch(curMatch.getStartTime(), timestamp, newEventPointers);
-                                PartialMatchList nextCache = nextState.getPartialMatchList();
-                                if(nextCache == null){
-                                    // create a buffer and bind to a state
-                                    List<String> stateNames = new ArrayList<>(partialMatchList.getStateNames());
-                                    stateNames.add(nextState.getStateName());
-                                    nextCache = new PartialMatchList(stateNames);
-                                    nextState.bindBuffer(nextCache);
-                                }
-                                nextCache.addPartialMatch(match);
-                                hasTransition = true;
-                            }
-                        }
+                // generate a partial match, start time and end time is record's timestamp
+                nextMatchCache.addPartialMatch(recordPointer, timestamp);
+                nextActiveStates.set(nextState.stateId);
+            }else{
+                transferPartialMatches(transition, t, predicate, cache, record, timestamp, window,
+                        matchStrategy, nextActiveStates);
+            }
+        }
+    }
+
+    private void transferPartialMatches(Transition transition, int transitionIdx, TransitionPredicate predicate,
+                                        EventCache cache, byte[] record, long timestamp, long window,
+                                        MatchStrategy matchStrategy, BitSet nextActiveStates){
+        if(matchStrategy == MatchStrategy.STRICT_CONTIGUOUS){
+            throw new RuntimeException("currently, we do not implement STRICT_CONTIGUOUS interface");
+        }
+
+        // dependent constraints are resolved to pointer slots when compiling the predicate
+        boolean hasDC = predicate.hasDC();
+        if(hasDC){
+            predicate.loadCurrentValues(record);
+        }
+
+        int visibleSize = partialMatchList.getVisibleSize();
+        int eqIdx = useHashIndex ? predicate.getEqualityDC() : -1;
+        int rangeIdx = eqIdx == -1 && useRangeIndex ? predicate.getRangeDC() : -1;
+        if(eqIdx != -1){
+            // only probe partial matches whose values equal to the value of current event
+            PartialMatchHashIndex index = partialMatchList.getHashIndex(predicate.getPreColumn(eqIdx));
+            index.catchUp(partialMatchList, cache, predicate, eqIdx);
+            long firstSeq = partialMatchList.getFirstSeq();
+            PartialMatchHashIndex.Bucket bucket = index.probe(predicate.getEqualityProbeKey(eqIdx), firstSeq);
+            if(bucket == null){
+                return;
+            }
+            int recordPointer = -1;
+            for(int i = 0; i < bucket.size(); ++i){
+                int row = (int) (bucket.get(i) - firstSeq);
+                if(row >= visibleSize){
+                    break;
+                }
+                recordPointer = tryExtend(transition, transitionIdx, predicate, true, row, recordPointer, cache,
+                        record, timestamp, window, matchStrategy, nextActiveStates);
+            }
+            return;
+        }
+        if(rangeIdx != -1){
+            // only probe partial matches whose values fall in the range derived from current event
+            PartialMatchRangeIndex index = partialMatchList.getRangeIndex(predicate.getPreColumn(rangeIdx));
+            index.catchUp(partialMatchList, cache, predicate, rangeIdx);
+            long firstSeq = partialMatchList.getFirstSeq();
+            int candidateNum = index.probe(predicate, rangeIdx, firstSeq);
+            if(candidateNum != -1){
+                int recordPointer = -1;
+                for(int i = 0; i < candidateNum; ++i){
+                    int row = (int) (index.getCandidate(i) - firstSeq);
+                    if(row >= visibleSize){
+                        break;
                     }
+                    recordPointer = tryExtend(transition, transitionIdx, predicate, true, row, recordPointer, cache,
+                            record, timestamp, window, matchStrategy, nextActiveStates);
                 }
+                return;
+            }
+        }
+        // the range of current event covers many partial matches, or no index can be used
+        int recordPointer = -1;
+        for(int row = 0; row < visibleSize; ++row){
+            recordPointer = tryExtend(transition, transitionIdx, predicate, hasDC, row, recordPointer, cache,
+                    record, timestamp, window, matchStrategy, nextActiveStates);
+        }
+    }
 
-                if(hasTransition){
-                    nextStates.add(nextState);
+    /**
+     * extend a partial match with current event if it satisfies all dependent constraints
+     * @return      record pointer of current event, -1 if current event is not inserted into event cache
+     */
+    private int tryExtend(Transition transition, int transitionIdx, TransitionPredicate predicate, boolean hasDC,
+                          int row, int recordPointer, EventCache cache, byte[] record, long timestamp, long window,
+                          MatchStrategy matchStrategy, BitSet nextActiveStates){
+        // skip timeout or removed partial matches, they are dropped when they reach the head
+        if(!partialMatchList.isLive(row, timestamp, window) || partialMatchList.isConsumed(row, transitionIdx)){
+            return recordPointer;
+        }
+        if(hasDC && !predicate.checkDC(cache, partialMatchList, row)){
+            return recordPointer;
+        }
+        if(recordPointer == -1){
+            recordPointer = cache.insertOnce(record);
+        }
+        State nextState = transition.getNextState();
+        PartialMatchList nextCache = nextState.getPartialMatchList();
+        if(nextCache == null){
+            nextCache = nextState.createBuffer(partialMatchList.getStateNames());
+        }
+        // create a match and add it to next buffer
+        nextCache.addExtendedMatch(partialMatchList, row, recordPointer, timestamp, transition.getInsertSlot());
+        nextActiveStates.set(nextState.stateId);
+        if(matchStrategy == MatchStrategy.SKIP_TILL_NEXT_MATCH){
+            partialMatchList.markConsumed(row, transitionIdx, transitions.size());
+        }
+        return recordPointer;
+    }
+
+    /**
+     * transfer of count-only NFA, it propagates counts of aggregated rows instead of copying partial matches
+     * a row of previous state with count c that can be extended by current event
+     * generates c partial matches of next state, and they have the same key
+     * @param record            event
+     * @param timestamp         timestamp of this event
+     * @param window            query window
+     * @param matchStrategy     match strategy
+     * @param schema            event schema
+     * @param nextActiveStates  ids of states that receive new partial matches
+     */
+    public void transferCount(byte[] record, long timestamp, long window, MatchStrategy matchStrategy,
+                              EventSchema schema, BitSet nextActiveStates){
+        if(matchStrategy == MatchStrategy.STRICT_CONTIGUOUS){
+            throw new RuntimeException("currently, we do not implement STRICT_CONTIGUOUS interface");
+        }
+        if(!isStart){
+            aggregatedList.expireHead(timestamp, window);
+        }
+        int transitionNum = transitions.size();
+        for(int t = 0; t < transitionNum; ++t){
+            Transition transition = transitions.get(t);
+            TransitionPredicate predicate = transition.getPredicate(schema);
+            if(!predicate.checkIC(record)){
+                continue;
+            }
+            State nextState = transition.getNextState();
+            CountPlan plan = transition.getCountPlan();
+            if(isStart){
+                nextState.receiveCount(timestamp, plan.project(null, 0, record), 1, timestamp);
+                nextActiveStates.set(nextState.stateId);
+                continue;
+            }
+
+            boolean hasDC = predicate.hasDC();
+            if(hasDC){
+                predicate.loadCurrentValues(record);
+            }
+            transferAggregatedRows(transition, t, predicate, hasDC, record, timestamp, window,
+                    matchStrategy, nextActiveStates);
+        }
+    }
+
+    /**
+     * like transferPartialMatches, aggregated rows are probed by hash or range indexes if possible
+     */
+    private void transferAggregatedRows(Transition transition, int transitionIdx, TransitionPredicate predicate,
+                                        boolean hasDC, byte[] record, long timestamp, long window,
+                                        MatchStrategy matchStrategy, BitSet nextActiveStates){
+        int[] dcColumns = transition.getCountPlan().getDCColumns();
+        int visibleSize = aggregatedList.getVisibleSize();
+        int eqIdx = useHashIndex ? predicate.getEqualityDC() : -1;
+        int rangeIdx = eqIdx == -1 && useRangeIndex ? predicate.getRangeDC() : -1;
+        if(eqIdx != -1){
+            PartialMatchHashIndex index = aggregatedList.getHashIndex(dcColumns[eqIdx]);
+            index.catchUp(aggregatedList);
+            long firstSeq = aggregatedList.getFirstSeq();
+            PartialMatchHashIndex.Bucket bucket = index.probe(predicate.getEqualityProbeKey(eqIdx), firstSeq);
+            if(bucket == null){
+                return;
+            }
+            for(int i = 0; i < bucket.size(); ++i){
+                int row = (int) (bucket.get(i) - firstSeq);
+                if(row >= visibleSize){
+                    break;
+                }
+                tryExtendCount(transition, transitionIdx, predicate, true, dcColumns, row, record, timestamp, window,
+                        matchStrategy, nextActiveStates);
+            }
+            return;
+        }
+        if(rangeIdx != -1){
+            PartialMatchRangeIndex index = aggregatedList.getRangeIndex(dcColumns[rangeIdx]);
+            index.catchUp(aggregatedList);
+            long firstSeq = aggregatedList.getFirstSeq();
+            int candidateNum = index.probe(predicate, rangeIdx, firstSeq);
+            if(candidateNum != -1){
+                for(int i = 0; i < candidateNum; ++i){
+                    int row = (int) (index.getCandidate(i) - firstSeq);
+                    if(row >= visibleSize){
+                        break;
+                    }
+                    tryExtendCount(transition, transitionIdx, predicate, true, dcColumns, row, record, timestamp, window,
+                            matchStrategy, nextActiveStates);
                 }
+                return;
             }
         }
+        for(int row = 0; row < visibleSize; ++row){
+            tryExtendCount(transition, transitionIdx, predicate, hasDC, dcColumns, row, record, timestamp, window,
+                    matchStrategy, nextActiveStates);
+        }
+    }
 
-        return nextStates;
+    /**
+     * extend an aggregated row with current event if it satisfies all dependent constraints
+     */
+    private void tryExtendCount(Transition transition, int transitionIdx, TransitionPredicate predicate, boolean hasDC,
+                                int[] dcColumns, int row, byte[] record, long timestamp, long window,
+                                MatchStrategy matchStrategy, BitSet nextActiveStates){
+        if(!aggregatedList.isLive(row, timestamp, window) || aggregatedList.isConsumed(row, transitionIdx)){
+            return;
+        }
+        if(hasDC && !predicate.checkDC(aggregatedList, row, dcColumns)){
+            return;
+        }
+        State nextState = transition.getNextState();
+        nextState.receiveCount(aggregatedList.getStartTime(row), transition.getCountPlan().project(aggregatedList, row, record),
+                aggregatedList.getCount(row), timestamp);
+        nextActiveStates.set(nextState.stateId);
+        if(matchStrategy == MatchStrategy.SKIP_TILL_NEXT_MATCH){
+            aggregatedList.markConsumed(row, transitionIdx, transitions.size());
+        }
+    }
+
+    private void receiveCount(long startTime, long[] key, long count, long timestamp){
+        if(isFinal){
+            matchCounter.add(timestamp, count);
+        }else{
+            aggregatedList.add(startTime, key, count);
+        }
     }
 
     public PartialMatchList getPartialMatchList(){
         return partialMatchList;
     }
 
+    AggregatedMatchList getAggregatedList(){
+        return aggregatedList;
+    }
+
+    void bindAggregatedList(AggregatedMatchList aggregatedList){
+        this.aggregatedList = aggregatedList;
+    }
+
+    MatchCounter getMatchCounter(){
+        return matchCounter;
+    }
+
+    void bindMatchCounter(MatchCounter matchCounter){
+        this.matchCounter = matchCounter;
+    }
+
     public String toString(){
         return " [stateId: " + stateId +
                 ", stateName: " + stateName +
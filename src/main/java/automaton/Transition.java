@@ -12,6 +12,11 @@ public class Transition {
     private List<IndependentConstraint> icList;     //  independent constraint list
     private List<DependentConstraint> dcList;       // dependent constraint list
     private State nextState;                        // next state
+    private List<String> preVarNames;               // variable names of previous states
+    private String varName;                         // variable name of events consumed by this transition
+    private int insertSlot;                         // slot of consumed event in partial matches of next state
+    private TransitionPredicate predicate;          // precompiled predicate
+    private CountPlan countPlan;                    // used by count-only NFA
 
     public Transition(String nextEventType){
         this.nextEventType = nextEventType;
@@ -24,6 +29,68 @@ public class Transition {
         this.icList = icList;
         this.dcList = dcList;
         this.nextState = nextState;
+        this.preVarNames = new ArrayList<>();
+        varName = nextState.getStateName();
+        insertSlot = 0;
+    }
+
+    /**
+     * @param preVarNames   variable names of previous states (in order),
+     *                      dependent constraints are resolved to positions of this list
+     */
+    public Transition(String nextEventType, List<IndependentConstraint> icList, List<DependentConstraint> dcList,
+                      State nextState, List<String> preVarNames){
+        this(nextEventType, icList, dcList, nextState);
+        this.preVarNames = preVarNames;
+        insertSlot = preVarNames.size();
+    }
+
+    /**
+     * [updated] a state of AND/OR pattern matches a set of variables (see PatternAutomaton),
+     * so consumed variable is not the state name and consumed event may be inserted before other events
+     * @param preVarNames   variable names of previous state (in slot order)
+     * @param varName       variable name of consumed events
+     * @param insertSlot    slot of consumed event in partial matches of next state
+     */
+    public Transition(String nextEventType, List<IndependentConstraint> icList, List<DependentConstraint> dcList,
+                      State nextState, List<String> preVarNames, String varName, int insertSlot){
+        this(nextEventType, icList, dcList, nextState);
+        this.preVarNames = preVarNames;
+        this.varName = varName;
+        this.insertSlot = insertSlot;
+    }
+
+    /**
+     * [updated] compile the predicate, NFA calls this function after generating states
+     * @param schema        event schema
+     */
+    public void compile(EventSchema schema){
+        predicate = new TransitionPredicate(schema, nextEventType, icList, dcList, varName, preVarNames);
+    }
+
+    /**
+     * copy this transition for an NFA instantiated from a template (see NFATemplateCache)
+     * constraint lists, compiled predicate and count plan are shared, scratch values of predicate are not
+     * @param nextState     next state of the new NFA
+     * @return              copied transition
+     */
+    Transition copy(State nextState){
+        Transition transition = new Transition(nextEventType, icList, dcList, nextState, preVarNames, varName, insertSlot);
+        transition.predicate = predicate == null ? null : predicate.copy();
+        transition.countPlan = countPlan;
+        return transition;
+    }
+
+    /**
+     * obtain the predicate compiled for schema, if it is not compiled, we compile it here
+     * @param schema        event schema
+     * @return              precompiled predicate
+     */
+    TransitionPredicate getPredicate(EventSchema schema){
+        if(predicate == null || !predicate.isCompiledFor(schema)){
+            compile(schema);
+        }
+        return predicate;
     }
 
     /**
@@ -34,34 +101,29 @@ public class Transition {
      * @return              true: satisfy all independent conditions
      */
     public boolean checkIC(EventSchema schema, byte[] eventRecord){
-        // determine the stored column index for event type
-        int typeIdx = schema.getTypeIdx();
-        String curType = schema.getTypeFromBytesRecord(eventRecord, typeIdx);
-        boolean satisfy = true;
-        if (curType.equals(nextEventType)) {
-            for(IndependentConstraint ic : icList){
-                String name = ic.getAttrName();
-                long min = ic.getMinValue();
-                long max = ic.getMaxValue();
-                // obtain the corresponding column for storage based on the attribute name
-                int col = schema.getAttrNameIdx(name);
-                long value = schema.getValueFromBytesRecord(eventRecord, col);
-                if (value < min || value > max) {
-                    satisfy = false;
-                    break;
-                }
-            }
-        }else{
-            satisfy = false;
-        }
+        return getPredicate(schema).checkIC(eventRecord);
+    }
+
+    CountPlan getCountPlan(){
+        return countPlan;
+    }
 
-        return satisfy;
+    void setCountPlan(CountPlan countPlan){
+        this.countPlan = countPlan;
     }
 
     public List<DependentConstraint> getDCList(){
         return dcList;
     }
 
+    public String getVarName(){
+        return varName;
+    }
+
+    int getInsertSlot(){
+        return insertSlot;
+    }
+
     public State getNextState(){
         return nextState;
     }
@@ -0,0 +1,392 @@
+package automaton;
+
+import common.ComparedOperator;
+import common.Converter;
+import common.EventSchema;
+import condition.DependentConstraint;
+import condition.IndependentConstraint;
+
+import java.util.List;
+
+/**
+ * precompiled predicate of a transition
+ * event type is compared by integer type id, attribute values are read at fixed byte offsets,
+ * and each dependent constraint is resolved to the pointer slot of its previous variable,
+ * so that processing an event does not need string comparisons, hash lookups or byte array copies
+ * -------------------------------------------------------------------------------------
+ * when ENABLE_CODEGEN is true, constraints are evaluated by specialized lambdas (see PredicateCodegen)
+ * note that curValues is a scratch array, a predicate cannot be shared by different threads
+ */
+public class TransitionPredicate {
+    // evaluate constraints with generated predicates
+    static final boolean ENABLE_CODEGEN = true;
+
+    private final EventSchema schema;       // compiled for this schema
+    private final int typePos;              // start position of event type
+    private final String eventType;         // event type
+    private final int typeId;               // event type id, -1 means the type was unknown when compiling
+    private final int[] icPositions;        // start positions of independent constraint attributes
+    private final boolean[] icIsInt;        // INT occupies 4 bytes, FLOAT/DOUBLE occupy 8 bytes
+    private final long[] icMins;            // minimum values
+    private final long[] icMaxs;            // maximum values
+    private final DependentConstraint[] dcs;// dependent constraints
+    private final int[] dcSlots;            // pointer slots of previous variables
+    private final int[] dcPositions;        // start positions of dependent constraint attributes
+    private final boolean[] dcIsInt;        // INT occupies 4 bytes, FLOAT/DOUBLE occupy 8 bytes
+    private final boolean[] curIsLeft;      // whether current variable is varName1
+    private final long[] curValues;         // attribute values of current event
+    private final long[] preColumns;        // (pointer slot, start position) of previous variables' attributes
+    private final double[] preSlopes;       // expression of previous variable = preSlope * value + preAddend
+    private final double[] preAddends;
+    private final double[] curSlopes;       // expression of current variable = curSlope * value + curAddend
+    private final double[] curAddends;
+    private final ComparedOperator[] preOps;// constraint is rewritten as: value of previous variable preOp bound
+    private final PredicateCodegen.RecordPredicate icPredicate;  // generated independent predicate
+    private final PredicateCodegen.DCPredicate[] dcPredicates;   // generated dependent predicates
+
+    /**
+     * @param schema        event schema
+     * @param eventType     event type of next state
+     * @param icList        independent constraints of next variable
+     * @param dcList        dependent constraints between next variable and previous variables
+     * @param curVarName    variable name of next state
+     * @param preVarNames   variable names of previous states, i.e., state names of a partial match
+     */
+    TransitionPredicate(EventSchema schema, String eventType, List<IndependentConstraint> icList,
+                        List<DependentConstraint> dcList, String curVarName, List<String> preVarNames){
+        this.schema = schema;
+        typePos = schema.getAttrStartPos(schema.getTypeIdx());
+        // unknown event type has no events, -1 never matches an assigned id
+        this.eventType = eventType;
+        typeId = schema.lookupTypeId(eventType);
+
+        int icNum = icList.size();
+        icPositions = new int[icNum];
+        icIsInt = new boolean[icNum];
+        icMins = new long[icNum];
+        icMaxs = new long[icNum];
+        for(int i = 0; i < icNum; ++i){
+            IndependentConstraint ic = icList.get(i);
+            int idx = schema.getAttrNameIdx(ic.getAttrName());
+            icPositions[i] = schema.getAttrStartPos(idx);
+            icIsInt[i] = isIntColumn(schema, idx);
+            icMins[i] = ic.getMinValue();
+            icMaxs[i] = ic.getMaxValue();
+        }
+
+        int dcNum = dcList.size();
+        dcs = dcList.toArray(new DependentConstraint[0]);
+        dcSlots = new int[dcNum];
+        dcPositions = new int[dcNum];
+        dcIsInt = new boolean[dcNum];
+        curIsLeft = new boolean[dcNum];
+        curValues = new long[dcNum];
+        preColumns = new long[dcNum];
+        preSlopes = new double[dcNum];
+        preAddends = new double[dcNum];
+        curSlopes = new double[dcNum];
+        curAddends = new double[dcNum];
+        preOps = new ComparedOperator[dcNum];
+        for(int i = 0; i < dcNum; ++i){
+            DependentConstraint dc = dcs[i];
+            int idx = schema.getAttrNameIdx(dc.getAttrName());
+            dcPositions[i] = schema.getAttrStartPos(idx);
+            dcIsInt[i] = isIntColumn(schema, idx);
+            String preVarName;
+            if(dc.getVarName1().equals(curVarName)){
+                curIsLeft[i] = true;
+                preVarName = dc.getVarName2();
+            }else if(dc.getVarName2().equals(curVarName)){
+                curIsLeft[i] = false;
+                preVarName = dc.getVarName1();
+            }else{
+                throw new RuntimeException("dependent constraint does not contain variable " + curVarName);
+            }
+            dcSlots[i] = preVarNames.indexOf(preVarName);
+            if(dcSlots[i] == -1){
+                throw new RuntimeException("cannot find stateName: " + preVarName);
+            }
+            preColumns[i] = ((long) dcSlots[i] << 32) | dcPositions[i];
+
+            // cur cmp pre => pre swap(cmp) cur, then divide both sides by the multiple of previous variable
+            double leftSlope = dc.getLeftSlope();
+            double rightSlope = dc.getRightSlope();
+            preSlopes[i] = curIsLeft[i] ? rightSlope : leftSlope;
+            preAddends[i] = curIsLeft[i] ? dc.getSignedRightAddend() : dc.getSignedLeftAddend();
+            curSlopes[i] = curIsLeft[i] ? leftSlope : rightSlope;
+            curAddends[i] = curIsLeft[i] ? dc.getSignedLeftAddend() : dc.getSignedRightAddend();
+            ComparedOperator op = curIsLeft[i] ? PredicateCodegen.swap(dc.getCMP()) : dc.getCMP();
+            preOps[i] = preSlopes[i] < 0 ? PredicateCodegen.swap(op) : op;
+        }
+
+        if(ENABLE_CODEGEN){
+            icPredicate = PredicateCodegen.compileIC(typePos, typeId, icPositions, icIsInt, icMins, icMaxs);
+            dcPredicates = new PredicateCodegen.DCPredicate[dcNum];
+            for(int i = 0; i < dcNum; ++i){
+                dcPredicates[i] = PredicateCodegen.compileDC(dcs[i], curIsLeft[i]);
+            }
+        }else{
+            icPredicate = null;
+            dcPredicates = null;
+        }
+    }
+
+    /**
+     * compile the independent constraints of one variable, e.g., a standing query filters routed events with it
+     * @param schema        event schema
+     * @param eventType     event type of this variable
+     * @param icList        independent constraints of this variable
+     * @return              predicate without dependent constraints
+     */
+    public static TransitionPredicate compileIC(EventSchema schema, String eventType, List<IndependentConstraint> icList){
+        return new TransitionPredicate(schema, eventType, icList, List.of(), null, List.of());
+    }
+
+    /**
+     * all fields except curValues are never modified after compiling, so they are shared
+     * @param other     compiled predicate
+     */
+    private TransitionPredicate(TransitionPredicate other){
+        schema = other.schema;
+        typePos = other.typePos;
+        eventType = other.eventType;
+        typeId = other.typeId;
+        icPositions = other.icPositions;
+        icIsInt = other.icIsInt;
+        icMins = other.icMins;
+        icMaxs = other.icMaxs;
+        dcs = other.dcs;
+        dcSlots = other.dcSlots;
+        dcPositions = other.dcPositions;
+        dcIsInt = other.dcIsInt;
+        curIsLeft = other.curIsLeft;
+        curValues = new long[other.curValues.length];
+        preColumns = other.preColumns;
+        preSlopes = other.preSlopes;
+        preAddends = other.preAddends;
+        curSlopes = other.curSlopes;
+        curAddends = other.curAddends;
+        preOps = other.preOps;
+        icPredicate = other.icPredicate;
+        dcPredicates = other.dcPredicates;
+    }
+
+    /**
+     * @return      a predicate that shares compiled parts but owns scratch values
+     */
+    TransitionPredicate copy(){
+        return new TransitionPredicate(this);
+    }
+
+    private static boolean isIntColumn(EventSchema schema, int idx){
+        String attrType = schema.getIthAttrType(idx);
+        if(attrType.equals("INT")){
+            return true;
+        }else if(attrType.contains("FLOAT") || attrType.contains("DOUBLE")){
+            return false;
+        }
+        throw new RuntimeException("Wrong index position.");
+    }
+
+    private static long readValue(byte[] record, int pos, boolean isInt){
+        // Because the magnification has already been increased during storage,
+        // there is no need to increase the magnification here
+        return isInt ? Converter.readInt(record, pos) : Converter.readLong(record, pos);
+    }
+
+    /**
+     * a predicate compiled before its event type is registered has to be compiled again
+     * @param s     event schema
+     * @return      true if this predicate can be used for schema s
+     */
+    public boolean isCompiledFor(EventSchema s){
+        return schema == s && (typeId != -1 || s.lookupTypeId(eventType) == -1);
+    }
+
+    /**
+     * check event type and independent constraints
+     * @param record    event
+     * @return          true: satisfy all independent conditions
+     */
+    public boolean checkIC(byte[] record){
+        if(icPredicate != null){
+            return icPredicate.test(record);
+        }
+        if(Converter.readInt(record, typePos) != typeId){
+            return false;
+        }
+        for(int i = 0; i < icPositions.length; ++i){
+            long value = readValue(record, icPositions[i], icIsInt[i]);
+            if(value < icMins[i] || value > icMaxs[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean hasDC(){
+        return dcs.length != 0;
+    }
+
+    /**
+     * read attribute values of current event before scanning partial matches
+     * @param record    current event
+     */
+    void loadCurrentValues(byte[] record){
+        for(int i = 0; i < dcs.length; ++i){
+            curValues[i] = readValue(record, dcPositions[i], dcIsInt[i]);
+        }
+    }
+
+    /**
+     * check dependent constraints between current event (see loadCurrentValues) and a partial match
+     * @param cache     event cache
+     * @param list      partial match buffer
+     * @param row       row of partial match
+     * @return          true: satisfy all dependent conditions
+     */
+    boolean checkDC(EventCache cache, PartialMatchList list, int row){
+        for(int i = 0; i < dcs.length; ++i){
+            byte[] preRecord = cache.get(list.getPointer(row, dcSlots[i]));
+            if(!satisfyDC(i, readValue(preRecord, dcPositions[i], dcIsInt[i]))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * check dependent constraints between current event (see loadCurrentValues) and matched events
+     * @param records   matched events, i-th event is the event of i-th previous variable (see LazyNFA)
+     * @return          true: satisfy all dependent conditions
+     */
+    boolean checkDC(byte[][] records){
+        for(int i = 0; i < dcs.length; ++i){
+            if(!satisfyDC(i, readValue(records[dcSlots[i]], dcPositions[i], dcIsInt[i]))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * check dependent constraints between current event (see loadCurrentValues) and an aggregated row
+     * @param list      aggregated partial match buffer
+     * @param row       row of aggregated buffer
+     * @param columns   value columns of previous variables (see CountPlan)
+     * @return          true: satisfy all dependent conditions
+     */
+    boolean checkDC(AggregatedMatchList list, int row, int[] columns){
+        for(int i = 0; i < dcs.length; ++i){
+            if(!satisfyDC(i, list.getValue(row, columns[i]))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean satisfyDC(int i, long preValue){
+        if(dcPredicates != null){
+            return dcPredicates[i].test(curValues[i], preValue);
+        }
+        return curIsLeft[i] ? dcs[i].satisfy(curValues[i], preValue) : dcs[i].satisfy(preValue, curValues[i]);
+    }
+
+    /**
+     * @return      id of the first equality dependent constraint without multiples, -1 if no such constraint
+     */
+    int getEqualityDC(){
+        for(int i = 0; i < dcs.length; ++i){
+            if(dcs[i].getCMP() == ComparedOperator.EQ && dcs[i].hasUnitMultiple()){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * value of previous variable that can match current event (see loadCurrentValues)
+     * cur + leftAddend = pre + rightAddend or pre + leftAddend = cur + rightAddend
+     * @param i     id of an equality dependent constraint
+     * @return      value of previous variable
+     */
+    long getEqualityProbeKey(int i){
+        long delta = dcs[i].getSignedRightAddend() - dcs[i].getSignedLeftAddend();
+        return curIsLeft[i] ? curValues[i] - delta : curValues[i] + delta;
+    }
+
+    /**
+     * @return      id of the first dependent constraint that bounds the value of previous variable, -1 if no such constraint
+     */
+    int getRangeDC(){
+        for(int i = 0; i < dcs.length; ++i){
+            if(preSlopes[i] != 0){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * range of previous variable's value that can match current event (see loadCurrentValues),
+     * all dependent constraints on the same attribute of the same previous variable are intersected, e.g.,
+     * v1.beat - 20 <= v2.beat AND v2.beat <= v1.beat + 20 => [v2.beat - 20, v2.beat + 20]
+     * bounds are rounded outwards, so the range may contain a few values that do not satisfy constraints
+     * @param i         id of a dependent constraint (see getRangeDC)
+     * @param range     output, [min, max]
+     */
+    void getProbeRange(int i, long[] range){
+        long min = Long.MIN_VALUE;
+        long max = Long.MAX_VALUE;
+        for(int j = 0; j < dcs.length; ++j){
+            if(preColumns[j] != preColumns[i] || preSlopes[j] == 0){
+                continue;
+            }
+            double bound = (curSlopes[j] * curValues[j] + curAddends[j] - preAddends[j]) / preSlopes[j];
+            switch (preOps[j]) {
+                case LT, LE -> max = Math.min(max, (long) Math.ceil(bound));
+                case GT, GE -> min = Math.max(min, (long) Math.floor(bound));
+                case EQ -> {
+                    max = Math.min(max, (long) Math.ceil(bound));
+                    min = Math.max(min, (long) Math.floor(bound));
+                }
+            }
+        }
+        range[0] = min;
+        range[1] = max;
+    }
+
+    /**
+     * partial match indexes are shared by transitions that read the same column
+     * @param i         i-th dependent constraint
+     * @return          pointer slot and start position of previous variable's attribute
+     */
+    long getPreColumn(int i){
+        return preColumns[i];
+    }
+
+    /**
+     * @param cache     event cache
+     * @param list      partial match buffer
+     * @param row       row of partial match
+     * @param i         i-th dependent constraint
+     * @return          attribute value of previous variable
+     */
+    long readPreValue(EventCache cache, PartialMatchList list, int row, int i){
+        byte[] preRecord = cache.get(list.getPointer(row, dcSlots[i]));
+        return readValue(preRecord, dcPositions[i], dcIsInt[i]);
+    }
+
+    int getDCNum(){
+        return dcs.length;
+    }
+
+    /**
+     * @param i         i-th dependent constraint
+     * @return          varName.attrName of previous variable
+     */
+    String getPreColumnName(int i){
+        String preVarName = curIsLeft[i] ? dcs[i].getVarName2() : dcs[i].getVarName1();
+        return preVarName + "." + dcs[i].getAttrName();
+    }
+}
@@ -21,6 +21,10 @@ public class Tuple {
         fullMatch.addAll(records);
     }
 
+    public List<String> getEvents(){
+        return fullMatch;
+    }
+
     public String projectionExclude(int pos){
         StringBuilder ans = new StringBuilder();
         for(int i = 0; i < fullMatch.size(); ++i){
@@ -3,6 +3,7 @@ package baselines;
 import arrival.JsonMap;
 import automaton.NFA;
 import common.EventSchema;
+import common.Metrics;
 import automaton.MatchStrategy;
 import automaton.Tuple;
 import condition.IndependentConstraint;
@@ -70,7 +71,7 @@ public class FullScan {
         return eventIndices;
     }
 
-    public int processCountQueryUsingNFA(QueryPattern pattern, NFA nfa){
+    public long processCountQueryUsingNFA(QueryPattern pattern, NFA nfa){
         // first generate arrival rate json file
         if(updateArrival){
             updateArrivalJson();
@@ -143,19 +144,16 @@ public class FullScan {
         }
 
         long scanFilterEndTime = System.nanoTime();
-        String scanOutput = String.format("%.3f", (scanCost + 0.0) / 1_000_000);
-        System.out.println("scan cost: " + scanOutput + "ms");
-        String filterOutput = String.format("%.3f", (scanFilterEndTime - scanFilterStartTime - scanCost + 0.0) / 1_000_000);
-        System.out.println("filter cost: " + filterOutput + "ms");
+        Metrics.QUERY_SCAN_LATENCY.record(scanCost);
+        Metrics.QUERY_FILTER_LATENCY.record(scanFilterEndTime - scanFilterStartTime - scanCost);
 
         long matchStartTime = System.nanoTime();
         for(byte[] event : filteredEvents){
             nfa.consume(schema, event, strategy);
         }
-        int ans = nfa.countTuple();
+        long ans = nfa.countTuple();
         long matchEndTime = System.nanoTime();
-        String matchOutput = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + matchOutput + "ms");
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
         return ans;
     }
@@ -168,7 +166,7 @@ public class FullScan {
         }
 
         MatchStrategy strategy = pattern.getStrategy();
-        nfa.generateNFAUsingQueryPattern(pattern);
+        nfa.generateNFAUsingQueryPattern(pattern, false);
         // read entire dataset
         int curPage = 0;
         short curOffset = 0;
@@ -233,10 +231,8 @@ public class FullScan {
         }
 
         long scanFilterEndTime = System.nanoTime();
-        String scanOutput = String.format("%.3f", (scanCost + 0.0) / 1_000_000);
-        System.out.println("scan cost: " + scanOutput + "ms");
-        String filterOutput = String.format("%.3f", (scanFilterEndTime - scanFilterStartTime - scanCost + 0.0) / 1_000_000);
-        System.out.println("filter cost: " + filterOutput + "ms");
+        Metrics.QUERY_SCAN_LATENCY.record(scanCost);
+        Metrics.QUERY_FILTER_LATENCY.record(scanFilterEndTime - scanFilterStartTime - scanCost);
 
         long matchStartTime = System.nanoTime();
         for(byte[] event : filteredEvents){
@@ -244,8 +240,7 @@ public class FullScan {
         }
         List<Tuple> ans = nfa.getTuple(schema);
         long matchEndTime = System.nanoTime();
-        String matchOutput = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + matchOutput + "ms");
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
         return ans;
     }
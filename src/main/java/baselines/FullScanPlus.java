@@ -90,7 +90,7 @@ public class FullScanPlus {
         }
     }
 
-    public int processCountQueryUsingNFA(QueryPattern pattern, NFA nfa){
+    public long processCountQueryUsingNFA(QueryPattern pattern, NFA nfa){
         MatchStrategy strategy = pattern.getStrategy();
         nfa.generateNFAUsingQueryPattern(pattern);
 
@@ -100,17 +100,16 @@ public class FullScanPlus {
         for(byte[] event : filteredEvents){
             nfa.consume(schema, event, strategy);
         }
-        int ans = nfa.countTuple();
+        long ans = nfa.countTuple();
         long matchEndTime = System.nanoTime();
-        String matchOutput = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + matchOutput + "ms");
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
         return ans;
     }
 
     public List<Tuple> processTupleQueryUsingNFA(QueryPattern pattern, NFA nfa){
         MatchStrategy strategy = pattern.getStrategy();
-        nfa.generateNFAUsingQueryPattern(pattern);
+        nfa.generateNFAUsingQueryPattern(pattern, false);
 
         List<byte[]> filteredEvents = getEventsByPredicates(pattern);
 
@@ -120,8 +119,7 @@ public class FullScanPlus {
         }
         List<Tuple> ans = nfa.getTuple(schema);
         long matchEndTime = System.nanoTime();
-        String matchOutput = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + matchOutput + "ms");
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
         return ans;
     }
@@ -307,10 +305,8 @@ public class FullScanPlus {
         long filterEndTime = System.nanoTime();
         filterCost += (filterEndTime - filterStartTime);
 
-        String scanOutput = String.format("%.3f", (scanCost + 0.0) / 1_000_000);
-        System.out.println("scan cost: " + scanOutput + "ms");
-        String filterOutput = String.format("%.3f", (filterCost + 0.0) / 1_000_000);
-        System.out.println("filter cost: " + filterOutput + "ms");
+        Metrics.QUERY_SCAN_LATENCY.record(scanCost);
+        Metrics.QUERY_FILTER_LATENCY.record(filterCost);
 
         return filteredEvents;
     }
@@ -534,10 +530,8 @@ removed code lines:
         }
 
         long scanFilterEndTime = System.nanoTime();
-        String scanOutput = String.format("%.3f", (scanCost + 0.0) / 1_000_000);
-        System.out.println("scan cost: " + scanOutput + "ms");
-        String filterOutput = String.format("%.3f", (scanFilterEndTime - scanFilterStartTime - scanCost + 0.0) / 1_000_000);
-        System.out.println("filter cost: " + filterOutput + "ms");
+        Metrics.QUERY_SCAN_LATENCY.record(scanCost);
+        Metrics.QUERY_FILTER_LATENCY.record(scanFilterEndTime - scanFilterStartTime - scanCost);
 
         return ans;
     }
@@ -1,5 +1,6 @@
 package baselines;
 
+import automaton.MatchSink;
 import automaton.NFA;
 import common.EventSchema;
 import common.ReservoirSampling;
@@ -63,10 +64,22 @@ public abstract class Index {
 
     public abstract boolean insertBatchRecord(List<String[]> batchRecords, boolean updatedFlag);
 
-    public abstract int processCountQueryUsingNFA(QueryPattern pattern, NFA nfa);
+    public abstract long processCountQueryUsingNFA(QueryPattern pattern, NFA nfa);
 
     public abstract List<Tuple> processTupleQueryUsingNFA(QueryPattern pattern, NFA nfa);
 
+    /**
+     * streaming version of processTupleQueryUsingNFA, matches are delivered to sink as soon as they are generated,
+     * so that we neither keep all matches in memory nor format them to strings
+     * @param pattern       query pattern
+     * @param nfa           automata
+     * @param sink          match sink
+     */
+    public void processTupleQueryUsingNFA(QueryPattern pattern, NFA nfa, MatchSink sink){
+        nfa.setMatchSink(sink);
+        processTupleQueryUsingNFA(pattern, nfa);
+    }
+
     public abstract void print();
 
     /**
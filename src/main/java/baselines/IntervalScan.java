@@ -80,7 +80,7 @@ public class IntervalScan extends baselines.Index {
 
     @Override
     // [updated]
-    public int processCountQueryUsingNFA(QueryPattern pattern, NFA nfa) {
+    public long processCountQueryUsingNFA(QueryPattern pattern, NFA nfa) {
         List<byte[]> events = obtainEventsBasedQuery(pattern);
 
         long matchStartTime = System.nanoTime();
@@ -89,11 +89,10 @@ public class IntervalScan extends baselines.Index {
         for(byte[] event : events){
             nfa.consume(schema, event, strategy);
         }
-        int ans = nfa.countTuple();
+        long ans = nfa.countTuple();
         long matchEndTime = System.nanoTime();
 
-        String output = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + output + "ms");
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
         return ans;
     }
@@ -105,15 +104,14 @@ public class IntervalScan extends baselines.Index {
 
         long matchStartTime = System.nanoTime();
         MatchStrategy strategy = pattern.getStrategy();
-        nfa.generateNFAUsingQueryPattern(pattern);
+        nfa.generateNFAUsingQueryPattern(pattern, false);
         for(byte[] event : events){
             nfa.consume(schema, event, strategy);
         }
         List<Tuple> tuples = nfa.getTuple(schema);
         long matchEndTime = System.nanoTime();
 
-        String output = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + output + "ms");
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
         return tuples;
     }
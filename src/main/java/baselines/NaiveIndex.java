@@ -7,6 +7,7 @@ import btree.BPlusTree4Long;
 
 import btree.BPlusTreeInterface;
 import common.IndexValuePair;
+import common.Metrics;
 import automaton.MatchStrategy;
 import common.ReservoirSampling;
 import condition.IndependentConstraint;
@@ -58,7 +59,7 @@ public class NaiveIndex extends baselines.Index {
     }
 
     @Override
-    public int processCountQueryUsingNFA(QueryPattern pattern, NFA nfa) {
+    public long processCountQueryUsingNFA(QueryPattern pattern, NFA nfa) {
         List<byte[]> events = obtainEventsBasedQuery(pattern);
 
         // match based on nfa...
@@ -68,10 +69,9 @@ public class NaiveIndex extends baselines.Index {
         for(byte[] event : events){
             nfa.consume(schema, event, strategy);
         }
-        int ans = nfa.countTuple();
+        long ans = nfa.countTuple();
         long matchEndTime = System.nanoTime();
-        String matchOutput = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + matchOutput + "ms");
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
         return ans;
     }
@@ -83,14 +83,13 @@ public class NaiveIndex extends baselines.Index {
         // match based on nfa...
         long matchStartTime = System.nanoTime();
         MatchStrategy strategy = pattern.getStrategy();
-        nfa.generateNFAUsingQueryPattern(pattern);
+        nfa.generateNFAUsingQueryPattern(pattern, false);
         for(byte[] event : events){
             nfa.consume(schema, event, strategy);
         }
         List<Tuple> ans = nfa.getTuple(schema);
         long matchEndTime = System.nanoTime();
-        String matchOutput = String.format("%.3f", (matchEndTime - matchStartTime + 0.0) / 1_000_000);
-        System.out.println("match cost: " + matchOutput + "ms");
+        Metrics.QUERY_MATCH_LATENCY.record(matchEndTime - matchStartTime);
 
         return ans;
     }
@@ -236,15 +235,13 @@ public class NaiveIndex extends baselines.Index {
             mergedPairs = mergeIndexValuePair(mergedPairs, pairs);
         }
         long filterEndTime = System.nanoTime();
-        String filterOutput = String.format("%.3f", (filterEndTime - filterStartTime + 0.0) / 1_000_000);
-        System.out.println("filter cost: " + filterOutput + "ms");
+        Metrics.QUERY_FILTER_LATENCY.record(filterEndTime - filterStartTime);
 
         // obtain events...
         long scanStartTime = System.nanoTime();
         List<byte[]> events = obtainEventsBasedPairs(mergedPairs, schema.getStore());
         long scanEndTime = System.nanoTime();
-        String scanOutput = String.format("%.3f", (scanEndTime - scanStartTime + 0.0) / 1_000_000);
-        System.out.println("scan cost: " + scanOutput + "ms");
+        Metrics.QUERY_SCAN_LATENCY.record(scanEndTime - scanStartTime);
 
         return events;
     }
@@ -113,7 +113,7 @@ public class Test_FullScanPlus {
             System.out.println("\n" + i + "-th query starting...");
             long startRunTs = System.currentTimeMillis();
             if(queryStatement.contains("COUNT")){
-                int cnt = fullScan.processCountQueryUsingNFA(pattern, new NFA());
+                long cnt = fullScan.processCountQueryUsingNFA(pattern, new NFA());
                 System.out.println("number of tuples: " + cnt);
             }else {
                 List<Tuple> tuples = fullScan.processTupleQueryUsingNFA(pattern, new NFA());
@@ -134,7 +134,7 @@ public class Test_FullScanPlus {
         long startRunTs = System.currentTimeMillis();
         QueryPattern pattern = StatementParser.getQueryPattern(queryStatement);
         if(queryStatement.contains("COUNT")){
-            int cnt = fullScan.processCountQueryUsingNFA(pattern, new NFA());
+            long cnt = fullScan.processCountQueryUsingNFA(pattern, new NFA());
             System.out.println("number of tuples: " + cnt);
         }else {
             List<Tuple> tuples = fullScan.processTupleQueryUsingNFA(pattern, new NFA());
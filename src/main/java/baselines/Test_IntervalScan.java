@@ -134,7 +134,7 @@ class Test_IntervalScan {
         QueryPattern pattern = StatementParser.getQueryPattern(queryStatement);
         long startRunTs = System.currentTimeMillis();
         if(queryStatement.contains("COUNT")){
-            int cnt = index.processCountQueryUsingNFA(pattern, new NFA());
+            long cnt = index.processCountQueryUsingNFA(pattern, new NFA());
             System.out.println("number of tuples: " + cnt);
         }else {
             List<Tuple> tuples = index.processTupleQueryUsingNFA(pattern, new NFA());
@@ -158,7 +158,7 @@ class Test_IntervalScan {
 
             QueryPattern pattern = StatementParser.getQueryPattern(queryStatement);
             if(queryStatement.contains("COUNT")){
-                int cnt = index.processCountQueryUsingNFA(pattern, new NFA());
+                long cnt = index.processCountQueryUsingNFA(pattern, new NFA());
                 System.out.println("number of tuples: " + cnt);
             }
             else {
@@ -142,7 +142,7 @@ class Test_NaiveIndex {
         QueryPattern pattern = StatementParser.getQueryPattern(queryStatement);
         long startRunTs = System.currentTimeMillis();
         if(queryStatement.contains("COUNT")){
-            int cnt = index.processCountQueryUsingNFA(pattern, new NFA());
+            long cnt = index.processCountQueryUsingNFA(pattern, new NFA());
             System.out.println("number of tuples: " + cnt);
         }else {
             List<Tuple> tuples = index.processTupleQueryUsingNFA(pattern, new NFA());
@@ -166,7 +166,7 @@ class Test_NaiveIndex {
 
             QueryPattern pattern = StatementParser.getQueryPattern(queryStatement);
             if(queryStatement.contains("COUNT")){
-                int cnt = index.processCountQueryUsingNFA(pattern, new NFA());
+                long cnt = index.processCountQueryUsingNFA(pattern, new NFA());
                 System.out.println("number of tuples: " + cnt);
             }else {
                 List<Tuple> tuples = index.processTupleQueryUsingNFA(pattern, new NFA());
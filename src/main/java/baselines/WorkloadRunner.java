@@ -0,0 +1,387 @@
+package baselines;
+
+import acer.ACER;
+import automaton.NFA;
+import common.JsonReader;
+import common.Metadata;
+import common.Metrics;
+import common.StatementParser;
+import generator.DataGenerator;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import pattern.QueryPattern;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * end-to-end workload runner, a configurable version of Test_ACER, Test_FullScanPlus, Test_IntervalScan and Test_NaiveIndex
+ * it inserts a dataset, runs a query file several rounds, and writes a JSON report that contains
+ * p50/p95/p99 of insertion latency, flush duration, query latency, phase latency (filter/scan/match cost), bytes read
+ * and totals of common.Metrics counters
+ * (src/main/output/show_average_latency.py can read the report)
+ * -------------------------------------------------------------------------------------
+ * usage (in the project root directory, events are written to store/):
+ * mvn compile exec:java -Dexec.mainClass=baselines.WorkloadRunner -Dexec.args="--dataset synthetic --method ACER"
+ * --dataset        crimes | nasdaq | job | synthetic (default: synthetic)
+ * --method         ACER | NAIVE_INDEX | INTERVAL_SCAN | FULL_SCAN (default: ACER),
+ *                  note that insertion of NAIVE_INDEX and INTERVAL_SCAN is left to implement (see their insertRecord)
+ * --events         number of synthetic events (default: 1048576)
+ * --batch-size     events of a batch, it should divide 65536 (default: 512)
+ * --ingest         in-order | out-of-order, out-of-order shuffles events in each batch (default: in-order)
+ * --update-ratio   ratio of updated events in each synthetic batch (default: 0)
+ * --queries        query file, a name in src/main/java/query or a path (default: [dataset]_query.json)
+ * --threads        comma separated matching thread counts, only ACER uses it (default: 1)
+ * --warmup         unmeasured rounds of the query file (default: 1)
+ * --measurement    measured rounds of the query file (default: 3)
+ * --output         JSON report (default: src/main/output/[dataset]_[method].json)
+ * --log            file that keeps outputs of the method (default: discard outputs)
+ * -------------------------------------------------------------------------------------
+ */
+public class WorkloadRunner {
+    private static final String[] PHASES = {"filter", "scan", "match"};
+    private static final Metrics.Histogram[] PHASE_LATENCIES = {
+            Metrics.QUERY_FILTER_LATENCY, Metrics.QUERY_SCAN_LATENCY, Metrics.QUERY_MATCH_LATENCY};
+    // totals of each run
+    private static final String[] COUNTER_NAMES = {"clusters examined", "clusters skipped", "events fetched",
+            "partial matches created", "partial matches expired"};
+    private static final Metrics.Counter[] COUNTERS = {Metrics.CLUSTERS_EXAMINED, Metrics.CLUSTERS_SKIPPED,
+            Metrics.EVENTS_FETCHED, Metrics.PARTIAL_MATCHES_CREATED, Metrics.PARTIAL_MATCHES_EXPIRED};
+
+    // FullScanPlus does not extend Index, so we wrap methods
+    private interface Method {
+        void insertRecord(String record);
+        void insertBatchRecord(List<String[]> batchRecords, boolean updatedFlag, boolean inOrder);
+        void finishInsertion();
+        // returns number of matches
+        long query(QueryPattern pattern, boolean countQuery);
+        void setMatchThreadNum(int threadNum);
+    }
+
+    /**
+     * @param values        values
+     * @return              count, mean, p50, p95, p99 and max of values (nearest-rank percentiles)
+     */
+    static JSONObject summarize(double[] values){
+        JSONObject summary = new JSONObject();
+        int n = values.length;
+        summary.put("count", n);
+        if(n == 0){
+            return summary;
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for(double v : sorted){
+            sum += v;
+        }
+        summary.put("mean", sum / n);
+        summary.put("p50", percentile(sorted, 0.50));
+        summary.put("p95", percentile(sorted, 0.95));
+        summary.put("p99", percentile(sorted, 0.99));
+        summary.put("max", sorted[n - 1]);
+        return summary;
+    }
+
+    /**
+     * @param histogram     histogram of durations [ns]
+     * @return              count, mean, p50, p95, p99 and max of the histogram [ms]
+     */
+    static JSONObject summarize(Metrics.Histogram histogram){
+        JSONObject summary = new JSONObject();
+        summary.put("count", histogram.count());
+        if(histogram.count() != 0){
+            summary.put("mean", histogram.mean() / 1_000_000);
+            summary.put("p50", histogram.percentile(0.50) / 1_000_000.0);
+            summary.put("p95", histogram.percentile(0.95) / 1_000_000.0);
+            summary.put("p99", histogram.percentile(0.99) / 1_000_000.0);
+            summary.put("max", histogram.max() / 1_000_000.0);
+        }
+        summary.put("unit", "ms");
+        return summary;
+    }
+
+    /**
+     * @param sorted        values in ascending order
+     * @param p             percentile in (0, 1]
+     * @return              smallest value that is greater than or equal to p of values
+     */
+    static double percentile(double[] sorted, double p){
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static Map<String, String> parseArgs(String[] args){
+        Map<String, String> options = new HashMap<>();
+        for(int i = 0; i < args.length; i += 2){
+            if(!args[i].startsWith("--") || i + 1 == args.length){
+                throw new IllegalArgumentException("options should be pairs of '--name value', illegal option: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static String createTableStatement(String dataset){
+        return switch (dataset) {
+            case "crimes" -> "CREATE TABLE crimes (PrimaryType TYPE, ID INT, Beat INT, District INT, Latitude DOUBLE.9, Longitude DOUBLE.9, Date TIMESTAMP)";
+            case "nasdaq" -> "CREATE TABLE nasdaq (ticker TYPE, open DOUBLE.2, high DOUBLE.2, low DOUBLE.2, close DOUBLE.2, vol INT, Date TIMESTAMP)";
+            case "job" -> "CREATE TABLE job (timestamp TIMESTAMP, jobID FLOAT.0, eventType TYPE, username CHAR[44], schedulingClass INT, jobName CHAR[44])";
+            case "synthetic" -> "CREATE TABLE synthetic (type TYPE, a1 INT, a2 INT, a3 DOUBLE.1, a4 DOUBLE.1, time TIMESTAMP)";
+            default -> throw new IllegalArgumentException("dataset '" + dataset + "' is not supported.");
+        };
+    }
+
+    private static String indexedAttributes(String dataset){
+        return switch (dataset) {
+            case "crimes" -> "crimes(Beat, District, Latitude, Longitude)";
+            case "nasdaq" -> "nasdaq(open, vol)";
+            case "job" -> "job(schedulingClass)";
+            case "synthetic" -> "synthetic(a1, a2, a3, a4)";
+            default -> throw new IllegalArgumentException("dataset '" + dataset + "' is not supported.");
+        };
+    }
+
+    private static Method createMethod(String dataset, String methodName){
+        StatementParser.createTable(StatementParser.convert(createTableStatement(dataset)));
+        if(methodName.equals("FULL_SCAN")){
+            FullScanPlus fullScan = new FullScanPlus(Metadata.getInstance().getEventSchema(dataset.toUpperCase()));
+            return new Method() {
+                public void insertRecord(String record){ fullScan.insertOrDeleteRecord(record, false); }
+                public void insertBatchRecord(List<String[]> batchRecords, boolean updatedFlag, boolean inOrder){
+                    fullScan.insertBatchRecord(batchRecords, updatedFlag, inOrder);
+                }
+                // write arrival json file for real-world datasets
+                public void finishInsertion(){ if(!dataset.equals("synthetic")) fullScan.updateArrivalJson(); }
+                public long query(QueryPattern pattern, boolean countQuery){
+                    return countQuery ? fullScan.processCountQueryUsingNFA(pattern, new NFA()) :
+                            fullScan.processTupleQueryUsingNFA(pattern, new NFA()).size();
+                }
+                public void setMatchThreadNum(int threadNum){}
+            };
+        }
+
+        String statement = "CREATE INDEX " + dataset + "_" + methodName.toLowerCase() + " USING " + methodName +
+                " ON " + indexedAttributes(dataset);
+        Index index = StatementParser.createIndex(StatementParser.convert(statement));
+        index.initial();
+        return new Method() {
+            public void insertRecord(String record){ index.insertRecord(record, false); }
+            public void insertBatchRecord(List<String[]> batchRecords, boolean updatedFlag, boolean inOrder){
+                if(index instanceof ACER){
+                    index.insertBatchRecord(batchRecords, updatedFlag);
+                }else{
+                    // NaiveIndex and IntervalScan do not implement batch insertion
+                    for(String[] record : batchRecords){
+                        index.insertRecord(String.join(",", record), updatedFlag);
+                    }
+                }
+            }
+            public void finishInsertion(){}
+            public long query(QueryPattern pattern, boolean countQuery){
+                return countQuery ? index.processCountQueryUsingNFA(pattern, new NFA()) :
+                        index.processTupleQueryUsingNFA(pattern, new NFA()).size();
+            }
+            public void setMatchThreadNum(int threadNum){
+                if(index instanceof ACER acer){
+                    acer.setMatchThreadNum(threadNum);
+                }
+            }
+        };
+    }
+
+    /**
+     * insert a csv file (first line is header), out-of-order ingestion shuffles records in each batch
+     * @return              insertion latency of each record [ns]
+     */
+    private static double[] insertFile(Method method, String filePath, int batchSize, boolean inOrder){
+        List<Double> latencies = new ArrayList<>(1 << 20);
+        Random random = new Random(11);
+        try(BufferedReader reader = new BufferedReader(new FileReader(filePath))){
+            reader.readLine();
+            List<String> batch = new ArrayList<>(batchSize);
+            String line = reader.readLine();
+            while(line != null || !batch.isEmpty()){
+                if(line != null){
+                    batch.add(line);
+                    line = reader.readLine();
+                }
+                if(batch.size() == batchSize || (line == null && !batch.isEmpty())){
+                    if(!inOrder){
+                        Collections.shuffle(batch, random);
+                    }
+                    for(String record : batch){
+                        long start = System.nanoTime();
+                        method.insertRecord(record);
+                        latencies.add((double) (System.nanoTime() - start));
+                    }
+                    batch.clear();
+                }
+            }
+        }catch (IOException e){
+            throw new RuntimeException("cannot read dataset file: " + filePath, e);
+        }
+        return latencies.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /**
+     * insert synthetic events in batches, each batch has (batchSize * updateRatio) updated events
+     * @return              insertion latency of each batch divided by batch size [ns]
+     */
+    private static double[] insertSynthetic(Method method, int eventNum, int batchSize, boolean inOrder, double updateRatio){
+        String[] attrDataTypes = {"INT_UNIFORM", "INT_UNIFORM", "DOUBLE_UNIFORM", "DOUBLE_UNIFORM"};
+        DataGenerator generator = new DataGenerator(attrDataTypes);
+        int updateNum = (int) (updateRatio * batchSize);
+        int batchNum = eventNum / batchSize;
+        double[] latencies = new double[batchNum];
+        for(int i = 0; i < batchNum; i++){
+            List<String[]> batchRecords = generator.generateDataInBatch(batchSize - updateNum, inOrder);
+            // updated events keep type and timestamp of inserted events, so the batch size does not change
+            for(int e = 0; e < updateNum; e++){
+                String[] record = batchRecords.get(e);
+                batchRecords.add(new String[]{record[0], "500", "500", "5000", "5000", record[5]});
+            }
+            long start = System.nanoTime();
+            method.insertBatchRecord(batchRecords, updateNum > 0, inOrder);
+            latencies[i] = (System.nanoTime() - start) / (double) batchSize;
+        }
+        return latencies;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseArgs(args);
+        String dataset = options.getOrDefault("dataset", "synthetic").toLowerCase();
+        String methodName = options.getOrDefault("method", "ACER").toUpperCase();
+        int eventNum = Integer.parseInt(options.getOrDefault("events", "1048576"));
+        int batchSize = Integer.parseInt(options.getOrDefault("batch-size", "512"));
+        String ingest = options.getOrDefault("ingest", "in-order");
+        double updateRatio = Double.parseDouble(options.getOrDefault("update-ratio", "0"));
+        String queryFile = options.getOrDefault("queries", dataset + "_query.json");
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "1"));
+        int measurement = Integer.parseInt(options.getOrDefault("measurement", "3"));
+        int[] threadNums = Arrays.stream(options.getOrDefault("threads", "1").split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+
+        if(!ingest.equals("in-order") && !ingest.equals("out-of-order")){
+            throw new IllegalArgumentException("ingest mode should be in-order or out-of-order");
+        }
+        boolean inOrder = ingest.equals("in-order");
+        if(updateRatio != 0 && !dataset.equals("synthetic")){
+            throw new IllegalArgumentException("update ratio is only supported by synthetic dataset");
+        }
+
+        String sep = File.separator;
+        String prefixPath = System.getProperty("user.dir") + sep + "src" + sep + "main" + sep;
+        String queryFilePath = new File(queryFile).exists() ? queryFile : prefixPath + "java" + sep + "query" + sep + queryFile;
+        String outputPath = options.getOrDefault("output", prefixPath + "output" + sep + dataset + "_" + methodName.toLowerCase() + ".json");
+        JSONArray queries = JSONArray.fromObject(JsonReader.getJson(queryFilePath));
+
+        // phase costs come from common.Metrics, outputs of methods are kept in log or discarded
+        Metrics.enable();
+        PrintStream console = System.out;
+        OutputStream log = options.containsKey("log") ? new BufferedOutputStream(new FileOutputStream(options.get("log"))) : OutputStream.nullOutputStream();
+        System.setOut(new PrintStream(log, true));
+
+        // 1. insert events
+        Method method = createMethod(dataset, methodName);
+        long buildStart = System.nanoTime();
+        double[] insertLatencies = dataset.equals("synthetic") ?
+                insertSynthetic(method, eventNum, batchSize, inOrder, updateRatio) :
+                insertFile(method, prefixPath + "dataset" + sep + dataset + ".csv", batchSize, inOrder);
+        method.finishInsertion();
+        long buildCost = (System.nanoTime() - buildStart) / 1_000_000;
+        console.println("build cost: " + buildCost + "ms");
+
+        JSONObject report = new JSONObject();
+        report.put("dataset", dataset);
+        report.put("method", methodName);
+        report.put("events", dataset.equals("synthetic") ? eventNum : insertLatencies.length);
+        report.put("batch size", batchSize);
+        report.put("ingest", ingest);
+        report.put("update ratio", updateRatio);
+        report.put("queries", queryFile);
+        report.put("warmup", warmup);
+        report.put("measurement", measurement);
+        report.put("java", System.getProperty("java.version"));
+        report.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        report.put("processors", Runtime.getRuntime().availableProcessors());
+        report.put("build cost", buildCost);
+        JSONObject insertLatency = summarize(insertLatencies);
+        insertLatency.put("unit", "ns");
+        report.put("insert latency", insertLatency);
+        report.put("flush duration", summarize(Metrics.FLUSH_DURATION));
+
+        // 2. run query file for each thread count
+        JSONArray runs = new JSONArray();
+        int queryNum = queries.size();
+        for(int threadNum : threadNums){
+            method.setMatchThreadNum(threadNum);
+            for(int round = 0; round < warmup; round++){
+                for(int i = 0; i < queryNum; i++){
+                    String statement = queries.getString(i);
+                    method.query(StatementParser.getQueryPattern(statement), statement.contains("COUNT"));
+                }
+            }
+
+            long[] counterStarts = new long[COUNTERS.length];
+            for(int k = 0; k < COUNTERS.length; k++){
+                counterStarts[k] = COUNTERS[k].get();
+            }
+            int executionNum = measurement * queryNum;
+            double[] queryCosts = new double[executionNum];
+            double[][] phaseCosts = new double[PHASES.length][executionNum];
+            double[] readBytes = new double[executionNum];
+            long[] matchNums = new long[queryNum];
+            for(int round = 0; round < measurement; round++){
+                for(int i = 0; i < queryNum; i++){
+                    int execution = round * queryNum + i;
+                    String statement = queries.getString(i);
+                    QueryPattern pattern = StatementParser.getQueryPattern(statement);
+                    long[] phaseStarts = new long[PHASES.length];
+                    for(int k = 0; k < PHASES.length; k++){
+                        phaseStarts[k] = PHASE_LATENCIES[k].sum();
+                    }
+                    long readStart = Metrics.BYTES_MAPPED.get();
+                    long queryStart = System.nanoTime();
+                    matchNums[i] = method.query(pattern, statement.contains("COUNT"));
+                    queryCosts[execution] = (System.nanoTime() - queryStart) / 1_000_000.0;
+                    readBytes[execution] = Metrics.BYTES_MAPPED.get() - readStart;
+                    for(int k = 0; k < PHASES.length; k++){
+                        phaseCosts[k][execution] = (PHASE_LATENCIES[k].sum() - phaseStarts[k]) / 1_000_000.0;
+                    }
+                    console.println("threads: " + threadNum + ", round: " + round + ", " + i + "-th query cost: " +
+                            String.format("%.3f", queryCosts[execution]) + "ms.");
+                }
+            }
+
+            JSONObject run = new JSONObject();
+            run.put("threads", threadNum);
+            run.put("query cost", queryCosts);
+            run.put("number of tuples", matchNums);
+            JSONObject queryLatency = summarize(queryCosts);
+            queryLatency.put("unit", "ms");
+            run.put("query latency", queryLatency);
+            for(int k = 0; k < PHASES.length; k++){
+                JSONObject phaseLatency = summarize(phaseCosts[k]);
+                phaseLatency.put("unit", "ms");
+                run.put(PHASES[k] + " cost", phaseLatency);
+            }
+            JSONObject bytes = summarize(readBytes);
+            bytes.put("unit", "bytes");
+            bytes.put("total", (long) Arrays.stream(readBytes).sum());
+            run.put("read bytes", bytes);
+            for(int k = 0; k < COUNTERS.length; k++){
+                run.put(COUNTER_NAMES[k], COUNTERS[k].get() - counterStarts[k]);
+            }
+            runs.add(run);
+        }
+        report.put("runs", runs);
+
+        System.out.flush();
+        System.setOut(console);
+        log.close();
+        try(Writer writer = new FileWriter(outputPath)){
+            writer.write(report.toString(2));
+        }
+        console.println("report: " + outputPath);
+    }
+}
@@ -123,5 +123,27 @@ public class Converter {
         return int1|int2|int3|int4;
     }
 
+    /**
+     * read a little-endian int from a record without copying bytes
+     * @param bytes     byte record
+     * @param offset    start position
+     * @return          int value
+     */
+    public static int readInt(byte[] bytes, int offset){
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 |
+                (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
 
+    /**
+     * read a little-endian long from a record without copying bytes
+     * @param bytes     byte record
+     * @param offset    start position
+     * @return          long value
+     */
+    public static long readLong(byte[] bytes, int offset){
+        return (bytes[offset] & 0xffL) | (bytes[offset + 1] & 0xffL) << 8 |
+                (bytes[offset + 2] & 0xffL) << 16 | (bytes[offset + 3] & 0xffL) << 24 |
+                (bytes[offset + 4] & 0xffL) << 32 | (bytes[offset + 5] & 0xffL) << 40 |
+                (bytes[offset + 6] & 0xffL) << 48 | (bytes[offset + 7] & 0xffL) << 56;
+    }
 }
@@ -1,6 +1,7 @@
 package common;
 
 import store.EventStore;
+import store.RID;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -17,6 +18,7 @@ public class EventSchema {
     private int hasAssignedId;                          // event type is String, so we assign an integer id to an event type
     private short fixedRecordSize;                      // number of bytes required to store a record
     private short timestampIdx = -1;                    // timestamp position
+    private short typeIdx = -1;                         // event type position
     private String schemaName;                          // schema name
     private String[] attrNames;                         // attribute name
     private String[] attrTypes;                         // attribute type, like INT, DOUBLE, LONG, TIMESTAMP
@@ -78,6 +80,9 @@ public class EventSchema {
         for(int i = 0; i < attrTypes.length; ++i){
             if(attrTypes[i].equals("INT") || attrTypes[i].equals("TYPE")){
                 positions[i] = new StorePos(startPos, 4);
+                if(attrTypes[i].equals("TYPE")){
+                    typeIdx = (short) i;
+                }
                 startPos += 4;
             }else if(attrTypes[i].contains("FLOAT") || attrTypes[i].contains("DOUBLE")){
                 positions[i] = new StorePos(startPos, 8);
@@ -135,6 +140,16 @@ public class EventSchema {
         }
     }
 
+    /**
+     * read-only version of getTypeId, queries use it so that they never register event types
+     * @param eventType event type
+     * @return assigned id, -1 if this event type has not been stored
+     */
+    public int lookupTypeId(String eventType){
+        Integer typeId = typeMap.get(eventType);
+        return typeId == null ? -1 : typeId;
+    }
+
     public int getPageStoreRecordNum(){
         int pageSize = store.getPageSize();
         return pageSize / fixedRecordSize;
@@ -148,13 +163,29 @@ public class EventSchema {
     }
 
     public int getTypeIdx(){
-        for(int i = 0; i < attrTypes.length; ++i){
-            String attrType = attrTypes[i];
-            if(attrType.equals("TYPE")){
-                return i;
-            }
+        if(typeIdx == -1){
+            throw new IllegalStateException("This schema is missing the type attribute.");
         }
-        throw new IllegalStateException("This schema is missing the timestamp attribute.");
+        return typeIdx;
+    }
+
+    /**
+     * start position of the i-th attribute in a byte record,
+     * precompiled predicates use it to read values without copying bytes
+     * @param idx   attribute index
+     * @return      start position
+     */
+    public int getAttrStartPos(int idx){
+        return positions[idx].startPos();
+    }
+
+    /**
+     * obtaining event type id from byte records
+     * @param record    byte record
+     * @return          event type id
+     */
+    public int getTypeIdFromBytesRecord(byte[] record){
+        return Converter.readInt(record, positions[getTypeIdx()].startPos());
     }
 
     // convert string type records to byte type arrays
@@ -209,6 +240,45 @@ public class EventSchema {
         return ans;
     }
 
+    /**
+     * build a projected record that only contains event type, timestamp and given attributes,
+     * other attributes are zero, so predicates can read these attributes at fixed offsets
+     * (e.g., ACER builds it from covering columns instead of fetching the event).
+     * rid is appended after the fixed record, then the event can be fetched once it appears in a match
+     * @param typeId        event type id
+     * @param timestamp     timestamp
+     * @param colIdxs       attribute indices
+     * @param values        attribute values (FLOAT/DOUBLE values have been magnified)
+     * @param rid           rid of the event
+     * @return              byte record
+     */
+    public byte[] convertToProjectedBytes(int typeId, long timestamp, int[] colIdxs, long[] values, RID rid){
+        byte[] ans = new byte[fixedRecordSize + 8];
+        System.arraycopy(Converter.longToBytes(rid.getLongKey()), 0, ans, fixedRecordSize, 8);
+        System.arraycopy(Converter.intToBytes(typeId), 0, ans, positions[getTypeIdx()].startPos(), 4);
+        System.arraycopy(Converter.longToBytes(timestamp), 0, ans, positions[getTimestampIdx()].startPos(), 8);
+        for(int i = 0; i < colIdxs.length; ++i){
+            int colIdx = colIdxs[i];
+            if(attrTypes[colIdx].equals("INT")){
+                System.arraycopy(Converter.intToBytes((int) values[i]), 0, ans, positions[colIdx].startPos(), 4);
+            }else if(attrTypes[colIdx].contains("FLOAT") || attrTypes[colIdx].contains("DOUBLE")){
+                System.arraycopy(Converter.longToBytes(values[i]), 0, ans, positions[colIdx].startPos(), 8);
+            }else{
+                throw new RuntimeException("Do not support this type'" + attrTypes[colIdx] + "'.");
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * @param record        projected record (see convertToProjectedBytes)
+     * @return              rid of the event
+     */
+    public RID getRIDFromProjectedBytes(byte[] record){
+        long key = Converter.readLong(record, fixedRecordSize);
+        return new RID((int) (key >>> 16), (short) (key & 0xffff));
+    }
+
     /**
      * obtaining event types from byte records
      * @param record    byte record
@@ -226,17 +296,12 @@ public class EventSchema {
     }
 
     /**
-     * [updated + awaiting optimization] used for interval scan method
+     * [updated] used for interval scan method, timestamp occupies 8 bytes
      * @param record        an event
      * @return              timestamp
      */
     public long getTimestampFromRecord(byte[] record){
-        int start = positions[timestampIdx].startPos();
-        int offset = positions[timestampIdx].offset();
-        //if(offset != 8){ throw new RuntimeException("offset is not 8.");}
-        byte[] bytes = new byte[offset];
-        System.arraycopy(record, start, bytes, 0, offset);
-        return Converter.bytesToLong(bytes);
+        return Converter.readLong(record, positions[timestampIdx].startPos());
     }
 
     public long getValueFromBytesRecord(byte[] record, int colIdx){
@@ -269,68 +334,61 @@ public class EventSchema {
      * @return record - string
      */
     public String byteEventToString(byte[] record){
-        String ans = "";
+        StringBuilder ans = new StringBuilder(fixedRecordSize * 2);
+        appendEventString(record, ans);
+        return ans.toString();
+    }
+
+    /**
+     * [updated] append string format of a byte record, values are read at fixed offsets without copying bytes
+     * @param record - byte array record
+     * @param ans    - output
+     */
+    public void appendEventString(byte[] record, StringBuilder ans){
         int ptr = 0;
         for(int i = 0; i < attrTypes.length; ++i) {
+            if(i != 0){
+                ans.append(',');
+            }
             String attrType = attrTypes[i];
             if (attrType.equals("INT")) {
-                byte[] b = new byte[4];
-                System.arraycopy(record, ptr, b, 0, 4);
-                int v = Converter.bytesToInt(b);
-                ans = (i == 0) ? (ans + v) : (ans + "," + v);
+                ans.append(Converter.readInt(record, ptr));
                 ptr += 4;
             } else if (attrType.contains("FLOAT")) {
-                byte[] b = new byte[8];
-                System.arraycopy(record, ptr, b, 0, 8);
-                long v = Converter.bytesToLong(b);
+                long v = Converter.readLong(record, ptr);
                 float scale = (float) Math.pow(10, getIthDecimalLens(i));
                 // ==> format
                 float rawValue = v / scale;
-                ans = (i == 0) ? (ans + rawValue) : (ans + "," + rawValue);
+                ans.append(rawValue);
                 ptr += 8;
             } else if (attrType.contains("DOUBLE")) {
-                byte[] b = new byte[8];
-                System.arraycopy(record, ptr, b, 0, 8);
-                long v = Converter.bytesToLong(b);
+                long v = Converter.readLong(record, ptr);
                 double scale = Math.pow(10, getIthDecimalLens(i));
                 double rawValue = v / scale;
-                ans = (i == 0) ? (ans + rawValue) : (ans + "," + rawValue);
+                ans.append(rawValue);
                 ptr += 8;
             } else if (attrType.contains("TYPE")) {
-                byte[] b = new byte[4];
-                System.arraycopy(record, ptr, b, 0, 4);
-                int v = Converter.bytesToInt(b);
-                String type = allEventTypes.get(v);
-                ans = (i == 0) ? (ans + type) : (ans + "," + type);
+                ans.append(allEventTypes.get(Converter.readInt(record, ptr)));
                 ptr += 4;
             } else if (attrType.equals("TIMESTAMP")) {
-                byte[] b = new byte[8];
-                System.arraycopy(record, ptr, b, 0, 8);
-                long v = Converter.bytesToLong(b);
-                ans = (i == 0) ? (ans + v) : (ans + "," + v);
+                ans.append(Converter.readLong(record, ptr));
                 ptr += 8;
             } else if(attrType.equals("VARCHAR")){
                 int charLen = decimalLens[i];
-                byte[] b = new byte[charLen];
-                System.arraycopy(record, ptr, b, 0, charLen);
                 int stopPos = charLen;
                 for(int idx = 0; idx < charLen; ++idx){
-                    // System.out.println("b["+idx+"] = "+b[idx]);
-                    if(b[idx] == 0){
+                    if(record[ptr + idx] == 0){
                         stopPos = idx;
                         break;
                     }
                 }
-                // System.out.println("stopPos: " + stopPos);
-                String v = new String(b, 0, stopPos);
-                ans = (i == 0) ? (ans + v) : (ans + "," + v);
+                ans.append(new String(record, ptr, stopPos));
                 ptr += charLen;
             }
             else {
                 throw new RuntimeException("Do not support this type'" + attrType + "'.");
             }
         }
-        return ans;
     }
 
     /**
@@ -3,8 +3,12 @@ package common;
 /**
  * notice GreedyJoin only support skip-till-any-match
  * currently OrderJoin and GreedyJoin can not process complex event pattern
+ * LAZY_NFA only supports SEQ pattern with skip-till-any-match (see automaton.LazyNFA)
+ * JOIN joins candidate lists of variables, it only supports SEQ pattern with skip-till-any-match (see automaton.JoinMatcher)
  */
 public enum MatchEngine {
-    NFA
+    NFA,
+    LAZY_NFA,
+    JOIN
 }
 // remove OrderJoin, GreedyJoin
@@ -0,0 +1,260 @@
+package common;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * in-process metrics of ingestion and query phases, it replaces timing prints (e.g., "filter cost: 1.234ms")
+ * metrics are disabled by default, then recording is a single branch on a volatile flag
+ * latencies and durations are in nanoseconds
+ * -------------------------------------------------------------------------------------
+ * Metrics.enable();
+ * ... insert events and run queries ...
+ * Metrics.QUERY_FILTER_LATENCY.percentile(0.99);
+ * Metrics.dump(System.out);
+ * -------------------------------------------------------------------------------------
+ */
+public class Metrics {
+    private static volatile boolean enabled = false;
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService dumpExecutor = null;
+
+    // ingestion (see acer.ACER.insertRecord and acer.ACER.insertBatchRecord)
+    public static final Histogram INSERT_LATENCY = histogram("insert.latency");
+    public static final Histogram INSERT_BATCH_LATENCY = histogram("insert.batch.latency");
+    // generate an index block and write it to file
+    public static final Histogram FLUSH_DURATION = histogram("flush.duration");
+
+    // query phases
+    public static final Histogram QUERY_FILTER_LATENCY = histogram("query.filter.latency");
+    public static final Histogram QUERY_SCAN_LATENCY = histogram("query.scan.latency");
+    public static final Histogram QUERY_MATCH_LATENCY = histogram("query.match.latency");
+
+    // clusters that overlap time intervals (or minimum timestamp) are examined, others are skipped
+    public static final Counter CLUSTERS_EXAMINED = counter("clusters.examined");
+    public static final Counter CLUSTERS_SKIPPED = counter("clusters.skipped");
+    // bytes mapped from event store pages and index blocks
+    public static final Counter BYTES_MAPPED = counter("bytes.mapped");
+    // events read from event store
+    public static final Counter EVENTS_FETCHED = counter("events.fetched");
+    public static final Counter PARTIAL_MATCHES_CREATED = counter("partial.matches.created");
+    public static final Counter PARTIAL_MATCHES_EXPIRED = counter("partial.matches.expired");
+
+    public static void enable(){
+        enabled = true;
+    }
+
+    public static void disable(){
+        enabled = false;
+    }
+
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * @param name      counter name
+     * @return          registered counter, it is created if absent
+     */
+    public static Counter counter(String name){
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * @param name      histogram name
+     * @return          registered histogram, it is created if absent
+     */
+    public static Histogram histogram(String name){
+        return histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * @return          System.nanoTime() if metrics are enabled, otherwise 0 (see Histogram.recordSince)
+     */
+    public static long now(){
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void reset(){
+        counters.values().forEach(Counter::reset);
+        histograms.values().forEach(Histogram::reset);
+    }
+
+    /**
+     * print all counters and histograms in name order
+     * @param out       output stream
+     */
+    public static void dump(PrintStream out){
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("-------------------------metrics-------------------------\n");
+        for(Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()){
+            sb.append(entry.getKey()).append(": ").append(entry.getValue().get()).append('\n');
+        }
+        for(Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()){
+            Histogram h = entry.getValue();
+            sb.append(entry.getKey()).append(": count=").append(h.count());
+            if(h.count() != 0){
+                sb.append(String.format(" mean=%.1f p50=%d p95=%d p99=%d max=%d",
+                        h.mean(), h.percentile(0.50), h.percentile(0.95), h.percentile(0.99), h.max()));
+            }
+            sb.append('\n');
+        }
+        out.print(sb);
+    }
+
+    /**
+     * dump metrics periodically in a daemon thread, a previous periodic dump is stopped
+     * @param periodMillis  period [ms]
+     * @param out           output stream
+     */
+    public static synchronized void startPeriodicDump(long periodMillis, PrintStream out){
+        stopPeriodicDump();
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleAtFixedRate(() -> dump(out), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopPeriodicDump(){
+        if(dumpExecutor != null){
+            dumpExecutor.shutdownNow();
+            dumpExecutor = null;
+        }
+    }
+
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void add(long delta){
+            if(enabled){
+                value.add(delta);
+            }
+        }
+
+        public void increment(){
+            add(1);
+        }
+
+        public long get(){
+            return value.sum();
+        }
+
+        void reset(){
+            value.reset();
+        }
+    }
+
+    /**
+     * HDR-style histogram of non-negative long values, values in [2^k, 2^(k+1)) are split into
+     * 2^SUB_BUCKET_BITS linear buckets, so the relative error of percentiles is less than 2^-SUB_BUCKET_BITS
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKET_NUM = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_NUM = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_NUM);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        static int bucketIndex(long value){
+            if(value < SUB_BUCKET_NUM){
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKET_NUM);
+        }
+
+        // largest value of a bucket
+        static long highestValue(int index){
+            if(index < SUB_BUCKET_NUM){
+                return index;
+            }
+            int shift = (index >>> SUB_BUCKET_BITS) - 1;
+            long lowest = (long) (SUB_BUCKET_NUM + (index & (SUB_BUCKET_NUM - 1))) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+
+        /**
+         * @param value     value, a negative value is recorded as 0
+         */
+        public void record(long value){
+            if(!enabled){
+                return;
+            }
+            value = Math.max(value, 0);
+            buckets.incrementAndGet(bucketIndex(value));
+            count.increment();
+            sum.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * record elapsed time
+         * @param startTime     Metrics.now() at the start, 0 means metrics were disabled at the start
+         */
+        public void recordSince(long startTime){
+            if(enabled && startTime != 0){
+                record(System.nanoTime() - startTime);
+            }
+        }
+
+        public long count(){
+            return count.sum();
+        }
+
+        public long sum(){
+            return sum.sum();
+        }
+
+        public long max(){
+            return max.get();
+        }
+
+        public double mean(){
+            long n = count();
+            return n == 0 ? 0 : (double) sum() / n;
+        }
+
+        /**
+         * @param p         percentile in (0, 1]
+         * @return          smallest bucket value that is greater than or equal to p of recorded values
+         */
+        public long percentile(double p){
+            long n = count();
+            if(n == 0){
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(p * n), 1);
+            long seen = 0;
+            for(int i = 0; i < BUCKET_NUM; i++){
+                seen += buckets.get(i);
+                if(seen >= rank){
+                    return Math.min(highestValue(i), max());
+                }
+            }
+            return max();
+        }
+
+        void reset(){
+            for(int i = 0; i < BUCKET_NUM; i++){
+                buckets.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.set(0);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package common;
 
 import acer.ACER;
+import acer.QueryPlan;
 import condition.DependentConstraint;
 import condition.IndependentConstraint;
 
@@ -24,6 +25,7 @@ import java.util.regex.Pattern;
  * 2. CREATE INDEX
  * 3. ALTER
  * 4. PATTERN
+ * 5. EXPLAIN [ANALYZE] PATTERN
  */
 public class StatementParser {
 
@@ -93,11 +95,17 @@ public class StatementParser {
         // Calculate the recordSize here
         schema.setAttrTypes(attrTypes);
 
+        Metadata metadata = Metadata.getInstance();
+        // creating a store clears the file, so we cannot create the store of an existing schema again
+        if(metadata.getEventSchema(schemaName) != null){
+            System.out.println("Create schema fail, this schema name '" + schemaName + "' has existing.");
+            return;
+        }
+
         int recordSize = schema.getFixedRecordSize();
         EventStore store = new EventStore(schemaName, recordSize);
         schema.setStore(store);
 
-        Metadata metadata = Metadata.getInstance();
         if(metadata.storeSchema(schema)){
             System.out.println("Create schema successfully.");
             schema.print();
@@ -212,6 +220,36 @@ public class StatementParser {
         return pattern;
     }
 
+    /**
+     * explain a query on the ACER index of its schema, the first line starts with EXPLAIN or EXPLAIN ANALYZE
+     * --------------------------------
+     * EXPLAIN ANALYZE PATTERN SEQ(A a, B b)
+     * FROM tableName
+     * ...
+     * --------------------------------
+     * EXPLAIN returns the plan of two phase filtering with estimated selectivity,
+     * EXPLAIN ANALYZE processes the query and adds actual counts and costs of each step (see acer.QueryPlan)
+     * @param statement - explain statement
+     * @return - query plan, its toString() shows the plan
+     */
+    public static QueryPlan explain(String statement){
+        String[] firstLineAndOthers = statement.trim().split("\n", 2);
+        String[] keywords = firstLineAndOthers[0].trim().split("\\s+", 3);
+        if(keywords.length < 2 || !keywords[0].equalsIgnoreCase("EXPLAIN")){
+            throw new IllegalArgumentException("explain statement should start with 'EXPLAIN [ANALYZE]'");
+        }
+        boolean analyze = keywords[1].equalsIgnoreCase("ANALYZE");
+        String firstLine = analyze ? (keywords.length == 3 ? keywords[2] : "") : firstLineAndOthers[0].trim().substring(7).trim();
+        String queryStatement = firstLineAndOthers.length == 2 ? firstLine + "\n" + firstLineAndOthers[1] : firstLine;
+
+        QueryPattern pattern = getQueryPattern(queryStatement);
+        Index index = Metadata.getInstance().getIndex(pattern.getSchemaName());
+        if(!(index instanceof ACER acer)){
+            throw new IllegalArgumentException("schema '" + pattern.getSchemaName() + "' does not bind an ACER index, we can not explain this query");
+        }
+        return acer.explain(pattern, analyze);
+    }
+
     // this function used for QueryPattern rather than EventPattern
     private static void readFourthLine(QueryPattern pattern, String fourthLine, String schemaName){
         // 90 <= a.open <= 110 AND 90.1 <= b.open <= 110.1 AND c.open >= 125 AND d.open <= 75
@@ -370,6 +408,11 @@ public class StatementParser {
                     dc.constructLeft(curPredicate.substring(0, i), schema);
                     dc.constructRight(curPredicate.substring(i + 1), schema);
                     break;
+                }else if(curPredicate.charAt(i) == '='){
+                    dc.setCMP(ComparedOperator.EQ);
+                    dc.constructLeft(curPredicate.substring(0, i), schema);
+                    dc.constructRight(curPredicate.substring(i + 1), schema);
+                    break;
                 }
             }
             pattern.getDcList().add(dc);
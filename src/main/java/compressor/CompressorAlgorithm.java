@@ -10,5 +10,8 @@ public enum CompressorAlgorithm {
     SIMPLE_8B,
 
     // fixed-length delta
-    DELTA
+    DELTA,
+
+    // delta + frame of reference on blocks of 128 values (bit packing)
+    BLOCK_FOR
 }
@@ -0,0 +1,67 @@
+package compressor;
+
+import java.util.List;
+
+/**
+ * delta + frame of reference on blocks of 128 deltas (bit packing),
+ * each block stores its minimum delta and packs (delta - minDelta) with the bit width of this block,
+ * so a full block always occupies 2 * bitWidth long values and is decoded with word-level shifts and masks
+ * format: |firstValue|header_1|packed values of block 1 ...|header_2|...|, where header = minDelta << 8 | bitWidth
+ * a packed value may span two adjacent long values, the last block is not padded
+ */
+public class DeltaBlockFORCompressor {
+    public static final int BLOCK_SIZE = 128;
+
+    /**
+     * @param valueList     values (e.g., timestamps or rids of a cluster)
+     * @return              compressed long array
+     */
+    public static long[] compress(List<Long> valueList){
+        int len = valueList.size();
+        long[] deltas = new long[len];
+        long previous = valueList.get(0);
+        for(int i = 0; i < len; i++){
+            long value = valueList.get(i);
+            long delta = value - previous;
+            if(delta > Integer.MAX_VALUE || delta < Integer.MIN_VALUE){
+                throw new ArithmeticException("greater than Integer.MAX_VALUE");
+            }
+            deltas[i] = delta;
+            previous = value;
+        }
+
+        // 32 bits are enough to store (delta - minDelta)
+        long[] output = new long[1 + (len + BLOCK_SIZE - 1) / BLOCK_SIZE + ((len + 1) >> 1)];
+        output[0] = valueList.get(0);
+        int outputPos = 1;
+        for(int start = 0; start < len; start += BLOCK_SIZE){
+            int end = Math.min(start + BLOCK_SIZE, len);
+            long minDelta = deltas[start];
+            long maxDelta = deltas[start];
+            for(int i = start + 1; i < end; i++){
+                minDelta = Math.min(minDelta, deltas[i]);
+                maxDelta = Math.max(maxDelta, deltas[i]);
+            }
+            int bitWidth = 64 - Long.numberOfLeadingZeros(maxDelta - minDelta);
+            output[outputPos++] = (minDelta << 8) | bitWidth;
+            if(bitWidth == 0){
+                continue;
+            }
+            long bitPos = 0;
+            for(int i = start; i < end; i++){
+                long packed = deltas[i] - minDelta;
+                int pos = outputPos + (int) (bitPos >>> 6);
+                int shift = (int) (bitPos & 63);
+                output[pos] |= packed << shift;
+                if(shift + bitWidth > 64){
+                    output[pos + 1] |= packed >>> (64 - shift);
+                }
+                bitPos += bitWidth;
+            }
+            outputPos += (int) ((bitPos + 63) >>> 6);
+        }
+        long[] ans = new long[outputPos];
+        System.arraycopy(output, 0, ans, 0, outputPos);
+        return ans;
+    }
+}
@@ -0,0 +1,55 @@
+package compressor;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * decompress delta + block frame of reference compressed values (see DeltaBlockFORCompressor)
+ * packed words of a block are copied in bulk, then unpacking only uses shifts and masks and has no
+ * dependency between values (it is friendly to loop unrolling and auto-vectorization),
+ * finally a prefix sum restores the values
+ */
+public class DeltaBlockFORDecompressor {
+    /**
+     * @param in        buffer, it starts at current position
+     * @param itemNum   number of values
+     * @return          decompressed values
+     */
+    public static long[] decompress(ByteBuffer in, int itemNum){
+        long[] realValues = new long[itemNum];
+        LongBuffer words = in.asLongBuffer();
+        long previous = words.get();
+        // one more word, so that a value never needs a branch to read the next word
+        long[] packedWords = new long[(DeltaBlockFORCompressor.BLOCK_SIZE >> 1) + 1];
+        for(int start = 0; start < itemNum; start += DeltaBlockFORCompressor.BLOCK_SIZE){
+            int end = Math.min(start + DeltaBlockFORCompressor.BLOCK_SIZE, itemNum);
+            long header = words.get();
+            long minDelta = header >> 8;
+            int bitWidth = (int) (header & 0xff);
+            if(bitWidth != 0){
+                int wordNum = (int) (((long) (end - start) * bitWidth + 63) >>> 6);
+                words.get(packedWords, 0, wordNum);
+                packedWords[wordNum] = 0;
+                unpack(packedWords, bitWidth, realValues, start, end);
+            }
+            for(int i = start; i < end; i++){
+                previous += realValues[i] + minDelta;
+                realValues[i] = previous;
+            }
+        }
+        in.position(in.position() + (words.position() << 3));
+        return realValues;
+    }
+
+    private static void unpack(long[] packedWords, int bitWidth, long[] output, int start, int end){
+        long mask = (1L << bitWidth) - 1;
+        int bitPos = 0;
+        for(int i = start; i < end; i++){
+            int pos = bitPos >>> 6;
+            int shift = bitPos & 63;
+            // when shift is 0, (next << 1) << 63 is 0, otherwise it is next << (64 - shift)
+            output[i] = ((packedWords[pos] >>> shift) | ((packedWords[pos + 1] << 1) << (63 - shift))) & mask;
+            bitPos += bitWidth;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package compressor;
 
+import java.nio.ByteBuffer;
+
 /**
  * delta of delta encoding
  * ts_1, ts_2, ..., ts_k
@@ -89,6 +91,16 @@ public class DeltaOfDeltaDecompressor {
         previousTimestamp = storedDelta + previousTimestamp;
     }
 
+    /**
+     * codes of delta of delta are not byte aligned, so we read them by WordBitInput
+     * @param in        buffer, it starts at current position
+     * @param itemNum   number of values
+     * @return          decompressed values
+     */
+    public static long[] decompress(ByteBuffer in, int itemNum) {
+        return decompress(new WordBitInput(in), itemNum);
+    }
+
     // define a unified interface
     public static long[] decompress(BitInput in, int itemNum) {
         assert(itemNum > 0);
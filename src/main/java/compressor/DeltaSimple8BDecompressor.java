@@ -17,6 +17,7 @@ package compressor;
  */
 // url: https://github.com/burmanm/compression-int/blob/master/src/main/java/fi/iki/yak/compression/integer/Simple8.java
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class DeltaSimple8BDecompressor {
@@ -44,6 +45,31 @@ public class DeltaSimple8BDecompressor {
         return output;
     }
 
+    /**
+     * word-level version of decompress(BitInput, int), compressed words are copied from buffer in bulk
+     * and zigzag decoding is fused with prefix sum
+     * @param in        buffer, it starts at current position
+     * @param itemNum   number of values
+     * @return          decompressed values
+     */
+    public static long[] decompress(ByteBuffer in, int itemNum) {
+        long startTimestamp = in.getLong();
+        int compressedLen = (int) in.getLong();
+        long[] input = new long[compressedLen];
+        in.asLongBuffer().get(input);
+        in.position(in.position() + (compressedLen << 3));
+
+        long[] output = new long[itemNum];
+        decompress(input, 0, compressedLen, output, 0);
+        long previous = startTimestamp;
+        output[0] = previous;
+        for(int i = 1; i < itemNum; i++) {
+            previous += ZigZagCompressor.decodeZigZag32((int) output[i]);
+            output[i] = previous;
+        }
+        return output;
+    }
+
     public static void decompress(long[] input, int inputPos, int amount, long[] output, int outputPos) {
 
         for (int endPos = inputPos + amount; inputPos < endPos; inputPos++) {
@@ -1,5 +1,7 @@
 package compressor;
 
+import java.nio.ByteBuffer;
+
 public class DeltaVarIntDecompressor{
     private long previousTimestamp = 0;
     //private long itemNum;
@@ -39,6 +41,34 @@ public class DeltaVarIntDecompressor{
         return ts;
     }
 
+    /**
+     * byte-level version of decompress(BitInput, int), varint codes are byte aligned,
+     * so we read bytes of buffer directly instead of reading 8 bits each time
+     * @param in        buffer, it starts at current position
+     * @param itemNum   number of values
+     * @return          decompressed values
+     */
+    public static long[] decompress(ByteBuffer in, int itemNum) {
+        long previous = in.getLong();
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        long[] realValues = new long[itemNum];
+        int pos = 0;
+        for(int i = 0; i < itemNum; i++){
+            int delta = 0;
+            int byteValue = bytes[pos++];
+            // if is "1XXX XXXX"
+            while(byteValue < 0){
+                delta = (delta << 7) | (byteValue & 0x7f);
+                byteValue = bytes[pos++];
+            }
+            delta = (delta << 7) | byteValue;
+            previous += ZigZagCompressor.decodeZigZag32(delta);
+            realValues[i] = previous;
+        }
+        return realValues;
+    }
+
     // define a unified interface
     public static long[] decompress(BitInput in, int itemNum) {
         assert(itemNum > 0);
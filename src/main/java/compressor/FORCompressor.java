@@ -0,0 +1,49 @@
+package compressor;
+
+/**
+ * frame of reference (FOR) compression for attribute columns, values are not sorted,
+ * so delta encoding does not help, we store min value and pack (value - min) with a fixed bit width
+ * format: |minValue|bitWidth|packed values ...|
+ * a packed value may span two adjacent long values
+ */
+public class FORCompressor {
+    /**
+     * @param values    column values
+     * @param size      number of values
+     * @return          compressed long array
+     */
+    public static long[] compress(long[] values, int size){
+        long minValue = Long.MAX_VALUE;
+        long maxValue = Long.MIN_VALUE;
+        for(int i = 0; i < size; i++){
+            minValue = Math.min(minValue, values[i]);
+            maxValue = Math.max(maxValue, values[i]);
+        }
+        if(size == 0){
+            minValue = maxValue = 0;
+        }
+        if(maxValue - minValue < 0){
+            throw new RuntimeException("range of column values overflows");
+        }
+        int bitWidth = 64 - Long.numberOfLeadingZeros(maxValue - minValue);
+
+        long[] result = new long[2 + (int) (((long) size * bitWidth + 63) >>> 6)];
+        result[0] = minValue;
+        result[1] = bitWidth;
+        if(bitWidth == 0){
+            return result;
+        }
+        long bitPos = 0;
+        for(int i = 0; i < size; i++){
+            long delta = values[i] - minValue;
+            int pos = 2 + (int) (bitPos >>> 6);
+            int shift = (int) (bitPos & 63);
+            result[pos] |= delta << shift;
+            if(shift + bitWidth > 64){
+                result[pos + 1] |= delta >>> (64 - shift);
+            }
+            bitPos += bitWidth;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,38 @@
+package compressor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * decompress frame of reference compressed columns (see FORCompressor)
+ */
+public class FORDecompressor {
+    public static long[] decompress(ByteBuffer in, int itemNum){
+        long[] realValues = new long[itemNum];
+        long minValue = in.getLong();
+        int bitWidth = (int) in.getLong();
+        if(bitWidth == 0){
+            Arrays.fill(realValues, minValue);
+            return realValues;
+        }
+        long mask = bitWidth == 64 ? -1L : (1L << bitWidth) - 1;
+        long cur = in.getLong();
+        int shift = 0;
+        for(int i = 0; i < itemNum; i++){
+            long value = cur >>> shift;
+            shift += bitWidth;
+            if(shift >= 64){
+                shift -= 64;
+                // the last value may end at the boundary of the last long value
+                if(shift != 0 || i != itemNum - 1){
+                    cur = in.getLong();
+                    if(shift != 0){
+                        value |= cur << (bitWidth - shift);
+                    }
+                }
+            }
+            realValues[i] = (value & mask) + minValue;
+        }
+        return realValues;
+    }
+}
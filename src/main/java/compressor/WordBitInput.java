@@ -0,0 +1,77 @@
+package compressor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a BitInput that reads a 64-bit word at a time instead of a byte at a time (see ByteBufferBitInput),
+ * so getLong only shifts and masks the current word, and refills once every 64 bits
+ * bits are read from the most significant bit, it reads the same stream as ByteBufferBitInput
+ */
+public class WordBitInput implements BitInput {
+    private final ByteBuffer byteBuffer;
+    private long word;                  // current word
+    private int bitsLeft;               // unread bits of current word
+
+    /**
+     * @param buf   it starts at current position of buf
+     */
+    public WordBitInput(ByteBuffer buf){
+        byteBuffer = buf;
+        refill();
+    }
+
+    private void refill(){
+        if(byteBuffer.remaining() >= 8){
+            word = byteBuffer.getLong();
+        }else{
+            // tail bytes are left aligned, missing bytes are read as zero
+            int n = byteBuffer.remaining();
+            word = 0;
+            for(int i = 0; i < n; ++i){
+                word = (word << 8) | (byteBuffer.get() & 0xff);
+            }
+            word = n == 0 ? 0 : word << ((8 - n) << 3);
+        }
+        bitsLeft = Long.SIZE;
+    }
+
+    @Override
+    public boolean readBit(){
+        boolean bit = ((word >>> (bitsLeft - 1)) & 1) == 1;
+        if(--bitsLeft == 0){
+            refill();
+        }
+        return bit;
+    }
+
+    @Override
+    public long getLong(int bits){
+        if(bits < bitsLeft){
+            bitsLeft -= bits;
+            return (word >>> bitsLeft) & ((1L << bits) - 1);
+        }
+        // take the remaining bits of current word, then the high bits of next word
+        int rest = bits - bitsLeft;
+        long value = bitsLeft == Long.SIZE ? word : word & ((1L << bitsLeft) - 1);
+        refill();
+        if(rest != 0){
+            value = (value << rest) | (word >>> (Long.SIZE - rest));
+            bitsLeft -= rest;
+        }
+        return value;
+    }
+
+    @Override
+    public int nextClearBit(int maxBits){
+        int val = 0x00;
+        for(int i = 0; i < maxBits; i++){
+            val <<= 1;
+            if(readBit()){
+                val |= 0x01;
+            }else{
+                break;
+            }
+        }
+        return val;
+    }
+}
@@ -211,6 +211,39 @@ public class DependentConstraint extends Constraint{
         // System.out.println("varName2: " + varName2 + " attrName: " + attrName + " m2: " + m1 + " a2: " + a1);
     }
 
+    /**
+     * whether this constraint has the format: a.attr +/- a1 cmp b.attr +/- a2
+     * in this case, satisfy can be evaluated with long arithmetic
+     * @return true if both multiples are 1
+     */
+    public boolean hasUnitMultiple(){
+        return ao1 == ArithmeticOperator.MUL && m1 == 1 && ao3 == ArithmeticOperator.MUL && m2 == 1;
+    }
+
+    public long getSignedLeftAddend(){
+        return ao2 == ArithmeticOperator.ADD ? a1 : -a1;
+    }
+
+    public long getSignedRightAddend(){
+        return ao4 == ArithmeticOperator.ADD ? a2 : -a2;
+    }
+
+    /**
+     * left side = leftSlope * value1 + signedLeftAddend
+     * @return multiple of value1
+     */
+    public double getLeftSlope(){
+        return ao1 == ArithmeticOperator.MUL ? m1 : 1 / m1;
+    }
+
+    /**
+     * right side = rightSlope * value2 + signedRightAddend
+     * @return multiple of value2
+     */
+    public double getRightSlope(){
+        return ao3 == ArithmeticOperator.MUL ? m2 : 1 / m2;
+    }
+
     /**
      * Be sure to pass it in order, otherwise accuracy cannot be guaranteed
      * @param value1 value of varName1
@@ -1,3 +1,3 @@
 package pattern;
 
-enum PatternOperator {SEQ, AND, OR}
+public enum PatternOperator {SEQ, AND, OR}
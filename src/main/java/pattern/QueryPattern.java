@@ -124,4 +124,41 @@ public abstract class QueryPattern {
     }
 
     public String getPatternStr() { return patternStr; }
+
+    /**
+     * normalized key of this pattern, two query statements that only differ in
+     * whitespace or in the order of their WHERE conditions share the same key
+     * key format: schema|pattern|var:type[ic1;ic2]...|dc1;dc2|tau|strategy
+     * @return      normalized key
+     */
+    public String getNormalizedKey(){
+        StringBuilder key = new StringBuilder(256);
+        key.append(schemaName).append("|");
+        key.append(patternStr.trim().replaceAll("\\s+", " ").toUpperCase()).append("|");
+
+        // variables and their independent constraints
+        List<String> varNames = new ArrayList<>(varTypeMap.keySet());
+        Collections.sort(varNames);
+        for(String varName : varNames){
+            key.append(varName).append(":").append(varTypeMap.get(varName)).append("[");
+            List<String> icStrList = new ArrayList<>();
+            for(IndependentConstraint ic : getICListUsingVarName(varName)){
+                icStrList.add(ic.getAttrName() + "#" + ic.hasMinMaxValue() + "#" + ic.getMinValue() + "#" + ic.getMaxValue());
+            }
+            Collections.sort(icStrList);
+            key.append(String.join(";", icStrList)).append("]");
+        }
+        key.append("|");
+
+        // dependent constraints
+        List<String> dcStrList = new ArrayList<>(dcList.size());
+        for(DependentConstraint dc : dcList){
+            dcStrList.add(dc.leftPart() + " " + dc.getCMP() + " " + dc.rightPart());
+        }
+        Collections.sort(dcStrList);
+        key.append(String.join(";", dcStrList)).append("|");
+
+        key.append(tau).append("|").append(strategy);
+        return key.toString();
+    }
 }
\ No newline at end of file
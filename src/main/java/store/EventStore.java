@@ -1,6 +1,7 @@
 package store;
 
 import acer.Parameters;
+import common.Metrics;
 
 import java.io.*;
 import java.nio.ByteBuffer;
@@ -37,6 +38,10 @@ public class EventStore {
         String filePath = storePath + File.separator + filename;
         System.out.println("stored file path: " + filePath);
         file = new File(filePath);
+        // create store directory when it does not exist
+        if(!file.getParentFile().exists() && file.getParentFile().mkdirs()){
+            System.out.println("create store directory: " + storePath);
+        }
         // If this file has existed before, we clear the content
         if(file.exists()){
             if(file.delete()){
@@ -112,12 +117,14 @@ public class EventStore {
      * Read bytes based on the value of rid
      * It is possible that the current page has been read before, so there is no need to map again
      * if rid.page = curPage, then direct read
+     * if rid.page = pageNum, the record is still in buffer
      * @param rid RID pointer
      * @return record
      */
     public byte[] readByteRecord(RID rid){
+        Metrics.EVENTS_FETCHED.increment();
         if(needFlush){
-            forceFlush();
+            // [updated] we do not flush the last page, so that insertion and query can interleave
             needFlush = false;
             // initialization
             try{
@@ -130,6 +137,11 @@ public class EventStore {
 
         // System.out.println(file.getAbsoluteFile());
         byte[] byteRecord = new byte[recordSize];
+        // the last page has not been written to file, we read it from buffer
+        if(rid.page() == pageNum){
+            buf.get(rid.offset(), byteRecord);
+            return byteRecord;
+        }
         // This page is already in memory and can be directly read and returned
         if(curPage == rid.page()){
             readMappedBuffer.get(rid.offset(), byteRecord);
@@ -140,6 +152,7 @@ public class EventStore {
         long startPos = ((long) queryPage) * pageSize;
         try{
             readMappedBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, startPos, pageSize);
+            Metrics.BYTES_MAPPED.add(pageSize);
             curPage = queryPage;
             readMappedBuffer.get(rid.offset(), byteRecord);
         } catch (Exception e) {
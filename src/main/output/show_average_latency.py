@@ -1,8 +1,16 @@
+import json
 import numpy as np
 
 # read query cost
 def read_query_cost(filename):
     query_cost = []
+    # JSON report of baselines.WorkloadRunner, it keeps query cost [ms] of each run
+    if filename.endswith('.json'):
+        with open(filename) as file:
+            report = json.load(file)
+        for run in report['runs']:
+            query_cost.extend(run['query cost'])
+        return query_cost
     with open(filename) as file:
         for line in file:
             # read read cost [ms]
@@ -59,7 +59,7 @@ class ACERTest {
         // start query
         long startRunTs = System.currentTimeMillis();
         if(queryStatement.contains("COUNT")){
-            int cnt;
+            long cnt;
             cnt = index.processCountQueryUsingNFA(pattern, new NFA());
             System.out.println("number of tuples: " + cnt);
         }else {
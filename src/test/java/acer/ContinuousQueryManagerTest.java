@@ -0,0 +1,111 @@
+package acer;
+
+import automaton.NFA;
+import automaton.Tuple;
+import common.EventSchema;
+import common.Metadata;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContinuousQueryManagerTest {
+    private static void insertEvents(ACER index, SyntheticEvents generator, int num){
+        for(int i = 0; i < num; i++){
+            index.insertRecord(generator.nextRecord(), false);
+        }
+    }
+
+    private static String query(String strategy, String returnStr){
+        return "PATTERN SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2)\n" +
+                "FROM synthetic\n" +
+                "USING " + strategy + "\n" +
+                "WHERE 100 <= v0.a1 <= 700 AND v1.a2 <= 600 AND v0.a1 <= v2.a1\n" +
+                "WITHIN 40 units\n" +
+                "RETURN " + returnStr;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void standingQueryTest(){
+        SyntheticEvents.createSchema();
+        String createIndexStr = "CREATE INDEX standing_synthetic USING ACER ON synthetic(a1, a2, a3)";
+        ACER index = (ACER) StatementParser.createIndex(StatementParser.convert(createIndexStr));
+        index.initial();
+        SyntheticEvents generator = new SyntheticEvents(11, 3);
+        insertEvents(index, generator, 800);
+
+        QueryPattern tuplePattern = StatementParser.getQueryPattern(query("SKIP_TILL_ANY_MATCH", "matched_tuples"));
+        List<Tuple> tuples = new ArrayList<>();
+        int tupleQueryId = index.registerStandingQuery(tuplePattern, tuples::add);
+
+        QueryPattern countPattern = StatementParser.getQueryPattern(query("SKIP_TILL_NEXT_MATCH", "COUNT(*)"));
+        long[] counts = new long[1];
+        int countQueryId = index.registerStandingQuery(countPattern, new MatchListener() {
+            @Override
+            public void onMatch(Tuple tuple) {
+                throw new IllegalStateException("count query should not deliver tuples");
+            }
+
+            @Override
+            public void onCount(long newCount, long totalCount) {
+                counts[0] = totalCount;
+            }
+        });
+
+        // backfill
+        assertEquals(index.processCountQueryUsingNFA(tuplePattern, new NFA()), tuples.size());
+        assertEquals(index.processCountQueryUsingNFA(countPattern, new NFA()), counts[0]);
+
+        // incremental evaluation
+        for(int round = 0; round < 3; round++){
+            insertEvents(index, generator, 1500);
+            assertEquals(index.processCountQueryUsingNFA(tuplePattern, new NFA()), tuples.size());
+            assertEquals(index.processCountQueryUsingNFA(countPattern, new NFA()), counts[0]);
+        }
+
+        index.unregisterStandingQuery(tupleQueryId);
+        index.unregisterStandingQuery(countQueryId);
+        int deliveredNum = tuples.size();
+        insertEvents(index, generator, 500);
+        assertEquals(deliveredNum, tuples.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void negativeBoundTest(){
+        SyntheticEvents.createSchema();
+        EventSchema schema = Metadata.getInstance().getEventSchema("SYNTHETIC");
+        // INT values are signed, standing queries must filter them as NFA does
+        String query = """
+                PATTERN SEQ(TYPE_0 v0, TYPE_1 v1)
+                FROM synthetic
+                USING SKIP_TILL_ANY_MATCH
+                WHERE v0.a1 <= -200 AND -600 <= v1.a2 <= 300
+                WITHIN 20 units
+                RETURN matched_tuples""";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        ContinuousQueryManager manager = new ContinuousQueryManager();
+        List<Tuple> tuples = new ArrayList<>();
+        manager.register(pattern, tuples::add, schema, List.of());
+
+        NFA nfa = new NFA();
+        nfa.generateNFAUsingQueryPattern(pattern, false);
+        Random random = new Random(23);
+        long ts = 0;
+        for(int i = 0; i < 2000; i++){
+            ts += random.nextInt(3);
+            String record = "TYPE_" + random.nextInt(2) + "," + (random.nextInt(2000) - 1000) + "," +
+                    (random.nextInt(2000) - 1000) + ",0.25,0.5," + ts;
+            byte[] bytesRecord = schema.convertToBytes(record.split(","));
+            manager.route(schema, schema.getTypeFromBytesRecord(bytesRecord, schema.getTypeIdx()), bytesRecord);
+            nfa.consume(schema, bytesRecord, pattern.getStrategy());
+        }
+        assertTrue(nfa.countTuple() > 0);
+        assertEquals(nfa.countTuple(), tuples.size());
+    }
+}
@@ -0,0 +1,64 @@
+package acer;
+
+import automaton.NFA;
+import common.EventSchema;
+import common.Metadata;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoveringColumnsTest {
+    @org.junit.jupiter.api.Test
+    public void coveringTest(){
+        SyntheticEvents.createSchema();
+        String createIndexStr = "CREATE INDEX covering_synthetic USING ACER ON synthetic(a1, a2, a3)";
+        ACER index = (ACER) StatementParser.createIndex(StatementParser.convert(createIndexStr));
+        index.initial();
+        index.enableCoveringColumns();
+        EventSchema schema = Metadata.getInstance().getEventSchema("SYNTHETIC");
+
+        // other tests do not use these event types, so their clusters are not mixed with clusters of other indexes
+        SyntheticEvents generator = new SyntheticEvents(17, r -> 5 + r.nextInt(3));
+        List<byte[]> events = new ArrayList<>();
+        for(int i = 0; i < Parameters.CAPACITY + 4000; i++){
+            String record = generator.nextRecord();
+            index.insertRecord(record, false);
+            events.add(schema.convertToBytes(record.split(",")));
+        }
+        assertThrows(RuntimeException.class, index::enableCoveringColumns);
+
+        // the first query is processed on covering columns, the second one reads a4 that is not indexed
+        String[] conditions = {
+                "v0.a1 <= 100 AND v2.a2 <= 150 AND v0.a3 <= v1.a3 AND v1.a1 - 300 <= v2.a1",
+                "v0.a1 <= 100 AND v2.a2 <= 150 AND v0.a4 <= v1.a4"
+        };
+        // projected records are matched by NFA under any strategy, events are fetched for delivered matches
+        String[] strategies = {"SKIP_TILL_ANY_MATCH", "SKIP_TILL_NEXT_MATCH"};
+        for(String strategy : strategies){
+            for(String condition : conditions){
+                String query = "PATTERN SEQ(TYPE_5 v0, TYPE_6 v1, TYPE_7 v2)\nFROM synthetic\nUSING " + strategy + "\nWHERE " +
+                        condition + "\nWITHIN 30 units\nRETURN tuples";
+                QueryPattern pattern = StatementParser.getQueryPattern(query);
+                NFA nfa = new NFA();
+                nfa.generateNFAUsingQueryPattern(pattern, false);
+                for(byte[] event : events){
+                    nfa.consume(schema, event, pattern.getStrategy());
+                }
+                List<String> expected = SyntheticEvents.sortedTuples(nfa.getTuple(schema));
+                assertFalse(expected.isEmpty());
+
+                // returned tuples contain full events rather than projected records
+                assertEquals(expected, SyntheticEvents.sortedTuples(index.processTupleQueryUsingNFA(pattern, new NFA())));
+                assertEquals(expected.size(), index.processCountQueryUsingNFA(pattern, new NFA()));
+                List<String> streamed = new ArrayList<>();
+                index.processTupleQueryUsingNFA(pattern, new NFA(), match -> streamed.add(match.toTuple().toString()));
+                Collections.sort(streamed);
+                assertEquals(expected, streamed);
+            }
+        }
+    }
+}
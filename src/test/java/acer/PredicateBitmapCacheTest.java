@@ -0,0 +1,85 @@
+package acer;
+
+import automaton.NFA;
+import common.StatementParser;
+import common.SyntheticEvents;
+import org.roaringbitmap.RoaringBitmap;
+import pattern.QueryPattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PredicateBitmapCacheTest {
+    @org.junit.jupiter.api.Test
+    public void coveringTest(){
+        PredicateBitmapCache cache = new PredicateBitmapCache(1024 * 1024);
+        cache.put(0, 1, 2, 10, 90, RoaringBitmap.bitmapOf(1, 2, 3, 4, 5));
+        cache.put(0, 1, 2, 10, Long.MAX_VALUE, RoaringBitmap.bitmapOf(1, 2, 3, 4, 5, 6, 7));
+
+        // exact hit
+        PredicateBitmapCache.CachedBitmap exact = cache.getCovering(0, 1, 2, 10, 90);
+        assertEquals(10, exact.min());
+        assertEquals(90, exact.max());
+
+        // narrower range uses the covering bitmap with the minimum cardinality
+        PredicateBitmapCache.CachedBitmap covering = cache.getCovering(0, 1, 2, 20, 80);
+        assertEquals(90, covering.max());
+        covering = cache.getCovering(0, 1, 2, 20, 100);
+        assertEquals(Long.MAX_VALUE, covering.max());
+
+        // other clusters/attributes and wider ranges are missed
+        assertNull(cache.getCovering(0, 2, 2, 20, 80));
+        assertNull(cache.getCovering(0, 1, 0, 20, 80));
+        assertNull(cache.getCovering(0, 1, 2, 5, 80));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void evictionTest(){
+        RoaringBitmap bitmap = new RoaringBitmap();
+        bitmap.add(0L, 1000L);
+        bitmap.add(5000L, 6000L);
+        PredicateBitmapCache cache = new PredicateBitmapCache(bitmap.getLongSizeInBytes() * 2 + 300);
+        cache.put(0, 0, 0, 0, 10, bitmap.clone());
+        cache.put(0, 1, 0, 0, 10, bitmap.clone());
+        // touch the first entry, so the second entry becomes the least recently used entry
+        assertNotNull(cache.getCovering(0, 0, 0, 0, 10));
+        cache.put(0, 2, 0, 0, 10, bitmap.clone());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.getCovering(0, 0, 0, 0, 10));
+        assertNull(cache.getCovering(0, 1, 0, 0, 10));
+        assertTrue(cache.getUsedBytes() <= bitmap.getLongSizeInBytes() * 2 + 300);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void boundCacheTest(){
+        SyntheticEvents.createSchema();
+        String createIndexStr = "CREATE INDEX bitmap_synthetic USING ACER ON synthetic(a1, a2, a3)";
+        ACER index = (ACER) StatementParser.createIndex(StatementParser.convert(createIndexStr));
+        index.initial();
+        // bitmap cache is disabled by default
+        assertNull(index.getBitmapCache());
+
+        // other tests do not use these event types
+        SyntheticEvents generator = new SyntheticEvents(19, r -> 12 + r.nextInt(3));
+        for(int i = 0; i < Parameters.CAPACITY + 4000; i++){
+            index.insertRecord(generator.nextRecord(), false);
+        }
+        String query = """
+                PATTERN SEQ(TYPE_12 v0, TYPE_13 v1, TYPE_14 v2)
+                FROM synthetic
+                USING SKIP_TILL_ANY_MATCH
+                WHERE 100 <= v0.a1 <= 700 AND v1.a2 <= 600 AND v0.a1 <= v2.a1
+                WITHIN 30 units
+                RETURN COUNT(*)""";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        long expected = index.processCountQueryUsingNFA(pattern, new NFA());
+
+        PredicateBitmapCache cache = new PredicateBitmapCache(4 * 1024 * 1024);
+        index.setBitmapCache(cache);
+        assertEquals(expected, index.processCountQueryUsingNFA(pattern, new NFA()));
+        assertTrue(cache.size() > 0);
+        // cached bitmaps are reused
+        assertEquals(expected, index.processCountQueryUsingNFA(pattern, new NFA()));
+        assertTrue(cache.getUsedBytes() <= 4 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,64 @@
+package acer;
+
+import automaton.NFA;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryPlanTest {
+    @org.junit.jupiter.api.Test
+    public void explainTest(){
+        SyntheticEvents.createSchema();
+        String createIndexStr = "CREATE INDEX explain_synthetic USING ACER ON synthetic(a1, a2, a3)";
+        ACER index = (ACER) StatementParser.createIndex(StatementParser.convert(createIndexStr));
+        index.initial();
+
+        // other tests do not use these event types, so their clusters are not mixed with clusters of other indexes
+        SyntheticEvents generator = new SyntheticEvents(11, r -> 10 + r.nextInt(2));
+        int eventNum = Parameters.CAPACITY + 4000;
+        for(int i = 0; i < eventNum; i++){
+            index.insertRecord(generator.nextRecord(), false);
+        }
+
+        // v0 is more selective, so it generates the interval set
+        String query = "PATTERN SEQ(TYPE_10 v0, TYPE_11 v1)\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\n" +
+                "WHERE v0.a1 <= 10 AND v1.a1 <= 900\nWITHIN 20 units\nRETURN COUNT(*)";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+
+        QueryPlan plan = index.explain(pattern, false);
+        assertFalse(plan.isAnalyzed());
+        assertEquals("V0", plan.getFirstStep().getVarName());
+        assertEquals(2, plan.getSteps().size());
+        assertEquals(0, plan.getLeftOffset());
+        assertEquals(20, plan.getRightOffset());
+        assertFalse(plan.toString().contains("clusters: "));
+
+        QueryPlan analyzedPlan = index.explain(pattern, true);
+        assertTrue(analyzedPlan.isAnalyzed());
+        assertEquals(index.processCountQueryUsingNFA(pattern, new NFA()), analyzedPlan.getMatchNum());
+        int finalCandidateNum = 0;
+        for(QueryPlan.VariableStep step : analyzedPlan.getSteps()){
+            assertTrue(step.getExaminedClusterNum() <= step.getClusterNum());
+            assertTrue(step.getPrunedClusterNum() <= step.getExaminedClusterNum());
+            assertTrue(step.getFinalCandidateNum() <= step.getIntervalCandidateNum());
+            assertTrue(step.getIntervalCandidateNum() <= step.getIndexCandidateNum());
+            finalCandidateNum += step.getFinalCandidateNum();
+        }
+        assertTrue(analyzedPlan.getFirstStep().getIndexCandidateNum() > 0);
+        assertEquals(finalCandidateNum, analyzedPlan.getScannedEventNum());
+        assertTrue(analyzedPlan.toString().startsWith("EXPLAIN ANALYZE"));
+
+        // tuple queries report the number of matches as well
+        QueryPattern tuplePattern = StatementParser.getQueryPattern(query.replace("COUNT(*)", "tuples"));
+        assertEquals(index.processTupleQueryUsingNFA(tuplePattern, new NFA()).size(), index.explain(tuplePattern, true).getMatchNum());
+
+        // statements that are not explain statements
+        assertThrows(IllegalArgumentException.class, () -> StatementParser.explain(query));
+        // explain statement uses the ACER index that is bound to the schema
+        QueryPlan parsedPlan = StatementParser.explain("EXPLAIN " + query);
+        assertFalse(parsedPlan.isAnalyzed());
+        assertEquals("V0", parsedPlan.getFirstStep().getVarName());
+    }
+}
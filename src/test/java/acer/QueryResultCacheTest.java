@@ -0,0 +1,78 @@
+package acer;
+
+import automaton.NFA;
+import automaton.Tuple;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryResultCacheTest {
+    private static final String QUERY = """
+                        PATTERN SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2)
+                        FROM synthetic
+                        USING SKIP_TILL_ANY_MATCH
+                        WHERE 100 <= v0.a1 <= 700 AND v1.a2 <= 600 AND v0.a1 <= v2.a1
+                        WITHIN 40 units
+                        RETURN COUNT(*)""";
+
+    private static void insertEvents(ACER index, SyntheticEvents generator, int num){
+        for(int i = 0; i < num; i++){
+            index.insertRecord(generator.nextRecord(), false);
+        }
+    }
+
+    private static long countWithoutCache(ACER index, QueryPattern pattern){
+        QueryResultCache cache = index.getResultCache();
+        index.setResultCache(null);
+        long cnt = index.processCountQueryUsingNFA(pattern, new NFA());
+        index.setResultCache(cache);
+        return cnt;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void refreshTest(){
+        SyntheticEvents.createSchema();
+        String createIndexStr = "CREATE INDEX cache_synthetic USING ACER ON synthetic(a1, a2, a3)";
+        ACER index = (ACER) StatementParser.createIndex(StatementParser.convert(createIndexStr));
+        index.initial();
+        SyntheticEvents generator = new SyntheticEvents(7, 3);
+        QueryPattern pattern = StatementParser.getQueryPattern(QUERY);
+
+        insertEvents(index, generator, 600);
+        long expected = countWithoutCache(index, pattern);
+        QueryResultCache cache = new QueryResultCache(16 * 1024 * 1024);
+        index.setResultCache(cache);
+        assertEquals(expected, index.processCountQueryUsingNFA(pattern, new NFA()));
+        // exact hit
+        assertEquals(expected, index.processCountQueryUsingNFA(pattern, new NFA()));
+        List<Tuple> tuples = index.processTupleQueryUsingNFA(pattern, new NFA());
+        assertEquals(expected, tuples.size());
+
+        // incremental refresh after in-order insertions
+        for(int round = 0; round < 3; round++){
+            insertEvents(index, generator, 300);
+            long cnt = index.processCountQueryUsingNFA(pattern, new NFA());
+            tuples = index.processTupleQueryUsingNFA(pattern, new NFA());
+            expected = countWithoutCache(index, pattern);
+            assertEquals(expected, cnt);
+            assertEquals(expected, tuples.size());
+        }
+        cache.print();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void evictionTest(){
+        QueryResultCache cache = new QueryResultCache(1024);
+        String key1 = "k".repeat(200);
+        String key2 = "v".repeat(200);
+        cache.put(key1, QueryResultCache.countResult(1, 10, 1, 2, key1));
+        cache.put(key2, QueryResultCache.countResult(1, 10, 3, 4, key2));
+        // the budget only holds one entry, so the least recently used entry is evicted
+        assertEquals(1, cache.size());
+        assertEquals(7, cache.get(key2).count());
+    }
+}
@@ -0,0 +1,70 @@
+package acer;
+
+import condition.ICQueryQuad;
+import store.RID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleBufferTest {
+    @org.junit.jupiter.api.Test
+    public void selectTest(){
+        Random random = new Random(13);
+        for(int size : new int[]{0, 1, 63, 64, 65, 1000}){
+            SingleBuffer buffer = new SingleBuffer(3);
+            List<long[]> rows = new ArrayList<>(size);
+            for(int i = 0; i < size; i++){
+                // negative values, and extreme values that overflow (v - min)
+                long[] attrValues = {random.nextInt(-500, 500), random.nextInt(1000),
+                        random.nextInt(10) == 0 ? Long.MIN_VALUE + random.nextInt(3) : random.nextLong()};
+                rows.add(attrValues);
+                buffer.append(new TemporaryTriple(i, new RID(i, (short) 0), attrValues));
+            }
+            List<List<ICQueryQuad>> queries = List.of(
+                    List.of(),
+                    List.of(new ICQueryQuad(0, 3, -100, 200)),
+                    List.of(new ICQueryQuad(0, 1, 0, Long.MAX_VALUE), new ICQueryQuad(1, 2, Long.MIN_VALUE, 300)),
+                    List.of(new ICQueryQuad(2, 3, Long.MIN_VALUE, 0)),
+                    List.of(new ICQueryQuad(2, 3, Long.MIN_VALUE, Long.MAX_VALUE)),
+                    List.of(new ICQueryQuad(1, 3, 600, 500))
+            );
+            for(List<ICQueryQuad> icQuads : queries){
+                long[] bitmap = buffer.select(icQuads);
+                assertEquals((size + 63) >>> 6, bitmap.length);
+                for(int i = 0; i < size; i++){
+                    boolean satisfy = true;
+                    for(ICQueryQuad quad : icQuads){
+                        long v = rows.get(i)[quad.idx()];
+                        satisfy &= v >= quad.min() && v <= quad.max();
+                    }
+                    assertEquals(satisfy, (bitmap[i >> 6] & (1L << i)) != 0, "position: " + i);
+                }
+                if((size & 63) != 0){
+                    assertEquals(0, bitmap[bitmap.length - 1] >>> (size & 63));
+                }
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void sortTest(){
+        SingleBuffer buffer = new SingleBuffer(1);
+        long[] timestamps = {5, 3, 5, 1, 3};
+        for(int i = 0; i < timestamps.length; i++){
+            buffer.append(new TemporaryTriple(timestamps[i], new RID(i, (short) i), new long[]{i * 10}));
+        }
+        assertArrayEquals(new long[]{0}, buffer.getMinValues());
+        assertArrayEquals(new long[]{40}, buffer.getMaxValues());
+        buffer.sortByTimestamp();
+        // events with the same timestamp keep insertion order
+        int[] expected = {3, 1, 4, 0, 2};
+        for(int i = 0; i < expected.length; i++){
+            assertEquals(timestamps[expected[i]], buffer.getTimestamp(i));
+            assertEquals(new RID(expected[i], (short) expected[i]), buffer.getRID(i));
+            assertArrayEquals(new long[]{expected[i] * 10L}, buffer.getAttrValues(i));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package automaton;
+
+import common.EventSchema;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountOnlyNFATest {
+    private static final String[] PATTERNS = {
+            "SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2, TYPE_3 v3)|v0.a1 <= 900",
+            "SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2, TYPE_3 v3)|v0.a1 < v3.a1 AND v1.a2 > v2.a2 AND v0.a3 <= v2.a3 + 100",
+            "SEQ(TYPE_0 v0, TYPE_0 v1, TYPE_1 v2)|v0.a1 <= v1.a1 AND v1.a2 <= 300",
+            "SEQ(AND(TYPE_0 v0, TYPE_1 v1), TYPE_2 v2)|v0.a1 <= 500 AND v0.a1 <= v2.a1",
+    };
+
+    @org.junit.jupiter.api.Test
+    public void countTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = new SyntheticEvents(11, 4).nextEvents(schema, 3000);
+
+        for(String strategy : new String[]{"SKIP_TILL_ANY_MATCH", "SKIP_TILL_NEXT_MATCH"}){
+            for(String p : PATTERNS){
+                String[] sp = p.split("\\|");
+                String query = "PATTERN " + sp[0] + "\nFROM synthetic\nUSING " + strategy + "\nWHERE " + sp[1] +
+                        "\nWITHIN 30 units\nRETURN COUNT(*)";
+                QueryPattern pattern = StatementParser.getQueryPattern(query);
+
+                NFA nfa = new NFA();
+                nfa.generateNFAUsingQueryPattern(pattern, false);
+                NFA countNFA = new NFA();
+                countNFA.generateNFAUsingQueryPattern(pattern);
+                assertTrue(countNFA.isCountOnly());
+                for(byte[] event : events){
+                    nfa.consume(schema, event, pattern.getStrategy());
+                    countNFA.consume(schema, event, pattern.getStrategy());
+                }
+                assertEquals(nfa.countTuple(), countNFA.countTuple(), strategy + " " + sp[0]);
+                assertEquals(nfa.countTuple(0, 1000), countNFA.countTuple(0, 1000));
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void overflowTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        // any 4 of n events form a match, C(600, 4) > Integer.MAX_VALUE
+        int n = 600;
+        String query = "PATTERN SEQ(TYPE_0 v0, TYPE_0 v1, TYPE_0 v2, TYPE_0 v3)\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\n" +
+                "WHERE v0.a1 <= 900\nWITHIN " + n + " units\nRETURN COUNT(*)";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        NFA countNFA = new NFA();
+        countNFA.generateNFAUsingQueryPattern(pattern);
+        for(int i = 0; i < n; i++){
+            countNFA.consume(schema, schema.convertToBytes(("TYPE_0,1,1,0.25,0.5," + i).split(",")), pattern.getStrategy());
+        }
+        long expected = (long) n * (n - 1) * (n - 2) * (n - 3) / 24;
+        assertTrue(expected > Integer.MAX_VALUE);
+        assertEquals(expected, countNFA.countTuple());
+        assertEquals(expected, countNFA.countTuple(0, n));
+        assertEquals(expected, countNFA.drainCount());
+        assertEquals(0, countNFA.countTuple());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void unknownTypeTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = new SyntheticEvents(11, 4).nextEvents(schema, 1000);
+
+        // TYPE_99 has no events, compiling the query does not register it
+        String query = "PATTERN SEQ(TYPE_0 v0, TYPE_99 v1)\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\n" +
+                "WHERE v0.a1 <= 900\nWITHIN 30 units\nRETURN COUNT(*)";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        NFA nfa = new NFA();
+        nfa.generateNFAUsingQueryPattern(pattern, false);
+        NFA countNFA = new NFA();
+        countNFA.generateNFAUsingQueryPattern(pattern);
+        for(byte[] event : events){
+            nfa.consume(schema, event, pattern.getStrategy());
+            countNFA.consume(schema, event, pattern.getStrategy());
+        }
+        assertEquals(0, nfa.countTuple());
+        assertEquals(0, countNFA.countTuple());
+        assertEquals(-1, schema.lookupTypeId("TYPE_99"));
+
+        // predicates are compiled again after the first TYPE_99 event is stored
+        long timestamp = schema.getTimestampFromRecord(events.get(events.size() - 1));
+        byte[] first = schema.convertToBytes(("TYPE_0,100,0,0.25,0.5," + (timestamp + 1)).split(","));
+        byte[] second = schema.convertToBytes(("TYPE_99,100,0,0.25,0.5," + (timestamp + 2)).split(","));
+        events.add(first);
+        events.add(second);
+        NFA freshNFA = new NFA();
+        freshNFA.generateNFAUsingQueryPattern(pattern, false);
+        for(byte[] event : events){
+            freshNFA.consume(schema, event, pattern.getStrategy());
+        }
+        for(byte[] event : new byte[][]{first, second}){
+            nfa.consume(schema, event, pattern.getStrategy());
+            countNFA.consume(schema, event, pattern.getStrategy());
+        }
+        assertTrue(freshNFA.countTuple() > 0);
+        assertEquals(freshNFA.countTuple(), nfa.countTuple());
+        assertEquals(freshNFA.countTuple(), countNFA.countTuple());
+    }
+}
@@ -0,0 +1,77 @@
+package automaton;
+
+import common.EventSchema;
+import common.IndexValuePair;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+import store.RID;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JoinMatcherTest {
+    @org.junit.jupiter.api.Test
+    public void joinTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = SyntheticEvents.rareTypeZero(13).nextEvents(schema, 6000);
+        int[][] orders = {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+        for(String p : SyntheticEvents.RARE_VARIABLE_PATTERNS){
+            String[] sp = p.split("\\|");
+            String query = "PATTERN " + sp[0] + "\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\nWHERE " + sp[1] +
+                    "\nWITHIN 40 units\nRETURN tuples";
+            QueryPattern pattern = StatementParser.getQueryPattern(query);
+            assertTrue(JoinMatcher.canProcess(pattern));
+
+            NFA nfa = new NFA();
+            nfa.generateNFAUsingQueryPattern(pattern, false);
+            for(byte[] event : events){
+                nfa.consume(schema, event, pattern.getStrategy());
+            }
+            List<String> expected = SyntheticEvents.sortedTuples(nfa.getTuple(schema));
+            assertFalse(expected.isEmpty());
+
+            // candidates of a variable are events of its type, rid follows arrival order
+            Map<String, List<IndexValuePair>> varPairs = new HashMap<>();
+            Map<String, List<byte[]>> varEvents = new HashMap<>();
+            Map<String, String> varTypeMap = pattern.getVarTypeMap();
+            for(String varName : varTypeMap.keySet()){
+                List<IndexValuePair> pairs = new ArrayList<>();
+                List<byte[]> candidates = new ArrayList<>();
+                for(int i = 0; i < events.size(); ++i){
+                    byte[] event = events.get(i);
+                    if(schema.getTypeFromBytesRecord(event, schema.getTypeIdx()).equals(varTypeMap.get(varName))){
+                        pairs.add(new IndexValuePair(schema.getTimestampFromRecord(event), new RID(i / 100, (short) (i % 100))));
+                        candidates.add(event);
+                    }
+                }
+                varPairs.put(varName, pairs);
+                varEvents.put(varName, candidates);
+            }
+
+            // every join order generates the same matches
+            for(int[] order : orders){
+                Map<String, Double> weights = new HashMap<>();
+                for(int k = 0; k < 3; ++k){
+                    weights.put("V" + order[k], (double) k);
+                }
+                NFA output = new NFA();
+                output.generateNFAUsingQueryPattern(pattern, false);
+                JoinMatcher joinMatcher = new JoinMatcher(pattern, weights, output);
+                assertEquals(List.of("V" + order[0], "V" + order[1], "V" + order[2]), joinMatcher.getJoinOrder());
+                joinMatcher.join(schema, varPairs, varEvents);
+                assertEquals(expected, SyntheticEvents.sortedTuples(output.getTuple(schema)));
+
+                NFA countOutput = new NFA();
+                countOutput.generateNFAUsingQueryPattern(pattern, true);
+                new JoinMatcher(pattern, weights, countOutput).join(schema, varPairs, varEvents);
+                assertEquals(expected.size(), countOutput.countTuple());
+            }
+        }
+
+        QueryPattern pattern = StatementParser.getQueryPattern("PATTERN SEQ(TYPE_1 v0, TYPE_0 v1)\nFROM synthetic\n" +
+                "USING SKIP_TILL_NEXT_MATCH\nWHERE v0.a1 <= 600\nWITHIN 40 units\nRETURN tuples");
+        assertFalse(JoinMatcher.canProcess(pattern));
+    }
+}
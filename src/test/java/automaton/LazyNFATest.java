@@ -0,0 +1,63 @@
+package automaton;
+
+import common.EventSchema;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyNFATest {
+    @org.junit.jupiter.api.Test
+    public void lazyTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = SyntheticEvents.rareTypeZero(11).nextEvents(schema, 6000);
+        int[][] orders = {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+        for(String p : SyntheticEvents.RARE_VARIABLE_PATTERNS){
+            String[] sp = p.split("\\|");
+            String query = "PATTERN " + sp[0] + "\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\nWHERE " + sp[1] +
+                    "\nWITHIN 40 units\nRETURN tuples";
+            QueryPattern pattern = StatementParser.getQueryPattern(query);
+            assertTrue(LazyNFA.canProcess(pattern, schema, events));
+
+            NFA nfa = new NFA();
+            nfa.generateNFAUsingQueryPattern(pattern, false);
+            for(byte[] event : events){
+                nfa.consume(schema, event, pattern.getStrategy());
+            }
+            List<String> expected = SyntheticEvents.sortedTuples(nfa.getTuple(schema));
+            assertFalse(expected.isEmpty());
+
+            // every evaluation order generates the same matches
+            for(int[] order : orders){
+                Map<String, Double> selectivities = new HashMap<>();
+                for(int k = 0; k < 3; ++k){
+                    selectivities.put("V" + order[k], (double) k);
+                }
+                NFA output = new NFA();
+                output.generateNFAUsingQueryPattern(pattern, false);
+                LazyNFA lazyNFA = new LazyNFA(pattern, selectivities, output);
+                assertEquals(List.of("V" + order[0], "V" + order[1], "V" + order[2]), lazyNFA.getEvaluationOrder());
+                for(byte[] event : events){
+                    lazyNFA.consume(schema, event);
+                }
+                assertEquals(expected, SyntheticEvents.sortedTuples(output.getTuple(schema)));
+
+                NFA countOutput = new NFA();
+                countOutput.generateNFAUsingQueryPattern(pattern, true);
+                LazyNFA countNFA = new LazyNFA(pattern, selectivities, countOutput);
+                for(byte[] event : events){
+                    countNFA.consume(schema, event);
+                }
+                assertEquals(expected.size(), countOutput.countTuple());
+            }
+        }
+
+        // skip-till-next-match and AND/OR patterns are processed by NFA
+        QueryPattern pattern = StatementParser.getQueryPattern("PATTERN SEQ(TYPE_1 v0, TYPE_0 v1)\nFROM synthetic\n" +
+                "USING SKIP_TILL_NEXT_MATCH\nWHERE v0.a1 <= 600\nWITHIN 40 units\nRETURN tuples");
+        assertFalse(LazyNFA.canProcess(pattern, schema, events));
+    }
+}
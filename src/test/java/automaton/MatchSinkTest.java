@@ -0,0 +1,112 @@
+package automaton;
+
+import common.EventSchema;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchSinkTest {
+    @org.junit.jupiter.api.Test
+    public void streamTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = new SyntheticEvents(3, 4).nextEvents(schema, 3 * ParallelMatcher.MIN_SEGMENT_SIZE);
+        String query = """
+                PATTERN SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2)
+                FROM synthetic
+                USING SKIP_TILL_ANY_MATCH
+                WHERE v0.a1 <= 300 AND v0.a1 <= v2.a1 AND v1.a3 >= 500
+                WITHIN 20 units
+                RETURN tuples""";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+
+        NFA nfa = new NFA();
+        nfa.generateNFAUsingQueryPattern(pattern, false);
+        for(byte[] event : events){
+            nfa.consume(schema, event, pattern.getStrategy());
+        }
+        List<String> expected = new ArrayList<>();
+        for(Tuple t : nfa.getTuple(schema)){
+            expected.add(t.toString());
+        }
+        Collections.sort(expected);
+
+        for(int threadNum : new int[]{1, 3}){
+            List<String> streamed = new ArrayList<>();
+            NFA streamNFA = new NFA();
+            streamNFA.generateNFAUsingQueryPattern(pattern, false);
+            streamNFA.setMatchSink(match -> {
+                assertEquals(3, match.size());
+                assertEquals("TYPE_0", match.getEventType(0));
+                assertTrue(match.getInt(0, "A1") <= match.getInt(2, "A1"));
+                assertTrue(match.getDouble(1, "A3") >= 500);
+                assertEquals(match.getTimestamp(0), match.getStartTime());
+                assertEquals(match.getTimestamp(2), match.getEndTime());
+                assertTrue(match.getEndTime() - match.getStartTime() <= 20);
+                streamed.add(match.toString());
+            });
+            ParallelMatcher.consume(streamNFA, pattern, schema, events, threadNum);
+            // delivered matches are not kept
+            assertEquals(0, streamNFA.countTuple());
+            Collections.sort(streamed);
+            assertEquals(expected, streamed);
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void boundedHandOffTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = new SyntheticEvents(3, 4).nextEvents(schema, 3 * ParallelMatcher.MIN_SEGMENT_SIZE);
+        String query = """
+                PATTERN SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2)
+                FROM synthetic
+                USING SKIP_TILL_ANY_MATCH
+                WHERE v0.a1 <= 900
+                WITHIN 30 units
+                RETURN tuples""";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        NFA countNFA = new NFA();
+        countNFA.generateNFAUsingQueryPattern(pattern);
+        for(byte[] event : events){
+            countNFA.consume(schema, event, pattern.getStrategy());
+        }
+
+        int threadNum = 3;
+        long[] deliveredNum = new long[1];
+        NFA streamNFA = new NFA();
+        streamNFA.generateNFAUsingQueryPattern(pattern, false);
+        streamNFA.setMatchSink(match -> {
+            // a slow sink, segments wait for it when the queue is full
+            if(++deliveredNum[0] % 10000 == 0){
+                try{
+                    Thread.sleep(5);
+                }catch (InterruptedException e){
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        int peakBufferedNum = ParallelMatcher.match(streamNFA, pattern, schema, events, threadNum);
+        assertEquals(countNFA.countTuple(), deliveredNum[0]);
+        // each segment fills one batch, the queue is full and the calling thread delivers one batch
+        int bound = (threadNum + threadNum * ParallelMatcher.BATCHES_PER_SEGMENT + 1) * ParallelMatcher.BATCH_SIZE;
+        assertTrue(peakBufferedNum > 0);
+        assertTrue(peakBufferedNum <= bound, "peak: " + peakBufferedNum);
+        assertTrue(deliveredNum[0] > 10L * bound, "matches: " + deliveredNum[0]);
+
+        // a failed sink cancels segments, so they do not block threads of the pool
+        NFA failedNFA = new NFA();
+        failedNFA.generateNFAUsingQueryPattern(pattern, false);
+        failedNFA.setMatchSink(match -> {
+            throw new IllegalStateException("sink fails");
+        });
+        assertThrows(IllegalStateException.class, () -> ParallelMatcher.match(failedNFA, pattern, schema, events, threadNum));
+        deliveredNum[0] = 0;
+        ParallelMatcher.match(streamNFA, pattern, schema, events, threadNum);
+        assertEquals(countNFA.countTuple(), deliveredNum[0]);
+    }
+}
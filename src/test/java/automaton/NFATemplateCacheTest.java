@@ -0,0 +1,60 @@
+package automaton;
+
+import common.EventSchema;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NFATemplateCacheTest {
+    private static QueryPattern getPattern(int maxValue){
+        String query = "PATTERN SEQ(AND(TYPE_0 v0, TYPE_1 v1), TYPE_2 v2)\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\n" +
+                "WHERE v0.a1 <= " + maxValue + " AND v0.a1 = v2.a1 AND v1.a2 - 100 <= v2.a2\nWITHIN 30 units\nRETURN tuples";
+        return StatementParser.getQueryPattern(query);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void reuseTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = new SyntheticEvents(5, 4).nextEvents(schema, 3000);
+        NFATemplateCache cache = NFATemplateCache.getInstance();
+
+        QueryPattern pattern = getPattern(500);
+        NFA first = new NFA();
+        first.generateNFAUsingQueryPattern(pattern, false);
+        long hitNum = cache.getHitNum();
+        // the second NFA is instantiated from the template of the first NFA
+        NFA second = new NFA();
+        second.generateNFAUsingQueryPattern(getPattern(500), false);
+        assertEquals(hitNum + 1, cache.getHitNum());
+
+        // instances do not share buffers
+        for(byte[] event : events){
+            first.consume(schema, event, pattern.getStrategy());
+            second.consume(schema, event, pattern.getStrategy());
+        }
+        long count = first.countTuple();
+        assertTrue(count > 0);
+        assertEquals(count, second.countTuple());
+        assertEquals(first.getTuple(schema).toString(), second.getTuple(schema).toString());
+
+        // reset keeps compiled automata
+        second.reset();
+        assertEquals(0, second.countTuple());
+        for(byte[] event : events){
+            second.consume(schema, event, pattern.getStrategy());
+        }
+        assertEquals(count, second.countTuple());
+
+        // different constants generate a different automata
+        NFA third = new NFA();
+        third.generateNFAUsingQueryPattern(getPattern(200), false);
+        for(byte[] event : events){
+            third.consume(schema, event, pattern.getStrategy());
+        }
+        assertTrue(third.countTuple() < count);
+    }
+}
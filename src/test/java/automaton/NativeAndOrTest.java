@@ -0,0 +1,83 @@
+package automaton;
+
+import common.EventSchema;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NativeAndOrTest {
+    private static NFA run(String patternStr, String strategy, boolean countOnly, EventSchema schema, List<byte[]> events){
+        String query = "PATTERN " + patternStr + "\nFROM synthetic\nUSING " + strategy +
+                "\nWHERE v0.a1 <= 300 AND v3.a2 >= 500 AND v1.a1 >= v2.a1\nWITHIN 20 units\nRETURN tuples";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        NFA nfa = new NFA();
+        nfa.generateNFAUsingQueryPattern(pattern, countOnly);
+        for(byte[] event : events){
+            nfa.consume(schema, event, pattern.getStrategy());
+        }
+        return nfa;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void automatonTest(){
+        // AND of k variables has 2^k states instead of k! sequential branches
+        PatternAutomaton automaton = new PatternAutomaton("AND(A a, B b, C c)");
+        assertEquals(8, automaton.getStateNum());
+        assertEquals(12, automaton.getEdges().size());
+        assertEquals(List.of("a", "c"), automaton.getVarNames(5));
+
+        // components of AND do not interleave, and OR only matches one component
+        automaton = new PatternAutomaton("SEQ(OR(A a, B b), AND(C c, SEQ(D d, E e)))");
+        int finalNum = 0;
+        for(int id = 0; id < automaton.getStateNum(); ++id){
+            List<String> varNames = automaton.getVarNames(id);
+            assertFalse(varNames.contains("a") && varNames.contains("b"));
+            if(automaton.isFinal(id)){
+                finalNum++;
+                assertEquals(4, varNames.size());
+            }
+        }
+        assertEquals(2, finalNum);
+        for(PatternAutomaton.Edge edge : automaton.getEdges()){
+            List<String> varNames = automaton.getVarNames(edge.from());
+            if(varNames.contains("d") && !varNames.contains("e")){
+                assertEquals("e", automaton.getVarName(edge.varIdx()));
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void matchTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = new SyntheticEvents(5, 4).nextEvents(schema, 4000);
+
+        // native AND equals union of its orders, and each match is generated once
+        String andPattern = "SEQ(TYPE_0 v0, AND(TYPE_1 v1, TYPE_2 v2), TYPE_3 v3)";
+        NFA nfa = run(andPattern, "SKIP_TILL_ANY_MATCH", false, schema, events);
+        Set<String> matches = new HashSet<>();
+        for(Tuple t : nfa.getTuple(schema)){
+            assertTrue(matches.add(t.toString()));
+        }
+        long expected = run("SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2, TYPE_3 v3)", "SKIP_TILL_ANY_MATCH", false, schema, events).countTuple() +
+                run("SEQ(TYPE_0 v0, TYPE_2 v2, TYPE_1 v1, TYPE_3 v3)", "SKIP_TILL_ANY_MATCH", false, schema, events).countTuple();
+        assertTrue(expected > 0);
+        assertEquals(expected, matches.size());
+
+        // events of a match are stored in variable order of pattern string
+        nfa.forEachMatch(schema, Long.MIN_VALUE, Long.MAX_VALUE, match -> {
+            assertEquals("V1", match.getVarName(1));
+            assertEquals("TYPE_1", match.getEventType(1));
+            assertTrue(match.getInt(1, "A1") >= match.getInt(2, "A1"));
+        });
+
+        // count-only NFA shares states in the same way
+        for(String strategy : new String[]{"SKIP_TILL_ANY_MATCH", "SKIP_TILL_NEXT_MATCH"}){
+            long tupleCount = run(andPattern, strategy, false, schema, events).countTuple();
+            assertEquals(tupleCount, run(andPattern, strategy, true, schema, events).countTuple());
+        }
+    }
+}
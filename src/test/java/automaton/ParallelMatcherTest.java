@@ -0,0 +1,94 @@
+package automaton;
+
+import common.EventSchema;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelMatcherTest {
+    private static final String[] PATTERNS = {
+            "SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2)|v0.a1 <= 500 AND v0.a1 <= v2.a1",
+            "SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2)|v0.a1 - 50 <= v1.a1 AND v1.a1 <= v0.a1 + 50",
+            "SEQ(AND(TYPE_0 v0, TYPE_1 v1), TYPE_2 v2)|v0.a1 <= 500 AND v0.a1 <= v2.a1",
+    };
+
+    @org.junit.jupiter.api.Test
+    public void sameResultTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = new SyntheticEvents(7, 4).nextEvents(schema, 5 * ParallelMatcher.MIN_SEGMENT_SIZE);
+
+        for(String strategy : new String[]{"SKIP_TILL_ANY_MATCH", "SKIP_TILL_NEXT_MATCH"}){
+            for(String p : PATTERNS){
+                String[] sp = p.split("\\|");
+                String query = "PATTERN " + sp[0] + "\nFROM synthetic\nUSING " + strategy + "\nWHERE " + sp[1] +
+                        "\nWITHIN 20 units\nRETURN COUNT(*)";
+                QueryPattern pattern = StatementParser.getQueryPattern(query);
+
+                for(boolean countOnly : new boolean[]{false, true}){
+                    NFA nfa = new NFA();
+                    nfa.generateNFAUsingQueryPattern(pattern, countOnly);
+                    for(byte[] event : events){
+                        nfa.consume(schema, event, pattern.getStrategy());
+                    }
+                    NFA parallelNFA = new NFA();
+                    parallelNFA.generateNFAUsingQueryPattern(pattern, countOnly);
+                    ParallelMatcher.consume(parallelNFA, pattern, schema, events, 4);
+
+                    assertEquals(nfa.countTuple(), parallelNFA.countTuple(), strategy + " " + sp[0]);
+                    assertEquals(nfa.countTuple(0, 10000), parallelNFA.countTuple(0, 10000));
+                    if(!countOnly){
+                        assertEquals(SyntheticEvents.sortedTuples(nfa.getTuple(schema)),
+                                SyntheticEvents.sortedTuples(parallelNFA.getTuple(schema)));
+                    }
+                }
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void concurrentThreadNumTest() throws InterruptedException {
+        EventSchema schema = SyntheticEvents.createSchema();
+        List<byte[]> events = new SyntheticEvents(7, 4).nextEvents(schema, 4 * ParallelMatcher.MIN_SEGMENT_SIZE);
+        String[] sp = PATTERNS[0].split("\\|");
+        String query = "PATTERN " + sp[0] + "\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\nWHERE " + sp[1] +
+                "\nWITHIN 20 units\nRETURN COUNT(*)";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        NFA nfa = new NFA();
+        nfa.generateNFAUsingQueryPattern(pattern, true);
+        for(byte[] event : events){
+            nfa.consume(schema, event, pattern.getStrategy());
+        }
+        long expected = nfa.countTuple();
+
+        // callers with different thread numbers must not shut down pools of each other
+        int[] threadNums = {2, 3, 4};
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> callers = new ArrayList<>(threadNums.length);
+        for(int threadNum : threadNums){
+            Thread caller = new Thread(() -> {
+                try{
+                    for(int round = 0; round < 5; round++){
+                        NFA parallelNFA = new NFA();
+                        parallelNFA.generateNFAUsingQueryPattern(pattern, true);
+                        ParallelMatcher.consume(parallelNFA, pattern, schema, events, threadNum);
+                        assertEquals(expected, parallelNFA.countTuple());
+                    }
+                }catch (Throwable t){
+                    errors.add(t);
+                }
+            });
+            callers.add(caller);
+            caller.start();
+        }
+        for(Thread caller : callers){
+            caller.join();
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+}
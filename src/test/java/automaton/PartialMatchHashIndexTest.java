@@ -0,0 +1,146 @@
+package automaton;
+
+import common.EventSchema;
+import common.StatementParser;
+import common.SyntheticEvents;
+import pattern.QueryPattern;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartialMatchHashIndexTest {
+    /**
+     * @param dc    dependent constraint between v0 and v1
+     * @return      predicate of transition v0 -> v1
+     */
+    private static TransitionPredicate compile(EventSchema schema, String dc){
+        String query = "PATTERN SEQ(TYPE_0 v0, TYPE_1 v1)\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\nWHERE " + dc +
+                "\nWITHIN 10 units\nRETURN tuples";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        return new TransitionPredicate(schema, "TYPE_1", pattern.getICListUsingVarName("V1"),
+                pattern.getDC(Set.of("V0"), "V1"), "V1", List.of("V0"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void indexVersusScanTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        // rows are dropped from head many times, so buckets are purged
+        // a2 has few distinct values, so equality dependent constraints generate matches
+        List<byte[]> events = new SyntheticEvents(7, r -> r.nextInt(3), 40).nextEvents(schema, 20000);
+        String[] patterns = {
+                "SEQ(TYPE_0 v0, TYPE_1 v1)|v1.a2 = v0.a2 + 3",
+                "SEQ(TYPE_0 v0, TYPE_1 v1)|v1.a2 + 3 = v0.a2",
+                "SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2)|v0.a2 - 2 = v2.a2 AND v1.a1 <= v2.a1",
+                "SEQ(AND(TYPE_0 v0, TYPE_1 v1), TYPE_2 v2)|v1.a2 = v2.a2 + 1",
+        };
+        for(String strategy : new String[]{"SKIP_TILL_ANY_MATCH", "SKIP_TILL_NEXT_MATCH"}){
+            for(String p : patterns){
+                String[] sp = p.split("\\|");
+                String query = "PATTERN " + sp[0] + "\nFROM synthetic\nUSING " + strategy + "\nWHERE " + sp[1] +
+                        "\nWITHIN 30 units\nRETURN tuples";
+                QueryPattern pattern = StatementParser.getQueryPattern(query);
+
+                NFA indexNFA = new NFA();
+                indexNFA.generateNFAUsingQueryPattern(pattern, false);
+                NFA scanNFA = new NFA();
+                scanNFA.generateNFAUsingQueryPattern(pattern, false);
+                scanNFA.setHashIndex(false);
+                // count-only NFA indexes aggregated rows
+                NFA countNFA = new NFA();
+                countNFA.generateNFAUsingQueryPattern(pattern, true);
+                NFA countScanNFA = new NFA();
+                countScanNFA.generateNFAUsingQueryPattern(pattern, true);
+                countScanNFA.setHashIndex(false);
+                for(byte[] event : events){
+                    indexNFA.consume(schema, event, pattern.getStrategy());
+                    scanNFA.consume(schema, event, pattern.getStrategy());
+                    countNFA.consume(schema, event, pattern.getStrategy());
+                    countScanNFA.consume(schema, event, pattern.getStrategy());
+                }
+                List<String> expected = SyntheticEvents.sortedTuples(scanNFA.getTuple(schema));
+                assertFalse(expected.isEmpty(), strategy + " " + p);
+                assertEquals(expected, SyntheticEvents.sortedTuples(indexNFA.getTuple(schema)), strategy + " " + p);
+                assertEquals(expected.size(), countScanNFA.countTuple(), strategy + " " + p);
+                assertEquals(expected.size(), countNFA.countTuple(), strategy + " " + p);
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void probeKeyTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        byte[] record = schema.convertToBytes("TYPE_1,100,50,1.25,1.5,0".split(","));
+        // dependent constraint -> value of v0.a2 that matches v1.a2 = 50
+        Map<String, Long> expectedKeys = new LinkedHashMap<>();
+        expectedKeys.put("v1.a2 = v0.a2 + 3", 47L);
+        expectedKeys.put("v1.a2 + 3 = v0.a2", 53L);
+        expectedKeys.put("v0.a2 - 2 = v1.a2 + 4", 56L);
+        expectedKeys.put("v1.a2 - 1 = v0.a2 - 7", 56L);
+        for(Map.Entry<String, Long> entry : expectedKeys.entrySet()){
+            TransitionPredicate predicate = compile(schema, entry.getKey());
+            predicate.loadCurrentValues(record);
+            assertEquals(0, predicate.getEqualityDC(), entry.getKey());
+            assertEquals(entry.getValue(), predicate.getEqualityProbeKey(0), entry.getKey());
+        }
+        // constraints with multiples cannot be probed by key
+        assertEquals(-1, compile(schema, "v1.a2 * 2 = v0.a2").getEqualityDC());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void bucketTest(){
+        PartialMatchHashIndex.Bucket bucket = new PartialMatchHashIndex.Bucket();
+        for(long seq = 0; seq < 10; ++seq){
+            bucket.add(seq);
+        }
+        bucket.removeBefore(6);
+        assertEquals(4, bucket.size());
+        assertEquals(6, bucket.get(0));
+        // space of removed sequence numbers is reused or the bucket grows
+        for(long seq = 10; seq < 40; ++seq){
+            bucket.add(seq);
+        }
+        assertEquals(34, bucket.size());
+        for(int i = 0; i < bucket.size(); ++i){
+            assertEquals(6 + i, bucket.get(i));
+        }
+        bucket.removeBefore(100);
+        assertEquals(0, bucket.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void purgeTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        TransitionPredicate predicate = compile(schema, "v1.a2 = v0.a2");
+        PartialMatchList list = new PartialMatchList(List.of("V0"));
+        EventCache cache = new EventCache();
+        PartialMatchHashIndex index = list.getHashIndex(predicate.getPreColumn(0));
+        // each row has its own key, window keeps 11 rows
+        int rowNum = 3000;
+        for(int i = 0; i < rowNum; ++i){
+            byte[] record = schema.convertToBytes(("TYPE_0,0," + i + ",0.25,0.5," + i).split(","));
+            list.addPartialMatch(cache.insert(record), i);
+            list.beginEvent();
+            list.expireHead(i, 10);
+            index.catchUp(list, cache, predicate, 0);
+        }
+        assertEquals(11, list.getPartialMatchSize());
+        // buckets of dropped rows are purged although they are never probed
+        assertTrue(index.getKeyNum() < 2 * 1024, "keys: " + index.getKeyNum());
+        long firstSeq = list.getFirstSeq();
+        assertNull(index.probe(5, firstSeq));
+
+        PartialMatchHashIndex.Bucket bucket = index.probe(rowNum - 1, firstSeq);
+        assertEquals(1, bucket.size());
+        assertEquals(rowNum - 1, list.getStartTime((int) (bucket.get(0) - firstSeq)));
+
+        // a probed bucket drops sequence numbers of expired rows
+        list.beginEvent();
+        list.expireHead(rowNum + 20, 10);
+        assertEquals(0, index.probe(rowNum - 1, list.getFirstSeq()).size());
+
+        // sequence numbers change after removing expired rows, so the index is rebuilt
+        list.removeExpired(rowNum);
+        assertEquals(0, index.getKeyNum());
+    }
+}
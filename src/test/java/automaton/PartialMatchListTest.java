@@ -0,0 +1,50 @@
+package automaton;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartialMatchListTest {
+    @org.junit.jupiter.api.Test
+    public void expireHeadTest(){
+        PartialMatchList list = new PartialMatchList(List.of("v0"));
+        for(int i = 0; i < 10; i++){
+            list.addPartialMatch(i, i * 10);
+        }
+        list.beginEvent();
+        // window = 30, timestamp = 75 => rows whose start time < 45 are expired
+        list.expireHead(75, 30);
+        assertEquals(5, list.getPartialMatchSize());
+        assertEquals(50, list.getStartTime(0));
+        assertEquals(5, list.getPointer(0, 0));
+        assertEquals(10, list.drainCreatedNum());
+        assertEquals(5, list.drainExpiredNum());
+        assertEquals(0, list.drainExpiredNum());
+
+        // a removed row in the middle is skipped, and it is dropped when it reaches the head
+        list.markRemoved(1);
+        assertFalse(list.isLive(1, 75, 30));
+        list.beginEvent();
+        list.expireHead(85, 30);
+        assertEquals(3, list.getPartialMatchSize());
+        assertEquals(70, list.getStartTime(0));
+        // the removed row is not a timeout row
+        assertEquals(1, list.drainExpiredNum());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void reuseSpaceTest(){
+        PartialMatchList list = new PartialMatchList(List.of("v0"));
+        // keep at most 4 live rows, arenas should not grow
+        for(int i = 0; i < 1000; i++){
+            list.addPartialMatch(i, i);
+            list.beginEvent();
+            list.expireHead(i, 3);
+            assertEquals(Math.min(i + 1, 4), list.getPartialMatchSize());
+            assertEquals(i, list.getPointer(list.getPartialMatchSize() - 1, 0));
+        }
+        list.removeExpired(998);
+        assertEquals(2, list.getPartialMatchSize());
+        assertEquals(998, list.getStartTime(0));
+    }
+}
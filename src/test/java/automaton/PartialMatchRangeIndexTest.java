@@ -0,0 +1,158 @@
+package automaton;
+
+import common.ComparedOperator;
+import common.EventSchema;
+import common.StatementParser;
+import common.SyntheticEvents;
+import condition.DependentConstraint;
+import pattern.QueryPattern;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartialMatchRangeIndexTest {
+    private static final String[] PATTERNS = {
+            // band
+            "SEQ(TYPE_0 v0, TYPE_1 v1)|v1.a1 >= v0.a1 - 50 AND v1.a1 <= v0.a1 + 50",
+            // one-sided, most ranges are wide and partial matches are scanned
+            "SEQ(TYPE_0 v0, TYPE_1 v1)|v0.a1 < v1.a1",
+            // multiples of current variable
+            "SEQ(TYPE_0 v0, TYPE_1 v1)|v1.a1 * 2 <= v0.a1 + 30 AND v0.a1 <= v1.a1 * 2 + 90",
+            // multiples of previous variable, bounds are not integers
+            "SEQ(TYPE_0 v0, TYPE_1 v1)|v0.a1 * 3 >= v1.a1 AND v0.a1 / 2 <= v1.a1 - 300",
+            // several constraints on one column and a decimal column
+            "SEQ(TYPE_0 v0, TYPE_1 v1)|v0.a3 <= v1.a3 + 5.5 AND v0.a3 >= v1.a3 - 20.5 AND v0.a3 <= v1.a3 + 30",
+            "SEQ(TYPE_0 v0, TYPE_1 v1, TYPE_2 v2)|v0.a1 - 20 <= v2.a1 AND v2.a1 <= v0.a1 + 20 AND v1.a2 < v2.a2",
+            "SEQ(AND(TYPE_0 v0, TYPE_1 v1), TYPE_2 v2)|v1.a1 - 30 <= v2.a1 AND v2.a1 <= v1.a1 + 30",
+    };
+
+    /**
+     * @param dc    dependent constraints between v0 and v1
+     * @return      predicate of transition v0 -> v1
+     */
+    private static TransitionPredicate compile(EventSchema schema, String dc){
+        String query = "PATTERN SEQ(TYPE_0 v0, TYPE_1 v1)\nFROM synthetic\nUSING SKIP_TILL_ANY_MATCH\nWHERE " + dc +
+                "\nWITHIN 10 units\nRETURN tuples";
+        QueryPattern pattern = StatementParser.getQueryPattern(query);
+        return new TransitionPredicate(schema, "TYPE_1", pattern.getICListUsingVarName("V1"),
+                pattern.getDC(Set.of("V0"), "V1"), "V1", List.of("V0"));
+    }
+
+    private static long[] probeRange(EventSchema schema, TransitionPredicate predicate, int a1){
+        predicate.loadCurrentValues(schema.convertToBytes(("TYPE_1," + a1 + ",0,0.25,0.5,0").split(",")));
+        long[] range = new long[2];
+        predicate.getProbeRange(predicate.getRangeDC(), range);
+        return range;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void indexVersusScanTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        // rows are dropped from head many times, so buckets are purged
+        List<byte[]> events = new SyntheticEvents(13, 3).nextEvents(schema, 20000);
+        for(String strategy : new String[]{"SKIP_TILL_ANY_MATCH", "SKIP_TILL_NEXT_MATCH"}){
+            for(String p : PATTERNS){
+                String[] sp = p.split("\\|");
+                String query = "PATTERN " + sp[0] + "\nFROM synthetic\nUSING " + strategy + "\nWHERE " + sp[1] +
+                        "\nWITHIN 30 units\nRETURN tuples";
+                QueryPattern pattern = StatementParser.getQueryPattern(query);
+
+                NFA indexNFA = new NFA();
+                indexNFA.generateNFAUsingQueryPattern(pattern, false);
+                NFA scanNFA = new NFA();
+                scanNFA.generateNFAUsingQueryPattern(pattern, false);
+                scanNFA.setRangeIndex(false);
+                // count-only NFA indexes aggregated rows
+                NFA countNFA = new NFA();
+                countNFA.generateNFAUsingQueryPattern(pattern, true);
+                NFA countScanNFA = new NFA();
+                countScanNFA.generateNFAUsingQueryPattern(pattern, true);
+                countScanNFA.setRangeIndex(false);
+                for(byte[] event : events){
+                    indexNFA.consume(schema, event, pattern.getStrategy());
+                    scanNFA.consume(schema, event, pattern.getStrategy());
+                    countNFA.consume(schema, event, pattern.getStrategy());
+                    countScanNFA.consume(schema, event, pattern.getStrategy());
+                }
+                List<String> expected = SyntheticEvents.sortedTuples(scanNFA.getTuple(schema));
+                assertFalse(expected.isEmpty(), strategy + " " + p);
+                assertEquals(expected, SyntheticEvents.sortedTuples(indexNFA.getTuple(schema)), strategy + " " + p);
+                assertEquals(expected.size(), countScanNFA.countTuple(), strategy + " " + p);
+                assertEquals(expected.size(), countNFA.countTuple(), strategy + " " + p);
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void probeRangeTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        assertArrayEquals(new long[]{50, 150},
+                probeRange(schema, compile(schema, "v1.a1 >= v0.a1 - 50 AND v1.a1 <= v0.a1 + 50"), 100));
+        // constraints on the same column are intersected
+        assertArrayEquals(new long[]{50, 120},
+                probeRange(schema, compile(schema, "v1.a1 >= v0.a1 - 50 AND v1.a1 <= v0.a1 + 50 AND v0.a1 <= v1.a1 + 20"), 100));
+        assertArrayEquals(new long[]{Long.MIN_VALUE, 100}, probeRange(schema, compile(schema, "v0.a1 < v1.a1"), 100));
+        // bounds are rounded outwards: v0.a1 >= 33.3, v0.a1 <= 33.7
+        assertArrayEquals(new long[]{33, Long.MAX_VALUE}, probeRange(schema, compile(schema, "v0.a1 * 3 >= v1.a1"), 100));
+        assertArrayEquals(new long[]{Long.MIN_VALUE, 34}, probeRange(schema, compile(schema, "v0.a1 * 3 <= v1.a1 + 1"), 100));
+        assertArrayEquals(new long[]{Long.MIN_VALUE, 90}, probeRange(schema, compile(schema, "v0.a1 / 2 <= v1.a1 - 55"), 100));
+        // v1.a1 * 2 <= v0.a1 + 30 => v0.a1 >= 170
+        assertArrayEquals(new long[]{170, Long.MAX_VALUE}, probeRange(schema, compile(schema, "v1.a1 * 2 <= v0.a1 + 30"), 100));
+
+        // the parser does not support negative multiples, -2 * v0.a1 <= v1.a1 => v0.a1 >= -50
+        DependentConstraint dc = new DependentConstraint("A1", "V0", "V1", ComparedOperator.LE){
+            @Override
+            public double getLeftSlope(){
+                return -2;
+            }
+        };
+        TransitionPredicate predicate = new TransitionPredicate(schema, "TYPE_1", List.of(), List.of(dc), "V1", List.of("V0"));
+        assertArrayEquals(new long[]{-50, Long.MAX_VALUE}, probeRange(schema, predicate, 100));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void probeTest(){
+        EventSchema schema = SyntheticEvents.createSchema();
+        TransitionPredicate predicate = compile(schema, "v1.a1 >= v0.a1 - 5 AND v1.a1 <= v0.a1 + 5");
+        PartialMatchList list = new PartialMatchList(List.of("V0"));
+        EventCache cache = new EventCache();
+        PartialMatchRangeIndex index = list.getRangeIndex(predicate.getPreColumn(0));
+        // each row has its own key, window keeps 401 rows
+        int rowNum = 3000;
+        for(int i = 0; i < rowNum; ++i){
+            byte[] record = schema.convertToBytes(("TYPE_0," + i + ",0,0.25,0.5," + i).split(","));
+            list.addPartialMatch(cache.insert(record), i);
+            list.beginEvent();
+            list.expireHead(i, 400);
+            index.catchUp(list, cache, predicate, 0);
+        }
+        assertEquals(401, list.getPartialMatchSize());
+        // buckets of dropped rows are purged although they are never probed
+        assertTrue(index.getKeyNum() < 401 + 1024, "keys: " + index.getKeyNum());
+
+        // candidates are sorted by sequence number
+        long firstSeq = list.getFirstSeq();
+        predicate.loadCurrentValues(schema.convertToBytes(("TYPE_1," + (rowNum - 5) + ",0,0.25,0.5," + rowNum).split(",")));
+        assertEquals(10, index.probe(predicate, 0, firstSeq));
+        for(int i = 0; i < 10; ++i){
+            assertEquals(rowNum - 10 + i, list.getStartTime((int) (index.getCandidate(i) - firstSeq)));
+        }
+        // buckets of dropped rows in the probed range are removed, rows of keys [2050, 2599) are not purged yet
+        int keyNum = index.getKeyNum();
+        predicate.loadCurrentValues(schema.convertToBytes(("TYPE_1,2300,0,0.25,0.5," + rowNum).split(",")));
+        assertEquals(0, index.probe(predicate, 0, firstSeq));
+        assertEquals(keyNum - 11, index.getKeyNum());
+
+        // a wide range is not probed
+        TransitionPredicate widePredicate = compile(schema, "v1.a1 >= v0.a1 - 300 AND v1.a1 <= v0.a1 + 300");
+        PartialMatchRangeIndex wideIndex = list.getRangeIndex(widePredicate.getPreColumn(0));
+        assertSame(index, wideIndex);
+        widePredicate.loadCurrentValues(schema.convertToBytes(("TYPE_1," + (rowNum - 200) + ",0,0.25,0.5," + rowNum).split(",")));
+        assertEquals(-1, wideIndex.probe(widePredicate, 0, firstSeq));
+
+        // sequence numbers change after removing expired rows, so the index is rebuilt
+        list.removeExpired(rowNum);
+        assertEquals(0, index.getKeyNum());
+    }
+}
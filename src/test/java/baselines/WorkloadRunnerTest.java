@@ -0,0 +1,27 @@
+package baselines;
+
+import net.sf.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+
+class WorkloadRunnerTest {
+    @org.junit.jupiter.api.Test
+    public void percentileTest(){
+        double[] values = new double[100];
+        for(int i = 0; i < 100; i++){
+            // 100, 99, ..., 1
+            values[i] = 100 - i;
+        }
+        JSONObject summary = WorkloadRunner.summarize(values);
+        Assertions.assertEquals(100, summary.getInt("count"));
+        Assertions.assertEquals(50.5, summary.getDouble("mean"), 1e-9);
+        Assertions.assertEquals(50, summary.getDouble("p50"), 1e-9);
+        Assertions.assertEquals(95, summary.getDouble("p95"), 1e-9);
+        Assertions.assertEquals(99, summary.getDouble("p99"), 1e-9);
+        Assertions.assertEquals(100, summary.getDouble("max"), 1e-9);
+        // summarize does not sort values in place
+        Assertions.assertEquals(100, values[0]);
+
+        Assertions.assertEquals(7, WorkloadRunner.percentile(new double[]{7}, 0.99), 1e-9);
+        Assertions.assertEquals(0, WorkloadRunner.summarize(new double[0]).getInt("count"));
+    }
+}
@@ -0,0 +1,69 @@
+package common;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class MetricsTest {
+    @org.junit.jupiter.api.Test
+    public void disabledTest(){
+        Metrics.disable();
+        Metrics.Counter counter = Metrics.counter("test.disabled.counter");
+        Metrics.Histogram histogram = Metrics.histogram("test.disabled.histogram");
+        counter.add(10);
+        histogram.record(10);
+        histogram.recordSince(Metrics.now());
+        Assertions.assertEquals(0, Metrics.now());
+        Assertions.assertEquals(0, counter.get());
+        Assertions.assertEquals(0, histogram.count());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void counterTest(){
+        Metrics.enable();
+        Metrics.Counter counter = Metrics.counter("test.counter");
+        counter.reset();
+        counter.add(5);
+        counter.increment();
+        Assertions.assertEquals(6, counter.get());
+        // same name, same counter
+        Assertions.assertSame(counter, Metrics.counter("test.counter"));
+        Metrics.disable();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void bucketTest(){
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE};
+        for(long value : values){
+            int index = Metrics.Histogram.bucketIndex(value);
+            Assertions.assertTrue(Metrics.Histogram.highestValue(index) >= value);
+            if(index > 0){
+                Assertions.assertTrue(Metrics.Histogram.highestValue(index - 1) < value);
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void percentileTest(){
+        Metrics.enable();
+        Metrics.Histogram histogram = Metrics.histogram("test.histogram");
+        histogram.reset();
+        int n = 100_000;
+        long[] values = new long[n];
+        Random random = new Random(7);
+        for(int i = 0; i < n; i++){
+            values[i] = 1000 + random.nextInt(10_000_000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        Assertions.assertEquals(n, histogram.count());
+        Assertions.assertEquals(values[n - 1], histogram.max());
+        for(double p : new double[]{0.5, 0.95, 0.99}){
+            long expected = values[(int) Math.ceil(p * n) - 1];
+            long actual = histogram.percentile(p);
+            Assertions.assertTrue(actual >= expected && actual <= expected * 1.04, p + ": " + expected + " vs " + actual);
+        }
+        Metrics.disable();
+    }
+}
@@ -0,0 +1,108 @@
+package common;
+
+import automaton.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+/**
+ * synthetic table and random events shared by tests
+ * a record is "TYPE_x,a1,a2,a3,a4,time", a1/a2 are in [0, 1000), a3/a4 are decimals,
+ * timestamp increases by 0, 1 or 2, so consecutive events may have the same timestamp
+ * -------------------------------------------------------------------------------------
+ * a generator keeps its timestamp, so tests can insert more events that follow previous ones
+ */
+public class SyntheticEvents {
+    public static final String CREATE_TABLE =
+            "CREATE TABLE synthetic (type TYPE, a1 INT, a2 INT, a3 DOUBLE.2, a4 DOUBLE.2, time TIMESTAMP)";
+
+    // SEQ patterns (with skip-till-any-match) whose TYPE_0 variable is rare, see rareTypeZero
+    public static final String[] RARE_VARIABLE_PATTERNS = {
+            "SEQ(TYPE_1 v0, TYPE_0 v1, TYPE_2 v2)|v0.a1 <= 600 AND v0.a2 <= v2.a2",
+            "SEQ(TYPE_1 v0, TYPE_1 v1, TYPE_0 v2)|v0.a1 <= v1.a1 AND v2.a3 >= 200",
+            "SEQ(TYPE_2 v0, TYPE_3 v1, TYPE_0 v2)|v0.a1 / 10 = v2.a1 / 10 AND v1.a2 < v2.a2"
+    };
+
+    private final Random random;
+    private final ToIntFunction<Random> typeGenerator;  // random -> x of TYPE_x
+    private final int a2Bound;                          // a2 is in [0, a2Bound)
+    private long timestamp;
+
+    /**
+     * @param seed              random seed
+     * @param typeGenerator     generate x of TYPE_x with the random of this generator
+     * @param a2Bound           a2 is in [0, a2Bound), small bound makes equality constraints generate matches
+     */
+    public SyntheticEvents(long seed, ToIntFunction<Random> typeGenerator, int a2Bound){
+        random = new Random(seed);
+        this.typeGenerator = typeGenerator;
+        this.a2Bound = a2Bound;
+        timestamp = 0;
+    }
+
+    public SyntheticEvents(long seed, ToIntFunction<Random> typeGenerator){
+        this(seed, typeGenerator, 1000);
+    }
+
+    /**
+     * @param seed      random seed
+     * @param typeNum   event types are uniformly chosen from TYPE_0, ..., TYPE_{typeNum - 1}
+     */
+    public SyntheticEvents(long seed, int typeNum){
+        this(seed, r -> r.nextInt(typeNum));
+    }
+
+    /**
+     * TYPE_0 takes 1/20 of events, others are uniformly chosen from TYPE_1, TYPE_2, TYPE_3
+     * @param seed      random seed
+     * @return          generator
+     */
+    public static SyntheticEvents rareTypeZero(long seed){
+        return new SyntheticEvents(seed, r -> r.nextInt(20) == 0 ? 0 : 1 + r.nextInt(3));
+    }
+
+    /**
+     * create (or replace) the synthetic table
+     * @return      its schema
+     */
+    public static EventSchema createSchema(){
+        StatementParser.createTable(StatementParser.convert(CREATE_TABLE));
+        return Metadata.getInstance().getEventSchema("SYNTHETIC");
+    }
+
+    public String nextRecord(){
+        timestamp += random.nextInt(3);
+        return "TYPE_" + typeGenerator.applyAsInt(random) + "," + random.nextInt(1000) + "," + random.nextInt(a2Bound) +
+                "," + random.nextInt(1000) + ".25," + random.nextInt(1000) + ".5," + timestamp;
+    }
+
+    /**
+     * @param schema    schema of synthetic table
+     * @param num       number of events
+     * @return          byte records
+     */
+    public List<byte[]> nextEvents(EventSchema schema, int num){
+        List<byte[]> events = new ArrayList<>(num);
+        for(int i = 0; i < num; i++){
+            events.add(schema.convertToBytes(nextRecord().split(",")));
+        }
+        return events;
+    }
+
+    /**
+     * matches are generated in different orders by different engines, so tests compare sorted strings
+     * @param tuples    matched tuples
+     * @return          sorted strings of tuples
+     */
+    public static List<String> sortedTuples(List<Tuple> tuples){
+        List<String> ans = new ArrayList<>(tuples.size());
+        for(Tuple t : tuples){
+            ans.add(t.toString());
+        }
+        Collections.sort(ans);
+        return ans;
+    }
+}
@@ -0,0 +1,85 @@
+package compressor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaBlockFORCompressorTest {
+    private static List<Long> generateValues(Random random, int size, int minGap, int maxGap){
+        List<Long> values = new ArrayList<>(size);
+        long value = 1500405481623L;
+        for(int i = 0; i < size; i++){
+            value += minGap == maxGap ? minGap : random.nextInt(minGap, maxGap);
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static ByteBuffer toBuffer(long[] compressedValues){
+        ByteBuffer buffer = ByteBuffer.allocate(compressedValues.length << 3);
+        for(long value : compressedValues){
+            buffer.putLong(value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void assertDecoded(List<Long> values, long[] decodedValues){
+        assertEquals(values.size(), decodedValues.length);
+        for(int i = 0; i < decodedValues.length; i++){
+            assertEquals(values.get(i), decodedValues[i], "position: " + i);
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void roundTripTest(){
+        Random random = new Random(7);
+        // in-order, out-of-order, constant gaps and large gaps, sizes around block boundaries
+        int[][] gaps = {{0, 10}, {-10, 100}, {5, 5}, {-100000, 1 << 30}};
+        for(int[] gap : gaps){
+            for(int size : new int[]{1, 2, 127, 128, 129, 1000, 65536}){
+                List<Long> values = generateValues(random, size, gap[0], gap[1]);
+                ByteBuffer buffer = toBuffer(DeltaBlockFORCompressor.compress(values));
+                assertDecoded(values, DeltaBlockFORDecompressor.decompress(buffer, size));
+                assertFalse(buffer.hasRemaining());
+            }
+        }
+        List<Long> overflow = List.of(0L, (long) Integer.MAX_VALUE + 1);
+        assertThrows(ArithmeticException.class, () -> DeltaBlockFORCompressor.compress(overflow));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void wordLevelDecoderTest(){
+        // word-level decoders read the same streams as decoders based on ByteBufferBitInput
+        Random random = new Random(9);
+        for(int size : new int[]{1, 2, 100, 60000}){
+            for(int[] gap : new int[][]{{0, 10}, {-100, 1000}, {-100000, 1 << 30}}){
+                List<Long> values = generateValues(random, size, gap[0], gap[1]);
+
+                long[] compressed = DeltaSimple8BCompressor.compress(values);
+                assertDecoded(values, DeltaSimple8BDecompressor.decompress(new ByteBufferBitInput(toBuffer(compressed)), size));
+                assertDecoded(values, DeltaSimple8BDecompressor.decompress(toBuffer(compressed), size));
+
+                compressed = DeltaVarIntCompressor.compress(values);
+                assertDecoded(values, DeltaVarIntDecompressor.decompress(new ByteBufferBitInput(toBuffer(compressed)), size));
+                assertDecoded(values, DeltaVarIntDecompressor.decompress(toBuffer(compressed), size));
+
+                compressed = DeltaOfDeltaCompressor.compress(values);
+                assertDecoded(values, DeltaOfDeltaDecompressor.decompress(new ByteBufferBitInput(toBuffer(compressed)), size));
+                assertDecoded(values, DeltaOfDeltaDecompressor.decompress(toBuffer(compressed), size));
+            }
+        }
+
+        // reads that span words
+        long[] words = {0x0123456789abcdefL, 0xfedcba9876543210L, -1L};
+        BitInput expected = new ByteBufferBitInput(toBuffer(words));
+        BitInput actual = new WordBitInput(toBuffer(words));
+        for(int bits : new int[]{3, 7, 1, 64, 33, 20, 4, 9}){
+            assertEquals(expected.getLong(bits), actual.getLong(bits));
+            assertEquals(expected.nextClearBit(4), actual.nextClearBit(4));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package compressor;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class FORCompressorTest {
+    private static long[] roundTrip(long[] values){
+        long[] compressed = FORCompressor.compress(values, values.length);
+        ByteBuffer buffer = ByteBuffer.allocate(compressed.length * 8);
+        for(long value : compressed){
+            buffer.putLong(value);
+        }
+        buffer.flip();
+        return FORDecompressor.decompress(buffer, values.length);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void roundTripTest(){
+        Random random = new Random(3);
+        // bit widths that do and do not divide 64, and constant columns
+        long[] ranges = {1, 2, 16, 1000, 1 << 16, 123456789L, 1L << 40};
+        for(long range : ranges){
+            for(int size : new int[]{1, 63, 64, 65, 1000}){
+                long[] values = new long[size];
+                for(int i = 0; i < size; i++){
+                    values[i] = -5000 + (long) (random.nextDouble() * range);
+                }
+                assertArrayEquals(values, roundTrip(values));
+            }
+        }
+        assertArrayEquals(new long[0], roundTrip(new long[0]));
+    }
+}